@@ -70,6 +70,12 @@ public class HistogramCell
     dirty.afterModification();
   }
 
+  /** Increment all of the bucket counts in this histogram, by the bucket counts of the data. */
+  public void update(HistogramData data) {
+    this.value.update(data);
+    dirty.afterModification();
+  }
+
   // TODO(BEAM-12103): Update this function to allow incrementing the infinite buckets as well.
   // and remove the incTopBucketCount and incBotBucketCount methods.
   // Using 0 and length -1 as the bucketIndex.
@@ -20,8 +20,10 @@ package org.apache.beam.runners.core.metrics;
 import org.apache.beam.sdk.metrics.Counter;
 import org.apache.beam.sdk.metrics.DelegatingCounter;
 import org.apache.beam.sdk.metrics.DelegatingDistribution;
+import org.apache.beam.sdk.metrics.DelegatingGauge;
 import org.apache.beam.sdk.metrics.DelegatingHistogram;
 import org.apache.beam.sdk.metrics.Distribution;
+import org.apache.beam.sdk.metrics.Gauge;
 import org.apache.beam.sdk.metrics.Histogram;
 import org.apache.beam.sdk.util.HistogramData;
 
@@ -46,6 +48,19 @@ public class LabeledMetrics {
     return new DelegatingDistribution(metricName);
   }
 
+  public static Distribution distribution(
+      MonitoringInfoMetricName metricName, boolean processWideContainer) {
+    return new DelegatingDistribution(metricName, processWideContainer);
+  }
+
+  /**
+   * Create a metric that can have its new value set, and is aggregated by taking the last reported
+   * value.
+   */
+  public static Gauge gauge(MonitoringInfoMetricName metricName, boolean processWideContainer) {
+    return new DelegatingGauge(metricName, processWideContainer);
+  }
+
   public static Histogram histogram(
       MonitoringInfoMetricName metricName,
       HistogramData.BucketType bucketType,
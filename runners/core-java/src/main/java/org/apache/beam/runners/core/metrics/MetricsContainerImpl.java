@@ -18,13 +18,16 @@
 package org.apache.beam.runners.core.metrics;
 
 import static org.apache.beam.runners.core.metrics.MonitoringInfoConstants.TypeUrns.DISTRIBUTION_INT64_TYPE;
+import static org.apache.beam.runners.core.metrics.MonitoringInfoConstants.TypeUrns.HISTOGRAM_INT64_TYPE;
 import static org.apache.beam.runners.core.metrics.MonitoringInfoConstants.TypeUrns.LATEST_INT64_TYPE;
 import static org.apache.beam.runners.core.metrics.MonitoringInfoConstants.TypeUrns.SUM_INT64_TYPE;
 import static org.apache.beam.runners.core.metrics.MonitoringInfoEncodings.decodeInt64Counter;
 import static org.apache.beam.runners.core.metrics.MonitoringInfoEncodings.decodeInt64Distribution;
 import static org.apache.beam.runners.core.metrics.MonitoringInfoEncodings.decodeInt64Gauge;
+import static org.apache.beam.runners.core.metrics.MonitoringInfoEncodings.decodeInt64Histogram;
 import static org.apache.beam.runners.core.metrics.MonitoringInfoEncodings.encodeInt64Counter;
 import static org.apache.beam.runners.core.metrics.MonitoringInfoEncodings.encodeInt64Distribution;
+import static org.apache.beam.runners.core.metrics.MonitoringInfoEncodings.encodeInt64Gauge;
 import static org.apache.beam.vendor.guava.v26_0_jre.com.google.common.base.Preconditions.checkNotNull;
 
 import java.io.Serializable;
@@ -290,6 +293,31 @@ public class MetricsContainerImpl implements Serializable, MetricsContainer {
     return builder.build();
   }
 
+  /**
+   * @return The MonitoringInfo metadata from the gauge metric. Only gauges for a specific URN are
+   *     reported, user gauges are dropped.
+   */
+  private @Nullable SimpleMonitoringInfoBuilder gaugeToMonitoringMetadata(MetricKey metricKey) {
+    if (!(metricKey.metricName() instanceof MonitoringInfoMetricName)) {
+      return null;
+    }
+    return metricToMonitoringMetadata(
+        metricKey,
+        MonitoringInfoConstants.TypeUrns.LATEST_INT64_TYPE,
+        MonitoringInfoConstants.Urns.USER_LATEST_INT64);
+  }
+
+  /** @return The MonitoringInfo generated from the gauge metricUpdate. */
+  private @Nullable MonitoringInfo gaugeUpdateToMonitoringInfo(
+      MetricUpdate<GaugeData> metricUpdate) {
+    SimpleMonitoringInfoBuilder builder = gaugeToMonitoringMetadata(metricUpdate.getKey());
+    if (builder == null) {
+      return null;
+    }
+    builder.setInt64LatestValue(metricUpdate.getUpdate());
+    return builder.build();
+  }
+
   /** Return the cumulative values for any metrics in this container as MonitoringInfos. */
   @Override
   public Iterable<MonitoringInfo> getMonitoringInfos() {
@@ -311,6 +339,13 @@ public class MetricsContainerImpl implements Serializable, MetricsContainer {
         monitoringInfos.add(mi);
       }
     }
+
+    for (MetricUpdate<GaugeData> metricUpdate : metricUpdates.gaugeUpdates()) {
+      MonitoringInfo mi = gaugeUpdateToMonitoringInfo(metricUpdate);
+      if (mi != null) {
+        monitoringInfos.add(mi);
+      }
+    }
     return monitoringInfos;
   }
 
@@ -332,6 +367,12 @@ public class MetricsContainerImpl implements Serializable, MetricsContainer {
         builder.put(shortId, encodeInt64Distribution(metricUpdate.getUpdate()));
       }
     }
+    for (MetricUpdate<GaugeData> metricUpdate : metricUpdates.gaugeUpdates()) {
+      String shortId = getShortId(metricUpdate.getKey(), this::gaugeToMonitoringMetadata, shortIds);
+      if (shortId != null) {
+        builder.put(shortId, encodeInt64Gauge(metricUpdate.getUpdate()));
+      }
+    }
     return builder.build();
   }
 
@@ -420,6 +461,12 @@ public class MetricsContainerImpl implements Serializable, MetricsContainer {
     gauge.update(decodeInt64Gauge(monitoringInfo.getPayload()));
   }
 
+  private void updateForHistogramInt64Type(MonitoringInfo monitoringInfo) {
+    MetricName metricName = MonitoringInfoMetricName.of(monitoringInfo);
+    HistogramData data = decodeInt64Histogram(monitoringInfo.getPayload());
+    getHistogram(metricName, data.getBucketType()).update(data);
+  }
+
   /** Update values of this {@link MetricsContainerImpl} by reading from {@code monitoringInfos}. */
   public void update(Iterable<MonitoringInfo> monitoringInfos) {
     for (MonitoringInfo monitoringInfo : monitoringInfos) {
@@ -440,6 +487,10 @@ public class MetricsContainerImpl implements Serializable, MetricsContainer {
           updateForLatestInt64Type(monitoringInfo);
           break;
 
+        case HISTOGRAM_INT64_TYPE:
+          updateForHistogramInt64Type(monitoringInfo);
+          break;
+
         default:
           LOG.warn("Unsupported metric type {}", monitoringInfo.getType());
       }
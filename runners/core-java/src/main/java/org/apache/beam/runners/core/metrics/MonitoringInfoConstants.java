@@ -44,6 +44,8 @@ public final class MonitoringInfoConstants {
     public static final String USER_SUM_INT64 = extractUrn(MonitoringInfoSpecs.Enum.USER_SUM_INT64);
     public static final String USER_SUM_DOUBLE =
         extractUrn(MonitoringInfoSpecs.Enum.USER_SUM_DOUBLE);
+    public static final String USER_LATEST_INT64 =
+        extractUrn(MonitoringInfoSpecs.Enum.USER_LATEST_INT64);
     public static final String USER_DISTRIBUTION_INT64 =
         extractUrn(MonitoringInfoSpecs.Enum.USER_DISTRIBUTION_INT64);
     public static final String USER_DISTRIBUTION_DOUBLE =
@@ -58,6 +60,30 @@ public final class MonitoringInfoConstants {
         extractUrn(MonitoringInfoSpecs.Enum.API_REQUEST_COUNT);
     public static final String API_REQUEST_LATENCIES =
         extractUrn(MonitoringInfoSpecs.Enum.API_REQUEST_LATENCIES);
+    public static final String STATE_CACHE_HITS =
+        extractUrn(MonitoringInfoSpecs.Enum.STATE_CACHE_HITS);
+    public static final String STATE_CACHE_MISSES =
+        extractUrn(MonitoringInfoSpecs.Enum.STATE_CACHE_MISSES);
+    public static final String STATE_CACHE_EVICTIONS =
+        extractUrn(MonitoringInfoSpecs.Enum.STATE_CACHE_EVICTIONS);
+    public static final String STATE_CACHE_SIZE_BYTES =
+        extractUrn(MonitoringInfoSpecs.Enum.STATE_CACHE_SIZE_BYTES);
+    public static final String DATA_CHANNEL_FLUSH_BYTES =
+        extractUrn(MonitoringInfoSpecs.Enum.DATA_CHANNEL_FLUSH_BYTES);
+    public static final String DATA_CHANNEL_BUFFER_POOL_BYTES =
+        extractUrn(MonitoringInfoSpecs.Enum.DATA_CHANNEL_BUFFER_POOL_BYTES);
+    public static final String BUNDLE_PROCESSOR_CACHE_HITS =
+        extractUrn(MonitoringInfoSpecs.Enum.BUNDLE_PROCESSOR_CACHE_HITS);
+    public static final String BUNDLE_PROCESSOR_CACHE_MISSES =
+        extractUrn(MonitoringInfoSpecs.Enum.BUNDLE_PROCESSOR_CACHE_MISSES);
+    public static final String BUNDLE_PROCESSOR_CACHE_EVICTIONS =
+        extractUrn(MonitoringInfoSpecs.Enum.BUNDLE_PROCESSOR_CACHE_EVICTIONS);
+    public static final String BUNDLE_PROCESSOR_BUILD_TIME =
+        extractUrn(MonitoringInfoSpecs.Enum.BUNDLE_PROCESSOR_BUILD_TIME);
+    public static final String ELEMENT_PROCESSING_WALL_TIME =
+        extractUrn(MonitoringInfoSpecs.Enum.ELEMENT_PROCESSING_WALL_TIME);
+    public static final String ELEMENT_PROCESSING_CPU_TIME =
+        extractUrn(MonitoringInfoSpecs.Enum.ELEMENT_PROCESSING_CPU_TIME);
   }
 
   /** Standardised MonitoringInfo labels that can be utilized by runners. */
@@ -89,6 +115,8 @@ public final class MonitoringInfoConstants {
     public static final String SPANNER_DATABASE_ID = "SPANNER_DATABASE_ID";
     public static final String SPANNER_INSTANCE_ID = "SPANNER_INSTANCE_ID";
     public static final String SPANNER_QUERY_NAME = "SPANNER_QUERY_NAME";
+    public static final String STATE_TYPE = "STATE_TYPE";
+    public static final String FLUSH_CAUSE = "FLUSH_CAUSE";
 
     static {
       // Note: One benefit of defining these strings above, instead of pulling them in from
@@ -132,6 +160,8 @@ public final class MonitoringInfoConstants {
           SPANNER_INSTANCE_ID.equals(extractLabel(MonitoringInfoLabels.SPANNER_INSTANCE_ID)));
       checkArgument(
           SPANNER_QUERY_NAME.equals(extractLabel(MonitoringInfoLabels.SPANNER_QUERY_NAME)));
+      checkArgument(STATE_TYPE.equals(extractLabel(MonitoringInfoLabels.STATE_TYPE)));
+      checkArgument(FLUSH_CAUSE.equals(extractLabel(MonitoringInfoLabels.FLUSH_CAUSE)));
     }
   }
 
@@ -148,6 +178,7 @@ public final class MonitoringInfoConstants {
     public static final String BOTTOM_N_INT64_TYPE = "beam:metrics:bottom_n_int64:v1";
     public static final String BOTTOM_N_DOUBLE_TYPE = "beam:metrics:bottom_n_double:v1";
     public static final String PROGRESS_TYPE = "beam:metrics:progress:v1";
+    public static final String HISTOGRAM_INT64_TYPE = "beam:metrics:histogram_int64:v1";
 
     static {
       checkArgument(SUM_INT64_TYPE.equals(getUrn(MonitoringInfoTypeUrns.Enum.SUM_INT64_TYPE)));
@@ -170,6 +201,8 @@ public final class MonitoringInfoConstants {
       checkArgument(
           BOTTOM_N_DOUBLE_TYPE.equals(getUrn(MonitoringInfoTypeUrns.Enum.BOTTOM_N_DOUBLE_TYPE)));
       checkArgument(PROGRESS_TYPE.equals(getUrn(MonitoringInfoTypeUrns.Enum.PROGRESS_TYPE)));
+      checkArgument(
+          HISTOGRAM_INT64_TYPE.equals(getUrn(MonitoringInfoTypeUrns.Enum.HISTOGRAM_INT64_TYPE)));
     }
   }
 
@@ -19,9 +19,13 @@ package org.apache.beam.runners.core.metrics;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
 import org.apache.beam.sdk.coders.Coder;
 import org.apache.beam.sdk.coders.DoubleCoder;
+import org.apache.beam.sdk.coders.IterableCoder;
 import org.apache.beam.sdk.coders.VarLongCoder;
+import org.apache.beam.sdk.util.HistogramData;
 import org.apache.beam.vendor.grpc.v1p36p0.com.google.protobuf.ByteString;
 import org.joda.time.Instant;
 
@@ -29,6 +33,9 @@ import org.joda.time.Instant;
 public class MonitoringInfoEncodings {
   private static final Coder<Long> VARINT_CODER = VarLongCoder.of();
   private static final Coder<Double> DOUBLE_CODER = DoubleCoder.of();
+  private static final Coder<Iterable<Long>> VARINT_ITERABLE_CODER = IterableCoder.of(VARINT_CODER);
+  private static final Coder<Iterable<Double>> DOUBLE_ITERABLE_CODER =
+      IterableCoder.of(DOUBLE_CODER);
 
   /** Encodes to {@link MonitoringInfoConstants.TypeUrns#DISTRIBUTION_INT64_TYPE}. */
   public static ByteString encodeInt64Distribution(DistributionData data) {
@@ -74,6 +81,67 @@ public class MonitoringInfoEncodings {
     return output.toByteString();
   }
 
+  /** Encodes to {@link MonitoringInfoConstants.TypeUrns#HISTOGRAM_INT64_TYPE}. */
+  public static ByteString encodeInt64Histogram(HistogramData data) {
+    HistogramData.BucketType bucketType = data.getBucketType();
+    int numBuckets = bucketType.getNumBuckets();
+    List<Double> bounds = new ArrayList<>(numBuckets + 1);
+    List<Long> counts = new ArrayList<>(numBuckets + 2);
+    synchronized (data) {
+      counts.add(data.getBottomBucketCount());
+      for (int i = 0; i < numBuckets; i++) {
+        counts.add(data.getCount(i));
+      }
+      counts.add(data.getTopBucketCount());
+    }
+    if (bucketType instanceof HistogramData.ExplicitBuckets) {
+      // Keeps decoded bounds exactly as they were encoded.
+      bounds.addAll(((HistogramData.ExplicitBuckets) bucketType).getBounds());
+    } else {
+      for (int i = 0; i < numBuckets; i++) {
+        bounds.add(bucketType.getRangeFrom() + bucketType.getAccumulatedBucketSize(i));
+      }
+      bounds.add(bucketType.getRangeTo());
+    }
+    ByteString.Output output = ByteString.newOutput();
+    try {
+      DOUBLE_ITERABLE_CODER.encode(bounds, output);
+      VARINT_ITERABLE_CODER.encode(counts, output);
+    } catch (IOException e) {
+      throw new RuntimeException(e);
+    }
+    return output.toByteString();
+  }
+
+  /**
+   * Decodes from {@link MonitoringInfoConstants.TypeUrns#HISTOGRAM_INT64_TYPE}. The decoded
+   * histogram has {@link HistogramData.ExplicitBuckets} with the encoded bounds.
+   */
+  public static HistogramData decodeInt64Histogram(ByteString payload) {
+    InputStream input = payload.newInput();
+    List<Double> bounds = new ArrayList<>();
+    List<Long> counts = new ArrayList<>();
+    try {
+      DOUBLE_ITERABLE_CODER.decode(input).forEach(bounds::add);
+      VARINT_ITERABLE_CODER.decode(input).forEach(counts::add);
+    } catch (IOException e) {
+      throw new RuntimeException(e);
+    }
+    if (counts.size() != bounds.size() + 1) {
+      throw new IllegalArgumentException(
+          String.format(
+              "Expected %d histogram bucket counts for %d bounds, but got %d",
+              bounds.size() + 1, bounds.size(), counts.size()));
+    }
+    HistogramData data = new HistogramData(HistogramData.ExplicitBuckets.of(bounds));
+    data.incBottomBucketCount(counts.get(0));
+    for (int i = 0; i < bounds.size() - 1; i++) {
+      data.incBucketCount(i, counts.get(i + 1));
+    }
+    data.incTopBucketCount(counts.get(bounds.size()));
+    return data;
+  }
+
   /** Encodes to {@link MonitoringInfoConstants.TypeUrns#LATEST_INT64_TYPE}. */
   public static ByteString encodeInt64Gauge(GaugeData data) {
     ByteString.Output output = ByteString.newOutput();
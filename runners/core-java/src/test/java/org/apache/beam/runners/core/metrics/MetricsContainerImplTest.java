@@ -24,10 +24,12 @@ import static org.hamcrest.Matchers.emptyIterable;
 import static org.hamcrest.collection.IsIterableContainingInAnyOrder.containsInAnyOrder;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertThrows;
 import static org.junit.Assert.assertTrue;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
@@ -246,6 +248,33 @@ public class MetricsContainerImplTest {
     assertThat(actualMonitoringInfos, containsInAnyOrder(builder1.build()));
   }
 
+  @Test
+  public void testMonitoringInfosArePopulatedForSystemGauges() {
+    MetricsContainerImpl testObject = MetricsContainerImpl.createProcessWideContainer();
+    HashMap<String, String> labels = new HashMap<>();
+    labels.put(MonitoringInfoConstants.Labels.STATE_TYPE, "side_input");
+    GaugeCell g1 =
+        testObject.getGauge(
+            MonitoringInfoMetricName.named(
+                MonitoringInfoConstants.Urns.STATE_CACHE_SIZE_BYTES, labels));
+    g1.set(5L);
+    // User gauges are not reported as MonitoringInfos.
+    testObject.getGauge(MetricName.named("ns", "name")).set(7L);
+
+    SimpleMonitoringInfoBuilder builder1 = new SimpleMonitoringInfoBuilder();
+    builder1
+        .setUrn(MonitoringInfoConstants.Urns.STATE_CACHE_SIZE_BYTES)
+        .setLabel(MonitoringInfoConstants.Labels.STATE_TYPE, "side_input")
+        .setInt64LatestValue(g1.getCumulative());
+
+    ArrayList<MonitoringInfo> actualMonitoringInfos = new ArrayList<MonitoringInfo>();
+    for (MonitoringInfo mi : testObject.getMonitoringInfos()) {
+      actualMonitoringInfos.add(mi);
+    }
+
+    assertThat(actualMonitoringInfos, containsInAnyOrder(builder1.build()));
+  }
+
   @Test
   public void testMonitoringInfosArePopulatedForABeamCounter() {
     MetricsContainerImpl testObject = new MetricsContainerImpl("step1");
@@ -340,6 +369,34 @@ public class MetricsContainerImplTest {
         2, deltaContainer.getHistogram(hName, bucketType).getCumulative().getTopBucketCount());
   }
 
+  @Test
+  public void testUpdateFromHistogramMonitoringInfos() {
+    HistogramData data = HistogramData.linear(0, 2, 5);
+    data.record(-1, 1, 3, 3, 20);
+    SimpleMonitoringInfoBuilder builder = new SimpleMonitoringInfoBuilder();
+    builder
+        .setUrn(MonitoringInfoConstants.Urns.ELEMENT_PROCESSING_WALL_TIME)
+        .setLabel(MonitoringInfoConstants.Labels.PTRANSFORM, "step1")
+        .setInt64HistogramValue(data);
+    MonitoringInfo monitoringInfo = builder.build();
+
+    MetricsContainerImpl testObject = new MetricsContainerImpl("step1");
+    testObject.update(Collections.singletonList(monitoringInfo));
+    testObject.update(Collections.singletonList(monitoringInfo));
+
+    HistogramCell cell =
+        testObject.tryGetHistogram(
+            MonitoringInfoMetricName.of(monitoringInfo),
+            HistogramData.ExplicitBuckets.of(Arrays.asList(0.0, 2.0, 4.0, 6.0, 8.0, 10.0)));
+    assertNotNull(cell);
+    HistogramData cumulative = cell.getCumulative();
+    assertEquals(2, cumulative.getBottomBucketCount());
+    assertEquals(2, cumulative.getCount(0));
+    assertEquals(4, cumulative.getCount(1));
+    assertEquals(0, cumulative.getCount(2));
+    assertEquals(2, cumulative.getTopBucketCount());
+  }
+
   @Test
   public void testNotEquals() {
     MetricsContainerImpl metricsContainerImpl = new MetricsContainerImpl("stepName");
@@ -21,13 +21,17 @@ import static org.apache.beam.runners.core.metrics.MonitoringInfoEncodings.decod
 import static org.apache.beam.runners.core.metrics.MonitoringInfoEncodings.decodeInt64Counter;
 import static org.apache.beam.runners.core.metrics.MonitoringInfoEncodings.decodeInt64Distribution;
 import static org.apache.beam.runners.core.metrics.MonitoringInfoEncodings.decodeInt64Gauge;
+import static org.apache.beam.runners.core.metrics.MonitoringInfoEncodings.decodeInt64Histogram;
 import static org.apache.beam.runners.core.metrics.MonitoringInfoEncodings.encodeDoubleCounter;
 import static org.apache.beam.runners.core.metrics.MonitoringInfoEncodings.encodeDoubleDistribution;
 import static org.apache.beam.runners.core.metrics.MonitoringInfoEncodings.encodeInt64Counter;
 import static org.apache.beam.runners.core.metrics.MonitoringInfoEncodings.encodeInt64Distribution;
 import static org.apache.beam.runners.core.metrics.MonitoringInfoEncodings.encodeInt64Gauge;
+import static org.apache.beam.runners.core.metrics.MonitoringInfoEncodings.encodeInt64Histogram;
 import static org.junit.Assert.assertEquals;
 
+import java.util.Arrays;
+import org.apache.beam.sdk.util.HistogramData;
 import org.apache.beam.vendor.grpc.v1p36p0.com.google.protobuf.ByteString;
 import org.joda.time.Instant;
 import org.junit.Test;
@@ -64,6 +68,29 @@ public class MonitoringInfoEncodingsTest {
     assertEquals(data, decodeInt64Gauge(payload));
   }
 
+  @Test
+  public void testInt64HistogramEncoding() {
+    HistogramData data = HistogramData.linear(0, 1, 1);
+    data.record(-1, 0.5, 2);
+    ByteString payload = encodeInt64Histogram(data);
+    assertEquals(
+        ByteString.copyFrom(
+            new byte[] {
+              // bounds
+              0, 0, 0, 2, 0, 0, 0, 0, 0, 0, 0, 0, 0x3f, (byte) 0xf0, 0, 0, 0, 0, 0, 0,
+              // counts
+              0, 0, 0, 3, 1, 1, 1
+            }),
+        payload);
+    HistogramData decoded = decodeInt64Histogram(payload);
+    assertEquals(
+        HistogramData.ExplicitBuckets.of(Arrays.asList(0.0, 1.0)), decoded.getBucketType());
+    assertEquals(1, decoded.getBottomBucketCount());
+    assertEquals(1, decoded.getCount(0));
+    assertEquals(1, decoded.getTopBucketCount());
+    assertEquals(payload, encodeInt64Histogram(decoded));
+  }
+
   @Test
   public void testInt64CounterEncoding() {
     ByteString payload = encodeInt64Counter(1L);
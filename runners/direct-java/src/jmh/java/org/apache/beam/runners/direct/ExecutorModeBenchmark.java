@@ -0,0 +1,140 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.beam.runners.direct;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.apache.beam.runners.direct.DirectOptions.ExecutorMode;
+import org.apache.beam.sdk.Pipeline;
+import org.apache.beam.sdk.PipelineResult;
+import org.apache.beam.sdk.options.PipelineOptionsFactory;
+import org.apache.beam.sdk.transforms.Create;
+import org.apache.beam.sdk.transforms.DoFn;
+import org.apache.beam.sdk.transforms.ParDo;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks the wall time of an I/O bound pipeline on the {@link DirectRunner} for each {@link
+ * ExecutorMode}.
+ *
+ * <p>The pipeline consists of many independent steps whose {@link DoFn DoFns} sleep for each
+ * element, standing in for blocking I/O. The peak number of live platform threads observed while
+ * the pipeline ran is reported as the {@code peakThreads} secondary result. Run with {@code
+ * -Pbenchmark=ExecutorModeBenchmark}.
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(1)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+public class ExecutorModeBenchmark {
+
+  /** The pipeline shape and the {@link ExecutorMode} it is executed with. */
+  @State(Scope.Benchmark)
+  public static class IoBoundPipeline {
+    @Param({"FIXED_THREAD_POOL", "VIRTUAL_THREADS", "UNBOUNDED_THREAD_POOL"})
+    public ExecutorMode executorMode;
+
+    @Param({"200"})
+    public int numSteps;
+
+    @Param({"10"})
+    public int elementsPerStep;
+
+    @Param({"5"})
+    public int blockingMillis;
+
+    DirectOptions options;
+    List<Integer> elements;
+
+    @Setup(Level.Trial)
+    public void setup() {
+      options = PipelineOptionsFactory.as(DirectOptions.class);
+      options.setRunner(DirectRunner.class);
+      options.setExecutorMode(executorMode);
+      options.setEnforceImmutability(false);
+      options.setEnforceEncodability(false);
+      elements = new ArrayList<>(elementsPerStep);
+      for (int i = 0; i < elementsPerStep; i++) {
+        elements.add(i);
+      }
+    }
+  }
+
+  /** Reports the peak number of live platform threads during each iteration. */
+  @AuxCounters(AuxCounters.Type.EVENTS)
+  @State(Scope.Thread)
+  public static class ThreadCount {
+    private static final ThreadMXBean THREADS = ManagementFactory.getThreadMXBean();
+
+    public long peakThreads;
+
+    @Setup(Level.Iteration)
+    public void reset() {
+      THREADS.resetPeakThreadCount();
+      peakThreads = 0;
+    }
+
+    void record() {
+      peakThreads = Math.max(peakThreads, THREADS.getPeakThreadCount());
+    }
+  }
+
+  @Benchmark
+  public PipelineResult.State testIoBoundPipeline(IoBoundPipeline pipeline, ThreadCount threads) {
+    Pipeline p = Pipeline.create(pipeline.options);
+    for (int i = 0; i < pipeline.numSteps; i++) {
+      p.apply("Create" + i, Create.of(pipeline.elements))
+          .apply("Block" + i, ParDo.of(new BlockingDoFn(pipeline.blockingMillis)));
+    }
+    PipelineResult.State state = p.run().waitUntilFinish();
+    threads.record();
+    return state;
+  }
+
+  /** Sleeps for each element, standing in for a call to an external service. */
+  private static class BlockingDoFn extends DoFn<Integer, Integer> {
+    private final long blockingMillis;
+
+    BlockingDoFn(long blockingMillis) {
+      this.blockingMillis = blockingMillis;
+    }
+
+    @ProcessElement
+    public void processElement(@Element Integer element, OutputReceiver<Integer> receiver)
+        throws InterruptedException {
+      Thread.sleep(blockingMillis);
+      receiver.output(element);
+    }
+  }
+}
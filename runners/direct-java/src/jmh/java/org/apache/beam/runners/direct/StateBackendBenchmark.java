@@ -0,0 +1,128 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.beam.runners.direct;
+
+import java.lang.management.BufferPoolMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.util.concurrent.ThreadLocalRandom;
+import org.apache.beam.runners.core.StateNamespaces;
+import org.apache.beam.runners.core.StateTag;
+import org.apache.beam.runners.core.StateTags;
+import org.apache.beam.runners.direct.DirectOptions.StateBackend;
+import org.apache.beam.runners.local.StructuralKey;
+import org.apache.beam.sdk.Pipeline;
+import org.apache.beam.sdk.coders.VarIntCoder;
+import org.apache.beam.sdk.coders.VarLongCoder;
+import org.apache.beam.sdk.runners.AppliedPTransform;
+import org.apache.beam.sdk.state.BagState;
+import org.apache.beam.sdk.state.ValueState;
+import org.apache.beam.sdk.transforms.Create;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Benchmarks the throughput and memory footprint of each {@link StateBackend} of the {@link
+ * DirectRunner} as the number of keys with state grows.
+ *
+ * <p>Setup commits a value and a bag of state for each of {@code numKeys} keys of a step. Each
+ * invocation then executes a bundle which reads and updates the state of a random key, and commits
+ * it. The heap and direct memory in use once the state of every key has been committed are
+ * reported as the {@code heapMegabytes} and {@code directMegabytes} secondary results. Run with
+ * {@code -Pbenchmark=StateBackendBenchmark}. The {@code IN_MEMORY} backend needs a heap of tens of
+ * gigabytes to hold the state of 50 million keys.
+ */
+public class StateBackendBenchmark {
+
+  private static final StateTag<ValueState<Long>> COUNT =
+      StateTags.value("count", VarLongCoder.of());
+  private static final StateTag<BagState<Integer>> RECENT =
+      StateTags.bag("recent", VarIntCoder.of());
+
+  /** A {@link DirectStateBackend} holding the state of every key of a stateful step. */
+  @State(Scope.Benchmark)
+  public static class StatefulStep {
+    @Param({"IN_MEMORY", "OFF_HEAP"})
+    public StateBackend backend;
+
+    @Param({"1000000", "10000000", "50000000"})
+    public int numKeys;
+
+    DirectStateBackend stateBackend;
+    AppliedPTransform<?, ?, ?> step;
+    long heapBytes;
+    long directBytes;
+
+    @Setup(Level.Trial)
+    public void setup() {
+      step = DirectGraphs.getProducer(Pipeline.create().apply(Create.of(1)));
+      stateBackend = DirectStateBackend.create(backend);
+      for (int key = 0; key < numKeys; key++) {
+        update(key);
+      }
+
+      System.gc();
+      MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+      heapBytes = memory.getHeapMemoryUsage().getUsed();
+      for (BufferPoolMXBean pool : ManagementFactory.getPlatformMXBeans(BufferPoolMXBean.class)) {
+        if ("direct".equals(pool.getName())) {
+          directBytes = pool.getMemoryUsed();
+        }
+      }
+    }
+
+    /** Executes a bundle which reads and updates the state of the provided key. */
+    void update(int key) {
+      StructuralKey<Integer> structuralKey = StructuralKey.of(key, VarIntCoder.of());
+      DirectStateInternals state = stateBackend.stateFor(step, structuralKey);
+      ValueState<Long> count = state.state(StateNamespaces.global(), COUNT);
+      Long current = count.read();
+      count.write(current == null ? 1L : current + 1);
+      BagState<Integer> recent = state.state(StateNamespaces.global(), RECENT);
+      if (current != null && current % 4 == 0) {
+        recent.clear();
+      }
+      recent.add(key);
+      stateBackend.commit(step, structuralKey, state);
+    }
+  }
+
+  /** Reports the memory used to hold the state of every key of the {@link StatefulStep}. */
+  @AuxCounters(AuxCounters.Type.EVENTS)
+  @State(Scope.Thread)
+  public static class Footprint {
+    public double heapMegabytes;
+    public double directMegabytes;
+
+    @Setup(Level.Iteration)
+    public void record(StatefulStep step) {
+      heapMegabytes = step.heapBytes / (1024.0 * 1024.0);
+      directMegabytes = step.directBytes / (1024.0 * 1024.0);
+    }
+  }
+
+  @Benchmark
+  public void testUpdateRandomKey(StatefulStep step, Footprint footprint) {
+    step.update(ThreadLocalRandom.current().nextInt(step.numKeys));
+  }
+}
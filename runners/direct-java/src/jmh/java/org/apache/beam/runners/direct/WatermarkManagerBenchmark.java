@@ -0,0 +1,171 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.beam.runners.direct;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import org.apache.beam.runners.core.StateNamespaces;
+import org.apache.beam.runners.core.TimerInternals.TimerData;
+import org.apache.beam.runners.direct.WatermarkManager.FiredTimers;
+import org.apache.beam.runners.direct.WatermarkManager.TimerUpdate;
+import org.apache.beam.runners.direct.WatermarkManager.TimerUpdate.TimerUpdateBuilder;
+import org.apache.beam.runners.local.StructuralKey;
+import org.apache.beam.sdk.coders.VarIntCoder;
+import org.apache.beam.sdk.state.TimeDomain;
+import org.apache.beam.sdk.transforms.windowing.BoundedWindow;
+import org.joda.time.Instant;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Benchmarks advancing the watermarks of a {@link WatermarkManager} as the width of the graph and
+ * the number of keys holding event time timers grow.
+ *
+ * <p>The graph consists of a single root whose output is consumed by {@code width} independent
+ * steps, each of which holds an event time timer for each of {@code numKeys} keys. Each invocation
+ * advances the root watermark so that about one percent of the timers of every step fire, completes
+ * the fired timers and sets them again at a later time. Run with {@code
+ * -Pbenchmark=WatermarkManagerBenchmark}.
+ */
+public class WatermarkManagerBenchmark {
+
+  private static final String ROOT = "root";
+
+  /** A {@link WatermarkManager} over a wide graph of steps with many keyed timers. */
+  @State(Scope.Benchmark)
+  public static class WideGraph {
+    @Param({"10", "200"})
+    public int width;
+
+    @Param({"1000", "10000"})
+    public int numKeys;
+
+    WatermarkManager<String, ? super String> manager;
+    long currentTime;
+
+    @Setup(Level.Trial)
+    public void setup() {
+      List<String> steps = new ArrayList<>(width);
+      for (int i = 0; i < width; i++) {
+        steps.add("step" + i);
+      }
+      manager = WatermarkManager.create(Instant::now, new FanOutGraph(steps), name -> name);
+      for (String step : steps) {
+        for (int i = 0; i < numKeys; i++) {
+          StructuralKey<Integer> key = StructuralKey.of(i, VarIntCoder.of());
+          manager.updateWatermarks(
+              null,
+              TimerUpdate.builder(key).setTimer(eventTimeTimer(new Instant(i))).build(),
+              step,
+              null,
+              Collections.emptyList(),
+              BoundedWindow.TIMESTAMP_MAX_VALUE);
+        }
+      }
+      manager.refreshAll();
+      currentTime = 0;
+    }
+  }
+
+  @Benchmark
+  public int testAdvanceWatermark(WideGraph graph) {
+    WatermarkManager<String, ? super String> manager = graph.manager;
+    graph.currentTime += Math.max(1, graph.numKeys / 100);
+    manager.updateWatermarks(
+        null,
+        TimerUpdate.empty(),
+        ROOT,
+        null,
+        Collections.emptyList(),
+        new Instant(graph.currentTime));
+    manager.refreshAll();
+
+    Collection<FiredTimers<String>> allFiredTimers =
+        manager.extractFiredTimers(Collections.emptyList());
+    for (FiredTimers<String> firedTimers : allFiredTimers) {
+      TimerUpdateBuilder update =
+          TimerUpdate.builder(firedTimers.getKey()).withCompletedTimers(firedTimers.getTimers());
+      for (TimerData timer : firedTimers.getTimers()) {
+        update.setTimer(eventTimeTimer(timer.getTimestamp().plus(graph.numKeys)));
+      }
+      manager.updateWatermarks(
+          null,
+          update.build(),
+          firedTimers.getExecutable(),
+          null,
+          Collections.emptyList(),
+          BoundedWindow.TIMESTAMP_MAX_VALUE);
+    }
+    manager.refreshAll();
+    return allFiredTimers.size();
+  }
+
+  private static TimerData eventTimeTimer(Instant timestamp) {
+    return TimerData.of(
+        "timer", StateNamespaces.global(), timestamp, timestamp, TimeDomain.EVENT_TIME);
+  }
+
+  /** A graph of a single root whose output is consumed by each of the steps. */
+  private static class FanOutGraph implements ExecutableGraph<String, String> {
+    private final List<String> steps;
+
+    FanOutGraph(List<String> steps) {
+      this.steps = steps;
+    }
+
+    @Override
+    public Collection<String> getRootTransforms() {
+      return Collections.singletonList(ROOT);
+    }
+
+    @Override
+    public Collection<String> getExecutables() {
+      return steps;
+    }
+
+    @Override
+    public String getProducer(String collection) {
+      return collection.substring(0, collection.length() - ".out".length());
+    }
+
+    @Override
+    public Collection<String> getProduced(String producer) {
+      return ROOT.equals(producer)
+          ? Collections.singletonList(ROOT + ".out")
+          : Collections.emptyList();
+    }
+
+    @Override
+    public Collection<String> getPerElementInputs(String transform) {
+      return ROOT.equals(transform)
+          ? Collections.emptyList()
+          : Collections.singletonList(ROOT + ".out");
+    }
+
+    @Override
+    public Collection<String> getPerElementConsumers(String collection) {
+      return (ROOT + ".out").equals(collection) ? steps : Collections.emptyList();
+    }
+  }
+}
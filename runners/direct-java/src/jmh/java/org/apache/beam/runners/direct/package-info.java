@@ -16,5 +16,5 @@
  * limitations under the License.
  */
 
-/** Internal utils to translate Beam pipelines to Spark streaming. */
-package org.apache.beam.runners.spark.structuredstreaming.translation.utils;
+/** Benchmarks for the DirectRunner. */
+package org.apache.beam.runners.direct;
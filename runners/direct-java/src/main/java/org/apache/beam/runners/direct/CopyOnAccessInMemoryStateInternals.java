@@ -66,7 +66,7 @@ import org.joda.time.Instant;
   "rawtypes", // TODO(https://issues.apache.org/jira/browse/BEAM-10556)
   "nullness" // TODO(https://issues.apache.org/jira/browse/BEAM-10402)
 })
-class CopyOnAccessInMemoryStateInternals<K> implements StateInternals {
+class CopyOnAccessInMemoryStateInternals<K> implements DirectStateInternals {
   private final CopyOnAccessInMemoryStateTable table;
 
   private K key;
@@ -99,6 +99,7 @@ class CopyOnAccessInMemoryStateInternals<K> implements StateInternals {
    *
    * @return this table
    */
+  @Override
   public CopyOnAccessInMemoryStateInternals commit() {
     table.commit();
     return this;
@@ -110,6 +111,7 @@ class CopyOnAccessInMemoryStateInternals<K> implements StateInternals {
    * <p>Must be called after this state has been committed. Will throw an {@link
    * IllegalStateException} if the state has not been committed.
    */
+  @Override
   public Instant getEarliestWatermarkHold() {
     // After commit, the watermark hold is always present, but may be
     // BoundedWindow#TIMESTAMP_MAX_VALUE if there is no hold set.
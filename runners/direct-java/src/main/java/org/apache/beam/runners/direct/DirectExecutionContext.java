@@ -21,6 +21,7 @@ import java.util.Collections;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.function.Supplier;
 import org.apache.beam.runners.core.InMemoryBundleFinalizer;
 import org.apache.beam.runners.core.StepContext;
 import org.apache.beam.runners.core.TimerInternals;
@@ -45,18 +46,18 @@ class DirectExecutionContext {
   private static final Logger LOG = LoggerFactory.getLogger(DirectExecutionContext.class);
   private final Clock clock;
   private final StructuralKey<?> key;
-  private final CopyOnAccessInMemoryStateInternals existingState;
+  private final Supplier<DirectStateInternals> stateSupplier;
   private final TransformWatermarks watermarks;
   private Map<String, DirectStepContext> cachedStepContexts = new LinkedHashMap<>();
 
   public DirectExecutionContext(
       Clock clock,
       StructuralKey<?> key,
-      CopyOnAccessInMemoryStateInternals existingState,
+      Supplier<DirectStateInternals> stateSupplier,
       TransformWatermarks watermarks) {
     this.clock = clock;
     this.key = key;
-    this.existingState = existingState;
+    this.stateSupplier = stateSupplier;
     this.watermarks = watermarks;
   }
 
@@ -71,16 +72,16 @@ class DirectExecutionContext {
 
   /** Step Context for the {@link DirectRunner}. */
   public class DirectStepContext implements StepContext {
-    private CopyOnAccessInMemoryStateInternals<?> stateInternals;
+    private DirectStateInternals stateInternals;
     private DirectTimerInternals timerInternals;
     private InMemoryBundleFinalizer bundleFinalizer;
 
     public DirectStepContext() {}
 
     @Override
-    public CopyOnAccessInMemoryStateInternals<?> stateInternals() {
+    public DirectStateInternals stateInternals() {
       if (stateInternals == null) {
-        stateInternals = CopyOnAccessInMemoryStateInternals.withUnderlying(key, existingState);
+        stateInternals = stateSupplier.get();
       }
       return stateInternals;
     }
@@ -113,7 +114,7 @@ class DirectExecutionContext {
      * Commits the state of this step, and returns the committed state. If the step has not accessed
      * any state, return null.
      */
-    public CopyOnAccessInMemoryStateInternals commitState() {
+    public DirectStateInternals commitState() {
       if (stateInternals != null) {
         return stateInternals.commit();
       }
@@ -63,6 +63,45 @@ public interface DirectOptions extends PipelineOptions, ApplicationNameOptions {
 
   void setTargetParallelism(int target);
 
+  @Default.Enum("FIXED_THREAD_POOL")
+  @Description(
+      "Controls which threads the DirectRunner executes transforms on. FIXED_THREAD_POOL uses"
+          + " targetParallelism worker threads. VIRTUAL_THREADS executes each transform on its own"
+          + " virtual thread, falling back to UNBOUNDED_THREAD_POOL if virtual threads are not"
+          + " available in this JVM. UNBOUNDED_THREAD_POOL creates worker threads on demand and"
+          + " reuses idle ones. The unbounded modes suit pipelines whose DoFns mostly block.")
+  ExecutorMode getExecutorMode();
+
+  void setExecutorMode(ExecutorMode mode);
+
+  /** The kinds of threads the {@link DirectRunner} executes transforms on. */
+  enum ExecutorMode {
+    /** A fixed pool of {@link DirectOptions#getTargetParallelism()} platform threads. */
+    FIXED_THREAD_POOL,
+    /** A virtual thread per scheduled transform, when supported by the JVM. */
+    VIRTUAL_THREADS,
+    /** A pool of platform threads which grows with the number of scheduled transforms. */
+    UNBOUNDED_THREAD_POOL
+  }
+
+  @Default.Enum("IN_MEMORY")
+  @Description(
+      "Controls where the DirectRunner keeps the state of stateful transforms between bundles."
+          + " IN_MEMORY keeps state as objects on the heap. OFF_HEAP keeps state encoded in"
+          + " direct memory, which reduces heap usage and garbage collection for pipelines with"
+          + " many keys at the cost of decoding the state each bundle accesses.")
+  StateBackend getStateBackend();
+
+  void setStateBackend(StateBackend backend);
+
+  /** Where the {@link DirectRunner} keeps the state of stateful transforms between bundles. */
+  enum StateBackend {
+    /** State is kept as objects on the heap. */
+    IN_MEMORY,
+    /** State is kept encoded in direct memory and decoded when accessed. */
+    OFF_HEAP
+  }
+
   /**
    * A {@link DefaultValueFactory} that returns the result of {@link Runtime#availableProcessors()}
    * from the {@link #create(PipelineOptions)} method. Uses {@link Runtime#getRuntime()} to obtain
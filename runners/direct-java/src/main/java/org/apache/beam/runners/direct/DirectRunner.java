@@ -199,6 +199,7 @@ public class DirectRunner extends PipelineRunner<DirectPipelineResult> {
               Enforcement.bundleFactoryFor(enabledEnforcements, graph),
               graph,
               keyedPValueVisitor.getKeyedPValues(),
+              DirectStateBackend.create(options.getStateBackend()),
               metricsPool);
 
       TransformEvaluatorRegistry registry =
@@ -206,6 +207,7 @@ public class DirectRunner extends PipelineRunner<DirectPipelineResult> {
       PipelineExecutor executor =
           ExecutorServiceParallelExecutor.create(
               options.getTargetParallelism(),
+              options.getExecutorMode(),
               registry,
               Enforcement.defaultModelEnforcements(enabledEnforcements),
               context,
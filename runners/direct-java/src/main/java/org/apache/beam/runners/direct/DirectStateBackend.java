@@ -0,0 +1,111 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.beam.runners.direct;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import org.apache.beam.runners.direct.DirectOptions.StateBackend;
+import org.apache.beam.runners.local.StructuralKey;
+import org.apache.beam.sdk.runners.AppliedPTransform;
+
+/**
+ * Keeps the committed state of every step and key of a {@link DirectRunner} pipeline, providing
+ * the {@link DirectStateInternals} each bundle reads and modifies state through.
+ *
+ * <p>Bundles for a step and key are processed serially, so a {@link DirectStateInternals} obtained
+ * from {@link #stateFor(AppliedPTransform, StructuralKey)} is committed before the next one is
+ * obtained for the same step and key.
+ */
+@SuppressWarnings({
+  "nullness" // TODO(https://issues.apache.org/jira/browse/BEAM-10402)
+})
+abstract class DirectStateBackend {
+  /** Creates a {@link DirectStateBackend} of the provided kind. */
+  static DirectStateBackend create(StateBackend backend) {
+    switch (backend) {
+      case IN_MEMORY:
+        return new InMemoryStateBackend();
+      case OFF_HEAP:
+        return new OffHeapStateBackend();
+      default:
+        throw new IllegalArgumentException(
+            String.format("Unknown %s %s", StateBackend.class.getSimpleName(), backend));
+    }
+  }
+
+  /**
+   * Returns a new {@link DirectStateInternals} for a bundle of the provided step and key, which
+   * reads the state most recently committed for that step and key.
+   */
+  abstract DirectStateInternals stateFor(AppliedPTransform<?, ?, ?> step, StructuralKey<?> key);
+
+  /**
+   * Commits the provided {@link DirectStateInternals}, obtained from {@link
+   * #stateFor(AppliedPTransform, StructuralKey)}, so that it is read by future bundles of the step
+   * and key.
+   */
+  abstract void commit(
+      AppliedPTransform<?, ?, ?> step, StructuralKey<?> key, DirectStateInternals state);
+
+  /**
+   * A {@link DirectStateBackend} which keeps the committed {@link
+   * CopyOnAccessInMemoryStateInternals} of each step and key.
+   */
+  private static class InMemoryStateBackend extends DirectStateBackend {
+    private final ConcurrentMap<StepAndKey, CopyOnAccessInMemoryStateInternals<?>>
+        committedState = new ConcurrentHashMap<>();
+
+    @Override
+    DirectStateInternals stateFor(AppliedPTransform<?, ?, ?> step, StructuralKey<?> key) {
+      return CopyOnAccessInMemoryStateInternals.withUnderlying(
+          key, committedState.get(StepAndKey.of(step, key)));
+    }
+
+    @Override
+    void commit(AppliedPTransform<?, ?, ?> step, StructuralKey<?> key, DirectStateInternals state) {
+      CopyOnAccessInMemoryStateInternals<?> committed =
+          ((CopyOnAccessInMemoryStateInternals<?>) state).commit();
+      StepAndKey stepAndKey = StepAndKey.of(step, key);
+      if (!committed.isEmpty()) {
+        committedState.put(stepAndKey, committed);
+      } else {
+        committedState.remove(stepAndKey);
+      }
+    }
+  }
+
+  /**
+   * A {@link DirectStateBackend} which keeps the committed state of each step in an {@link
+   * OffHeapStateStore}.
+   */
+  private static class OffHeapStateBackend extends DirectStateBackend {
+    private final ConcurrentMap<AppliedPTransform<?, ?, ?>, OffHeapStateStore> stores =
+        new ConcurrentHashMap<>();
+
+    @Override
+    DirectStateInternals stateFor(AppliedPTransform<?, ?, ?> step, StructuralKey<?> key) {
+      return new OffHeapStateInternals<>(
+          key, stores.computeIfAbsent(step, unused -> new OffHeapStateStore()));
+    }
+
+    @Override
+    void commit(AppliedPTransform<?, ?, ?> step, StructuralKey<?> key, DirectStateInternals state) {
+      ((OffHeapStateInternals<?>) state).commit().flush();
+    }
+  }
+}
@@ -0,0 +1,49 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.beam.runners.direct;
+
+import org.apache.beam.runners.core.StateInternals;
+import org.apache.beam.runners.core.StateNamespace;
+import org.apache.beam.sdk.state.WatermarkHoldState;
+import org.joda.time.Instant;
+
+/**
+ * The {@link StateInternals} of a single step and key for the duration of a bundle, obtained from
+ * and committed to a {@link DirectStateBackend}.
+ */
+interface DirectStateInternals extends StateInternals {
+  /**
+   * Ensures this {@link DirectStateInternals} is complete, so that it reflects all of the state of
+   * the step and key once the bundle that modified it has completed.
+   *
+   * <p>Additionally, computes the {@link WatermarkHoldState} with the earliest time across all
+   * {@link StateNamespace namespaces}, enabling calls to {@link #getEarliestWatermarkHold()}.
+   *
+   * @return this state
+   */
+  DirectStateInternals commit();
+
+  /**
+   * Gets the earliest Watermark Hold present in this state, or {@link
+   * org.apache.beam.sdk.transforms.windowing.BoundedWindow#TIMESTAMP_MAX_VALUE} if there is none.
+   *
+   * <p>Must be called after this state has been committed. Will throw an {@link
+   * IllegalStateException} if the state has not been committed.
+   */
+  Instant getEarliestWatermarkHold();
+}
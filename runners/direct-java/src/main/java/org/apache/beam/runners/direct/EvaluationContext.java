@@ -26,8 +26,6 @@ import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.ExecutorService;
 import org.apache.beam.runners.core.InMemoryBundleFinalizer;
 import org.apache.beam.runners.core.ReadyCheckingSideInputReader;
@@ -94,8 +92,7 @@ class EvaluationContext {
   private final WatermarkCallbackExecutor callbackExecutor;
 
   /** The stateInternals of the world, by applied PTransform and key. */
-  private final ConcurrentMap<StepAndKey, CopyOnAccessInMemoryStateInternals>
-      applicationStateInternals;
+  private final DirectStateBackend stateBackend;
 
   private final SideInputContainer sideInputContainer;
 
@@ -110,8 +107,10 @@ class EvaluationContext {
       BundleFactory bundleFactory,
       DirectGraph graph,
       Set<PValue> keyedPValues,
+      DirectStateBackend stateBackend,
       ExecutorService executorService) {
-    return new EvaluationContext(clock, bundleFactory, graph, keyedPValues, executorService);
+    return new EvaluationContext(
+        clock, bundleFactory, graph, keyedPValues, stateBackend, executorService);
   }
 
   private EvaluationContext(
@@ -119,6 +118,7 @@ class EvaluationContext {
       BundleFactory bundleFactory,
       DirectGraph graph,
       Set<PValue> keyedPValues,
+      DirectStateBackend stateBackend,
       ExecutorService executorService) {
     this.clock = clock;
     this.bundleFactory = checkNotNull(bundleFactory);
@@ -129,7 +129,7 @@ class EvaluationContext {
     this.watermarkManager = WatermarkManager.create(clock, graph, AppliedPTransform::getFullName);
     this.sideInputContainer = SideInputContainer.create(this, graph.getViews());
 
-    this.applicationStateInternals = new ConcurrentHashMap<>();
+    this.stateBackend = checkNotNull(stateBackend);
     this.metrics = new DirectMetrics(executorService);
 
     this.callbackExecutor = WatermarkCallbackExecutor.create(MoreExecutors.directExecutor());
@@ -174,15 +174,9 @@ class EvaluationContext {
         CommittedResult.create(
             result, getUnprocessedInput(completedBundle, result), committedBundles, outputTypes);
     // Update state internals
-    CopyOnAccessInMemoryStateInternals theirState = result.getState();
+    DirectStateInternals theirState = result.getState();
     if (theirState != null) {
-      CopyOnAccessInMemoryStateInternals committedState = theirState.commit();
-      StepAndKey stepAndKey = StepAndKey.of(result.getTransform(), completedBundle.getKey());
-      if (!committedState.isEmpty()) {
-        applicationStateInternals.put(stepAndKey, committedState);
-      } else {
-        applicationStateInternals.remove(stepAndKey);
-      }
+      stateBackend.commit(result.getTransform(), completedBundle.getKey(), theirState);
     }
     // Watermarks are updated last to ensure visibility of any global state before progress is
     // permitted
@@ -345,11 +339,10 @@ class EvaluationContext {
   /** Get a {@link DirectExecutionContext} for the provided {@link AppliedPTransform} and key. */
   public DirectExecutionContext getExecutionContext(
       AppliedPTransform<?, ?, ?> application, StructuralKey<?> key) {
-    StepAndKey stepAndKey = StepAndKey.of(application, key);
     return new DirectExecutionContext(
         clock,
         key,
-        (CopyOnAccessInMemoryStateInternals) applicationStateInternals.get(stepAndKey),
+        () -> stateBackend.stateFor(application, key),
         watermarkManager.getWatermarks(application));
   }
 
@@ -27,9 +27,11 @@ import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicReference;
 import java.util.stream.Collectors;
+import org.apache.beam.runners.direct.DirectOptions.ExecutorMode;
 import org.apache.beam.runners.local.ExecutionDriver;
 import org.apache.beam.runners.local.ExecutionDriver.DriverState;
 import org.apache.beam.runners.local.PipelineMessageReceiver;
@@ -39,6 +41,7 @@ import org.apache.beam.sdk.runners.AppliedPTransform;
 import org.apache.beam.sdk.util.UserCodeException;
 import org.apache.beam.sdk.values.PCollection;
 import org.apache.beam.sdk.values.PValue;
+import org.apache.beam.vendor.guava.v26_0_jre.com.google.common.annotations.VisibleForTesting;
 import org.apache.beam.vendor.guava.v26_0_jre.com.google.common.cache.CacheBuilder;
 import org.apache.beam.vendor.guava.v26_0_jre.com.google.common.cache.CacheLoader;
 import org.apache.beam.vendor.guava.v26_0_jre.com.google.common.cache.LoadingCache;
@@ -83,31 +86,25 @@ final class ExecutorServiceParallelExecutor
 
   public static ExecutorServiceParallelExecutor create(
       int targetParallelism,
+      ExecutorMode executorMode,
       TransformEvaluatorRegistry registry,
       Map<String, Collection<ModelEnforcementFactory>> transformEnforcements,
       EvaluationContext context,
       ExecutorService metricsExecutor) {
     return new ExecutorServiceParallelExecutor(
-        targetParallelism, registry, transformEnforcements, context, metricsExecutor);
+        targetParallelism, executorMode, registry, transformEnforcements, context, metricsExecutor);
   }
 
   private ExecutorServiceParallelExecutor(
       int targetParallelism,
+      ExecutorMode executorMode,
       TransformEvaluatorRegistry registry,
       Map<String, Collection<ModelEnforcementFactory>> transformEnforcements,
       EvaluationContext context,
       ExecutorService metricsExecutor) {
     this.targetParallelism = targetParallelism;
     this.metricsExecutor = metricsExecutor;
-    // Don't use Daemon threads for workers. The Pipeline should continue to execute even if there
-    // are no other active threads (for example, because waitUntilFinish was not called)
-    this.executorService =
-        Executors.newFixedThreadPool(
-            targetParallelism,
-            new ThreadFactoryBuilder()
-                .setThreadFactory(MoreExecutors.platformThreadFactory())
-                .setNameFormat("direct-runner-worker")
-                .build());
+    this.executorService = createWorkerExecutor(executorMode, targetParallelism);
     this.registry = registry;
     this.evaluationContext = context;
 
@@ -126,6 +123,64 @@ final class ExecutorServiceParallelExecutor
     executorFactory = new DirectTransformExecutor.Factory(context, registry, transformEnforcements);
   }
 
+  /**
+   * Creates the {@link ExecutorService} which runs the {@link DirectTransformExecutor
+   * DirectTransformExecutors} of a pipeline according to the requested {@link ExecutorMode}.
+   */
+  @VisibleForTesting
+  static ExecutorService createWorkerExecutor(ExecutorMode executorMode, int targetParallelism) {
+    // Don't use Daemon threads for workers. The Pipeline should continue to execute even if there
+    // are no other active threads (for example, because waitUntilFinish was not called). Virtual
+    // threads are always daemon threads, so pipelines using them must be waited on.
+    ThreadFactory platformThreadFactory =
+        new ThreadFactoryBuilder()
+            .setThreadFactory(MoreExecutors.platformThreadFactory())
+            .setNameFormat("direct-runner-worker")
+            .build();
+    switch (executorMode) {
+      case FIXED_THREAD_POOL:
+        return Executors.newFixedThreadPool(targetParallelism, platformThreadFactory);
+      case VIRTUAL_THREADS:
+        ExecutorService virtualThreadExecutor = newVirtualThreadPerTaskExecutor();
+        if (virtualThreadExecutor != null) {
+          return virtualThreadExecutor;
+        }
+        LOG.info(
+            "Virtual threads are not available in this JVM, using {} instead.",
+            ExecutorMode.UNBOUNDED_THREAD_POOL);
+        return Executors.newCachedThreadPool(platformThreadFactory);
+      case UNBOUNDED_THREAD_POOL:
+        return Executors.newCachedThreadPool(platformThreadFactory);
+      default:
+        throw new IllegalArgumentException(
+            String.format("Unknown %s %s", ExecutorMode.class.getSimpleName(), executorMode));
+    }
+  }
+
+  /**
+   * Returns an {@link ExecutorService} starting a new virtual thread for each task, or null if the
+   * JVM does not support virtual threads. Reflection is used since the runner targets Java 8.
+   */
+  private static @Nullable ExecutorService newVirtualThreadPerTaskExecutor() {
+    try {
+      Class<?> builderClass = Class.forName("java.lang.Thread$Builder");
+      Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+      builder =
+          builderClass
+              .getMethod("name", String.class, long.class)
+              .invoke(builder, "direct-runner-worker-", 0L);
+      ThreadFactory threadFactory =
+          (ThreadFactory) builderClass.getMethod("factory").invoke(builder);
+      return (ExecutorService)
+          Executors.class
+              .getMethod("newThreadPerTaskExecutor", ThreadFactory.class)
+              .invoke(null, threadFactory);
+    } catch (ReflectiveOperationException e) {
+      // Either virtual threads do not exist, or they are a preview feature which is not enabled.
+      return null;
+    }
+  }
+
   private CacheLoader<StepAndKey, TransformExecutorService>
       serialTransformExecutorServiceCacheLoader() {
     return new CacheLoader<StepAndKey, TransformExecutorService>() {
@@ -0,0 +1,362 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.beam.runners.direct;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.apache.beam.vendor.guava.v26_0_jre.com.google.common.base.Preconditions.checkState;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import org.apache.beam.runners.core.InMemoryStateInternals.InMemoryBag;
+import org.apache.beam.runners.core.InMemoryStateInternals.InMemoryCombiningState;
+import org.apache.beam.runners.core.InMemoryStateInternals.InMemoryMap;
+import org.apache.beam.runners.core.InMemoryStateInternals.InMemoryOrderedList;
+import org.apache.beam.runners.core.InMemoryStateInternals.InMemorySet;
+import org.apache.beam.runners.core.InMemoryStateInternals.InMemoryState;
+import org.apache.beam.runners.core.InMemoryStateInternals.InMemoryValue;
+import org.apache.beam.runners.core.InMemoryStateInternals.InMemoryWatermarkHold;
+import org.apache.beam.runners.core.StateNamespace;
+import org.apache.beam.runners.core.StateTable;
+import org.apache.beam.runners.core.StateTag;
+import org.apache.beam.runners.core.StateTag.StateBinder;
+import org.apache.beam.runners.local.StructuralKey;
+import org.apache.beam.sdk.coders.Coder;
+import org.apache.beam.sdk.coders.CoderException;
+import org.apache.beam.sdk.coders.InstantCoder;
+import org.apache.beam.sdk.coders.IterableCoder;
+import org.apache.beam.sdk.coders.KvCoder;
+import org.apache.beam.sdk.coders.MapCoder;
+import org.apache.beam.sdk.coders.NullableCoder;
+import org.apache.beam.sdk.coders.StringUtf8Coder;
+import org.apache.beam.sdk.state.BagState;
+import org.apache.beam.sdk.state.CombiningState;
+import org.apache.beam.sdk.state.MapState;
+import org.apache.beam.sdk.state.OrderedListState;
+import org.apache.beam.sdk.state.SetState;
+import org.apache.beam.sdk.state.State;
+import org.apache.beam.sdk.state.StateContext;
+import org.apache.beam.sdk.state.ValueState;
+import org.apache.beam.sdk.state.WatermarkHoldState;
+import org.apache.beam.sdk.transforms.Combine.CombineFn;
+import org.apache.beam.sdk.transforms.CombineWithContext.CombineFnWithContext;
+import org.apache.beam.sdk.transforms.windowing.BoundedWindow;
+import org.apache.beam.sdk.transforms.windowing.TimestampCombiner;
+import org.apache.beam.sdk.util.CoderUtils;
+import org.apache.beam.sdk.util.CombineFnUtil;
+import org.apache.beam.sdk.values.KV;
+import org.apache.beam.sdk.values.TimestampedValue.TimestampedValueCoder;
+import org.apache.beam.vendor.guava.v26_0_jre.com.google.common.collect.Iterables;
+import org.apache.beam.vendor.guava.v26_0_jre.com.google.common.collect.Lists;
+import org.apache.beam.vendor.guava.v26_0_jre.com.google.common.primitives.Bytes;
+import org.checkerframework.checker.nullness.qual.Nullable;
+import org.joda.time.Instant;
+
+/**
+ * {@link DirectStateInternals} which keep the state of a step and key encoded in an {@link
+ * OffHeapStateStore}.
+ *
+ * <p>Each {@link State} is stored as a separate entry, keyed by the encoded key, the {@link
+ * StateNamespace} and the id of the {@link StateTag}. A {@link State} is decoded into an {@link
+ * InMemoryState} the first time it is accessed in a bundle, so a bundle only copies the state it
+ * accesses. On {@link #commit()} each accessed {@link State} is encoded again, and when the
+ * committed state is {@link #flush() flushed} the entries whose encoding changed are rewritten and
+ * the entries of cleared state are removed.
+ *
+ * <p>The holds of all of the {@link WatermarkHoldState WatermarkHoldStates} of the key are also
+ * stored in a single entry, so that the earliest hold can be found without reading every entry of
+ * the key.
+ */
+@SuppressWarnings({
+  "rawtypes", // TODO(https://issues.apache.org/jira/browse/BEAM-10556)
+  "nullness" // TODO(https://issues.apache.org/jira/browse/BEAM-10402)
+})
+class OffHeapStateInternals<K> implements DirectStateInternals {
+  private static final Coder<Map<String, Instant>> HOLDS_CODER =
+      MapCoder.of(StringUtf8Coder.of(), InstantCoder.of());
+
+  private final StructuralKey<K> key;
+  private final OffHeapStateStore store;
+  /** The length of the encoded key followed by the encoded key, which prefixes every entry. */
+  private final byte[] keyPrefix;
+
+  private final StateTable table = new OffHeapStateTable();
+  private final List<StoredState> accessedStates = new ArrayList<>();
+
+  private @Nullable List<KV<byte[], byte @Nullable []>> pendingWrites;
+  private @Nullable Instant earliestWatermarkHold;
+
+  OffHeapStateInternals(StructuralKey<K> key, OffHeapStateStore store) {
+    this.key = key;
+    this.store = store;
+    byte[] encodedKey = key.getEncoded();
+    this.keyPrefix =
+        ByteBuffer.allocate(Integer.BYTES + encodedKey.length)
+            .putInt(encodedKey.length)
+            .put(encodedKey)
+            .array();
+  }
+
+  @Override
+  public <T extends State> T state(
+      StateNamespace namespace, StateTag<T> address, StateContext<?> c) {
+    return table.get(namespace, address, c);
+  }
+
+  @Override
+  public Object getKey() {
+    return key;
+  }
+
+  @Override
+  public OffHeapStateInternals<K> commit() {
+    List<KV<byte[], byte @Nullable []>> writes = new ArrayList<>();
+    byte[] committedHolds = store.get(keyPrefix);
+    Map<String, Instant> holds =
+        committedHolds == null ? new HashMap<>() : decode(HOLDS_CODER, committedHolds);
+    boolean holdsChanged = false;
+    for (StoredState state : accessedStates) {
+      byte[] encoded = state.encoder.get();
+      if (!Arrays.equals(encoded, state.committed)) {
+        writes.add(KV.of(state.storeKey, encoded));
+      }
+      if (state.state instanceof WatermarkHoldState) {
+        Instant hold = ((WatermarkHoldState) state.state).read();
+        Instant previous = hold == null ? holds.remove(state.id) : holds.put(state.id, hold);
+        holdsChanged |= !Objects.equals(previous, hold);
+      }
+    }
+    if (holdsChanged) {
+      writes.add(KV.of(keyPrefix, holds.isEmpty() ? null : encode(HOLDS_CODER, holds)));
+    }
+    Instant earliest = BoundedWindow.TIMESTAMP_MAX_VALUE;
+    for (Instant hold : holds.values()) {
+      earliest = hold.isBefore(earliest) ? hold : earliest;
+    }
+    pendingWrites = writes;
+    earliestWatermarkHold = earliest;
+    return this;
+  }
+
+  /**
+   * Writes the state committed by {@link #commit()} to the {@link OffHeapStateStore}, so that it is
+   * read by the next bundle of the step and key.
+   */
+  void flush() {
+    checkState(
+        pendingWrites != null,
+        "Can't flush a %s which is not committed",
+        getClass().getSimpleName());
+    for (KV<byte[], byte @Nullable []> write : pendingWrites) {
+      store.write(write.getKey(), write.getValue());
+    }
+    pendingWrites = null;
+  }
+
+  @Override
+  public Instant getEarliestWatermarkHold() {
+    checkState(
+        earliestWatermarkHold != null,
+        "Can't get the earliest watermark hold in a %s before it is committed",
+        getClass().getSimpleName());
+    return earliestWatermarkHold;
+  }
+
+  /**
+   * Returns the provided {@link InMemoryState} after restoring its contents from the store, and
+   * records it so that its contents are encoded when this state is committed.
+   */
+  private <StateT extends InMemoryState<?>, ContentsT> StateT bind(
+      StateNamespace namespace,
+      StateTag<?> address,
+      StateT state,
+      Coder<ContentsT> contentsCoder,
+      Function<StateT, ContentsT> getContents,
+      BiConsumer<StateT, ContentsT> restoreContents) {
+    String namespaceKey = namespace.stringKey();
+    String id = namespaceKey.length() + ":" + namespaceKey + address.getId();
+    byte[] storeKey = Bytes.concat(keyPrefix, id.getBytes(UTF_8));
+    byte[] committed = store.get(storeKey);
+    if (committed != null) {
+      restoreContents.accept(state, decode(contentsCoder, committed));
+    }
+    accessedStates.add(
+        new StoredState(
+            id,
+            storeKey,
+            committed,
+            state,
+            () -> state.isCleared() ? null : encode(contentsCoder, getContents.apply(state))));
+    return state;
+  }
+
+  private static <T> T decode(Coder<T> coder, byte[] encoded) {
+    try {
+      return CoderUtils.decodeFromByteArray(coder, encoded);
+    } catch (CoderException e) {
+      throw new IllegalStateException(String.format("Unable to decode state with %s", coder), e);
+    }
+  }
+
+  private static <T> byte[] encode(Coder<T> coder, T value) {
+    try {
+      return CoderUtils.encodeToByteArray(coder, value);
+    } catch (CoderException e) {
+      throw new IllegalArgumentException(String.format("Unable to encode state with %s", coder), e);
+    }
+  }
+
+  /** A {@link State} accessed by the current bundle and the entry it was read from. */
+  private static class StoredState {
+    private final String id;
+    private final byte[] storeKey;
+    private final byte @Nullable [] committed;
+    private final State state;
+    private final Supplier<byte @Nullable []> encoder;
+
+    private StoredState(
+        String id,
+        byte[] storeKey,
+        byte @Nullable [] committed,
+        State state,
+        Supplier<byte @Nullable []> encoder) {
+      this.id = id;
+      this.storeKey = storeKey;
+      this.committed = committed;
+      this.state = state;
+      this.encoder = encoder;
+    }
+  }
+
+  /** A {@link StateTable} which binds {@link InMemoryState} restored from the store. */
+  private class OffHeapStateTable extends StateTable {
+    @Override
+    protected StateBinder binderForNamespace(StateNamespace namespace, StateContext<?> c) {
+      return new StateBinder() {
+        @Override
+        public <T> ValueState<T> bindValue(StateTag<ValueState<T>> address, Coder<T> coder) {
+          return bind(
+              namespace,
+              address,
+              new InMemoryValue<>(coder),
+              NullableCoder.of(coder),
+              InMemoryValue::read,
+              InMemoryValue::write);
+        }
+
+        @Override
+        public <T> BagState<T> bindBag(StateTag<BagState<T>> address, Coder<T> elemCoder) {
+          return bind(
+              namespace,
+              address,
+              new InMemoryBag<>(elemCoder),
+              IterableCoder.of(elemCoder),
+              InMemoryBag::read,
+              (bag, elements) -> elements.forEach(bag::add));
+        }
+
+        @Override
+        public <T> SetState<T> bindSet(StateTag<SetState<T>> address, Coder<T> elemCoder) {
+          return bind(
+              namespace,
+              address,
+              new InMemorySet<>(elemCoder),
+              IterableCoder.of(elemCoder),
+              InMemorySet::read,
+              (set, elements) -> elements.forEach(set::add));
+        }
+
+        @Override
+        public <KeyT, ValueT> MapState<KeyT, ValueT> bindMap(
+            StateTag<MapState<KeyT, ValueT>> address,
+            Coder<KeyT> mapKeyCoder,
+            Coder<ValueT> mapValueCoder) {
+          return bind(
+              namespace,
+              address,
+              new InMemoryMap<>(mapKeyCoder, mapValueCoder),
+              IterableCoder.of(KvCoder.of(mapKeyCoder, mapValueCoder)),
+              map ->
+                  Lists.newArrayList(
+                      Iterables.transform(
+                          map.entries().read(), entry -> KV.of(entry.getKey(), entry.getValue()))),
+              (map, entries) -> {
+                for (KV<KeyT, ValueT> entry : entries) {
+                  map.put(entry.getKey(), entry.getValue());
+                }
+              });
+        }
+
+        @Override
+        public <T> OrderedListState<T> bindOrderedList(
+            StateTag<OrderedListState<T>> address, Coder<T> elemCoder) {
+          return bind(
+              namespace,
+              address,
+              new InMemoryOrderedList<>(elemCoder),
+              IterableCoder.of(TimestampedValueCoder.of(elemCoder)),
+              InMemoryOrderedList::read,
+              (list, elements) -> elements.forEach(list::add));
+        }
+
+        @Override
+        public <InputT, AccumT, OutputT>
+            CombiningState<InputT, AccumT, OutputT> bindCombiningValue(
+                StateTag<CombiningState<InputT, AccumT, OutputT>> address,
+                Coder<AccumT> accumCoder,
+                CombineFn<InputT, AccumT, OutputT> combineFn) {
+          return bind(
+              namespace,
+              address,
+              new InMemoryCombiningState<>(combineFn, accumCoder),
+              accumCoder,
+              InMemoryCombiningState::getAccum,
+              InMemoryCombiningState::addAccum);
+        }
+
+        @Override
+        public <InputT, AccumT, OutputT>
+            CombiningState<InputT, AccumT, OutputT> bindCombiningValueWithContext(
+                StateTag<CombiningState<InputT, AccumT, OutputT>> address,
+                Coder<AccumT> accumCoder,
+                CombineFnWithContext<InputT, AccumT, OutputT> combineFn) {
+          return bindCombiningValue(address, accumCoder, CombineFnUtil.bindContext(combineFn, c));
+        }
+
+        @Override
+        public WatermarkHoldState bindWatermark(
+            StateTag<WatermarkHoldState> address, TimestampCombiner timestampCombiner) {
+          return bind(
+              namespace,
+              address,
+              new InMemoryWatermarkHold<>(timestampCombiner),
+              InstantCoder.of(),
+              InMemoryWatermarkHold::read,
+              InMemoryWatermarkHold::add);
+        }
+      };
+    }
+  }
+}
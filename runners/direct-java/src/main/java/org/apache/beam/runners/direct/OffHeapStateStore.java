@@ -0,0 +1,413 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.beam.runners.direct;
+
+import static org.apache.beam.vendor.guava.v26_0_jre.com.google.common.base.Preconditions.checkArgument;
+
+import java.nio.ByteBuffer;
+import java.nio.LongBuffer;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.List;
+import org.apache.beam.vendor.guava.v26_0_jre.com.google.common.annotations.VisibleForTesting;
+import org.apache.beam.vendor.guava.v26_0_jre.com.google.common.hash.HashFunction;
+import org.apache.beam.vendor.guava.v26_0_jre.com.google.common.hash.Hashing;
+import org.checkerframework.checker.nullness.qual.Nullable;
+
+/**
+ * A map from encoded keys to encoded values which keeps its contents in direct memory, outside of
+ * the Java heap.
+ *
+ * <p>Entries are appended to fixed size pages and never modified in place. Writing a key appends a
+ * new copy of its entry and turns the previous copy into garbage, so writing an entry only copies
+ * that entry and never the page it is in. A page which is no longer being appended to is compacted
+ * once less than a quarter of it is live, by appending its live entries to the current page, after
+ * which it is reused. Entries larger than a page are stored in a page of their own.
+ *
+ * <p>Entries are located through an open addressing hash index with linear probing, which is also
+ * kept in direct memory and holds the page and offset of the entry for each key.
+ *
+ * <p>{@link OffHeapStateStore} is thread safe.
+ */
+class OffHeapStateStore {
+  @VisibleForTesting static final int DEFAULT_PAGE_SIZE = 1 << 20;
+  private static final int INITIAL_INDEX_CAPACITY = 1 << 10;
+  private static final int INDEX_SEGMENT_BITS = 20;
+  private static final double MAX_INDEX_LOAD = 0.7;
+  private static final double MIN_LIVE_FRACTION = 0.25;
+
+  /** An entry is the hash, key length and value length, followed by the key and the value. */
+  private static final int HEADER_BYTES = 3 * Integer.BYTES;
+
+  private static final long EMPTY = -1L;
+  private static final int NO_PAGE = -1;
+  private static final HashFunction HASH_FUNCTION = Hashing.murmur3_32();
+
+  private final int pageSize;
+
+  private final List<@Nullable ByteBuffer> pages = new ArrayList<>();
+  private int[] pageUsedBytes = new int[0];
+  private int[] pageLiveBytes = new int[0];
+  /** Empty pages of {@link #pageSize} bytes. */
+  private final Deque<Integer> freePages = new ArrayDeque<>();
+  /** Indices in {@link #pages} of pages larger than {@link #pageSize} which have been released. */
+  private final Deque<Integer> vacantPageIndices = new ArrayDeque<>();
+
+  private int currentPage = NO_PAGE;
+  private boolean compacting = false;
+
+  private LongBuffer[] index;
+  private long indexMask;
+  private long size = 0;
+  private long liveBytes = 0;
+  private long allocatedPageBytes = 0;
+
+  OffHeapStateStore() {
+    this(DEFAULT_PAGE_SIZE);
+  }
+
+  @VisibleForTesting
+  OffHeapStateStore(int pageSize) {
+    checkArgument(pageSize > HEADER_BYTES, "Page size %s is too small", pageSize);
+    this.pageSize = pageSize;
+    this.index = allocateIndex(INITIAL_INDEX_CAPACITY);
+    this.indexMask = INITIAL_INDEX_CAPACITY - 1;
+  }
+
+  /** Returns the value stored for the provided key, or null if there is none. */
+  synchronized byte @Nullable [] get(byte[] key) {
+    long address = getSlot(findSlot(key, hash(key)));
+    if (address == EMPTY) {
+      return null;
+    }
+    ByteBuffer page = page(address);
+    int offset = offset(address);
+    byte[] value = new byte[page.getInt(offset + 2 * Integer.BYTES)];
+    ByteBuffer entry = page.duplicate();
+    entry.position(offset + HEADER_BYTES + page.getInt(offset + Integer.BYTES));
+    entry.get(value);
+    return value;
+  }
+
+  /** Stores the provided value for the provided key, replacing any value previously stored. */
+  synchronized void put(byte[] key, byte[] value) {
+    int hash = hash(key);
+    long slot = findSlot(key, hash);
+    long address = append(hash, key, value);
+    // Appending may compact the page holding the previous entry, which moves the entry.
+    long previous = getSlot(slot);
+    setSlot(slot, address);
+    if (previous == EMPTY) {
+      size++;
+      if (size > MAX_INDEX_LOAD * indexCapacity()) {
+        resizeIndex(2 * indexCapacity());
+      }
+    } else {
+      release(previous);
+    }
+  }
+
+  /** Removes the value stored for the provided key, if any. */
+  synchronized void remove(byte[] key) {
+    long slot = findSlot(key, hash(key));
+    long address = getSlot(slot);
+    if (address != EMPTY) {
+      deleteSlot(slot);
+      size--;
+      release(address);
+    }
+  }
+
+  /** Stores the provided value for the provided key, or removes the key if the value is null. */
+  synchronized void write(byte[] key, byte @Nullable [] value) {
+    if (value == null) {
+      remove(key);
+    } else {
+      put(key, value);
+    }
+  }
+
+  /** Returns the number of keys with a stored value. */
+  synchronized long size() {
+    return size;
+  }
+
+  /** Returns the number of bytes of entries which are currently stored. */
+  synchronized long getLiveBytes() {
+    return liveBytes;
+  }
+
+  /**
+   * Returns the number of bytes of direct memory used by this store, including pages and the
+   * index.
+   */
+  synchronized long getAllocatedBytes() {
+    return allocatedPageBytes + indexCapacity() * Long.BYTES;
+  }
+
+  private static int hash(byte[] key) {
+    return HASH_FUNCTION.hashBytes(key).asInt();
+  }
+
+  // Index
+
+  private static LongBuffer[] allocateIndex(long capacity) {
+    int segmentCapacity = (int) Math.min(capacity, 1L << INDEX_SEGMENT_BITS);
+    LongBuffer[] segments = new LongBuffer[(int) (capacity / segmentCapacity)];
+    for (int i = 0; i < segments.length; i++) {
+      segments[i] = ByteBuffer.allocateDirect(segmentCapacity * Long.BYTES).asLongBuffer();
+      for (int j = 0; j < segmentCapacity; j++) {
+        segments[i].put(j, EMPTY);
+      }
+    }
+    return segments;
+  }
+
+  private long indexCapacity() {
+    return indexMask + 1;
+  }
+
+  private long getSlot(long slot) {
+    return index[(int) (slot >>> INDEX_SEGMENT_BITS)].get(
+        (int) (slot & ((1L << INDEX_SEGMENT_BITS) - 1)));
+  }
+
+  private void setSlot(long slot, long address) {
+    index[(int) (slot >>> INDEX_SEGMENT_BITS)].put(
+        (int) (slot & ((1L << INDEX_SEGMENT_BITS) - 1)), address);
+  }
+
+  private long homeSlot(int hash) {
+    return (hash & 0xFFFFFFFFL) & indexMask;
+  }
+
+  /** Returns the slot holding the entry for the key, or the empty slot it would be stored in. */
+  private long findSlot(byte[] key, int hash) {
+    long slot = homeSlot(hash);
+    while (true) {
+      long address = getSlot(slot);
+      if (address == EMPTY || entryHasKey(address, hash, key)) {
+        return slot;
+      }
+      slot = (slot + 1) & indexMask;
+    }
+  }
+
+  /**
+   * Empties the provided slot, moving back any later entries of the probe sequence which would no
+   * longer be found after it.
+   */
+  private void deleteSlot(long slot) {
+    long hole = slot;
+    long next = (slot + 1) & indexMask;
+    long address;
+    while ((address = getSlot(next)) != EMPTY) {
+      long home = homeSlot(page(address).getInt(offset(address)));
+      if (((next - home) & indexMask) >= ((next - hole) & indexMask)) {
+        setSlot(hole, address);
+        hole = next;
+      }
+      next = (next + 1) & indexMask;
+    }
+    setSlot(hole, EMPTY);
+  }
+
+  private void resizeIndex(long capacity) {
+    LongBuffer[] previous = index;
+    long previousCapacity = indexCapacity();
+    index = allocateIndex(capacity);
+    indexMask = capacity - 1;
+    for (long i = 0; i < previousCapacity; i++) {
+      long address =
+          previous[(int) (i >>> INDEX_SEGMENT_BITS)].get(
+              (int) (i & ((1L << INDEX_SEGMENT_BITS) - 1)));
+      if (address != EMPTY) {
+        long slot = homeSlot(page(address).getInt(offset(address)));
+        while (getSlot(slot) != EMPTY) {
+          slot = (slot + 1) & indexMask;
+        }
+        setSlot(slot, address);
+      }
+    }
+  }
+
+  // Pages
+
+  private static long address(int page, int offset) {
+    return ((long) page << 32) | offset;
+  }
+
+  private ByteBuffer page(long address) {
+    return pages.get((int) (address >>> 32));
+  }
+
+  private static int offset(long address) {
+    return (int) address;
+  }
+
+  private static int entryBytes(ByteBuffer page, int offset) {
+    return HEADER_BYTES
+        + page.getInt(offset + Integer.BYTES)
+        + page.getInt(offset + 2 * Integer.BYTES);
+  }
+
+  private boolean entryHasKey(long address, int hash, byte[] key) {
+    ByteBuffer page = page(address);
+    int offset = offset(address);
+    if (page.getInt(offset) != hash || page.getInt(offset + Integer.BYTES) != key.length) {
+      return false;
+    }
+    int keyOffset = offset + HEADER_BYTES;
+    for (int i = 0; i < key.length; i++) {
+      if (page.get(keyOffset + i) != key[i]) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /** Appends a new entry, returning its address. */
+  private long append(int hash, byte[] key, byte[] value) {
+    int entryBytes = HEADER_BYTES + key.length + value.length;
+    int page = pageFor(entryBytes);
+    int offset = pageUsedBytes[page];
+    ByteBuffer entry = pages.get(page).duplicate();
+    entry.position(offset);
+    entry.putInt(hash).putInt(key.length).putInt(value.length).put(key).put(value);
+    appended(page, entryBytes);
+    return address(page, offset);
+  }
+
+  /** Appends a copy of an existing entry, returning the address of the copy. */
+  private long appendCopy(ByteBuffer source, int sourceOffset, int entryBytes) {
+    int page = pageFor(entryBytes);
+    int offset = pageUsedBytes[page];
+    ByteBuffer from = source.duplicate();
+    from.limit(sourceOffset + entryBytes).position(sourceOffset);
+    ByteBuffer to = pages.get(page).duplicate();
+    to.position(offset);
+    to.put(from);
+    appended(page, entryBytes);
+    return address(page, offset);
+  }
+
+  private void appended(int page, int entryBytes) {
+    pageUsedBytes[page] += entryBytes;
+    pageLiveBytes[page] += entryBytes;
+    liveBytes += entryBytes;
+  }
+
+  /** Returns a page with room to append an entry of the provided size. */
+  private int pageFor(int entryBytes) {
+    if (entryBytes > pageSize) {
+      return allocatePage(entryBytes);
+    }
+    while (currentPage == NO_PAGE || pageUsedBytes[currentPage] + entryBytes > pageSize) {
+      int previous = currentPage;
+      currentPage = freePages.isEmpty() ? allocatePage(pageSize) : freePages.pop();
+      if (previous != NO_PAGE) {
+        // The previous page may have become garbage while it was being appended to. Compacting it
+        // moves less than a quarter of a page into the new current page, after which the entry
+        // may no longer fit.
+        maybeCompact(previous);
+      }
+    }
+    return currentPage;
+  }
+
+  private int allocatePage(int capacity) {
+    int page;
+    if (vacantPageIndices.isEmpty()) {
+      page = pages.size();
+      pages.add(null);
+      if (page == pageUsedBytes.length) {
+        pageUsedBytes = Arrays.copyOf(pageUsedBytes, Math.max(16, 2 * page));
+        pageLiveBytes = Arrays.copyOf(pageLiveBytes, pageUsedBytes.length);
+      }
+    } else {
+      page = vacantPageIndices.pop();
+    }
+    pages.set(page, ByteBuffer.allocateDirect(capacity));
+    pageUsedBytes[page] = 0;
+    pageLiveBytes[page] = 0;
+    allocatedPageBytes += capacity;
+    return page;
+  }
+
+  /** Marks the entry at the provided address as garbage. */
+  private void release(long address) {
+    int page = (int) (address >>> 32);
+    int entryBytes = entryBytes(pages.get(page), offset(address));
+    pageLiveBytes[page] -= entryBytes;
+    liveBytes -= entryBytes;
+    maybeCompact(page);
+  }
+
+  private void maybeCompact(int page) {
+    if (page == currentPage || compacting) {
+      return;
+    }
+    if (pageLiveBytes[page] == 0) {
+      freePage(page);
+    } else if (pageLiveBytes[page] < MIN_LIVE_FRACTION * pageUsedBytes[page]) {
+      compact(page);
+    }
+  }
+
+  /** Moves the live entries of the provided page to the current page and frees it. */
+  private void compact(int page) {
+    compacting = true;
+    try {
+      ByteBuffer buffer = pages.get(page);
+      int offset = 0;
+      while (offset < pageUsedBytes[page] && pageLiveBytes[page] > 0) {
+        int entryBytes = entryBytes(buffer, offset);
+        long address = address(page, offset);
+        long slot = homeSlot(buffer.getInt(offset));
+        long current;
+        while ((current = getSlot(slot)) != EMPTY && current != address) {
+          slot = (slot + 1) & indexMask;
+        }
+        if (current == address) {
+          setSlot(slot, appendCopy(buffer, offset, entryBytes));
+          pageLiveBytes[page] -= entryBytes;
+          liveBytes -= entryBytes;
+        }
+        offset += entryBytes;
+      }
+      freePage(page);
+    } finally {
+      compacting = false;
+    }
+  }
+
+  private void freePage(int page) {
+    ByteBuffer buffer = pages.get(page);
+    pageUsedBytes[page] = 0;
+    pageLiveBytes[page] = 0;
+    if (buffer.capacity() == pageSize) {
+      freePages.push(page);
+    } else {
+      pages.set(page, null);
+      vacantPageIndices.push(page);
+      allocatedPageBytes -= buffer.capacity();
+    }
+  }
+}
@@ -242,7 +242,7 @@ final class StatefulParDoEvaluatorFactory<K, InputT, OutputT> implements Transfo
         clearWatermarkHold(timerData);
       }
 
-      CopyOnAccessInMemoryStateInternals state;
+      DirectStateInternals state;
       Instant watermarkHold;
 
       if (isTimerDeclared && delegateResult.getState() != null) { // For both State and Timer Holds
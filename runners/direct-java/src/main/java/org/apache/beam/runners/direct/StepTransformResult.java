@@ -73,7 +73,7 @@ abstract class StepTransformResult<InputT> implements TransformResult<InputT> {
     private final ImmutableList.Builder<UncommittedBundle<?>> bundlesBuilder;
     private final ImmutableList.Builder<WindowedValue<InputT>> unprocessedElementsBuilder;
     private MetricUpdates metricUpdates;
-    private CopyOnAccessInMemoryStateInternals state;
+    private DirectStateInternals state;
     private TimerUpdate timerUpdate;
     private List<Finalization> finalizations;
     private final Set<OutputType> producedOutputs;
@@ -108,7 +108,7 @@ abstract class StepTransformResult<InputT> implements TransformResult<InputT> {
       return this;
     }
 
-    public Builder<InputT> withState(CopyOnAccessInMemoryStateInternals state) {
+    public Builder<InputT> withState(DirectStateInternals state) {
       this.state = state;
       return this;
     }
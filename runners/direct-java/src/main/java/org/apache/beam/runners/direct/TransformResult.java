@@ -81,7 +81,7 @@ interface TransformResult<InputT> {
    * <p>If this evaluation did not access state, this may return null.
    */
   @Nullable
-  CopyOnAccessInMemoryStateInternals getState();
+  DirectStateInternals getState();
 
   /**
    * Returns a TimerUpdateBuilder that was produced as a result of this evaluation. If the
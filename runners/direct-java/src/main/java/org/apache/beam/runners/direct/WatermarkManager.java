@@ -26,13 +26,14 @@ import java.io.Serializable;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
-import java.util.EnumMap;
+import java.util.Comparator;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.NavigableSet;
 import java.util.Objects;
+import java.util.PriorityQueue;
 import java.util.Set;
 import java.util.TreeSet;
 import java.util.concurrent.ConcurrentHashMap;
@@ -239,12 +240,16 @@ class WatermarkManager<ExecutableT, CollectionT> {
     // minimum
     private final SortedMultiset<TimerData> pendingTimers;
 
+    // The output timestamps of pendingTimers, for quickly getting the cross-key minimum output
+    // timestamp
+    private final SortedMultiset<Instant> pendingTimerOutputTimestamps;
+
     // Entries in this table represent the authoritative timestamp for which
     // a per-key-and-StateNamespace timer is set.
     private final Map<StructuralKey<?>, Table<StateNamespace, String, TimerData>> existingTimers;
 
-    // This per-key sorted set allows quick retrieval of timers that should fire for a key
-    private final Map<StructuralKey<?>, NavigableSet<TimerData>> objectTimers;
+    // The per-key timers, indexed to allow quick retrieval of the timers that should fire
+    private final KeyedTimers objectTimers;
 
     private final AtomicReference<Instant> currentWatermark;
 
@@ -267,7 +272,8 @@ class WatermarkManager<ExecutableT, CollectionT> {
           new BundleByElementTimestampComparator().compound(Ordering.arbitrary());
       this.pendingElements = TreeMultiset.create(pendingBundleComparator);
       this.pendingTimers = TreeMultiset.create();
-      this.objectTimers = new HashMap<>();
+      this.pendingTimerOutputTimestamps = TreeMultiset.create();
+      this.objectTimers = new KeyedTimers();
       this.existingTimers = new HashMap<>();
       this.currentWatermark = new AtomicReference<>(BoundedWindow.TIMESTAMP_MIN_VALUE);
       this.timerUpdateNotification = timerUpdateNotification;
@@ -325,26 +331,26 @@ class WatermarkManager<ExecutableT, CollectionT> {
 
     @VisibleForTesting
     synchronized Instant getEarliestTimerTimestamp() {
-      if (pendingTimers.isEmpty()) {
+      if (pendingTimerOutputTimestamps.isEmpty()) {
         return BoundedWindow.TIMESTAMP_MAX_VALUE;
       } else {
-        return getMinimumOutputTimestamp(pendingTimers);
+        return pendingTimerOutputTimestamps.firstEntry().getElement();
       }
     }
 
-    private Instant getMinimumOutputTimestamp(SortedMultiset<TimerData> timers) {
-      Instant minimumOutputTimestamp = timers.firstEntry().getElement().getOutputTimestamp();
-      for (TimerData timerData : timers) {
-        minimumOutputTimestamp =
-            INSTANT_ORDERING.min(timerData.getOutputTimestamp(), minimumOutputTimestamp);
+    private void addPendingTimer(TimerData timer) {
+      pendingTimers.add(timer);
+      pendingTimerOutputTimestamps.add(timer.getOutputTimestamp());
+    }
+
+    private void removePendingTimer(TimerData timer) {
+      if (pendingTimers.remove(timer)) {
+        pendingTimerOutputTimestamps.remove(timer.getOutputTimestamp());
       }
-      return minimumOutputTimestamp;
     }
 
     @VisibleForTesting
     synchronized void updateTimers(TimerUpdate update) {
-      NavigableSet<TimerData> keyTimers =
-          objectTimers.computeIfAbsent(update.key, k -> new TreeSet<>());
       Table<StateNamespace, String, TimerData> existingTimersForKey =
           existingTimers.computeIfAbsent(update.key, k -> HashBasedTable.create());
 
@@ -356,16 +362,16 @@ class WatermarkManager<ExecutableT, CollectionT> {
                   timer.getNamespace(), timer.getTimerId() + '+' + timer.getTimerFamilyId());
 
           if (existingTimer == null) {
-            pendingTimers.add(timer);
-            keyTimers.add(timer);
+            addPendingTimer(timer);
+            objectTimers.add(update.key, timer);
           } else {
             // reinitialize the timer even if identical,
             // because it might be removed from objectTimers
             // by timer push back
-            pendingTimers.remove(existingTimer);
-            keyTimers.remove(existingTimer);
-            pendingTimers.add(timer);
-            keyTimers.add(timer);
+            removePendingTimer(existingTimer);
+            objectTimers.remove(update.key, existingTimer);
+            addPendingTimer(timer);
+            objectTimers.add(update.key, timer);
           }
 
           existingTimersForKey.put(
@@ -381,8 +387,8 @@ class WatermarkManager<ExecutableT, CollectionT> {
                   timer.getNamespace(), timer.getTimerId() + '+' + timer.getTimerFamilyId());
 
           if (existingTimer != null) {
-            pendingTimers.remove(existingTimer);
-            keyTimers.remove(existingTimer);
+            removePendingTimer(existingTimer);
+            objectTimers.remove(update.key, existingTimer);
             existingTimersForKey.remove(
                 existingTimer.getNamespace(),
                 existingTimer.getTimerId() + '+' + existingTimer.getTimerFamilyId());
@@ -392,8 +398,8 @@ class WatermarkManager<ExecutableT, CollectionT> {
 
       for (TimerData timer : update.getCompletedTimers()) {
         if (TimeDomain.EVENT_TIME.equals(timer.getDomain())) {
-          keyTimers.remove(timer);
-          pendingTimers.remove(timer);
+          objectTimers.remove(update.key, timer);
+          removePendingTimer(timer);
         }
       }
 
@@ -407,7 +413,7 @@ class WatermarkManager<ExecutableT, CollectionT> {
 
     @VisibleForTesting
     synchronized Map<StructuralKey<?>, List<TimerData>> extractFiredEventTimeTimers() {
-      return extractFiredTimers(currentWatermark.get(), objectTimers);
+      return objectTimers.extractFiredTimers(currentWatermark.get());
     }
 
     @Override
@@ -518,12 +524,13 @@ class WatermarkManager<ExecutableT, CollectionT> {
     private final String name;
 
     private final Collection<? extends Watermark> inputWms;
-    private final Collection<Bundle<?, ?>> pendingBundles;
-    private final Map<StructuralKey<?>, NavigableSet<TimerData>> processingTimers;
-    private final Map<StructuralKey<?>, NavigableSet<TimerData>> synchronizedProcessingTimers;
+    private final NavigableSet<Bundle<?, ?>> pendingBundles;
+    private final KeyedTimers processingTimers;
+    private final KeyedTimers synchronizedProcessingTimers;
     private final Map<StructuralKey<?>, Table<StateNamespace, String, TimerData>> existingTimers;
 
     private final NavigableSet<TimerData> pendingTimers;
+    private final SortedMultiset<Instant> pendingTimerOutputTimestamps;
 
     private AtomicReference<Instant> earliestHold;
 
@@ -536,11 +543,17 @@ class WatermarkManager<ExecutableT, CollectionT> {
 
       this.name = name;
       this.inputWms = inputWms;
-      this.pendingBundles = new HashSet<>();
-      this.processingTimers = new HashMap<>();
-      this.synchronizedProcessingTimers = new HashMap<>();
+      // Bundles are ordered by their synchronized processing output watermark, and must not be
+      // compared as equal if they are distinct.
+      this.pendingBundles =
+          new TreeSet<>(
+              new BundleBySynchronizedProcessingOutputWatermarkComparator()
+                  .compound(Ordering.arbitrary()));
+      this.processingTimers = new KeyedTimers();
+      this.synchronizedProcessingTimers = new KeyedTimers();
       this.existingTimers = new HashMap<>();
       this.pendingTimers = new TreeSet<>();
+      this.pendingTimerOutputTimestamps = TreeMultiset.create();
       Instant initialHold = BoundedWindow.TIMESTAMP_MAX_VALUE;
       for (Watermark wm : inputWms) {
         initialHold = INSTANT_ORDERING.min(initialHold, wm.get());
@@ -580,11 +593,13 @@ class WatermarkManager<ExecutableT, CollectionT> {
       for (Watermark input : inputWms) {
         minTime = INSTANT_ORDERING.min(minTime, input.get());
       }
-      for (Bundle<?, ?> bundle : pendingBundles) {
+      if (!pendingBundles.isEmpty()) {
         // TODO: Track elements in the bundle by the processing time they were output instead of
         // entire bundles. Requried to support arbitrarily splitting and merging bundles between
         // steps
-        minTime = INSTANT_ORDERING.min(minTime, bundle.getSynchronizedProcessingOutputWatermark());
+        minTime =
+            INSTANT_ORDERING.min(
+                minTime, pendingBundles.first().getSynchronizedProcessingOutputWatermark());
       }
       earliestHold.set(minTime);
       return updateAndTrace(getName(), oldHold, minTime);
@@ -604,39 +619,35 @@ class WatermarkManager<ExecutableT, CollectionT> {
      * timestamp across timers that have been delivered but have not been completed.
      */
     public synchronized Instant getEarliestTimerTimestamp() {
-      Instant earliest = THE_END_OF_TIME.get();
-      for (NavigableSet<TimerData> timers : processingTimers.values()) {
-        if (!timers.isEmpty()) {
-          earliest = INSTANT_ORDERING.min(getMinimumOutputTimestamp(timers), earliest);
-        }
-      }
-      for (NavigableSet<TimerData> timers : synchronizedProcessingTimers.values()) {
-        if (!timers.isEmpty()) {
-          earliest = INSTANT_ORDERING.min(getMinimumOutputTimestamp(timers), earliest);
-        }
-      }
-      if (!pendingTimers.isEmpty()) {
-        earliest = INSTANT_ORDERING.min(getMinimumOutputTimestamp(pendingTimers), earliest);
+      Instant earliest =
+          INSTANT_ORDERING.min(
+              processingTimers.getMinimumOutputTimestamp(),
+              synchronizedProcessingTimers.getMinimumOutputTimestamp());
+      if (!pendingTimerOutputTimestamps.isEmpty()) {
+        earliest =
+            INSTANT_ORDERING.min(pendingTimerOutputTimestamps.firstEntry().getElement(), earliest);
       }
       return earliest;
     }
 
-    private Instant getMinimumOutputTimestamp(NavigableSet<TimerData> timers) {
-      Instant minimumOutputTimestamp = timers.first().getOutputTimestamp();
-      for (TimerData timerData : timers) {
-        minimumOutputTimestamp =
-            INSTANT_ORDERING.min(timerData.getOutputTimestamp(), minimumOutputTimestamp);
+    private void addPendingTimer(TimerData timer) {
+      if (pendingTimers.add(timer)) {
+        pendingTimerOutputTimestamps.add(timer.getOutputTimestamp());
+      }
+    }
+
+    private void removePendingTimer(TimerData timer) {
+      if (pendingTimers.remove(timer)) {
+        pendingTimerOutputTimestamps.remove(timer.getOutputTimestamp());
       }
-      return minimumOutputTimestamp;
     }
 
     private synchronized void updateTimers(TimerUpdate update) {
-      Map<TimeDomain, NavigableSet<TimerData>> timerMap = timerMap(update.key);
       Table<StateNamespace, String, TimerData> existingTimersForKey =
           existingTimers.computeIfAbsent(update.key, k -> HashBasedTable.create());
 
       for (TimerData addedTimer : update.setTimers.values()) {
-        NavigableSet<TimerData> timerQueue = timerMap.get(addedTimer.getDomain());
+        @Nullable KeyedTimers timerQueue = timersFor(addedTimer.getDomain());
         if (timerQueue == null) {
           continue;
         }
@@ -647,10 +658,10 @@ class WatermarkManager<ExecutableT, CollectionT> {
                 addedTimer.getNamespace(),
                 addedTimer.getTimerId() + '+' + addedTimer.getTimerFamilyId());
         if (existingTimer == null) {
-          timerQueue.add(addedTimer);
+          timerQueue.add(update.key, addedTimer);
         } else if (!existingTimer.equals(addedTimer)) {
-          timerQueue.remove(existingTimer);
-          timerQueue.add(addedTimer);
+          timerQueue.remove(update.key, existingTimer);
+          timerQueue.add(update.key, addedTimer);
         } // else the timer is already set identically, so noop.
 
         existingTimersForKey.put(
@@ -660,7 +671,7 @@ class WatermarkManager<ExecutableT, CollectionT> {
       }
 
       for (TimerData deletedTimer : update.deletedTimers.values()) {
-        NavigableSet<TimerData> timerQueue = timerMap.get(deletedTimer.getDomain());
+        @Nullable KeyedTimers timerQueue = timersFor(deletedTimer.getDomain());
         if (timerQueue == null) {
           continue;
         }
@@ -671,8 +682,8 @@ class WatermarkManager<ExecutableT, CollectionT> {
                 deletedTimer.getNamespace(),
                 deletedTimer.getTimerId() + '+' + deletedTimer.getTimerFamilyId());
         if (existingTimer != null) {
-          pendingTimers.remove(deletedTimer);
-          timerQueue.remove(deletedTimer);
+          removePendingTimer(deletedTimer);
+          timerQueue.remove(update.key, deletedTimer);
           existingTimersForKey.remove(
               existingTimer.getNamespace(),
               existingTimer.getTimerId() + '+' + existingTimer.getTimerFamilyId());
@@ -680,7 +691,7 @@ class WatermarkManager<ExecutableT, CollectionT> {
       }
 
       for (TimerData completedTimer : update.completedTimers) {
-        pendingTimers.remove(completedTimer);
+        removePendingTimer(completedTimer);
       }
 
       // notify of TimerData update
@@ -694,13 +705,12 @@ class WatermarkManager<ExecutableT, CollectionT> {
       Map<StructuralKey<?>, List<TimerData>> firedTimers;
       switch (domain) {
         case PROCESSING_TIME:
-          firedTimers = extractFiredTimers(firingTime, processingTimers);
+          firedTimers = processingTimers.extractFiredTimers(firingTime);
           break;
         case SYNCHRONIZED_PROCESSING_TIME:
           firedTimers =
-              extractFiredTimers(
-                  INSTANT_ORDERING.min(firingTime, earliestHold.get()),
-                  synchronizedProcessingTimers);
+              synchronizedProcessingTimers.extractFiredTimers(
+                  INSTANT_ORDERING.min(firingTime, earliestHold.get()));
           break;
         default:
           throw new IllegalArgumentException(
@@ -710,20 +720,20 @@ class WatermarkManager<ExecutableT, CollectionT> {
       }
       for (Map.Entry<StructuralKey<?>, ? extends Collection<TimerData>> firedTimer :
           firedTimers.entrySet()) {
-        pendingTimers.addAll(firedTimer.getValue());
+        firedTimer.getValue().forEach(this::addPendingTimer);
       }
       return firedTimers;
     }
 
-    private Map<TimeDomain, NavigableSet<TimerData>> timerMap(StructuralKey<?> key) {
-      NavigableSet<TimerData> processingQueue =
-          processingTimers.computeIfAbsent(key, k -> new TreeSet<>());
-      NavigableSet<TimerData> synchronizedProcessingQueue =
-          synchronizedProcessingTimers.computeIfAbsent(key, k -> new TreeSet<>());
-      EnumMap<TimeDomain, NavigableSet<TimerData>> result = new EnumMap<>(TimeDomain.class);
-      result.put(TimeDomain.PROCESSING_TIME, processingQueue);
-      result.put(TimeDomain.SYNCHRONIZED_PROCESSING_TIME, synchronizedProcessingQueue);
-      return result;
+    private @Nullable KeyedTimers timersFor(TimeDomain domain) {
+      switch (domain) {
+        case PROCESSING_TIME:
+          return processingTimers;
+        case SYNCHRONIZED_PROCESSING_TIME:
+          return synchronizedProcessingTimers;
+        default:
+          return null;
+      }
     }
 
     @Override
@@ -849,33 +859,111 @@ class WatermarkManager<ExecutableT, CollectionT> {
   private static final Ordering<Instant> INSTANT_ORDERING = Ordering.natural();
 
   /**
-   * For each (Object, NavigableSet) pair in the provided map, remove each Timer that is before the
-   * latestTime argument and put in in the result with the same key, then remove all of the keys
-   * which have no more pending timers.
+   * The timers of each key, indexed by the earliest timer of each key.
    *
-   * <p>The result collection retains ordering of timers (from earliest to latest).
+   * <p>Keys are kept in a priority order of their earliest timer, so extracting the timers which
+   * should fire only visits the keys which have a timer to fire. The output timestamps of all
+   * timers are tracked to provide the earliest output timestamp across all keys. Adding or removing
+   * a timer costs O(log n) in the number of timers and keys.
    */
-  private static Map<StructuralKey<?>, List<TimerData>> extractFiredTimers(
-      Instant latestTime, Map<StructuralKey<?>, NavigableSet<TimerData>> objectTimers) {
-    Map<StructuralKey<?>, List<TimerData>> result = new HashMap<>();
-    Set<StructuralKey<?>> emptyKeys = new HashSet<>();
-    for (Map.Entry<StructuralKey<?>, NavigableSet<TimerData>> pendingTimers :
-        objectTimers.entrySet()) {
-      NavigableSet<TimerData> timers = pendingTimers.getValue();
-      if (!timers.isEmpty() && timers.first().getTimestamp().isBefore(latestTime)) {
-        ArrayList<TimerData> keyFiredTimers = new ArrayList<>();
-        result.put(pendingTimers.getKey(), keyFiredTimers);
-        while (!timers.isEmpty() && timers.first().getTimestamp().isBefore(latestTime)) {
-          keyFiredTimers.add(timers.first());
-          timers.remove(timers.first());
+  private static class KeyedTimers {
+    private final Map<StructuralKey<?>, TimersForKey> timersByKey = new HashMap<>();
+    private final NavigableSet<TimersForKey> keysByEarliestTimer = new TreeSet<>();
+    private final SortedMultiset<Instant> outputTimestamps = TreeMultiset.create();
+
+    /** Adds the timer to the timers of the provided key. */
+    void add(StructuralKey<?> key, TimerData timer) {
+      TimersForKey timersForKey = timersByKey.computeIfAbsent(key, TimersForKey::new);
+      unindex(timersForKey);
+      if (timersForKey.timers.add(timer)) {
+        outputTimestamps.add(timer.getOutputTimestamp());
+      }
+      reindex(timersForKey);
+    }
+
+    /** Removes the timer from the timers of the provided key, if present. */
+    void remove(StructuralKey<?> key, TimerData timer) {
+      TimersForKey timersForKey = timersByKey.get(key);
+      if (timersForKey == null || !timersForKey.timers.contains(timer)) {
+        return;
+      }
+      unindex(timersForKey);
+      timersForKey.timers.remove(timer);
+      outputTimestamps.remove(timer.getOutputTimestamp());
+      reindex(timersForKey);
+    }
+
+    /**
+     * Returns the earliest output timestamp across all timers, or THE_END_OF_TIME if there are no
+     * timers.
+     */
+    Instant getMinimumOutputTimestamp() {
+      return outputTimestamps.isEmpty()
+          ? THE_END_OF_TIME.get()
+          : outputTimestamps.firstEntry().getElement();
+    }
+
+    /**
+     * Removes each timer that is before the latestTime argument and puts it in the result with its
+     * key. Keys which have no more timers are removed.
+     *
+     * <p>The result collection retains ordering of timers (from earliest to latest).
+     */
+    Map<StructuralKey<?>, List<TimerData>> extractFiredTimers(Instant latestTime) {
+      Map<StructuralKey<?>, List<TimerData>> result = new HashMap<>();
+      while (!keysByEarliestTimer.isEmpty()
+          && keysByEarliestTimer.first().timers.first().getTimestamp().isBefore(latestTime)) {
+        TimersForKey timersForKey = keysByEarliestTimer.pollFirst();
+        List<TimerData> keyFiredTimers = new ArrayList<>();
+        while (!timersForKey.timers.isEmpty()
+            && timersForKey.timers.first().getTimestamp().isBefore(latestTime)) {
+          TimerData timer = timersForKey.timers.pollFirst();
+          outputTimestamps.remove(timer.getOutputTimestamp());
+          keyFiredTimers.add(timer);
         }
+        result.put(timersForKey.key, keyFiredTimers);
+        reindex(timersForKey);
       }
-      if (timers.isEmpty()) {
-        emptyKeys.add(pendingTimers.getKey());
+      return result;
+    }
+
+    /** Removes the key from the index, which must be done before its earliest timer changes. */
+    private void unindex(TimersForKey timersForKey) {
+      if (!timersForKey.timers.isEmpty()) {
+        keysByEarliestTimer.remove(timersForKey);
+      }
+    }
+
+    private void reindex(TimersForKey timersForKey) {
+      if (timersForKey.timers.isEmpty()) {
+        timersByKey.remove(timersForKey.key);
+      } else {
+        keysByEarliestTimer.add(timersForKey);
+      }
+    }
+
+    /**
+     * The timers of a single key. Only keys with at least one timer are indexed, as they are
+     * ordered by their earliest timer.
+     */
+    private static class TimersForKey implements Comparable<TimersForKey> {
+      private static final Ordering<Object> KEY_ORDERING = Ordering.arbitrary();
+
+      private final StructuralKey<?> key;
+      private final NavigableSet<TimerData> timers = new TreeSet<>();
+
+      private TimersForKey(StructuralKey<?> key) {
+        this.key = key;
+      }
+
+      @Override
+      public int compareTo(TimersForKey that) {
+        return ComparisonChain.start()
+            .compare(this.timers.first(), that.timers.first())
+            .compare(this, that, KEY_ORDERING)
+            .result();
       }
     }
-    objectTimers.keySet().removeAll(emptyKeys);
-    return result;
   }
 
   ////////////////////////////////////////////////////////////////////////////////////////////////
@@ -896,6 +984,12 @@ class WatermarkManager<ExecutableT, CollectionT> {
   /** The input and output watermark of each {@link AppliedPTransform}. */
   private final Map<ExecutableT, TransformWatermarks> transformToWatermarks;
 
+  /**
+   * The length of the longest path from a root to each executable. Every executable is deeper than
+   * the producers of its inputs, so refreshing in order of depth refreshes producers first.
+   */
+  private final Map<ExecutableT, Integer> transformDepths;
+
   /** A queue of pending updates to the state of this {@link WatermarkManager}. */
   private final ConcurrentLinkedQueue<PendingWatermarkUpdate<ExecutableT, CollectionT>>
       pendingUpdates;
@@ -950,6 +1044,7 @@ class WatermarkManager<ExecutableT, CollectionT> {
     this.pendingRefreshes = new HashSet<>();
 
     transformToWatermarks = new HashMap<>();
+    transformDepths = new HashMap<>();
 
     for (ExecutableT rootTransform : graph.getRootTransforms()) {
       getTransformWatermark(rootTransform);
@@ -994,6 +1089,13 @@ class WatermarkManager<ExecutableT, CollectionT> {
               inputProcessingWatermark,
               outputProcessingWatermark);
       transformToWatermarks.put(executable, wms);
+
+      // The producers of all inputs have been created along with the input watermarks.
+      int depth = 0;
+      for (CollectionT input : graph.getPerElementInputs(executable)) {
+        depth = Math.max(depth, transformDepths.get(graph.getProducer(input)) + 1);
+      }
+      transformDepths.put(executable, depth);
     }
     return wms;
   }
@@ -1214,14 +1316,25 @@ class WatermarkManager<ExecutableT, CollectionT> {
   /**
    * Refresh the watermarks contained within this {@link WatermarkManager}, causing all watermarks
    * to be advanced as far as possible.
+   *
+   * <p>Only executables with pending updates and the consumers of executables whose watermarks
+   * advanced are refreshed. Executables are refreshed in order of their depth in the graph, so each
+   * executable is refreshed at most once, after all of its producers.
    */
   public synchronized void refreshAll() {
     refreshLock.lock();
     try {
       applyAllPendingUpdates();
-      Set<ExecutableT> toRefresh = pendingRefreshes;
+      PriorityQueue<ExecutableT> toRefresh =
+          new PriorityQueue<>(Comparator.comparing(transformDepths::get));
+      Set<ExecutableT> scheduled = new HashSet<>(pendingRefreshes);
+      toRefresh.addAll(pendingRefreshes);
       while (!toRefresh.isEmpty()) {
-        toRefresh = refreshAllOf(toRefresh);
+        for (ExecutableT consumer : refreshWatermarks(toRefresh.poll())) {
+          if (scheduled.add(consumer)) {
+            toRefresh.add(consumer);
+          }
+        }
       }
       pendingRefreshes.clear();
     } finally {
@@ -1229,14 +1342,6 @@ class WatermarkManager<ExecutableT, CollectionT> {
     }
   }
 
-  private Set<ExecutableT> refreshAllOf(Set<ExecutableT> toRefresh) {
-    Set<ExecutableT> newRefreshes = new HashSet<>();
-    for (ExecutableT executable : toRefresh) {
-      newRefreshes.addAll(refreshWatermarks(executable));
-    }
-    return newRefreshes;
-  }
-
   private Set<ExecutableT> refreshWatermarks(final ExecutableT toRefresh) {
     TransformWatermarks myWatermarks = transformToWatermarks.get(toRefresh);
     WatermarkUpdate updateResult = myWatermarks.refresh();
@@ -1830,6 +1935,22 @@ class WatermarkManager<ExecutableT, CollectionT> {
     }
   }
 
+  private static class BundleBySynchronizedProcessingOutputWatermarkComparator
+      extends Ordering<Bundle<?, ?>> implements Serializable {
+
+    @SuppressFBWarnings(
+        value = "NP_METHOD_PARAMETER_TIGHTENS_ANNOTATION",
+        justification = "https://github.com/google/guava/issues/920")
+    @Override
+    public int compare(@Nonnull Bundle<?, ?> o1, @Nonnull Bundle<?, ?> o2) {
+      return ComparisonChain.start()
+          .compare(
+              o1.getSynchronizedProcessingOutputWatermark(),
+              o2.getSynchronizedProcessingOutputWatermark())
+          .result();
+    }
+  }
+
   @AutoValue
   abstract static class PendingWatermarkUpdate<ExecutableT, CollectionT> {
     abstract ExecutableT getExecutable();
@@ -17,6 +17,7 @@
  */
 package org.apache.beam.runners.direct;
 
+import static org.apache.beam.vendor.guava.v26_0_jre.com.google.common.base.MoreObjects.firstNonNull;
 import static org.apache.beam.vendor.guava.v26_0_jre.com.google.common.base.Preconditions.checkState;
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.Matchers.equalTo;
@@ -40,11 +41,15 @@ import java.util.concurrent.ArrayBlockingQueue;
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.Callable;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
+import org.apache.beam.runners.direct.DirectOptions.ExecutorMode;
+import org.apache.beam.runners.direct.DirectOptions.StateBackend;
 import org.apache.beam.runners.direct.DirectRunner.DirectPipelineResult;
 import org.apache.beam.sdk.Pipeline;
 import org.apache.beam.sdk.PipelineResult;
@@ -65,6 +70,9 @@ import org.apache.beam.sdk.io.UnboundedSource;
 import org.apache.beam.sdk.options.Default;
 import org.apache.beam.sdk.options.PipelineOptions;
 import org.apache.beam.sdk.options.PipelineOptionsFactory;
+import org.apache.beam.sdk.state.StateSpec;
+import org.apache.beam.sdk.state.StateSpecs;
+import org.apache.beam.sdk.state.ValueState;
 import org.apache.beam.sdk.testing.PAssert;
 import org.apache.beam.sdk.testing.TestPipeline;
 import org.apache.beam.sdk.transforms.Count;
@@ -72,6 +80,7 @@ import org.apache.beam.sdk.transforms.Create;
 import org.apache.beam.sdk.transforms.DoFn;
 import org.apache.beam.sdk.transforms.Flatten;
 import org.apache.beam.sdk.transforms.MapElements;
+import org.apache.beam.sdk.transforms.Max;
 import org.apache.beam.sdk.transforms.PTransform;
 import org.apache.beam.sdk.transforms.ParDo;
 import org.apache.beam.sdk.transforms.SerializableFunction;
@@ -259,6 +268,93 @@ public class DirectRunnerTest implements Serializable {
     PAssert.thatMap(countsBackToString).isEqualTo(expected);
   }
 
+  @Test
+  public void offHeapStateBackendShouldSucceed() {
+    PipelineOptions opts = PipelineOptionsFactory.create();
+    opts.setRunner(DirectRunner.class);
+    opts.as(DirectOptions.class).setStateBackend(StateBackend.OFF_HEAP);
+    Pipeline p = Pipeline.create(opts);
+
+    PCollection<KV<String, Integer>> input =
+        p.apply(
+            Create.of(
+                KV.of("foo", 1),
+                KV.of("foo", 2),
+                KV.of("bar", 3),
+                KV.of("foo", 4),
+                KV.of("baz", 5)));
+    PCollection<KV<String, Integer>> runningSums =
+        input.apply(
+            ParDo.of(
+                new DoFn<KV<String, Integer>, KV<String, Integer>>() {
+                  @StateId("sum")
+                  private final StateSpec<ValueState<Integer>> sumSpec =
+                      StateSpecs.value(VarIntCoder.of());
+
+                  @ProcessElement
+                  public void processElement(
+                      @Element KV<String, Integer> element,
+                      @StateId("sum") ValueState<Integer> sum,
+                      OutputReceiver<KV<String, Integer>> receiver) {
+                    int total = firstNonNull(sum.read(), 0) + element.getValue();
+                    sum.write(total);
+                    receiver.output(KV.of(element.getKey(), total));
+                  }
+                }));
+    PCollection<KV<String, Integer>> sums = input.apply(Sum.integersPerKey());
+
+    PAssert.that(runningSums.apply(Max.integersPerKey()))
+        .containsInAnyOrder(KV.of("foo", 7), KV.of("bar", 3), KV.of("baz", 5));
+    PAssert.that(sums).containsInAnyOrder(KV.of("foo", 7), KV.of("bar", 3), KV.of("baz", 5));
+    p.run();
+  }
+
+  private static CountDownLatch blockedBranches;
+
+  @Test
+  public void virtualThreadsExecuteMoreBlockedBundlesThanTargetParallelism() {
+    runBlockedBranches(ExecutorMode.VIRTUAL_THREADS);
+  }
+
+  @Test
+  public void unboundedThreadPoolExecutesMoreBlockedBundlesThanTargetParallelism() {
+    runBlockedBranches(ExecutorMode.UNBOUNDED_THREAD_POOL);
+  }
+
+  /**
+   * Runs independent branches which each block until every branch is executing, which can only
+   * succeed if the executor runs more bundles at once than the target parallelism.
+   */
+  private void runBlockedBranches(ExecutorMode executorMode) {
+    int numBranches = 8;
+    PipelineOptions opts = PipelineOptionsFactory.create();
+    opts.setRunner(DirectRunner.class);
+    opts.as(DirectOptions.class).setTargetParallelism(2);
+    opts.as(DirectOptions.class).setExecutorMode(executorMode);
+    Pipeline p = Pipeline.create(opts);
+
+    blockedBranches = new CountDownLatch(numBranches);
+    for (int i = 0; i < numBranches; i++) {
+      PCollection<Integer> branch =
+          p.apply("Create" + i, Create.of(i))
+              .apply(
+                  "AwaitAllBranches" + i,
+                  ParDo.of(
+                      new DoFn<Integer, Integer>() {
+                        @ProcessElement
+                        public void processElement(ProcessContext c) throws Exception {
+                          blockedBranches.countDown();
+                          checkState(
+                              blockedBranches.await(1, TimeUnit.MINUTES),
+                              "Not all branches were executing concurrently");
+                          c.output(c.element());
+                        }
+                      }));
+      PAssert.that(branch).containsInAnyOrder(i);
+    }
+    p.run();
+  }
+
   @Test
   public void splitsInputs() {
     Pipeline p = getPipeline();
@@ -38,6 +38,7 @@ import org.apache.beam.runners.core.StateTag;
 import org.apache.beam.runners.core.StateTags;
 import org.apache.beam.runners.core.TimerInternals.TimerData;
 import org.apache.beam.runners.direct.DirectExecutionContext.DirectStepContext;
+import org.apache.beam.runners.direct.DirectOptions.StateBackend;
 import org.apache.beam.runners.direct.WatermarkManager.FiredTimers;
 import org.apache.beam.runners.direct.WatermarkManager.TimerUpdate;
 import org.apache.beam.runners.local.StructuralKey;
@@ -130,6 +131,7 @@ public class EvaluationContextTest implements Serializable {
             bundleFactory,
             graph,
             keyedPValueTrackingVisitor.getKeyedPValues(),
+            DirectStateBackend.create(StateBackend.IN_MEMORY),
             Executors.newSingleThreadExecutor());
 
     impulseProducer = graph.getProducer(impulse);
@@ -265,7 +267,7 @@ public class EvaluationContextTest implements Serializable {
 
     StateTag<BagState<Integer>> intBag = StateTags.bag("myBag", VarIntCoder.of());
 
-    CopyOnAccessInMemoryStateInternals<?> state = fooContext.getStepContext("s1").stateInternals();
+    DirectStateInternals state = fooContext.getStepContext("s1").stateInternals();
     BagState<Integer> bag = state.state(StateNamespaces.global(), intBag);
     bag.add(1);
     bag.add(2);
@@ -282,7 +284,7 @@ public class EvaluationContextTest implements Serializable {
     DirectExecutionContext afterResultContext =
         context.getExecutionContext(downstreamProducer, myKey);
 
-    CopyOnAccessInMemoryStateInternals<?> afterResultState =
+    DirectStateInternals afterResultState =
         afterResultContext.getStepContext("s1").stateInternals();
     assertThat(afterResultState.state(StateNamespaces.global(), intBag).read(), contains(1, 2, 4));
   }
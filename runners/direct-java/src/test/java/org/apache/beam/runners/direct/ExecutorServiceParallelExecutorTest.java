@@ -26,6 +26,8 @@ import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
 import org.apache.beam.runners.core.metrics.MetricsPusherTest;
+import org.apache.beam.runners.direct.DirectOptions.ExecutorMode;
+import org.apache.beam.runners.direct.DirectOptions.StateBackend;
 import org.apache.beam.sdk.io.GenerateSequence;
 import org.apache.beam.sdk.metrics.Counter;
 import org.apache.beam.sdk.metrics.Metrics;
@@ -77,9 +79,11 @@ public class ExecutorServiceParallelExecutorTest {
             CloningBundleFactory.create(),
             graph,
             emptySet(),
+            DirectStateBackend.create(StateBackend.IN_MEMORY),
             metricsExecutorService);
     ExecutorServiceParallelExecutor.create(
             2,
+            ExecutorMode.FIXED_THREAD_POOL,
             TransformEvaluatorRegistry.javaSdkNativeRegistry(
                 context, PipelineOptionsFactory.create().as(DirectOptions.class)),
             emptyMap(),
@@ -0,0 +1,185 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.beam.runners.direct;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.containsInAnyOrder;
+import static org.hamcrest.Matchers.emptyIterable;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.nullValue;
+
+import org.apache.beam.runners.core.StateNamespace;
+import org.apache.beam.runners.core.StateNamespaceForTest;
+import org.apache.beam.runners.core.StateTag;
+import org.apache.beam.runners.core.StateTags;
+import org.apache.beam.runners.local.StructuralKey;
+import org.apache.beam.sdk.coders.StringUtf8Coder;
+import org.apache.beam.sdk.coders.VarIntCoder;
+import org.apache.beam.sdk.state.BagState;
+import org.apache.beam.sdk.state.CombiningState;
+import org.apache.beam.sdk.state.MapState;
+import org.apache.beam.sdk.state.OrderedListState;
+import org.apache.beam.sdk.state.SetState;
+import org.apache.beam.sdk.state.ValueState;
+import org.apache.beam.sdk.state.WatermarkHoldState;
+import org.apache.beam.sdk.transforms.Sum;
+import org.apache.beam.sdk.transforms.windowing.BoundedWindow;
+import org.apache.beam.sdk.transforms.windowing.TimestampCombiner;
+import org.apache.beam.sdk.values.TimestampedValue;
+import org.joda.time.Instant;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** Tests for {@link OffHeapStateInternals}. */
+@RunWith(JUnit4.class)
+public class OffHeapStateInternalsTest {
+  @Rule public ExpectedException thrown = ExpectedException.none();
+
+  private final OffHeapStateStore store = new OffHeapStateStore();
+  private final StructuralKey<String> key = StructuralKey.of("foo", StringUtf8Coder.of());
+  private final StateNamespace namespace = new StateNamespaceForTest("ns");
+
+  private OffHeapStateInternals<String> newState() {
+    return new OffHeapStateInternals<>(key, store);
+  }
+
+  private void commit(OffHeapStateInternals<?> state) {
+    state.commit().flush();
+  }
+
+  @Test
+  public void testStateReadInLaterBundle() {
+    StateTag<ValueState<String>> valueTag = StateTags.value("value", StringUtf8Coder.of());
+    StateTag<BagState<Integer>> bagTag = StateTags.bag("bag", VarIntCoder.of());
+    StateTag<SetState<Integer>> setTag = StateTags.set("set", VarIntCoder.of());
+    StateTag<MapState<String, Integer>> mapTag =
+        StateTags.map("map", StringUtf8Coder.of(), VarIntCoder.of());
+    StateTag<OrderedListState<String>> orderedListTag =
+        StateTags.orderedList("orderedList", StringUtf8Coder.of());
+    StateTag<CombiningState<Integer, int[], Integer>> sumTag =
+        StateTags.combiningValueFromInputInternal("sum", VarIntCoder.of(), Sum.ofIntegers());
+
+    OffHeapStateInternals<String> first = newState();
+    first.state(namespace, valueTag).write("bar");
+    first.state(namespace, bagTag).add(1);
+    first.state(namespace, bagTag).add(2);
+    first.state(namespace, setTag).add(3);
+    first.state(namespace, mapTag).put("baz", 4);
+    first.state(namespace, orderedListTag).add(TimestampedValue.of("qux", new Instant(5)));
+    first.state(namespace, sumTag).add(6);
+    first.state(namespace, sumTag).add(7);
+    commit(first);
+
+    OffHeapStateInternals<String> second = newState();
+    assertThat(second.state(namespace, valueTag).read(), equalTo("bar"));
+    assertThat(second.state(namespace, bagTag).read(), containsInAnyOrder(1, 2));
+    assertThat(second.state(namespace, setTag).read(), containsInAnyOrder(3));
+    assertThat(second.state(namespace, mapTag).get("baz").read(), equalTo(4));
+    assertThat(
+        second.state(namespace, orderedListTag).read(),
+        containsInAnyOrder(TimestampedValue.of("qux", new Instant(5))));
+    assertThat(second.state(namespace, sumTag).read(), equalTo(13));
+  }
+
+  @Test
+  public void testUncommittedStateNotRead() {
+    StateTag<BagState<Integer>> bagTag = StateTags.bag("bag", VarIntCoder.of());
+    OffHeapStateInternals<String> first = newState();
+    first.state(namespace, bagTag).add(1);
+    commit(first);
+
+    OffHeapStateInternals<String> second = newState();
+    second.state(namespace, bagTag).add(2);
+    assertThat(second.state(namespace, bagTag).read(), containsInAnyOrder(1, 2));
+    second.commit();
+
+    assertThat(newState().state(namespace, bagTag).read(), containsInAnyOrder(1));
+  }
+
+  @Test
+  public void testClearedStateRemoved() {
+    StateTag<ValueState<String>> valueTag = StateTags.value("value", StringUtf8Coder.of());
+    OffHeapStateInternals<String> first = newState();
+    first.state(namespace, valueTag).write("bar");
+    commit(first);
+    assertThat(store.size(), equalTo(1L));
+
+    OffHeapStateInternals<String> second = newState();
+    second.state(namespace, valueTag).clear();
+    commit(second);
+
+    assertThat(store.size(), equalTo(0L));
+    assertThat(newState().state(namespace, valueTag).read(), nullValue());
+  }
+
+  @Test
+  public void testStateOfOtherKeysAndNamespacesIndependent() {
+    StateTag<BagState<Integer>> bagTag = StateTags.bag("bag", VarIntCoder.of());
+    StateNamespace otherNamespace = new StateNamespaceForTest("otherNs");
+    OffHeapStateInternals<String> first = newState();
+    first.state(namespace, bagTag).add(1);
+    first.state(otherNamespace, bagTag).add(2);
+    commit(first);
+
+    OffHeapStateInternals<String> otherKey =
+        new OffHeapStateInternals<>(StructuralKey.of("bar", StringUtf8Coder.of()), store);
+    assertThat(otherKey.state(namespace, bagTag).read(), emptyIterable());
+    assertThat(newState().state(otherNamespace, bagTag).read(), containsInAnyOrder(2));
+  }
+
+  @Test
+  public void testEarliestWatermarkHoldAcrossBundles() {
+    StateTag<WatermarkHoldState> firstHoldTag =
+        StateTags.watermarkStateInternal("first", TimestampCombiner.EARLIEST);
+    StateTag<WatermarkHoldState> secondHoldTag =
+        StateTags.watermarkStateInternal("second", TimestampCombiner.EARLIEST);
+
+    OffHeapStateInternals<String> first = newState();
+    first.state(namespace, firstHoldTag).add(new Instant(20));
+    first.state(namespace, secondHoldTag).add(new Instant(10));
+    commit(first);
+    assertThat(first.getEarliestWatermarkHold(), equalTo(new Instant(10)));
+
+    // The earliest hold includes holds which were not accessed by the bundle
+    OffHeapStateInternals<String> second = newState();
+    second.state(namespace, firstHoldTag).add(new Instant(15));
+    commit(second);
+    assertThat(second.getEarliestWatermarkHold(), equalTo(new Instant(10)));
+
+    OffHeapStateInternals<String> third = newState();
+    third.state(namespace, secondHoldTag).clear();
+    commit(third);
+    assertThat(third.getEarliestWatermarkHold(), equalTo(new Instant(15)));
+
+    OffHeapStateInternals<String> fourth = newState();
+    fourth.state(namespace, firstHoldTag).clear();
+    commit(fourth);
+    assertThat(fourth.getEarliestWatermarkHold(), equalTo(BoundedWindow.TIMESTAMP_MAX_VALUE));
+    assertThat(store.size(), equalTo(0L));
+  }
+
+  @Test
+  public void testGetEarliestWatermarkHoldBeforeCommitThrows() {
+    thrown.expect(IllegalStateException.class);
+    thrown.expectMessage("before it is committed");
+    newState().getEarliestWatermarkHold();
+  }
+}
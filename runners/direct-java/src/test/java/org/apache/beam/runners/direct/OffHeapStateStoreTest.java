@@ -0,0 +1,117 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.beam.runners.direct;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.lessThan;
+import static org.hamcrest.Matchers.nullValue;
+import static org.junit.Assert.assertArrayEquals;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** Tests for {@link OffHeapStateStore}. */
+@RunWith(JUnit4.class)
+public class OffHeapStateStoreTest {
+  @Test
+  public void testPutGetRemove() {
+    OffHeapStateStore store = new OffHeapStateStore();
+    byte[] key = "foo".getBytes(UTF_8);
+    assertThat(store.get(key), nullValue());
+
+    store.put(key, new byte[] {1, 2, 3});
+    assertArrayEquals(new byte[] {1, 2, 3}, store.get(key));
+
+    store.put(key, new byte[] {4});
+    assertArrayEquals(new byte[] {4}, store.get(key));
+    assertThat(store.size(), equalTo(1L));
+
+    store.remove(key);
+    assertThat(store.get(key), nullValue());
+    assertThat(store.size(), equalTo(0L));
+    assertThat(store.getLiveBytes(), equalTo(0L));
+  }
+
+  @Test
+  public void testEmptyKeyAndValue() {
+    OffHeapStateStore store = new OffHeapStateStore();
+    store.put(new byte[0], new byte[0]);
+    assertArrayEquals(new byte[0], store.get(new byte[0]));
+  }
+
+  @Test
+  public void testEntryLargerThanPage() {
+    OffHeapStateStore store = new OffHeapStateStore(64);
+    byte[] value = new byte[1000];
+    new Random(0).nextBytes(value);
+    store.put("foo".getBytes(UTF_8), value);
+    store.put("bar".getBytes(UTF_8), new byte[] {1});
+    assertArrayEquals(value, store.get("foo".getBytes(UTF_8)));
+
+    long allocated = store.getAllocatedBytes();
+    store.remove("foo".getBytes(UTF_8));
+    assertThat(store.getAllocatedBytes(), lessThan(allocated));
+  }
+
+  @Test
+  public void testRewrittenEntriesCompacted() {
+    OffHeapStateStore store = new OffHeapStateStore(256);
+    byte[] key = "foo".getBytes(UTF_8);
+    for (int i = 0; i < 100_000; i++) {
+      store.put(key, new byte[] {(byte) i});
+    }
+    assertArrayEquals(new byte[] {(byte) 99_999}, store.get(key));
+    // Rewriting a single key reuses a small number of pages
+    assertThat(store.getAllocatedBytes(), lessThan(16L * 1024));
+  }
+
+  @Test
+  public void testRandomOperationsMatchHashMap() {
+    for (int pageSize : new int[] {64, 256, OffHeapStateStore.DEFAULT_PAGE_SIZE}) {
+      Random random = new Random(pageSize);
+      OffHeapStateStore store = new OffHeapStateStore(pageSize);
+      Map<String, byte[]> expected = new HashMap<>();
+      for (int i = 0; i < 50_000; i++) {
+        String key = "key" + random.nextInt(5_000);
+        int operation = random.nextInt(10);
+        if (operation < 5) {
+          byte[] value = new byte[random.nextInt(random.nextInt(20) == 0 ? 2 * pageSize : 40)];
+          random.nextBytes(value);
+          store.put(key.getBytes(UTF_8), value);
+          expected.put(key, value);
+        } else if (operation < 7) {
+          store.remove(key.getBytes(UTF_8));
+          expected.remove(key);
+        } else {
+          assertArrayEquals(expected.get(key), store.get(key.getBytes(UTF_8)));
+        }
+      }
+
+      assertThat(store.size(), equalTo((long) expected.size()));
+      for (Map.Entry<String, byte[]> entry : expected.entrySet()) {
+        assertArrayEquals(entry.getValue(), store.get(entry.getKey().getBytes(UTF_8)));
+      }
+    }
+  }
+}
@@ -48,6 +48,7 @@ import java.util.NoSuchElementException;
 import java.util.Set;
 import java.util.concurrent.Executors;
 import org.apache.beam.runners.core.construction.SplittableParDo;
+import org.apache.beam.runners.direct.DirectOptions.StateBackend;
 import org.apache.beam.runners.direct.UnboundedReadDeduplicator.NeverDeduplicator;
 import org.apache.beam.runners.direct.UnboundedReadEvaluatorFactory.UnboundedSourceShard;
 import org.apache.beam.sdk.Pipeline;
@@ -444,6 +445,7 @@ public class UnboundedReadEvaluatorFactoryTest {
             DirectGraph.create(
                 emptyMap(), emptyMap(), LinkedListMultimap.create(), emptySet(), emptyMap()),
             emptySet(),
+            DirectStateBackend.create(StateBackend.IN_MEMORY),
             Executors.newCachedThreadPool());
     final UnboundedReadEvaluatorFactory factory =
         new UnboundedReadEvaluatorFactory(context, p.getOptions());
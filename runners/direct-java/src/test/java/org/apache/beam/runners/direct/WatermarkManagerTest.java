@@ -47,6 +47,7 @@ import org.apache.beam.runners.direct.WatermarkManager.Watermark;
 import org.apache.beam.runners.local.StructuralKey;
 import org.apache.beam.sdk.coders.ByteArrayCoder;
 import org.apache.beam.sdk.coders.StringUtf8Coder;
+import org.apache.beam.sdk.coders.VarIntCoder;
 import org.apache.beam.sdk.coders.VarLongCoder;
 import org.apache.beam.sdk.runners.AppliedPTransform;
 import org.apache.beam.sdk.state.TimeDomain;
@@ -1650,6 +1651,58 @@ public class WatermarkManagerTest implements Serializable {
     assertThat(fired.entrySet(), empty());
   }
 
+  @Test
+  public void inputWatermarkFiresOnlyDueTimersAcrossKeys() {
+    Watermark mockWatermark = Mockito.mock(Watermark.class);
+    AppliedPTransformInputWatermark underTest =
+        new AppliedPTransformInputWatermark(
+            "underTest", ImmutableList.of(mockWatermark), update -> {});
+
+    // Each key has one timer, and later keys have earlier output timestamps.
+    int numKeys = 100;
+    for (int i = 0; i < numKeys; i++) {
+      StructuralKey<Integer> key = StructuralKey.of(i, VarIntCoder.of());
+      TimerData timer =
+          TimerData.of(
+              "timer",
+              StateNamespaces.global(),
+              new Instant(10L * i),
+              new Instant(10L * (numKeys - i)),
+              TimeDomain.EVENT_TIME);
+      underTest.updateTimers(TimerUpdate.builder(key).setTimer(timer).build());
+    }
+    assertEquals(new Instant(10L), underTest.getEarliestTimerTimestamp());
+
+    when(mockWatermark.get()).thenReturn(new Instant(495L));
+    underTest.refresh();
+    Map<StructuralKey<?>, List<TimerData>> fired = underTest.extractFiredEventTimeTimers();
+    assertThat(fired.size(), equalTo(50));
+    for (Map.Entry<StructuralKey<?>, List<TimerData>> firedForKey : fired.entrySet()) {
+      TimerData timer = Iterables.getOnlyElement(firedForKey.getValue());
+      assertThat(timer.getTimestamp(), lessThan(new Instant(495L)));
+      // Fired timers hold the output watermark until they are completed.
+      underTest.updateTimers(
+          TimerUpdate.builder(firedForKey.getKey())
+              .withCompletedTimers(Collections.singleton(timer))
+              .build());
+    }
+    assertThat(underTest.extractFiredEventTimeTimers().entrySet(), empty());
+    // The earliest output timestamp is now that of the last timer which has not fired.
+    assertEquals(new Instant(10L), underTest.getEarliestTimerTimestamp());
+
+    when(mockWatermark.get()).thenReturn(BoundedWindow.TIMESTAMP_MAX_VALUE);
+    underTest.refresh();
+    fired = underTest.extractFiredEventTimeTimers();
+    assertThat(fired.size(), equalTo(50));
+    for (Map.Entry<StructuralKey<?>, List<TimerData>> firedForKey : fired.entrySet()) {
+      underTest.updateTimers(
+          TimerUpdate.builder(firedForKey.getKey())
+              .withCompletedTimers(firedForKey.getValue())
+              .build());
+    }
+    assertEquals(BoundedWindow.TIMESTAMP_MAX_VALUE, underTest.getEarliestTimerTimestamp());
+  }
+
   @Test
   public void timerUpdateBuilderBuildAddsAllAddedTimers() {
     TimerData set =
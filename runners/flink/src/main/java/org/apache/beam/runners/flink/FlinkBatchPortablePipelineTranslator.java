@@ -21,7 +21,10 @@ import static org.apache.beam.runners.core.construction.ExecutableStageTranslati
 import static org.apache.beam.runners.flink.translation.utils.FlinkPortableRunnerUtils.requiresTimeSortedInput;
 import static org.apache.beam.runners.fnexecution.translation.PipelineTranslatorUtils.createOutputMap;
 import static org.apache.beam.runners.fnexecution.translation.PipelineTranslatorUtils.getWindowingStrategy;
+import static org.apache.beam.runners.fnexecution.translation.PipelineTranslatorUtils.getWireCoderSetting;
 import static org.apache.beam.runners.fnexecution.translation.PipelineTranslatorUtils.instantiateCoder;
+import static org.apache.beam.runners.fnexecution.translation.PipelineTranslatorUtils.isOpaqueElement;
+import static org.apache.beam.runners.fnexecution.translation.PipelineTranslatorUtils.withOpaqueStageEdges;
 import static org.apache.beam.vendor.guava.v26_0_jre.com.google.common.base.Preconditions.checkArgument;
 
 import com.google.auto.service.AutoService;
@@ -256,16 +259,18 @@ public class FlinkBatchPortablePipelineTranslator
   @Override
   public FlinkPortablePipelineTranslator.Executor translate(
       BatchTranslationContext context, RunnerApi.Pipeline pipeline) {
+    // Keep the encoded elements of PCollections which are only passed between stages.
+    RunnerApi.Pipeline opaqueEdgesPipeline = withOpaqueStageEdges(pipeline);
     // Use a QueryablePipeline to traverse transforms topologically.
     QueryablePipeline p =
         QueryablePipeline.forTransforms(
-            pipeline.getRootTransformIdsList(), pipeline.getComponents());
+            opaqueEdgesPipeline.getRootTransformIdsList(), opaqueEdgesPipeline.getComponents());
     for (PipelineNode.PTransformNode transform : p.getTopologicallyOrderedTransforms()) {
       urnToTransformTranslator
           .getOrDefault(
               transform.getTransform().getSpec().getUrn(),
               FlinkBatchPortablePipelineTranslator::urnNotFound)
-          .translate(transform, pipeline, context);
+          .translate(transform, opaqueEdgesPipeline, context);
     }
 
     // Ensure that side effects are performed for unconsumed DataSets.
@@ -292,6 +297,15 @@ public class FlinkBatchPortablePipelineTranslator
     // TODO: Special-case single outputs to avoid multiplexing PCollections.
 
     RunnerApi.Components components = pipeline.getComponents();
+    RunnerApi.ExecutableStagePayload stagePayload;
+    try {
+      stagePayload =
+          RunnerApi.ExecutableStagePayload.parseFrom(
+              transform.getTransform().getSpec().getPayload());
+    } catch (IOException e) {
+      throw new RuntimeException(e);
+    }
+
     Map<String, String> outputs = transform.getTransform().getOutputsMap();
     // Mapping from PCollection id to coder tag id.
     BiMap<String, Integer> outputMap = createOutputMap(outputs.values());
@@ -300,14 +314,10 @@ public class FlinkBatchPortablePipelineTranslator
     // Enforce tuple tag sorting by union tag index.
     Map<String, Coder<WindowedValue<?>>> outputCoders = Maps.newHashMap();
     for (String collectionId : new TreeMap<>(outputMap.inverse()).values()) {
-      PCollectionNode collectionNode =
-          PipelineNode.pCollection(collectionId, components.getPcollectionsOrThrow(collectionId));
-      Coder<WindowedValue<?>> coder;
-      try {
-        coder = (Coder) WireCoders.instantiateRunnerWireCoder(collectionNode, components);
-      } catch (IOException e) {
-        throw new RuntimeException(e);
-      }
+      Coder<WindowedValue<?>> coder =
+          (Coder)
+              instantiateCoder(
+                  collectionId, components, getWireCoderSetting(stagePayload, collectionId));
       outputCoders.put(collectionId, coder);
       unionCoders.add(coder);
     }
@@ -315,18 +325,12 @@ public class FlinkBatchPortablePipelineTranslator
     TypeInformation<RawUnionValue> typeInformation =
         new CoderTypeInformation<>(unionCoder, context.getPipelineOptions());
 
-    RunnerApi.ExecutableStagePayload stagePayload;
-    try {
-      stagePayload =
-          RunnerApi.ExecutableStagePayload.parseFrom(
-              transform.getTransform().getSpec().getPayload());
-    } catch (IOException e) {
-      throw new RuntimeException(e);
-    }
-
     String inputPCollectionId = stagePayload.getInput();
     Coder<WindowedValue<InputT>> windowedInputCoder =
-        instantiateCoder(inputPCollectionId, components);
+        instantiateCoder(
+            inputPCollectionId,
+            components,
+            getWireCoderSetting(stagePayload, inputPCollectionId));
 
     DataSet<WindowedValue<InputT>> inputDataSet = context.getDataSetOrThrow(inputPCollectionId);
 
@@ -394,6 +398,7 @@ public class FlinkBatchPortablePipelineTranslator
           context,
           outputMap.get(collectionId),
           outputCoders.get(collectionId),
+          isOpaqueElement(stagePayload, collectionId),
           transform.getTransform().getUniqueName(),
           collectionId);
     }
@@ -568,12 +573,16 @@ public class FlinkBatchPortablePipelineTranslator
       BatchTranslationContext context,
       int unionTag,
       Coder<WindowedValue<?>> outputCoder,
+      boolean opaqueElement,
       String transformName,
       String collectionId) {
     TypeInformation<WindowedValue<?>> outputType =
         new CoderTypeInformation<>(outputCoder, context.getPipelineOptions());
     FlinkExecutableStagePruningFunction pruningFunction =
-        new FlinkExecutableStagePruningFunction(unionTag, context.getPipelineOptions());
+        opaqueElement
+            ? new FlinkExecutableStagePruningFunction(
+                unionTag, collectionId, context.getPipelineOptions())
+            : new FlinkExecutableStagePruningFunction(unionTag, context.getPipelineOptions());
     FlatMapOperator<RawUnionValue, WindowedValue<?>> pruningOperator =
         new FlatMapOperator<>(
             taggedDataset,
@@ -122,6 +122,17 @@ public interface FlinkPipelineOptions
 
   void setFinishBundleBeforeCheckpointing(boolean finishBundleBeforeCheckpointing);
 
+  @Description(
+      "If set, keeps the bundle output buffered during checkpoints and the elements waiting for side inputs of unkeyed ParDos encoded in off-heap memory. "
+          + "By default, they are kept as objects on the heap. "
+          + "Encoding them avoids garbage collection overhead and shortens checkpoints which include large buffers. "
+          + "The buffers use direct memory, which Flink limits to the task off-heap memory, so taskmanager.memory.task.off-heap.size "
+          + "must be large enough to hold the largest expected buffers of all operators in a task manager.")
+  @Default.Boolean(false)
+  Boolean getOffHeapBundleBuffer();
+
+  void setOffHeapBundleBuffer(Boolean offHeapBundleBuffer);
+
   @Description(
       "Shuts down sources which have been idle for the configured time of milliseconds. Once a source has been "
           + "shut down, checkpointing is not possible anymore. Shutting down the sources eventually leads to pipeline "
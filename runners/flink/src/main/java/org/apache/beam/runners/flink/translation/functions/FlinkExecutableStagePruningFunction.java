@@ -24,7 +24,9 @@ import org.apache.beam.sdk.transforms.join.RawUnionValue;
 import org.apache.beam.sdk.util.WindowedValue;
 import org.apache.flink.api.common.functions.RichFlatMapFunction;
 import org.apache.flink.configuration.Configuration;
+import org.apache.flink.metrics.Counter;
 import org.apache.flink.util.Collector;
+import org.checkerframework.checker.nullness.qual.Nullable;
 
 /** A Flink function that demultiplexes output from a {@link FlinkExecutableStageFunction}. */
 @SuppressWarnings({
@@ -33,15 +35,33 @@ import org.apache.flink.util.Collector;
 public class FlinkExecutableStagePruningFunction
     extends RichFlatMapFunction<RawUnionValue, WindowedValue<?>> {
 
+  /** The name of the counter of elements of an opaque PCollection which skipped decoding. */
+  public static final String ELEMENTS_SKIPPED_DECODING = "elementsSkippedDecoding";
+
   private final int unionTag;
+  private final @Nullable String opaqueCollectionId;
   private final SerializablePipelineOptions options;
 
+  private transient @Nullable Counter elementsSkippedDecoding;
+
   /**
    * Creates a {@link FlinkExecutableStagePruningFunction} that extracts elements of the given union
    * tag.
    */
   public FlinkExecutableStagePruningFunction(int unionTag, PipelineOptions pipelineOptions) {
+    this(unionTag, null, pipelineOptions);
+  }
+
+  /**
+   * Creates a {@link FlinkExecutableStagePruningFunction} that extracts elements of the given union
+   * tag, whose elements are kept encoded because the given PCollection is opaque to the runner.
+   * Counts the extracted elements in the {@link #ELEMENTS_SKIPPED_DECODING} counter of a metric
+   * group for the PCollection.
+   */
+  public FlinkExecutableStagePruningFunction(
+      int unionTag, @Nullable String opaqueCollectionId, PipelineOptions pipelineOptions) {
     this.unionTag = unionTag;
+    this.opaqueCollectionId = opaqueCollectionId;
     this.options = new SerializablePipelineOptions(pipelineOptions);
   }
 
@@ -50,11 +70,21 @@ public class FlinkExecutableStagePruningFunction
     // Initialize FileSystems for any coders which may want to use the FileSystem,
     // see https://issues.apache.org/jira/browse/BEAM-8303
     FileSystems.setDefaultPipelineOptions(options.get());
+    if (opaqueCollectionId != null) {
+      elementsSkippedDecoding =
+          getRuntimeContext()
+              .getMetricGroup()
+              .addGroup("pcollection", opaqueCollectionId)
+              .counter(ELEMENTS_SKIPPED_DECODING);
+    }
   }
 
   @Override
   public void flatMap(RawUnionValue rawUnionValue, Collector<WindowedValue<?>> collector) {
     if (rawUnionValue.getUnionTag() == unionTag) {
+      if (elementsSkippedDecoding != null) {
+        elementsSkippedDecoding.inc();
+      }
       collector.collect((WindowedValue<?>) rawUnionValue.getValue());
     }
   }
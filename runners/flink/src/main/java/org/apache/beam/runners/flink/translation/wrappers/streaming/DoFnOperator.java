@@ -33,6 +33,7 @@ import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
 import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.locks.Lock;
 import java.util.stream.Collectors;
@@ -99,6 +100,7 @@ import org.apache.flink.api.common.state.ListStateDescriptor;
 import org.apache.flink.api.common.state.MapState;
 import org.apache.flink.api.common.state.MapStateDescriptor;
 import org.apache.flink.api.common.typeutils.base.StringSerializer;
+import org.apache.flink.api.common.typeutils.base.array.BytePrimitiveArraySerializer;
 import org.apache.flink.api.java.functions.KeySelector;
 import org.apache.flink.runtime.state.InternalPriorityQueue;
 import org.apache.flink.runtime.state.KeyedStateBackend;
@@ -390,19 +392,21 @@ public class DoFnOperator<InputT, OutputT>
   public void initializeState(StateInitializationContext context) throws Exception {
     super.initializeState(context);
 
-    ListStateDescriptor<WindowedValue<InputT>> pushedBackStateDescriptor =
-        new ListStateDescriptor<>(
-            "pushed-back-elements",
-            new CoderTypeSerializer<>(windowedInputCoder, serializedOptions));
-
     if (keySelector != null) {
+      ListStateDescriptor<WindowedValue<InputT>> pushedBackStateDescriptor =
+          new ListStateDescriptor<>(
+              "pushed-back-elements",
+              new CoderTypeSerializer<>(windowedInputCoder, serializedOptions));
       pushedBackElementsHandler =
           KeyedPushedBackElementsHandler.create(
               keySelector, getKeyedStateBackend(), pushedBackStateDescriptor);
     } else {
-      ListState<WindowedValue<InputT>> listState =
-          getOperatorStateBackend().getListState(pushedBackStateDescriptor);
-      pushedBackElementsHandler = NonKeyedPushedBackElementsHandler.create(listState);
+      pushedBackElementsHandler =
+          createNonKeyedPushedBackElementsHandler(
+              "pushed-back-elements",
+              windowedInputCoder,
+              getOperatorStateBackend(),
+              serializedOptions);
     }
 
     currentInputWatermark = BoundedWindow.TIMESTAMP_MIN_VALUE.getMillis();
@@ -451,6 +455,55 @@ public class DoFnOperator<InputT, OutputT>
             output, getLockToAcquireForStateAccessDuringBundles(), getOperatorStateBackend());
   }
 
+  /**
+   * Creates a {@link PushedBackElementsHandler} that keeps its elements in operator state, encoded
+   * off-heap if {@link FlinkPipelineOptions#getOffHeapBundleBuffer()} is set. Elements restored
+   * from a checkpoint which was taken with the other setting are moved over to the new handler.
+   */
+  static <T> PushedBackElementsHandler<T> createNonKeyedPushedBackElementsHandler(
+      String stateName,
+      Coder<T> coder,
+      OperatorStateBackend operatorStateBackend,
+      SerializablePipelineOptions pipelineOptions)
+      throws Exception {
+    String encodedStateName = stateName + "-encoded";
+    Set<String> restoredStateNames = operatorStateBackend.getRegisteredStateNames();
+    if (pipelineOptions.get().as(FlinkPipelineOptions.class).getOffHeapBundleBuffer()) {
+      EncodedPushedBackElementsHandler<T> handler =
+          EncodedPushedBackElementsHandler.create(
+              coder,
+              operatorStateBackend.getListState(
+                  new ListStateDescriptor<>(
+                      encodedStateName, BytePrimitiveArraySerializer.INSTANCE)));
+      if (restoredStateNames.contains(stateName)) {
+        ListState<T> objectState =
+            operatorStateBackend.getListState(
+                new ListStateDescriptor<>(
+                    stateName, new CoderTypeSerializer<>(coder, pipelineOptions)));
+        handler.pushBackAll(objectState.get());
+        objectState.clear();
+      }
+      return handler;
+    } else {
+      NonKeyedPushedBackElementsHandler<T> handler =
+          NonKeyedPushedBackElementsHandler.create(
+              operatorStateBackend.getListState(
+                  new ListStateDescriptor<>(
+                      stateName, new CoderTypeSerializer<>(coder, pipelineOptions))));
+      if (restoredStateNames.contains(encodedStateName)) {
+        EncodedPushedBackElementsHandler<T> encodedHandler =
+            EncodedPushedBackElementsHandler.create(
+                coder,
+                operatorStateBackend.getListState(
+                    new ListStateDescriptor<>(
+                        encodedStateName, BytePrimitiveArraySerializer.INSTANCE)));
+        handler.pushBackAll(encodedHandler.getElements().collect(Collectors.toList()));
+        encodedHandler.clear();
+      }
+      return handler;
+    }
+  }
+
   /**
    * Subclasses may provide a lock to ensure that the state backend is not accessed concurrently
    * during bundle execution.
@@ -951,6 +1004,8 @@ public class DoFnOperator<InputT, OutputT>
       // in bundle execution are application errors which are not related to checkpointing.
       throw new Error("Checkpointing failed because bundle failed to finalize.", e);
     }
+    outputManager.prepareSnapshot();
+    pushedBackElementsHandler.prepareSnapshot();
 
     super.snapshotState(context);
   }
@@ -1115,6 +1170,11 @@ public class DoFnOperator<InputT, OutputT>
       this.openBuffer = false;
     }
 
+    /** Makes the buffered elements part of the checkpoint which is taken next. */
+    void prepareSnapshot() throws Exception {
+      pushedBackElementsHandler.prepareSnapshot();
+    }
+
     @Override
     public <T> void output(TupleTag<T> tag, WindowedValue<T> value) {
       if (!openBuffer) {
@@ -1267,13 +1327,9 @@ public class DoFnOperator<InputT, OutputT>
       Preconditions.checkNotNull(operatorStateBackend);
 
       TaggedKvCoder taggedKvCoder = buildTaggedKvCoder();
-      ListStateDescriptor<KV<Integer, WindowedValue<?>>> taggedOutputPushbackStateDescriptor =
-          new ListStateDescriptor<>(
-              "bundle-buffer-tag", new CoderTypeSerializer<>(taggedKvCoder, pipelineOptions));
-      ListState<KV<Integer, WindowedValue<?>>> listStateBuffer =
-          operatorStateBackend.getListState(taggedOutputPushbackStateDescriptor);
       PushedBackElementsHandler<KV<Integer, WindowedValue<?>>> pushedBackElementsHandler =
-          NonKeyedPushedBackElementsHandler.create(listStateBuffer);
+          createNonKeyedPushedBackElementsHandler(
+              "bundle-buffer-tag", taggedKvCoder, operatorStateBackend, pipelineOptions);
 
       return new BufferedOutputManager<>(
           output, mainTag, tagsToOutputTags, tagsToIds, bufferLock, pushedBackElementsHandler);
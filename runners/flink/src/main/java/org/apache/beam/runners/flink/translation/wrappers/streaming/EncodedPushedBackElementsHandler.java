@@ -0,0 +1,227 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.beam.runners.flink.translation.wrappers.streaming;
+
+import static org.apache.beam.vendor.guava.v26_0_jre.com.google.common.base.Preconditions.checkNotNull;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+import org.apache.beam.sdk.coders.Coder;
+import org.apache.flink.api.common.state.ListState;
+
+/**
+ * {@link PushedBackElementsHandler} that keeps elements encoded in off-heap memory segments instead
+ * of as objects on the heap, for use when an operation is not keyed. Elements cost one copy into
+ * the segments and add no objects for the garbage collector to trace.
+ *
+ * <p>The segments are written to Flink operator state as byte arrays by {@link #prepareSnapshot()}
+ * only, so that a checkpoint serializes a few large arrays rather than every element.
+ *
+ * <p>The segments are direct buffers, which count against the JVM's direct memory limit. Flink sets
+ * that limit from {@code taskmanager.memory.task.off-heap.size} among others. Running out of it
+ * fails with an error naming that setting rather than the bare {@link OutOfMemoryError}.
+ */
+class EncodedPushedBackElementsHandler<T> implements PushedBackElementsHandler<T> {
+
+  private static final int SEGMENT_SIZE = 32 * 1024;
+  /** Cleared segments kept for reuse, beyond which segments are left to the garbage collector. */
+  private static final int MAX_FREE_SEGMENTS = 64;
+
+  static <T> EncodedPushedBackElementsHandler<T> create(
+      Coder<T> coder, ListState<byte[]> segmentState) throws Exception {
+    EncodedPushedBackElementsHandler<T> handler =
+        new EncodedPushedBackElementsHandler<>(coder, segmentState);
+    for (byte[] segment : segmentState.get()) {
+      handler.output.write(segment);
+    }
+    return handler;
+  }
+
+  private final Coder<T> coder;
+  private final ListState<byte[]> segmentState;
+  /** Segments holding the encoded elements, of which all but the last one are full. */
+  private final List<ByteBuffer> segments;
+
+  private final Deque<ByteBuffer> freeSegments;
+  private final OutputStream output;
+
+  private EncodedPushedBackElementsHandler(Coder<T> coder, ListState<byte[]> segmentState) {
+    this.coder = checkNotNull(coder);
+    this.segmentState = checkNotNull(segmentState);
+    this.segments = new ArrayList<>();
+    this.freeSegments = new ArrayDeque<>();
+    this.output = new SegmentsOutputStream();
+  }
+
+  @Override
+  public Stream<T> getElements() {
+    SegmentsInputStream input = new SegmentsInputStream(new ArrayList<>(segments).iterator());
+    Iterator<T> elements =
+        new Iterator<T>() {
+          @Override
+          public boolean hasNext() {
+            return input.hasRemaining();
+          }
+
+          @Override
+          public T next() {
+            if (!hasNext()) {
+              throw new NoSuchElementException();
+            }
+            try {
+              return coder.decode(input);
+            } catch (IOException e) {
+              throw new UncheckedIOException("Couldn't decode pushed back element.", e);
+            }
+          }
+        };
+    return StreamSupport.stream(
+        Spliterators.spliteratorUnknownSize(elements, Spliterator.ORDERED), false);
+  }
+
+  @Override
+  public void clear() {
+    for (ByteBuffer segment : segments) {
+      if (freeSegments.size() < MAX_FREE_SEGMENTS) {
+        segment.clear();
+        freeSegments.push(segment);
+      }
+    }
+    segments.clear();
+    segmentState.clear();
+  }
+
+  @Override
+  public void pushBack(T element) throws Exception {
+    coder.encode(element, output);
+  }
+
+  @Override
+  public void pushBackAll(Iterable<T> elements) throws Exception {
+    for (T e : elements) {
+      pushBack(e);
+    }
+  }
+
+  @Override
+  public void prepareSnapshot() throws Exception {
+    List<byte[]> encodedSegments = new ArrayList<>(segments.size());
+    for (ByteBuffer segment : segments) {
+      ByteBuffer written = (ByteBuffer) segment.duplicate().flip();
+      byte[] bytes = new byte[written.remaining()];
+      written.get(bytes);
+      encodedSegments.add(bytes);
+    }
+    segmentState.update(encodedSegments);
+  }
+
+  /** Appends to the last segment, adding a segment whenever it is full. */
+  private class SegmentsOutputStream extends OutputStream {
+
+    @Override
+    public void write(int b) {
+      currentSegment().put((byte) b);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) {
+      while (len > 0) {
+        ByteBuffer segment = currentSegment();
+        int written = Math.min(len, segment.remaining());
+        segment.put(b, off, written);
+        off += written;
+        len -= written;
+      }
+    }
+
+    private ByteBuffer currentSegment() {
+      if (segments.isEmpty() || !segments.get(segments.size() - 1).hasRemaining()) {
+        segments.add(freeSegments.isEmpty() ? allocateSegment() : freeSegments.pop());
+      }
+      return segments.get(segments.size() - 1);
+    }
+
+    private ByteBuffer allocateSegment() {
+      try {
+        return ByteBuffer.allocateDirect(SEGMENT_SIZE);
+      } catch (OutOfMemoryError e) {
+        OutOfMemoryError error =
+            new OutOfMemoryError(
+                String.format(
+                    "Couldn't allocate off-heap memory to buffer elements beyond %d bytes. "
+                        + "Increase taskmanager.memory.task.off-heap.size or disable "
+                        + "--offHeapBundleBuffer.",
+                    (long) segments.size() * SEGMENT_SIZE));
+        error.initCause(e);
+        throw error;
+      }
+    }
+  }
+
+  /** Reads the bytes written to the given segments so far. */
+  private static class SegmentsInputStream extends InputStream {
+    private final Iterator<ByteBuffer> remainingSegments;
+    private ByteBuffer segment;
+
+    SegmentsInputStream(Iterator<ByteBuffer> remainingSegments) {
+      this.remainingSegments = remainingSegments;
+      this.segment = ByteBuffer.allocate(0);
+    }
+
+    boolean hasRemaining() {
+      while (!segment.hasRemaining()) {
+        if (!remainingSegments.hasNext()) {
+          return false;
+        }
+        segment = (ByteBuffer) remainingSegments.next().duplicate().flip();
+      }
+      return true;
+    }
+
+    @Override
+    public int read() {
+      return hasRemaining() ? segment.get() & 0xFF : -1;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) {
+      if (len == 0) {
+        return 0;
+      }
+      if (!hasRemaining()) {
+        return -1;
+      }
+      int read = Math.min(len, segment.remaining());
+      segment.get(b, off, read);
+      return read;
+    }
+  }
+}
@@ -39,4 +39,10 @@ interface PushedBackElementsHandler<T> {
 
   /** Adds all the given element to the pushed back elements. */
   void pushBackAll(Iterable<T> elements) throws Exception;
+
+  /**
+   * Writes pushed back elements which are kept outside of Flink state to Flink state, so that they
+   * are part of the checkpoint which is taken next.
+   */
+  default void prepareSnapshot() throws Exception {}
 }
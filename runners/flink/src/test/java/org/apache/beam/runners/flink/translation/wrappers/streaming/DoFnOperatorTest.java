@@ -1663,6 +1663,109 @@ public class DoFnOperatorTest {
             WindowedValue.valueInGlobalWindow("finishBundle")));
   }
 
+  @Test
+  public void testOffHeapBundleBuffer() throws Exception {
+    // Enough output to span several segments of the off-heap buffer
+    int numFinishBundleOutputs = 10_000;
+    List<WindowedValue<String>> finishBundleOutputs = new ArrayList<>();
+    for (int i = 0; i < numFinishBundleOutputs; i++) {
+      finishBundleOutputs.add(WindowedValue.valueInGlobalWindow("finishBundle" + i));
+    }
+
+    WindowedValue.ValueOnlyWindowedValueCoder<String> windowedValueCoder =
+        WindowedValue.getValueOnlyCoder(StringUtf8Coder.of());
+    TupleTag<String> outputTag = new TupleTag<>("main-output");
+    FlinkPipelineOptions options = FlinkPipelineOptions.defaults();
+    options.setOffHeapBundleBuffer(true);
+
+    IdentityDoFn<String> doFn =
+        new IdentityDoFn<String>() {
+          @FinishBundle
+          public void finishBundle(FinishBundleContext context) {
+            for (int i = 0; i < numFinishBundleOutputs; i++) {
+              context.output(
+                  "finishBundle" + i, BoundedWindow.TIMESTAMP_MIN_VALUE, GlobalWindow.INSTANCE);
+            }
+          }
+        };
+
+    DoFnOperator<String, String> doFnOperator =
+        new DoFnOperator<>(
+            doFn,
+            "stepName",
+            windowedValueCoder,
+            Collections.emptyMap(),
+            outputTag,
+            Collections.emptyList(),
+            new DoFnOperator.MultiOutputOutputManagerFactory<>(
+                outputTag,
+                WindowedValue.getFullCoder(StringUtf8Coder.of(), GlobalWindow.Coder.INSTANCE),
+                new SerializablePipelineOptions(options)),
+            WindowingStrategy.globalDefault(),
+            new HashMap<>(), /* side-input mapping */
+            Collections.emptyList(), /* side inputs */
+            options,
+            null,
+            null,
+            DoFnSchemaInformation.create(),
+            Collections.emptyMap());
+
+    OneInputStreamOperatorTestHarness<WindowedValue<String>, WindowedValue<String>> testHarness =
+        new OneInputStreamOperatorTestHarness<>(doFnOperator);
+    testHarness.open();
+    testHarness.processElement(new StreamRecord<>(WindowedValue.valueInGlobalWindow("a")));
+
+    // Finish bundle elements will be buffered off-heap as part of finishing a bundle in snapshot()
+    OperatorSubtaskState snapshot = testHarness.snapshot(0, 0);
+    PushedBackElementsHandler<KV<Integer, WindowedValue<?>>> pushedBackElementsHandler =
+        doFnOperator.outputManager.pushedBackElementsHandler;
+    assertThat(pushedBackElementsHandler, instanceOf(EncodedPushedBackElementsHandler.class));
+    assertEquals(
+        finishBundleOutputs,
+        pushedBackElementsHandler.getElements().map(KV::getValue).collect(Collectors.toList()));
+    testHarness.close();
+
+    // Restoring without the option moves the encoded elements back to heap state
+    FlinkPipelineOptions newOptions = FlinkPipelineOptions.defaults();
+    DoFnOperator<String, String> newDoFnOperator =
+        new DoFnOperator<>(
+            doFn,
+            "stepName",
+            windowedValueCoder,
+            Collections.emptyMap(),
+            outputTag,
+            Collections.emptyList(),
+            new DoFnOperator.MultiOutputOutputManagerFactory<>(
+                outputTag,
+                WindowedValue.getFullCoder(StringUtf8Coder.of(), GlobalWindow.Coder.INSTANCE),
+                new SerializablePipelineOptions(newOptions)),
+            WindowingStrategy.globalDefault(),
+            new HashMap<>(), /* side-input mapping */
+            Collections.emptyList(), /* side inputs */
+            newOptions,
+            null,
+            null,
+            DoFnSchemaInformation.create(),
+            Collections.emptyMap());
+
+    OneInputStreamOperatorTestHarness<WindowedValue<String>, WindowedValue<String>> newHarness =
+        new OneInputStreamOperatorTestHarness<>(newDoFnOperator);
+    newHarness.initializeState(snapshot);
+    newHarness.open();
+    assertThat(
+        newDoFnOperator.outputManager.pushedBackElementsHandler,
+        instanceOf(NonKeyedPushedBackElementsHandler.class));
+
+    // startBundle will output the buffered elements.
+    newHarness.processElement(new StreamRecord<>(WindowedValue.valueInGlobalWindow("b")));
+    List<WindowedValue<String>> expectedOutput = new ArrayList<>(finishBundleOutputs);
+    expectedOutput.add(WindowedValue.valueInGlobalWindow("b"));
+    assertEquals(
+        expectedOutput,
+        ImmutableList.copyOf(stripStreamRecordFromWindowedValue(newHarness.getOutput())));
+    newHarness.close();
+  }
+
   @Test
   public void testBundleKeyed() throws Exception {
 
@@ -220,6 +220,32 @@ public interface DataflowPipelineDebugOptions extends ExperimentalOptions, Pipel
 
   void setWorkerCacheMb(Integer value);
 
+  /**
+   * The size of the worker's on-disk state cache, in megabytes.
+   *
+   * <p>State evicted from the in-memory cache of streaming jobs is demoted to this cache and
+   * promoted back when it is next accessed, instead of being read again from the streaming
+   * backend. The cache is disabled if this is zero.
+   */
+  @Description(
+      "The size of the worker's on-disk state cache for streaming jobs, in megabytes. State "
+          + "evicted from the in-memory cache is kept in this cache. Disabled if zero.")
+  @Default.Integer(0)
+  Integer getWorkerDiskCacheMb();
+
+  void setWorkerDiskCacheMb(Integer value);
+
+  /**
+   * The directory the worker's on-disk state cache keeps its files in. Defaults to the temporary
+   * directory.
+   */
+  @Description(
+      "The directory the worker's on-disk state cache keeps its files in. Defaults to the "
+          + "temporary directory.")
+  String getWorkerDiskCacheDirectory();
+
+  void setWorkerDiskCacheDirectory(String value);
+
   /**
    * The amount of time before UnboundedReaders are considered idle and closed during streaming
    * execution.
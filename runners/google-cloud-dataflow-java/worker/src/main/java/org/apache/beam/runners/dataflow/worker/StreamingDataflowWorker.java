@@ -610,7 +610,11 @@ public class StreamingDataflowWorker {
       boolean publishCounters,
       HotKeyLogger hotKeyLogger)
       throws IOException {
-    this.stateCache = new WindmillStateCache(options.getWorkerCacheMb());
+    this.stateCache =
+        new WindmillStateCache(
+            options.getWorkerCacheMb(),
+            options.getWorkerDiskCacheMb(),
+            options.getWorkerDiskCacheDirectory());
     this.readerCache =
         new ReaderCache(
             Duration.standardSeconds(options.getReaderCacheTimeoutSec()),
@@ -20,7 +20,9 @@ package org.apache.beam.runners.dataflow.worker;
 import com.google.common.base.Preconditions;
 import java.io.IOException;
 import java.io.PrintWriter;
+import java.nio.file.Paths;
 import java.util.HashMap;
+import java.util.Map;
 import java.util.Objects;
 import java.util.concurrent.ConcurrentMap;
 import java.util.function.BiConsumer;
@@ -34,10 +36,14 @@ import org.apache.beam.runners.dataflow.worker.status.StatusDataProvider;
 import org.apache.beam.sdk.state.State;
 import org.apache.beam.sdk.util.Weighted;
 import org.apache.beam.vendor.grpc.v1p36p0.com.google.protobuf.ByteString;
+import org.apache.beam.vendor.grpc.v1p36p0.com.google.protobuf.CodedInputStream;
+import org.apache.beam.vendor.grpc.v1p36p0.com.google.protobuf.CodedOutputStream;
 import org.apache.beam.vendor.guava.v26_0_jre.com.google.common.base.Equivalence;
 import org.apache.beam.vendor.guava.v26_0_jre.com.google.common.cache.Cache;
 import org.apache.beam.vendor.guava.v26_0_jre.com.google.common.cache.CacheBuilder;
 import org.apache.beam.vendor.guava.v26_0_jre.com.google.common.cache.CacheStats;
+import org.apache.beam.vendor.guava.v26_0_jre.com.google.common.cache.RemovalCause;
+import org.apache.beam.vendor.guava.v26_0_jre.com.google.common.cache.RemovalNotification;
 import org.apache.beam.vendor.guava.v26_0_jre.com.google.common.cache.Weigher;
 import org.apache.beam.vendor.guava.v26_0_jre.com.google.common.collect.MapMaker;
 import org.checkerframework.checker.nullness.qual.Nullable;
@@ -50,6 +56,12 @@ import org.checkerframework.checker.nullness.qual.Nullable;
  * * processing key * state_family * namespace) by a single thread at a time. {@link
  * StreamingDataflowWorker} ensures that a single computation * processing key is executing on one
  * thread at a time, so this is safe.
+ *
+ * <p>The cache optionally has a second tier on local disk. Entries evicted from the heap tier are
+ * demoted to the disk tier, encoding the states that implement {@link DemotableState}, and are
+ * promoted back to the heap tier on their next access. The states are decoded when they are next
+ * bound, as only then their coders are known. The disk tier has its own size limit, see {@link
+ * WindmillStateCacheDiskTier}.
  */
 public class WindmillStateCache implements StatusDataProvider {
   // Convert Megabytes to bytes
@@ -71,17 +83,103 @@ public class WindmillStateCache implements StatusDataProvider {
   private final ConcurrentMap<WindmillComputationKey, ForKey> keyIndex =
       new MapMaker().weakValues().concurrencyLevel(4).makeMap();
   private final long workerCacheBytes; // Copy workerCacheMb and convert to bytes.
+  private final @Nullable WindmillStateCacheDiskTier<StateId> diskTier;
 
   public WindmillStateCache(long workerCacheMb) {
+    this(workerCacheMb, 0, null);
+  }
+
+  /**
+   * Creates a cache with a heap tier of {@code workerCacheMb} and a disk tier of {@code
+   * workerDiskCacheMb}, whose segment files are kept under {@code workerDiskCacheDirectory} or the
+   * temporary directory if it is {@code null}. The disk tier is disabled if {@code
+   * workerDiskCacheMb} is zero.
+   */
+  public WindmillStateCache(
+      long workerCacheMb, long workerDiskCacheMb, @Nullable String workerDiskCacheDirectory) {
     final Weigher<Weighted, Weighted> weigher = Weighers.weightedKeysAndValues();
     workerCacheBytes = workerCacheMb * MEGABYTES;
-    stateCache =
+    CacheBuilder<Weighted, Weighted> cacheBuilder =
         CacheBuilder.newBuilder()
             .maximumWeight(workerCacheBytes)
             .recordStats()
             .weigher(weigher)
-            .concurrencyLevel(4)
-            .build();
+            .concurrencyLevel(4);
+    if (workerDiskCacheMb > 0) {
+      WindmillStateCacheDiskTier<StateId> diskTier =
+          new WindmillStateCacheDiskTier<>(
+              Paths.get(
+                  workerDiskCacheDirectory != null
+                      ? workerDiskCacheDirectory
+                      : System.getProperty("java.io.tmpdir")),
+              workerDiskCacheMb * MEGABYTES);
+      this.diskTier = diskTier;
+      stateCache =
+          cacheBuilder
+              .<StateId, StateCacheEntry>removalListener(
+                  notification -> demote(diskTier, notification))
+              .build();
+    } else {
+      diskTier = null;
+      stateCache = cacheBuilder.build();
+    }
+  }
+
+  /**
+   * State which can be kept encoded in the disk tier of the cache. The binder of the state decodes
+   * the encoding returned by {@link ForKeyAndFamily#removeDemoted} when the state is next bound.
+   */
+  interface DemotableState {
+    /**
+     * Returns the encoding of the known contents of this state, or {@code null} if its contents
+     * are not known and it should not be demoted.
+     */
+    @Nullable
+    ByteString encodeForDemotion() throws IOException;
+  }
+
+  // Demotes entries evicted from the heap tier to the disk tier. Entries removed from the heap tier
+  // for any other reason were replaced by a newer entry for the same id.
+  private static void demote(
+      WindmillStateCacheDiskTier<StateId> diskTier,
+      RemovalNotification<StateId, StateCacheEntry> notification) {
+    StateId id = notification.getKey();
+    StateCacheEntry entry = notification.getValue();
+    if (id == null || entry == null || notification.getCause() != RemovalCause.SIZE) {
+      return;
+    }
+    @Nullable ByteString encoded;
+    try {
+      encoded = entry.encodeDemoted();
+    } catch (IOException | RuntimeException e) {
+      // The entry may still be used by a work item for its key which is concurrently modifying it.
+      // Any modification will be put in the heap tier once the work item completes.
+      encoded = null;
+    }
+    if (encoded == null) {
+      // Drop any older encoding of the entry so that it is not promoted later.
+      diskTier.invalidate(id);
+    } else {
+      diskTier.put(id, encoded);
+    }
+  }
+
+  // Looks up the entry for the given id in the heap tier, promoting it from the disk tier if it was
+  // demoted.
+  private @Nullable StateCacheEntry lookup(StateId id) {
+    @Nullable StateCacheEntry entry = stateCache.getIfPresent(id);
+    WindmillStateCacheDiskTier<StateId> diskTier = this.diskTier;
+    if (entry == null && diskTier != null) {
+      @Nullable ByteString encoded = diskTier.remove(id);
+      if (encoded != null) {
+        try {
+          entry = StateCacheEntry.decodeDemoted(encoded);
+        } catch (IOException e) {
+          throw new RuntimeException(e);
+        }
+      }
+    }
+    return entry;
   }
 
   private static class EntryStats {
@@ -119,6 +217,12 @@ public class WindmillStateCache implements StatusDataProvider {
     return stateCache.stats();
   }
 
+  /** Returns the disk tier of the cache, or {@code null} if it is disabled. */
+  @Nullable
+  WindmillStateCacheDiskTier<?> getDiskTier() {
+    return diskTier;
+  }
+
   /** Per-computation view of the state cache. */
   public class ForComputation {
 
@@ -216,16 +320,26 @@ public class WindmillStateCache implements StatusDataProvider {
       StateId id = new StateId(forKey, stateFamily, namespace);
       @SuppressWarnings("nullness") // Unsure how to annotate lambda return allowing null.
       @Nullable
-      StateCacheEntry entry = localCache.computeIfAbsent(id, key -> stateCache.getIfPresent(key));
+      StateCacheEntry entry = localCache.computeIfAbsent(id, key -> lookup(key));
       return entry == null ? null : entry.get(namespace, address);
     }
 
+    /**
+     * Removes and returns the encoding of the {@link DemotableState} at {@code address} if its
+     * entry was promoted from the disk tier and the state has not been put since, or returns {@code
+     * null} otherwise. Must be called after {@link #get} returned {@code null} for the state.
+     */
+    public @Nullable ByteString removeDemoted(StateNamespace namespace, StateTag<?> address) {
+      @Nullable StateCacheEntry entry = localCache.get(new StateId(forKey, stateFamily, namespace));
+      return entry == null ? null : entry.removeDemoted(namespace, address);
+    }
+
     public <T extends State> void put(
         StateNamespace namespace, StateTag<T> address, T value, long weight) {
       StateId id = new StateId(forKey, stateFamily, namespace);
       @Nullable StateCacheEntry entry = localCache.get(id);
       if (entry == null) {
-        entry = stateCache.getIfPresent(id);
+        entry = lookup(id);
         if (entry == null) {
           entry = new StateCacheEntry();
         }
@@ -290,6 +404,9 @@ public class WindmillStateCache implements StatusDataProvider {
   /** Entry in the state cache that stores a map of values. */
   private static class StateCacheEntry implements Weighted {
     private final HashMap<NamespacedTag<?>, WeightedValue<?>> values;
+    // The encodings of the values of an entry promoted from the disk tier which were not bound
+    // since, keyed by demotionKey.
+    private @Nullable HashMap<String, ByteString> demotedValues;
     private long weight;
 
     public StateCacheEntry() {
@@ -307,6 +424,8 @@ public class WindmillStateCache implements StatusDataProvider {
 
     public <T extends State> void put(
         StateNamespace namespace, StateTag<T> tag, T value, long weight) {
+      // The value supersedes any encoding of it that was promoted from the disk tier.
+      removeDemoted(namespace, tag);
       values.compute(
           new NamespacedTag<>(namespace, tag),
           (t, v) -> {
@@ -325,6 +444,76 @@ public class WindmillStateCache implements StatusDataProvider {
           });
     }
 
+    public @Nullable ByteString removeDemoted(StateNamespace namespace, StateTag<?> tag) {
+      HashMap<String, ByteString> demotedValues = this.demotedValues;
+      if (demotedValues == null) {
+        return null;
+      }
+      String key = demotionKey(namespace, tag.getId());
+      @Nullable ByteString encoded = demotedValues.remove(key);
+      if (encoded != null) {
+        this.weight -= demotedWeight(key, encoded);
+      }
+      return encoded;
+    }
+
+    /**
+     * Returns the encodings of the demotable values of this entry, or {@code null} if it has none.
+     */
+    @Nullable
+    ByteString encodeDemoted() throws IOException {
+      HashMap<String, ByteString> encodedValues = new HashMap<>();
+      if (demotedValues != null) {
+        encodedValues.putAll(demotedValues);
+      }
+      for (Map.Entry<NamespacedTag<?>, WeightedValue<?>> value : values.entrySet()) {
+        if (value.getValue().value instanceof DemotableState) {
+          @Nullable
+          ByteString encoded = ((DemotableState) value.getValue().value).encodeForDemotion();
+          if (encoded != null) {
+            encodedValues.put(value.getKey().demotionKey(), encoded);
+          }
+        }
+      }
+      if (encodedValues.isEmpty()) {
+        return null;
+      }
+
+      ByteString.Output stream = ByteString.newOutput();
+      CodedOutputStream output = CodedOutputStream.newInstance(stream);
+      output.writeUInt32NoTag(encodedValues.size());
+      for (Map.Entry<String, ByteString> encodedValue : encodedValues.entrySet()) {
+        output.writeStringNoTag(encodedValue.getKey());
+        output.writeBytesNoTag(encodedValue.getValue());
+      }
+      output.flush();
+      return stream.toByteString();
+    }
+
+    /** Returns an entry holding the encodings returned by {@link #encodeDemoted}. */
+    static StateCacheEntry decodeDemoted(ByteString encoded) throws IOException {
+      CodedInputStream input = encoded.newCodedInput();
+      int size = input.readUInt32();
+      HashMap<String, ByteString> demotedValues = new HashMap<>(size * 2);
+      StateCacheEntry entry = new StateCacheEntry();
+      for (int i = 0; i < size; i++) {
+        String key = input.readString();
+        ByteString value = input.readBytes();
+        demotedValues.put(key, value);
+        entry.weight += demotedWeight(key, value);
+      }
+      entry.demotedValues = demotedValues;
+      return entry;
+    }
+
+    private static String demotionKey(StateNamespace namespace, String tagId) {
+      return namespace.stringKey() + "+" + tagId;
+    }
+
+    private static long demotedWeight(String key, ByteString encoded) {
+      return key.length() + encoded.size() + HASH_MAP_ENTRY_OVERHEAD;
+    }
+
     @Override
     public long getWeight() {
       return weight + PER_CACHE_ENTRY_OVERHEAD;
@@ -337,10 +526,16 @@ public class WindmillStateCache implements StatusDataProvider {
 
       private final StateNamespace namespace;
       private final Equivalence.Wrapper<StateTag<T>> tag;
+      private final String tagId;
 
       NamespacedTag(StateNamespace namespace, StateTag<T> tag) {
         this.namespace = namespace;
         this.tag = StateTags.ID_EQUIVALENCE.wrap(tag);
+        this.tagId = tag.getId();
+      }
+
+      String demotionKey() {
+        return StateCacheEntry.demotionKey(namespace, tagId);
       }
 
       @Override
@@ -388,6 +583,29 @@ public class WindmillStateCache implements StatusDataProvider {
     response.println("<td>" + getMaxWeight() / MEGABYTES + "MB</td>");
     response.println("<td>" + keyIndex.size() + "</td>");
     response.println("</tr></table><br>");
+
+    WindmillStateCacheDiskTier<StateId> diskTier = this.diskTier;
+    if (diskTier != null) {
+      // The disk tier is only consulted on misses of the heap tier, so its hit ratio is that of
+      // the heap tier misses.
+      response.println("Disk Tier Stats: <br><table>");
+      response.println(
+          "<tr><th>Hit Ratio</th><th>Overall Hit Ratio</th><th>Demotions</th><th>Evictions</th>"
+              + "<th>Entries</th><th>Live Size</th><th>Allocated Size</th><th>Max Size</th>"
+              + "</tr><tr>");
+      long requestCount = cacheStats.requestCount();
+      long hitCount = cacheStats.hitCount() + diskTier.getHitCount();
+      response.println("<td>" + diskTier.getHitRate() + "</td>");
+      response.println(
+          "<td>" + (requestCount == 0 ? 1.0 : (double) hitCount / requestCount) + "</td>");
+      response.println("<td>" + diskTier.getDemotionCount() + "</td>");
+      response.println("<td>" + diskTier.getEvictionCount() + "</td>");
+      response.println("<td>" + diskTier.size() + "</td>");
+      response.println("<td>" + diskTier.getLiveBytes() / MEGABYTES + "MB</td>");
+      response.println("<td>" + diskTier.getAllocatedBytes() / MEGABYTES + "MB</td>");
+      response.println("<td>" + diskTier.getMaxBytes() / MEGABYTES + "MB</td>");
+      response.println("</tr></table><br>");
+    }
   }
 
   public BaseStatusServlet statusServlet() {
@@ -0,0 +1,300 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.beam.runners.dataflow.worker;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryIteratorException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import javax.annotation.concurrent.GuardedBy;
+import javax.annotation.concurrent.ThreadSafe;
+import org.apache.beam.vendor.grpc.v1p36p0.com.google.protobuf.ByteString;
+import org.apache.beam.vendor.guava.v26_0_jre.com.google.common.annotations.VisibleForTesting;
+import org.checkerframework.checker.nullness.qual.Nullable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The disk tier of the {@link WindmillStateCache}, holding encoded entries demoted from the heap
+ * tier until they are promoted back or dropped.
+ *
+ * <p>Entries are appended to memory mapped segment files of a fixed size. Once the size limit is
+ * reached the oldest segment is dropped with all of the entries it holds, which approximates least
+ * recently demoted eviction. Entries which are promoted or replaced leave a hole in their segment
+ * that is reclaimed when the segment is dropped. The index from keys to the location of their
+ * entry is kept on the heap.
+ */
+@ThreadSafe
+class WindmillStateCacheDiskTier<K> {
+  private static final Logger LOG = LoggerFactory.getLogger(WindmillStateCacheDiskTier.class);
+
+  // The largest size of a segment file.
+  static final long MAX_SEGMENT_BYTES = 64L * 1024 * 1024;
+  // The smallest number of segments the size limit is divided into, so that dropping a segment
+  // does not drop most of the tier.
+  private static final int MIN_SEGMENTS = 4;
+
+  private final Path parentDirectory;
+  private final long maxBytes;
+  private final int segmentBytes;
+
+  @GuardedBy("this")
+  private @Nullable Path directory;
+
+  // Oldest segment first.
+  @GuardedBy("this")
+  private final ArrayDeque<Segment<K>> segments = new ArrayDeque<>();
+
+  @GuardedBy("this")
+  private final HashMap<K, Location<K>> index = new HashMap<>();
+
+  @GuardedBy("this")
+  private long liveBytes;
+
+  @GuardedBy("this")
+  private long hitCount;
+
+  @GuardedBy("this")
+  private long missCount;
+
+  @GuardedBy("this")
+  private long demotionCount;
+
+  @GuardedBy("this")
+  private long evictionCount;
+
+  /**
+   * Creates a tier holding at most {@code maxBytes} of segment files in a new directory under
+   * {@code parentDirectory}. The directory and its segments are created when first needed.
+   */
+  WindmillStateCacheDiskTier(Path parentDirectory, long maxBytes) {
+    this.parentDirectory = parentDirectory;
+    this.maxBytes = maxBytes;
+    this.segmentBytes = (int) Math.max(1, Math.min(MAX_SEGMENT_BYTES, maxBytes / MIN_SEGMENTS));
+  }
+
+  /**
+   * Stores the encoded entry for {@code key}, replacing any previous entry. Entries larger than a
+   * segment, or which cannot be written, are not stored.
+   */
+  synchronized void put(K key, ByteString value) {
+    invalidate(key);
+    if (value.size() > segmentBytes) {
+      return;
+    }
+    Segment<K> segment = segments.peekLast();
+    try {
+      if (segment == null || segment.remaining() < value.size()) {
+        segment = addSegment();
+      }
+    } catch (IOException e) {
+      LOG.warn("Unable to create a segment file of the state cache in {}", parentDirectory, e);
+      return;
+    }
+    int offset = segment.append(key, value);
+    index.put(key, new Location<>(segment, offset, value.size()));
+    liveBytes += value.size();
+    demotionCount++;
+  }
+
+  /** Removes and returns the entry for {@code key}, or returns {@code null} if there is none. */
+  synchronized @Nullable ByteString remove(K key) {
+    Location<K> location = index.remove(key);
+    if (location == null) {
+      missCount++;
+      return null;
+    }
+    hitCount++;
+    liveBytes -= location.length;
+    ByteBuffer buffer = location.segment.buffer.duplicate();
+    buffer.position(location.offset);
+    buffer.limit(location.offset + location.length);
+    return ByteString.copyFrom(buffer);
+  }
+
+  /** Removes the entry for {@code key}, if there is one. */
+  synchronized void invalidate(K key) {
+    Location<K> location = index.remove(key);
+    if (location != null) {
+      liveBytes -= location.length;
+    }
+  }
+
+  @GuardedBy("this")
+  private Segment<K> addSegment() throws IOException {
+    while (!segments.isEmpty() && (segments.size() + 1) * (long) segmentBytes > maxBytes) {
+      dropSegment(segments.removeFirst());
+    }
+    Path directory = this.directory;
+    if (directory == null) {
+      Files.createDirectories(parentDirectory);
+      directory = Files.createTempDirectory(parentDirectory, "windmill-state-cache");
+      // File#deleteOnExit can't delete a directory which still holds segment files, and would
+      // retain the path of every segment ever created.
+      Path createdDirectory = directory;
+      Runtime.getRuntime()
+          .addShutdownHook(
+              new Thread(
+                  () -> deleteDirectory(createdDirectory), "windmill-state-cache-cleanup"));
+      this.directory = directory;
+    }
+    Path path = Files.createTempFile(directory, "segment", "");
+    Segment<K> segment = new Segment<>(path, segmentBytes);
+    segments.addLast(segment);
+    return segment;
+  }
+
+  @GuardedBy("this")
+  private void dropSegment(Segment<K> segment) {
+    for (K key : segment.keys) {
+      Location<K> location = index.get(key);
+      // Keys whose entry was replaced since point at a later segment.
+      if (location != null && location.segment == segment) {
+        index.remove(key);
+        liveBytes -= location.length;
+        evictionCount++;
+      }
+    }
+    segment.close();
+  }
+
+  /** Deletes the segment files within {@code directory} and the directory itself. */
+  @VisibleForTesting
+  static void deleteDirectory(Path directory) {
+    try (DirectoryStream<Path> files = Files.newDirectoryStream(directory)) {
+      for (Path file : files) {
+        Files.deleteIfExists(file);
+      }
+      Files.deleteIfExists(directory);
+    } catch (NoSuchFileException e) {
+      // Already deleted.
+    } catch (IOException | DirectoryIteratorException e) {
+      LOG.warn("Unable to delete the state cache directory {}", directory, e);
+    }
+  }
+
+  /** Drops all entries and deletes the segment files. */
+  synchronized void clear() {
+    while (!segments.isEmpty()) {
+      dropSegment(segments.removeFirst());
+    }
+  }
+
+  synchronized long size() {
+    return index.size();
+  }
+
+  /** Returns the total size of the entries currently held. */
+  synchronized long getLiveBytes() {
+    return liveBytes;
+  }
+
+  /** Returns the total size of the segment files. */
+  synchronized long getAllocatedBytes() {
+    return segments.size() * (long) segmentBytes;
+  }
+
+  long getMaxBytes() {
+    return maxBytes;
+  }
+
+  synchronized long getHitCount() {
+    return hitCount;
+  }
+
+  synchronized long getMissCount() {
+    return missCount;
+  }
+
+  /** Returns the ratio of promotions which found their entry, or 1 if there were none. */
+  synchronized double getHitRate() {
+    long requestCount = hitCount + missCount;
+    return requestCount == 0 ? 1.0 : (double) hitCount / requestCount;
+  }
+
+  /** Returns the number of entries which were stored. */
+  synchronized long getDemotionCount() {
+    return demotionCount;
+  }
+
+  /** Returns the number of entries which were dropped with their segment. */
+  synchronized long getEvictionCount() {
+    return evictionCount;
+  }
+
+  /** A segment file, mapped into memory and filled sequentially. */
+  private static class Segment<K> {
+    private final Path path;
+    private final MappedByteBuffer buffer;
+    // The keys of the entries appended to this segment, some of which may have been replaced.
+    private final List<K> keys = new ArrayList<>();
+
+    Segment(Path path, int segmentBytes) throws IOException {
+      this.path = path;
+      try (FileChannel channel =
+          FileChannel.open(
+              path, StandardOpenOption.READ, StandardOpenOption.WRITE, StandardOpenOption.SPARSE)) {
+        // The mapping remains valid after the channel is closed.
+        this.buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, segmentBytes);
+      }
+    }
+
+    int remaining() {
+      return buffer.remaining();
+    }
+
+    int append(K key, ByteString value) {
+      int offset = buffer.position();
+      value.copyTo(buffer);
+      keys.add(key);
+      return offset;
+    }
+
+    void close() {
+      // The memory of the mapping is released once the buffer is garbage collected.
+      try {
+        Files.deleteIfExists(path);
+      } catch (IOException e) {
+        LOG.warn("Unable to delete segment file {} of the state cache", path, e);
+      }
+    }
+  }
+
+  /** The location of an entry within a segment. */
+  private static class Location<K> {
+    private final Segment<K> segment;
+    private final int offset;
+    private final int length;
+
+    Location(Segment<K> segment, int offset, int length) {
+      this.segment = segment;
+      this.offset = offset;
+      this.length = length;
+    }
+  }
+}
@@ -98,6 +98,7 @@ import org.apache.beam.vendor.guava.v26_0_jre.com.google.common.collect.Range;
 import org.apache.beam.vendor.guava.v26_0_jre.com.google.common.collect.RangeSet;
 import org.apache.beam.vendor.guava.v26_0_jre.com.google.common.collect.Sets;
 import org.apache.beam.vendor.guava.v26_0_jre.com.google.common.collect.TreeRangeSet;
+import org.apache.beam.vendor.guava.v26_0_jre.com.google.common.primitives.Longs;
 import org.apache.beam.vendor.guava.v26_0_jre.com.google.common.util.concurrent.Futures;
 import org.checkerframework.checker.initialization.qual.Initialized;
 import org.checkerframework.checker.nullness.qual.NonNull;
@@ -220,6 +221,10 @@ class WindmillStateInternals<K> implements StateInternals {
             result =
                 new WindmillWatermarkHold(
                     namespace, address, stateFamily, timestampCombiner, isNewKey);
+            ByteString demoted = cache.removeDemoted(namespace, address);
+            if (demoted != null) {
+              result.promote(demoted);
+            }
           }
           result.initializeForWorkItem(reader, scopedReadStateSupplier);
           return result;
@@ -260,6 +265,10 @@ class WindmillStateInternals<K> implements StateInternals {
           WindmillValue<T> result = (WindmillValue<T>) cache.get(namespace, address);
           if (result == null) {
             result = new WindmillValue<>(namespace, address, stateFamily, coder, isNewKey);
+            ByteString demoted = cache.removeDemoted(namespace, address);
+            if (demoted != null) {
+              result.promote(demoted);
+            }
           }
           result.initializeForWorkItem(reader, scopedReadStateSupplier);
           return result;
@@ -440,7 +449,8 @@ class WindmillStateInternals<K> implements StateInternals {
     return workItemState.get(namespace, address, c);
   }
 
-  private static class WindmillValue<T> extends SimpleWindmillState implements ValueState<T> {
+  private static class WindmillValue<T> extends SimpleWindmillState
+      implements ValueState<T>, WindmillStateCache.DemotableState {
     private final StateNamespace namespace;
     private final StateTag<ValueState<T>> address;
     private final ByteString stateKey;
@@ -554,6 +564,30 @@ class WindmillStateInternals<K> implements StateInternals {
       return commitBuilder.buildPartial();
     }
 
+    @Override
+    public @Nullable ByteString encodeForDemotion() throws IOException {
+      if (!valueIsKnown) {
+        return null;
+      }
+      // As in Windmill, a null value is encoded as empty.
+      ByteString.Output stream = ByteString.newOutput();
+      if (value != null) {
+        coder.encode(value, stream, Coder.Context.OUTER);
+      }
+      return stream.toByteString();
+    }
+
+    /** Restores the value known when this state was demoted from its encoding. */
+    void promote(ByteString encoded) {
+      try {
+        value = encoded.isEmpty() ? null : coder.decode(encoded.newInput(), Coder.Context.OUTER);
+      } catch (IOException e) {
+        throw new IllegalStateException("Unable to decode demoted value using " + coder, e);
+      }
+      valueIsKnown = true;
+      cachedSize = encoded.size();
+    }
+
     private Future<T> getFuture() {
       // WindmillStateReader guarantees that we can ask for a future for a particular tag multiple
       // times and it will efficiently be reused.
@@ -1780,7 +1814,8 @@ class WindmillStateInternals<K> implements StateInternals {
     }
   }
 
-  private static class WindmillWatermarkHold extends WindmillState implements WatermarkHoldState {
+  private static class WindmillWatermarkHold extends WindmillState
+      implements WatermarkHoldState, WindmillStateCache.DemotableState {
     // The encoded size of an Instant.
     private static final int ENCODED_SIZE = 8;
 
@@ -1925,6 +1960,25 @@ class WindmillStateInternals<K> implements StateInternals {
           });
     }
 
+    @Override
+    public @Nullable ByteString encodeForDemotion() {
+      if (cachedValue == null || cleared || localAdditions != null) {
+        return null;
+      }
+      // An absent hold is encoded as empty.
+      return cachedValue.isPresent()
+          ? ByteString.copyFrom(Longs.toByteArray(cachedValue.get().getMillis()))
+          : ByteString.EMPTY;
+    }
+
+    /** Restores the hold known when this state was demoted from its encoding. */
+    void promote(ByteString encoded) {
+      cachedValue =
+          encoded.isEmpty()
+              ? Optional.absent()
+              : Optional.of(new Instant(Longs.fromByteArray(encoded.toByteArray())));
+    }
+
     private Future<Instant> getFuture() {
       return cachedValue != null
           ? Futures.immediateFuture(cachedValue.orNull())
@@ -0,0 +1,152 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.beam.runners.dataflow.worker;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.stream.Stream;
+import org.apache.beam.vendor.grpc.v1p36p0.com.google.protobuf.ByteString;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** Tests for {@link WindmillStateCacheDiskTier}. */
+@RunWith(JUnit4.class)
+public class WindmillStateCacheDiskTierTest {
+  private static final long MAX_BYTES = 4096;
+
+  @Rule public TemporaryFolder tmpFolder = new TemporaryFolder();
+
+  private WindmillStateCacheDiskTier<String> tier;
+
+  @Before
+  public void setUp() {
+    // Four segments of 1024 bytes.
+    tier = new WindmillStateCacheDiskTier<>(tmpFolder.getRoot().toPath(), MAX_BYTES);
+  }
+
+  private static ByteString value(int size, int seed) {
+    byte[] bytes = new byte[size];
+    for (int i = 0; i < size; i++) {
+      bytes[i] = (byte) (seed + i);
+    }
+    return ByteString.copyFrom(bytes);
+  }
+
+  @Test
+  public void testPutAndRemove() {
+    tier.put("a", value(100, 1));
+    tier.put("b", value(200, 2));
+    assertEquals(2, tier.size());
+    assertEquals(300, tier.getLiveBytes());
+
+    assertEquals(value(100, 1), tier.remove("a"));
+    assertNull(tier.remove("a"));
+    assertEquals(value(200, 2), tier.remove("b"));
+    assertNull(tier.remove("c"));
+
+    assertEquals(0, tier.size());
+    assertEquals(0, tier.getLiveBytes());
+    assertEquals(2, tier.getHitCount());
+    assertEquals(2, tier.getMissCount());
+    assertEquals(0.5, tier.getHitRate(), 0.0);
+  }
+
+  @Test
+  public void testPutReplacesEntry() {
+    tier.put("a", value(100, 1));
+    tier.put("a", value(50, 2));
+    assertEquals(1, tier.size());
+    assertEquals(50, tier.getLiveBytes());
+    assertEquals(value(50, 2), tier.remove("a"));
+  }
+
+  @Test
+  public void testInvalidate() {
+    tier.put("a", value(100, 1));
+    tier.invalidate("a");
+    assertNull(tier.remove("a"));
+    assertEquals(0, tier.getLiveBytes());
+  }
+
+  @Test
+  public void testOldestSegmentDroppedAtSizeLimit() {
+    // Each segment holds two of these entries.
+    for (int i = 0; i < 8; i++) {
+      tier.put("key" + i, value(500, i));
+    }
+    assertEquals(8, tier.size());
+    assertEquals(MAX_BYTES, tier.getAllocatedBytes());
+
+    // Replacing an entry of the oldest segment before it is dropped keeps the entry.
+    tier.put("key0", value(500, 10));
+    tier.put("key8", value(500, 8));
+    assertEquals(MAX_BYTES, tier.getAllocatedBytes());
+    assertEquals(1, tier.getEvictionCount());
+    assertNull(tier.remove("key1"));
+    assertEquals(value(500, 10), tier.remove("key0"));
+    for (int i = 2; i <= 8; i++) {
+      assertEquals(value(500, i), tier.remove("key" + i));
+    }
+  }
+
+  @Test
+  public void testEntryLargerThanSegmentNotStored() {
+    tier.put("a", value(100, 1));
+    tier.put("a", value(2000, 2));
+    assertNull(tier.remove("a"));
+    assertEquals(1, tier.getDemotionCount());
+  }
+
+  @Test
+  public void testClearDeletesSegmentFiles() throws Exception {
+    tier.put("a", value(100, 1));
+    tier.clear();
+    assertEquals(0, tier.size());
+    assertEquals(0, tier.getAllocatedBytes());
+    try (Stream<Path> files = Files.walk(tmpFolder.getRoot().toPath())) {
+      assertTrue(files.noneMatch(Files::isRegularFile));
+    }
+  }
+
+  @Test
+  public void testDeleteDirectoryDeletesSegmentFiles() throws Exception {
+    tier.put("a", value(1000, 1));
+    tier.put("b", value(1000, 2));
+    Path directory;
+    try (Stream<Path> directories = Files.list(tmpFolder.getRoot().toPath())) {
+      directory = directories.findFirst().get();
+    }
+    try (Stream<Path> segments = Files.list(directory)) {
+      assertEquals(2, segments.count());
+    }
+
+    WindmillStateCacheDiskTier.deleteDirectory(directory);
+    assertFalse(Files.exists(directory));
+    // Deleting it again is a no-op.
+    WindmillStateCacheDiskTier.deleteDirectory(directory);
+  }
+}
@@ -18,9 +18,13 @@
 package org.apache.beam.runners.dataflow.worker;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
 
 import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.StringWriter;
 import java.util.Objects;
 import org.apache.beam.runners.core.StateNamespace;
 import org.apache.beam.runners.core.StateNamespaces;
@@ -34,7 +38,9 @@ import org.apache.beam.vendor.grpc.v1p36p0.com.google.protobuf.ByteString;
 import org.checkerframework.checker.nullness.qual.Nullable;
 import org.joda.time.Instant;
 import org.junit.Before;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 import org.junit.runner.RunWith;
 import org.junit.runners.JUnit4;
 
@@ -50,6 +56,8 @@ public class WindmillStateCacheTest {
   private static final long MEGABYTES = 1024 * 1024;
   DataflowWorkerHarnessOptions options;
 
+  @Rule public TemporaryFolder tmpFolder = new TemporaryFolder();
+
   private static class TestStateTag implements StateTag<TestState> {
 
     final String id;
@@ -523,4 +531,23 @@ public class WindmillStateCacheTest {
         new TestState("g1"),
         keyCache1.get(StateNamespaces.global(), new TestStateTagWithBadEquality("tag1")));
   }
+
+  /** Verifies that the status page reports the disk tier when it is enabled. */
+  @Test
+  public void testSummaryHtmlReportsDiskTier() throws Exception {
+    StringWriter html = new StringWriter();
+    cache.appendSummaryHtml(new PrintWriter(html));
+    assertFalse(html.toString().contains("Disk Tier"));
+
+    cache = new WindmillStateCache(400, 10, tmpFolder.getRoot().getPath());
+    WindmillStateCache.ForKeyAndFamily keyCache =
+        cache.forComputation(COMPUTATION).forKey(COMPUTATION_KEY, 0L, 1L).forFamily(STATE_FAMILY);
+    assertNull(keyCache.get(StateNamespaces.global(), new TestStateTag("tag1")));
+    assertEquals(1, cache.getDiskTier().getMissCount());
+
+    html = new StringWriter();
+    cache.appendSummaryHtml(new PrintWriter(html));
+    assertTrue(html.toString().contains("Disk Tier Stats"));
+    assertTrue(html.toString().contains("<td>10MB</td>"));
+  }
 }
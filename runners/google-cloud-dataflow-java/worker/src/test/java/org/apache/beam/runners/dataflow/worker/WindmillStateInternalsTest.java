@@ -82,7 +82,9 @@ import org.hamcrest.Matchers;
 import org.joda.time.Instant;
 import org.junit.After;
 import org.junit.Before;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 import org.junit.runner.RunWith;
 import org.junit.runners.JUnit4;
 import org.mockito.ArgumentCaptor;
@@ -109,6 +111,8 @@ public class WindmillStateInternalsTest {
 
   DataflowWorkerHarnessOptions options;
 
+  @Rule public TemporaryFolder tmpFolder = new TemporaryFolder();
+
   @Mock private WindmillStateReader mockReader;
 
   private WindmillStateInternals<String> underTest;
@@ -1803,6 +1807,85 @@ public class WindmillStateInternalsTest {
     Mockito.verifyNoMoreInteractions(mockReader);
   }
 
+  @Test
+  public void testValueDemotedToDiskTier() throws Exception {
+    // The heap tier holds no entries, so every persisted entry is demoted.
+    cache = new WindmillStateCache(0, 1, tmpFolder.getRoot().getPath());
+    resetUnderTest();
+
+    StateTag<ValueState<String>> addr = StateTags.value("value", StringUtf8Coder.of());
+    ValueState<String> value = underTest.state(NAMESPACE, addr);
+    value.write("Hi");
+    underTest.persist(Windmill.WorkItemCommitRequest.newBuilder());
+
+    assertEquals(0, cache.getWeight());
+    assertEquals(1, cache.getDiskTier().size());
+
+    resetUnderTest();
+    value = underTest.state(NAMESPACE, addr);
+    assertEquals("Hi", value.read());
+    value.clear();
+    underTest.persist(Windmill.WorkItemCommitRequest.newBuilder());
+
+    resetUnderTest();
+    value = underTest.state(NAMESPACE, addr);
+    assertNull(value.read());
+    underTest.persist(Windmill.WorkItemCommitRequest.newBuilder());
+
+    assertEquals(2, cache.getDiskTier().getHitCount());
+    Mockito.verifyNoMoreInteractions(mockReader);
+  }
+
+  @Test
+  public void testWatermarkHoldDemotedToDiskTier() throws Exception {
+    cache = new WindmillStateCache(0, 1, tmpFolder.getRoot().getPath());
+    resetUnderTest();
+
+    StateTag<WatermarkHoldState> addr =
+        StateTags.watermarkStateInternal("watermark", TimestampCombiner.EARLIEST);
+    WatermarkHoldState hold = underTest.state(NAMESPACE, addr);
+    hold.clear();
+    hold.add(new Instant(2000));
+    underTest.persist(Windmill.WorkItemCommitRequest.newBuilder());
+
+    assertEquals(1, cache.getDiskTier().size());
+
+    resetUnderTest();
+    hold = underTest.state(NAMESPACE, addr);
+    assertThat(hold.read(), Matchers.equalTo(new Instant(2000)));
+    hold.add(new Instant(1000));
+    underTest.persist(Windmill.WorkItemCommitRequest.newBuilder());
+
+    resetUnderTest();
+    hold = underTest.state(NAMESPACE, addr);
+    assertThat(hold.read(), Matchers.equalTo(new Instant(1000)));
+
+    Mockito.verifyNoMoreInteractions(mockReader);
+  }
+
+  @Test
+  public void testInvalidatedKeyNotPromotedFromDiskTier() throws Exception {
+    cache = new WindmillStateCache(0, 1, tmpFolder.getRoot().getPath());
+    resetUnderTest();
+
+    StateTag<ValueState<String>> addr = StateTags.value("value", StringUtf8Coder.of());
+    underTest.state(NAMESPACE, addr).write("Hi");
+    underTest.persist(Windmill.WorkItemCommitRequest.newBuilder());
+
+    cache
+        .forComputation("comp")
+        .invalidate(ByteString.copyFrom("dummyKey", Charsets.UTF_8), 123);
+    resetUnderTest();
+
+    SettableFuture<String> future = SettableFuture.create();
+    when(mockReader.valueFuture(key(NAMESPACE, "value"), STATE_FAMILY, StringUtf8Coder.of()))
+        .thenReturn(future);
+    ValueState<String> value = underTest.state(NAMESPACE, addr);
+    waitAndSet(future, "World", 200);
+    assertEquals("World", value.read());
+    assertEquals(0, cache.getDiskTier().getHitCount());
+  }
+
   @Test
   @SuppressWarnings("ArraysAsListPrimitiveArray")
   public void testCachedCombining() throws Exception {
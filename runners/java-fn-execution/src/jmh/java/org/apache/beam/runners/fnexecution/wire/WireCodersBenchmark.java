@@ -0,0 +1,149 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.beam.runners.fnexecution.wire;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Random;
+import org.apache.beam.model.pipeline.v1.RunnerApi;
+import org.apache.beam.model.pipeline.v1.RunnerApi.ExecutableStagePayload.WireCoderSetting;
+import org.apache.beam.runners.core.construction.BeamUrns;
+import org.apache.beam.runners.core.construction.Environments;
+import org.apache.beam.runners.core.construction.RehydratedComponents;
+import org.apache.beam.runners.core.construction.SdkComponents;
+import org.apache.beam.runners.core.construction.graph.PipelineNode;
+import org.apache.beam.runners.core.construction.graph.PipelineNode.PCollectionNode;
+import org.apache.beam.sdk.coders.Coder;
+import org.apache.beam.sdk.coders.KvCoder;
+import org.apache.beam.sdk.coders.RowCoder;
+import org.apache.beam.sdk.coders.StringUtf8Coder;
+import org.apache.beam.sdk.coders.VarLongCoder;
+import org.apache.beam.sdk.schemas.Schema;
+import org.apache.beam.sdk.util.WindowedValue;
+import org.apache.beam.sdk.values.KV;
+import org.apache.beam.sdk.values.Row;
+import org.apache.beam.sdk.values.WindowingStrategy;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Benchmarks the work a runner does for each element passed from one executable stage to another,
+ * which is decoding the element with the runner-side wire coder and encoding it again.
+ *
+ * <p>{@code DECODED} edges use the runner-side wire coder of a PCollection the runner inspects,
+ * which decodes every element coder the runner knows. {@code OPAQUE} edges use the wire coder of a
+ * PCollection whose {@link WireCoderSetting#getOpaqueElement() elements are opaque}, which keeps
+ * the encoded element as bytes. Run with {@code -Pbenchmark=WireCodersBenchmark}.
+ */
+public class WireCodersBenchmark {
+
+  private static final Schema RECORD_SCHEMA =
+      Schema.builder()
+          .addInt64Field("id")
+          .addStringField("name")
+          .addDoubleField("score")
+          .addBooleanField("active")
+          .build();
+
+  /** A batch of elements encoded by an SDK harness, and the runner-side wire coder of the edge. */
+  @State(Scope.Thread)
+  public static class Edge {
+    @Param({"DECODED", "OPAQUE"})
+    public String edge;
+
+    @Param({"KV", "ROW"})
+    public String element;
+
+    @Param({"1000"})
+    public int numElements;
+
+    Coder<WindowedValue<Object>> runnerWireCoder;
+    byte[] encoding;
+    ByteArrayOutputStream outStream;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+      Random random = new Random(1);
+      SdkComponents sdkComponents = SdkComponents.create();
+      sdkComponents.registerEnvironment(Environments.createDockerEnvironment("java"));
+      Coder<?> elementCoder =
+          "KV".equals(element)
+              ? KvCoder.of(StringUtf8Coder.of(), VarLongCoder.of())
+              : RowCoder.of(RECORD_SCHEMA);
+      RunnerApi.PCollection pCollection =
+          RunnerApi.PCollection.newBuilder()
+              .setUniqueName("edge")
+              .setCoderId(sdkComponents.registerCoder(elementCoder))
+              .setWindowingStrategyId(
+                  sdkComponents.registerWindowingStrategy(WindowingStrategy.globalDefault()))
+              .build();
+      PCollectionNode pCollectionNode = PipelineNode.pCollection("edge", pCollection);
+      RunnerApi.Components components =
+          sdkComponents.toComponents().toBuilder().putPcollections("edge", pCollection).build();
+      WireCoderSetting wireCoderSetting =
+          WireCoderSetting.newBuilder()
+              .setUrn(BeamUrns.getUrn(RunnerApi.StandardCoders.Enum.WINDOWED_VALUE))
+              .setInputOrOutputId("edge")
+              .setOpaqueElement("OPAQUE".equals(edge))
+              .build();
+
+      RunnerApi.Components.Builder sdkWireComponents = components.toBuilder();
+      String sdkWireCoderId =
+          WireCoders.addSdkWireCoder(pCollectionNode, sdkWireComponents, wireCoderSetting);
+      Coder<WindowedValue<Object>> sdkWireCoder =
+          (Coder<WindowedValue<Object>>)
+              RehydratedComponents.forComponents(sdkWireComponents.build())
+                  .getCoder(sdkWireCoderId);
+      ByteArrayOutputStream sdkOutput = new ByteArrayOutputStream();
+      for (int i = 0; i < numElements; i++) {
+        Object value =
+            "KV".equals(element)
+                ? KV.of("key" + random.nextInt(1000), random.nextLong())
+                : Row.withSchema(RECORD_SCHEMA)
+                    .addValues(
+                        random.nextLong(),
+                        "name" + random.nextInt(1000),
+                        random.nextDouble(),
+                        random.nextBoolean())
+                    .build();
+        sdkWireCoder.encode(WindowedValue.valueInGlobalWindow(value), sdkOutput);
+      }
+      encoding = sdkOutput.toByteArray();
+      outStream = new ByteArrayOutputStream(encoding.length);
+      runnerWireCoder =
+          WireCoders.instantiateRunnerWireCoder(pCollectionNode, components, wireCoderSetting);
+    }
+  }
+
+  @Benchmark
+  public void testRunnerRoundTrip(Edge edge, Blackhole blackhole) throws IOException {
+    ByteArrayInputStream inStream = new ByteArrayInputStream(edge.encoding);
+    edge.outStream.reset();
+    for (int i = 0; i < edge.numElements; i++) {
+      WindowedValue<Object> value = edge.runnerWireCoder.decode(inStream);
+      edge.runnerWireCoder.encode(value, edge.outStream);
+    }
+    blackhole.consume(edge.outStream);
+  }
+}
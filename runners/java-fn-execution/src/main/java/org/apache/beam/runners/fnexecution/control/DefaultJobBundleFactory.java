@@ -60,11 +60,14 @@ import org.apache.beam.sdk.coders.Coder;
 import org.apache.beam.sdk.fn.IdGenerator;
 import org.apache.beam.sdk.fn.IdGenerators;
 import org.apache.beam.sdk.fn.data.FnDataReceiver;
+import org.apache.beam.sdk.fn.data.SharedMemoryDataChannel;
 import org.apache.beam.sdk.fn.server.GrpcContextHeaderAccessorProvider;
 import org.apache.beam.sdk.fn.server.GrpcFnServer;
 import org.apache.beam.sdk.fn.server.ServerFactory;
 import org.apache.beam.sdk.fn.stream.OutboundObserverFactory;
 import org.apache.beam.sdk.function.ThrowingFunction;
+import org.apache.beam.sdk.metrics.Gauge;
+import org.apache.beam.sdk.metrics.Metrics;
 import org.apache.beam.sdk.options.ExperimentalOptions;
 import org.apache.beam.sdk.options.PipelineOptions;
 import org.apache.beam.sdk.options.PortablePipelineOptions;
@@ -110,6 +113,7 @@ public class DefaultJobBundleFactory implements JobBundleFactory {
   private final Semaphore availableCachesSemaphore;
   private final LinkedBlockingDeque<EnvironmentCacheAndLock> availableCaches;
   private final boolean loadBalanceBundles;
+  private final boolean routeToLeastLoaded;
   /** Clients which were evicted due to environment expiration but still had pending references. */
   private final Set<WrappedSdkHarnessClient> evictedActiveClients;
 
@@ -145,6 +149,7 @@ public class DefaultJobBundleFactory implements JobBundleFactory {
     this.stageIdGenerator = () -> factoryId + "-" + stageIdSuffixGenerator.getId();
     this.environmentExpirationMillis = getEnvironmentExpirationMillis(jobInfo);
     this.loadBalanceBundles = shouldLoadBalanceBundles(jobInfo);
+    this.routeToLeastLoaded = !loadBalanceBundles && shouldRouteToLeastLoaded(jobInfo);
     this.environmentCaches =
         createEnvironmentCaches(
             serverFactory -> createServerInfo(jobInfo, serverFactory),
@@ -166,6 +171,7 @@ public class DefaultJobBundleFactory implements JobBundleFactory {
     this.stageIdGenerator = stageIdGenerator;
     this.environmentExpirationMillis = getEnvironmentExpirationMillis(jobInfo);
     this.loadBalanceBundles = shouldLoadBalanceBundles(jobInfo);
+    this.routeToLeastLoaded = !loadBalanceBundles && shouldRouteToLeastLoaded(jobInfo);
     this.environmentCaches =
         createEnvironmentCaches(serverFactory -> serverInfo, getMaxEnvironmentClients(jobInfo));
     this.availableCachesSemaphore = new Semaphore(environmentCaches.size(), true);
@@ -176,10 +182,25 @@ public class DefaultJobBundleFactory implements JobBundleFactory {
   private static class EnvironmentCacheAndLock {
     final Lock lock;
     final LoadingCache<Environment, WrappedSdkHarnessClient> cache;
+    /** The number of bundles of any stage currently processed by the SDK worker of this cache. */
+    final AtomicInteger inFlightBundles = new AtomicInteger();
 
-    EnvironmentCacheAndLock(LoadingCache<Environment, WrappedSdkHarnessClient> cache, Lock lock) {
+    private final Gauge inFlightBundlesGauge;
+
+    EnvironmentCacheAndLock(
+        LoadingCache<Environment, WrappedSdkHarnessClient> cache, Lock lock, int workerIndex) {
       this.lock = lock;
       this.cache = cache;
+      this.inFlightBundlesGauge =
+          Metrics.gauge(DefaultJobBundleFactory.class, "in_flight_bundles_worker_" + workerIndex);
+    }
+
+    void bundleStarted() {
+      inFlightBundlesGauge.set(inFlightBundles.incrementAndGet());
+    }
+
+    void bundleFinished() {
+      inFlightBundlesGauge.set(inFlightBundles.decrementAndGet());
     }
   }
 
@@ -253,7 +274,7 @@ public class DefaultJobBundleFactory implements JobBundleFactory {
                 }
               });
 
-      caches.add(new EnvironmentCacheAndLock(cache, refLock));
+      caches.add(new EnvironmentCacheAndLock(cache, refLock, i));
     }
     return caches.build();
   }
@@ -284,20 +305,38 @@ public class DefaultJobBundleFactory implements JobBundleFactory {
     boolean loadBalanceBundles =
         pipelineOptions.as(PortablePipelineOptions.class).getLoadBalanceBundles();
     if (loadBalanceBundles) {
-      int stateCacheSize =
-          Integer.parseInt(
-              MoreObjects.firstNonNull(
-                  ExperimentalOptions.getExperimentValue(
-                      pipelineOptions, ExperimentalOptions.STATE_CACHE_SIZE),
-                  "0"));
       Preconditions.checkArgument(
-          stateCacheSize == 0,
+          getStateCacheSize(pipelineOptions) == 0,
           "%s must be 0 when using bundle load balancing",
           ExperimentalOptions.STATE_CACHE_SIZE);
     }
     return loadBalanceBundles;
   }
 
+  private static boolean shouldRouteToLeastLoaded(JobInfo jobInfo) {
+    PipelineOptions pipelineOptions =
+        PipelineOptionsTranslation.fromProto(jobInfo.pipelineOptions());
+    boolean routeToLeastLoaded =
+        pipelineOptions.as(PortablePipelineOptions.class).getBundleRouting()
+            == PortablePipelineOptions.BundleRouting.LEAST_LOADED;
+    if (routeToLeastLoaded) {
+      // A key may be processed by a different SDK worker than the one which cached its state.
+      Preconditions.checkArgument(
+          getStateCacheSize(pipelineOptions) == 0,
+          "%s must be 0 when routing bundles to the least loaded worker",
+          ExperimentalOptions.STATE_CACHE_SIZE);
+    }
+    return routeToLeastLoaded;
+  }
+
+  private static int getStateCacheSize(PipelineOptions pipelineOptions) {
+    return Integer.parseInt(
+        MoreObjects.firstNonNull(
+            ExperimentalOptions.getExperimentValue(
+                pipelineOptions, ExperimentalOptions.STATE_CACHE_SIZE),
+            "0"));
+  }
+
   @Override
   public StageBundleFactory forStage(ExecutableStage executableStage) {
     return new SimpleStageBundleFactory(executableStage);
@@ -467,11 +506,15 @@ public class DefaultJobBundleFactory implements JobBundleFactory {
 
       final EnvironmentCacheAndLock currentCache;
       final WrappedSdkHarnessClient client;
-      if (loadBalanceBundles) {
-        // The semaphore is used to ensure fairness, i.e. first stop first go.
-        availableCachesSemaphore.acquire();
-        // The blocking queue of caches for serving multiple bundles concurrently.
-        currentCache = availableCaches.take();
+      if (loadBalanceBundles || routeToLeastLoaded) {
+        if (loadBalanceBundles) {
+          // The semaphore is used to ensure fairness, i.e. first stop first go.
+          availableCachesSemaphore.acquire();
+          // The blocking queue of caches for serving multiple bundles concurrently.
+          currentCache = availableCaches.take();
+        } else {
+          currentCache = leastLoadedCache();
+        }
         // Lock because the environment expiration can remove the ref for the client
         // which would close the underlying environment before we can ref it.
         try {
@@ -523,6 +566,7 @@ public class DefaultJobBundleFactory implements JobBundleFactory {
               progressHandler,
               finalizationHandler,
               checkpointHandler);
+      currentCache.bundleStarted();
       return new RemoteBundle() {
         @Override
         public String getId() {
@@ -554,6 +598,7 @@ public class DefaultJobBundleFactory implements JobBundleFactory {
           try {
             bundle.close();
           } finally {
+            currentCache.bundleFinished();
             client.unref();
             if (loadBalanceBundles) {
               availableCaches.offer(currentCache);
@@ -564,6 +609,23 @@ public class DefaultJobBundleFactory implements JobBundleFactory {
       };
     }
 
+    /**
+     * Returns the cache whose SDK worker has the fewest bundles in flight, preferring the worker
+     * this stage is pinned to on ties. Concurrent callers may pick the same worker, so the load is
+     * only balanced approximately.
+     */
+    private EnvironmentCacheAndLock leastLoadedCache() {
+      int numCaches = environmentCaches.size();
+      EnvironmentCacheAndLock leastLoaded = environmentCaches.get(environmentIndex);
+      for (int i = 1; i < numCaches; i++) {
+        EnvironmentCacheAndLock cache = environmentCaches.get((environmentIndex + i) % numCaches);
+        if (cache.inFlightBundles.get() < leastLoaded.inFlightBundles.get()) {
+          leastLoaded = cache;
+        }
+      }
+      return leastLoaded;
+    }
+
     @Override
     public ExecutableProcessBundleDescriptor getProcessBundleDescriptor() {
       return currentClient.processBundleDescriptor;
@@ -693,8 +755,16 @@ public class DefaultJobBundleFactory implements JobBundleFactory {
             GrpcDataService.create(
                 portableOptions, executor, OutboundObserverFactory.serverDirect()),
             serverFactory);
+    if (SharedMemoryDataChannel.isEnabled(portableOptions)) {
+      dataServer.getService().acceptSharedMemoryChannels(dataServer.getApiServiceDescriptor());
+    }
     GrpcFnServer<GrpcStateService> stateServer =
-        GrpcFnServer.allocatePortAndCreateFor(GrpcStateService.create(), serverFactory);
+        GrpcFnServer.allocatePortAndCreateFor(
+            ExperimentalOptions.hasExperiment(
+                    portableOptions, GrpcStateService.CONCURRENT_STATE_REQUESTS_EXPERIMENT)
+                ? GrpcStateService.create(executor)
+                : GrpcStateService.create(),
+            serverFactory);
 
     ServerInfo serverInfo =
         new AutoValue_DefaultJobBundleFactory_ServerInfo.Builder()
@@ -17,6 +17,7 @@
  */
 package org.apache.beam.runners.fnexecution.data;
 
+import java.io.IOException;
 import java.util.Queue;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
@@ -25,6 +26,7 @@ import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
 import org.apache.beam.model.fnexecution.v1.BeamFnApi;
 import org.apache.beam.model.fnexecution.v1.BeamFnDataGrpc;
+import org.apache.beam.model.pipeline.v1.Endpoints.ApiServiceDescriptor;
 import org.apache.beam.sdk.coders.Coder;
 import org.apache.beam.sdk.fn.data.BeamFnDataBufferingOutboundObserver;
 import org.apache.beam.sdk.fn.data.BeamFnDataGrpcMultiplexer;
@@ -34,11 +36,14 @@ import org.apache.beam.sdk.fn.data.DecodingFnDataReceiver;
 import org.apache.beam.sdk.fn.data.FnDataReceiver;
 import org.apache.beam.sdk.fn.data.InboundDataClient;
 import org.apache.beam.sdk.fn.data.LogicalEndpoint;
+import org.apache.beam.sdk.fn.data.SharedMemoryDataChannel;
+import org.apache.beam.sdk.fn.data.SharedMemoryDataServer;
 import org.apache.beam.sdk.fn.server.FnService;
 import org.apache.beam.sdk.fn.stream.OutboundObserverFactory;
 import org.apache.beam.sdk.options.PipelineOptions;
 import org.apache.beam.vendor.grpc.v1p36p0.io.grpc.stub.StreamObserver;
 import org.apache.beam.vendor.guava.v26_0_jre.com.google.common.util.concurrent.SettableFuture;
+import org.checkerframework.checker.nullness.qual.Nullable;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -78,6 +83,8 @@ public class GrpcDataService extends BeamFnDataGrpc.BeamFnDataImplBase
   private final ExecutorService executor;
   private final OutboundObserverFactory outboundObserverFactory;
 
+  private @Nullable SharedMemoryDataServer sharedMemoryServer;
+
   private GrpcDataService(
       PipelineOptions options,
       ExecutorService executor,
@@ -119,8 +126,27 @@ public class GrpcDataService extends BeamFnDataGrpc.BeamFnDataImplBase
     }
   }
 
+  /**
+   * Additionally accepts {@link SharedMemoryDataChannel}s from SDK harnesses on the same host,
+   * which are negotiated in the directory of the given {@link ApiServiceDescriptor} of this
+   * service.
+   */
+  public synchronized void acceptSharedMemoryChannels(ApiServiceDescriptor apiServiceDescriptor)
+      throws IOException {
+    if (sharedMemoryServer == null) {
+      sharedMemoryServer =
+          SharedMemoryDataServer.create(
+              SharedMemoryDataChannel.directoryFor(apiServiceDescriptor), this::data);
+    }
+  }
+
   @Override
   public void close() throws Exception {
+    synchronized (this) {
+      if (sharedMemoryServer != null) {
+        sharedMemoryServer.close();
+      }
+    }
     // Cancel anything blocking on a client connecting to this service. This doesn't shut down the
     // Multiplexer, but if there isn't any multiplexer it prevents callers blocking forever.
     connectedClient.cancel(true);
@@ -19,32 +19,63 @@ package org.apache.beam.runners.fnexecution.state;
 
 import static org.apache.beam.vendor.guava.v26_0_jre.com.google.common.base.Throwables.getStackTraceAsString;
 
+import java.util.Arrays;
+import java.util.List;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.CompletionStage;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
+import org.apache.beam.model.fnexecution.v1.BeamFnApi.StateKey;
 import org.apache.beam.model.fnexecution.v1.BeamFnApi.StateRequest;
 import org.apache.beam.model.fnexecution.v1.BeamFnApi.StateResponse;
 import org.apache.beam.model.fnexecution.v1.BeamFnStateGrpc;
 import org.apache.beam.sdk.fn.server.FnService;
+import org.apache.beam.sdk.fn.stream.SynchronizedStreamObserver;
 import org.apache.beam.vendor.grpc.v1p36p0.io.grpc.stub.ServerCallStreamObserver;
 import org.apache.beam.vendor.grpc.v1p36p0.io.grpc.stub.StreamObserver;
+import org.checkerframework.checker.nullness.qual.Nullable;
 
 /** An implementation of the Beam Fn State service. */
 public class GrpcStateService extends BeamFnStateGrpc.BeamFnStateImplBase
     implements StateDelegator, FnService {
-  /** Create a new {@link GrpcStateService}. */
+  /**
+   * The experiment which makes runners using a {@link
+   * org.apache.beam.runners.fnexecution.control.DefaultJobBundleFactory} serve the state requests
+   * of an SDK harness concurrently, see {@link #create(Executor)}.
+   */
+  public static final String CONCURRENT_STATE_REQUESTS_EXPERIMENT = "concurrent_state_requests";
+
+  /**
+   * Create a new {@link GrpcStateService} which serves the state requests of an SDK harness one at
+   * a time, in the order they arrive.
+   */
   public static GrpcStateService create() {
-    return new GrpcStateService();
+    return new GrpcStateService(null);
+  }
+
+  /**
+   * Create a new {@link GrpcStateService} which serves the state requests of an SDK harness
+   * concurrently on the given executor, so that the round trips of requests the SDK harness sends
+   * without waiting for earlier responses overlap.
+   *
+   * <p>Requests for the same user state of the same key and window are still served in the order
+   * they arrive, so that reads observe earlier writes. The registered {@link StateRequestHandler
+   * handlers} must be safe to call concurrently.
+   */
+  public static GrpcStateService create(Executor executor) {
+    return new GrpcStateService(executor);
   }
 
   private final ConcurrentLinkedQueue<Inbound> clients;
   private final ConcurrentMap<String, StateRequestHandler> requestHandlers;
+  private final @Nullable Executor executor;
 
-  private GrpcStateService() {
+  private GrpcStateService(@Nullable Executor executor) {
     this.requestHandlers = new ConcurrentHashMap<>();
     this.clients = new ConcurrentLinkedQueue<>();
+    this.executor = executor;
   }
 
   @Override
@@ -76,7 +107,11 @@ public class GrpcStateService extends BeamFnStateGrpc.BeamFnStateImplBase
 
   @Override
   public StreamObserver<StateRequest> state(StreamObserver<StateResponse> responseObserver) {
-    Inbound rval = new Inbound(responseObserver);
+    Inbound rval =
+        new Inbound(
+            executor == null
+                ? responseObserver
+                : SynchronizedStreamObserver.wrapping(responseObserver));
     clients.add(rval);
     return rval;
   }
@@ -117,18 +152,47 @@ public class GrpcStateService extends BeamFnStateGrpc.BeamFnStateImplBase
    */
   private class Inbound implements StreamObserver<StateRequest> {
     private final StreamObserver<StateResponse> outboundObserver;
+    // The completion of the last request for each user state, when serving requests concurrently.
+    private final ConcurrentMap<List<Object>, CompletableFuture<Void>> lastUserStateRequests;
 
     Inbound(StreamObserver<StateResponse> outboundObserver) {
       this.outboundObserver = outboundObserver;
+      this.lastUserStateRequests = new ConcurrentHashMap<>();
     }
 
     @Override
     public void onNext(StateRequest request) {
+      if (executor == null) {
+        handle(request);
+        return;
+      }
+      List<Object> userState = userStateOf(request);
+      if (userState == null) {
+        // Side input and runner state is read only, so it can be served in any order.
+        executor.execute(() -> handle(request));
+        return;
+      }
+      CompletableFuture<Void> served = new CompletableFuture<>();
+      CompletableFuture<Void> previous = lastUserStateRequests.put(userState, served);
+      (previous == null ? CompletableFuture.<Void>completedFuture(null) : previous)
+          .whenCompleteAsync(
+              (ignored, t) ->
+                  handle(request)
+                      .whenComplete(
+                          (response, t2) -> {
+                            lastUserStateRequests.remove(userState, served);
+                            served.complete(null);
+                          }),
+              executor);
+    }
+
+    /** Serves the request, returning a stage which completes once the response was sent. */
+    private CompletionStage<?> handle(StateRequest request) {
       StateRequestHandler handler =
           requestHandlers.getOrDefault(request.getInstructionId(), this::handlerNotFound);
       try {
         CompletionStage<StateResponse.Builder> result = handler.handle(request);
-        result.whenComplete(
+        return result.whenComplete(
             (StateResponse.Builder responseBuilder, Throwable t) ->
                 // note that this is threadsafe if and only if outboundObserver is threadsafe.
                 outboundObserver.onNext(
@@ -137,6 +201,45 @@ public class GrpcStateService extends BeamFnStateGrpc.BeamFnStateImplBase
                         : createErrorResponse(request.getId(), t)));
       } catch (Exception e) {
         outboundObserver.onNext(createErrorResponse(request.getId(), e));
+        return CompletableFuture.completedFuture(null);
+      }
+    }
+
+    /**
+     * Returns the user state the request reads or writes, identified by the bundle, transform,
+     * state id, window and key, or {@code null} if the request does not access user state. All
+     * entries of a multimap user state are one user state since clearing the keys clears them all.
+     */
+    private @Nullable List<Object> userStateOf(StateRequest request) {
+      StateKey stateKey = request.getStateKey();
+      switch (stateKey.getTypeCase()) {
+        case BAG_USER_STATE:
+          StateKey.BagUserState bagUserState = stateKey.getBagUserState();
+          return Arrays.asList(
+              request.getInstructionId(),
+              bagUserState.getTransformId(),
+              bagUserState.getUserStateId(),
+              bagUserState.getWindow(),
+              bagUserState.getKey());
+        case MULTIMAP_USER_STATE:
+          StateKey.MultimapUserState multimapUserState = stateKey.getMultimapUserState();
+          return Arrays.asList(
+              request.getInstructionId(),
+              multimapUserState.getTransformId(),
+              multimapUserState.getUserStateId(),
+              multimapUserState.getWindow(),
+              multimapUserState.getKey());
+        case MULTIMAP_KEYS_USER_STATE:
+          StateKey.MultimapKeysUserState multimapKeysUserState =
+              stateKey.getMultimapKeysUserState();
+          return Arrays.asList(
+              request.getInstructionId(),
+              multimapKeysUserState.getTransformId(),
+              multimapKeysUserState.getUserStateId(),
+              multimapKeysUserState.getWindow(),
+              multimapKeysUserState.getKey());
+        default:
+          return null;
       }
     }
 
@@ -22,18 +22,25 @@ import static org.apache.beam.vendor.guava.v26_0_jre.com.google.common.base.Prec
 import java.io.IOException;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Locale;
 import java.util.Map;
+import java.util.Set;
 import org.apache.beam.model.pipeline.v1.RunnerApi;
+import org.apache.beam.model.pipeline.v1.RunnerApi.ExecutableStagePayload.WireCoderSetting;
 import org.apache.beam.model.pipeline.v1.RunnerApi.PCollection;
 import org.apache.beam.runners.core.InMemoryTimerInternals;
 import org.apache.beam.runners.core.StateNamespace;
 import org.apache.beam.runners.core.StateNamespaces;
 import org.apache.beam.runners.core.TimerInternals;
+import org.apache.beam.runners.core.construction.BeamUrns;
 import org.apache.beam.runners.core.construction.RehydratedComponents;
 import org.apache.beam.runners.core.construction.Timer;
 import org.apache.beam.runners.core.construction.WindowingStrategyTranslation;
+import org.apache.beam.runners.core.construction.graph.ExecutableStage;
 import org.apache.beam.runners.core.construction.graph.PipelineNode;
+import org.apache.beam.runners.core.construction.graph.QueryablePipeline;
 import org.apache.beam.runners.fnexecution.control.TimerReceiverFactory;
 import org.apache.beam.runners.fnexecution.wire.WireCoders;
 import org.apache.beam.sdk.coders.Coder;
@@ -74,15 +81,132 @@ public final class PipelineTranslatorUtils {
   /** Creates a coder for a given PCollection id from the Proto definition. */
   public static <T> Coder<WindowedValue<T>> instantiateCoder(
       String collectionId, RunnerApi.Components components) {
+    return instantiateCoder(collectionId, components, WireCoderSetting.getDefaultInstance());
+  }
+
+  /**
+   * Creates a coder for a given PCollection id from the Proto definition, applying the given wire
+   * coder setting of the executable stage producing or consuming it.
+   */
+  public static <T> Coder<WindowedValue<T>> instantiateCoder(
+      String collectionId, RunnerApi.Components components, WireCoderSetting wireCoderSetting) {
     PipelineNode.PCollectionNode collectionNode =
         PipelineNode.pCollection(collectionId, components.getPcollectionsOrThrow(collectionId));
     try {
-      return WireCoders.instantiateRunnerWireCoder(collectionNode, components);
+      return WireCoders.instantiateRunnerWireCoder(collectionNode, components, wireCoderSetting);
     } catch (IOException e) {
       throw new RuntimeException("Could not instantiate Coder", e);
     }
   }
 
+  /**
+   * Returns the wire coder setting of the given executable stage for the given input or output
+   * PCollection id, or the default setting if the stage has none.
+   */
+  public static WireCoderSetting getWireCoderSetting(
+      RunnerApi.ExecutableStagePayload stagePayload, String collectionId) {
+    return stagePayload.getWireCoderSettingsList().stream()
+        .filter(setting -> collectionId.equals(setting.getInputOrOutputId()))
+        .findFirst()
+        .orElse(WireCoderSetting.getDefaultInstance());
+  }
+
+  /**
+   * Returns whether the elements of the given PCollection are opaque to the runner according to
+   * the wire coder settings of the given executable stage.
+   */
+  public static boolean isOpaqueElement(
+      RunnerApi.ExecutableStagePayload stagePayload, String collectionId) {
+    return getWireCoderSetting(stagePayload, collectionId).getOpaqueElement();
+  }
+
+  /**
+   * Marks the PCollections which are produced by an executable stage and only consumed as the main
+   * input of executable stages without state or timers as {@link
+   * WireCoderSetting#getOpaqueElement() opaque} in the wire coder settings of these stages. The
+   * runner never has to inspect the elements of such PCollections, so it can keep the bytes encoded
+   * by the producing SDK harness and pass them to the consuming SDK harness as they are, instead of
+   * decoding and encoding every element. PCollections which are side inputs, or are consumed by
+   * runner executed transforms such as a GroupByKey or a Flatten, are left as they are.
+   *
+   * <p>The given pipeline must be fused.
+   */
+  public static RunnerApi.Pipeline withOpaqueStageEdges(RunnerApi.Pipeline pipeline) {
+    RunnerApi.Components components = pipeline.getComponents();
+    QueryablePipeline queryablePipeline =
+        QueryablePipeline.forTransforms(pipeline.getRootTransformIdsList(), components);
+    Map<String, RunnerApi.ExecutableStagePayload> stagePayloads = new HashMap<>();
+    Set<String> stageOutputs = new HashSet<>();
+    Set<String> inspectedByRunner = new HashSet<>();
+    for (PipelineNode.PTransformNode transform :
+        queryablePipeline.getTopologicallyOrderedTransforms()) {
+      if (!ExecutableStage.URN.equals(transform.getTransform().getSpec().getUrn())) {
+        inspectedByRunner.addAll(transform.getTransform().getInputsMap().values());
+        continue;
+      }
+      RunnerApi.ExecutableStagePayload stagePayload;
+      try {
+        stagePayload =
+            RunnerApi.ExecutableStagePayload.parseFrom(
+                transform.getTransform().getSpec().getPayload());
+      } catch (InvalidProtocolBufferException e) {
+        throw new IllegalArgumentException(
+            String.format("Unable to parse the payload of stage %s.", transform.getId()), e);
+      }
+      stagePayloads.put(transform.getId(), stagePayload);
+      stageOutputs.addAll(transform.getTransform().getOutputsMap().values());
+      // Stateful stages are keyed by the runner, and all other inputs are side inputs.
+      boolean keyedByRunner =
+          stagePayload.getUserStatesCount() > 0
+              || stagePayload.getTimersCount() > 0
+              || stagePayload.getTimerFamiliesCount() > 0;
+      for (String input : transform.getTransform().getInputsMap().values()) {
+        if (keyedByRunner || !input.equals(stagePayload.getInput())) {
+          inspectedByRunner.add(input);
+        }
+      }
+    }
+    Set<String> opaque = Sets.difference(stageOutputs, inspectedByRunner);
+    if (opaque.isEmpty()) {
+      return pipeline;
+    }
+
+    RunnerApi.Pipeline.Builder builder = pipeline.toBuilder();
+    for (Map.Entry<String, RunnerApi.ExecutableStagePayload> stage : stagePayloads.entrySet()) {
+      RunnerApi.ExecutableStagePayload stagePayload = stage.getValue();
+      Set<String> opaqueEdges = new HashSet<>();
+      if (opaque.contains(stagePayload.getInput())) {
+        opaqueEdges.add(stagePayload.getInput());
+      }
+      for (String output : stagePayload.getOutputsList()) {
+        if (opaque.contains(output)) {
+          opaqueEdges.add(output);
+        }
+      }
+      if (opaqueEdges.isEmpty()) {
+        continue;
+      }
+      RunnerApi.ExecutableStagePayload.Builder payloadBuilder = stagePayload.toBuilder();
+      for (WireCoderSetting.Builder setting : payloadBuilder.getWireCoderSettingsBuilderList()) {
+        if (opaqueEdges.remove(setting.getInputOrOutputId())) {
+          setting.setOpaqueElement(true);
+        }
+      }
+      for (String edge : opaqueEdges) {
+        payloadBuilder.addWireCoderSettings(
+            WireCoderSetting.newBuilder()
+                .setUrn(BeamUrns.getUrn(RunnerApi.StandardCoders.Enum.WINDOWED_VALUE))
+                .setInputOrOutputId(edge)
+                .setOpaqueElement(true));
+      }
+      RunnerApi.PTransform.Builder transform =
+          builder.getComponentsBuilder().getTransformsOrThrow(stage.getKey()).toBuilder();
+      transform.getSpecBuilder().setPayload(payloadBuilder.build().toByteString());
+      builder.getComponentsBuilder().putTransforms(stage.getKey(), transform.build());
+    }
+    return builder.build();
+  }
+
   public static WindowingStrategy getWindowingStrategy(
       String pCollectionId, RunnerApi.Components components) {
     RunnerApi.WindowingStrategy windowingStrategyProto =
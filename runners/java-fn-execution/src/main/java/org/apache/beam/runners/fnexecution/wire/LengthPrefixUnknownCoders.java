@@ -81,7 +81,7 @@ public class LengthPrefixUnknownCoders {
 
   // If we are handling an unknown URN then we need to wrap it with a length prefix coder.
   // If requested we also replace the unknown coder with a byte array coder.
-  private static String addWrappedWithLengthPrefixCoder(
+  static String addWrappedWithLengthPrefixCoder(
       String coderId, RunnerApi.Components.Builder components) {
     Coder.Builder lengthPrefixed = Coder.newBuilder().addComponentCoderIds(coderId);
     lengthPrefixed.getSpecBuilder().setUrn(ModelCoders.LENGTH_PREFIX_CODER_URN).build();
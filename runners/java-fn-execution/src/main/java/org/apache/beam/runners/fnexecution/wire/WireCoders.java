@@ -36,7 +36,9 @@ public class WireCoders {
   /**
    * Creates an SDK-side wire coder for a port read/write for the given PCollection. Coders that are
    * unknown to the runner are wrapped with length-prefix coders. The inner element coders are kept
-   * intact so that SDK harnesses can reconstruct the original elements.
+   * intact so that SDK harnesses can reconstruct the original elements. If the {@link
+   * WireCoderSetting} marks the elements as opaque, the whole element coder is wrapped with a
+   * length-prefix coder.
    *
    * <p>Adds all necessary coders to the components builder.
    *
@@ -51,7 +53,8 @@ public class WireCoders {
 
   /**
    * Creates a runner-side wire coder for a port read/write for the given PCollection. Unknown
-   * coders are replaced with length-prefixed byte arrays.
+   * coders are replaced with length-prefixed byte arrays. If the {@link WireCoderSetting} marks the
+   * elements as opaque, the whole element coder is replaced with a length-prefixed byte array.
    *
    * <p>Adds all necessary coders to the components builder.
    *
@@ -107,6 +110,14 @@ public class WireCoders {
       boolean useByteArrayCoder,
       WireCoderSetting wireCoderSetting) {
     String elementCoderId = pCollectionNode.getPCollection().getCoderId();
+    if (wireCoderSetting.getOpaqueElement()
+        && !ModelCoders.LENGTH_PREFIX_CODER_URN.equals(
+            components.getCodersOrThrow(elementCoderId).getSpec().getUrn())) {
+      // Length prefix the whole element, even if the runner knows its coder, so that the
+      // runner-side wire coder keeps the encoded element as a byte array.
+      elementCoderId =
+          LengthPrefixUnknownCoders.addWrappedWithLengthPrefixCoder(elementCoderId, components);
+    }
     String windowingStrategyId = pCollectionNode.getPCollection().getWindowingStrategyId();
     String windowCoderId =
         components.getWindowingStrategiesOrThrow(windowingStrategyId).getWindowCoderId();
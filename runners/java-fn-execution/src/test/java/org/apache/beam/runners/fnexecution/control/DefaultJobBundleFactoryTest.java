@@ -27,6 +27,7 @@ import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.verifyNoMoreInteractions;
 import static org.mockito.Mockito.when;
 
+import java.io.Closeable;
 import java.util.Collections;
 import java.util.HashSet;
 import java.util.Map;
@@ -49,6 +50,7 @@ import org.apache.beam.model.pipeline.v1.RunnerApi.WindowingStrategy;
 import org.apache.beam.runners.core.construction.ModelCoders;
 import org.apache.beam.runners.core.construction.PipelineOptionsTranslation;
 import org.apache.beam.runners.core.construction.graph.ExecutableStage;
+import org.apache.beam.runners.core.metrics.MetricsContainerImpl;
 import org.apache.beam.runners.fnexecution.artifact.ArtifactRetrievalService;
 import org.apache.beam.runners.fnexecution.data.GrpcDataService;
 import org.apache.beam.runners.fnexecution.environment.EnvironmentFactory;
@@ -65,6 +67,8 @@ import org.apache.beam.sdk.fn.IdGenerators;
 import org.apache.beam.sdk.fn.data.CloseableFnDataReceiver;
 import org.apache.beam.sdk.fn.server.GrpcFnServer;
 import org.apache.beam.sdk.fn.server.ServerFactory;
+import org.apache.beam.sdk.metrics.MetricName;
+import org.apache.beam.sdk.metrics.MetricsEnvironment;
 import org.apache.beam.sdk.options.ExperimentalOptions;
 import org.apache.beam.sdk.options.PipelineOptionsFactory;
 import org.apache.beam.sdk.options.PortablePipelineOptions;
@@ -496,6 +500,70 @@ public class DefaultJobBundleFactoryTest {
     }
   }
 
+  @Test
+  public void routesBundlesToLeastLoadedWorker() throws Exception {
+    PortablePipelineOptions portableOptions =
+        PipelineOptionsFactory.as(PortablePipelineOptions.class);
+    portableOptions.setSdkWorkerParallelism(2);
+    portableOptions.setBundleRouting(PortablePipelineOptions.BundleRouting.LEAST_LOADED);
+    Struct pipelineOptions = PipelineOptionsTranslation.toProto(portableOptions);
+
+    // The first SDK worker is slow and does not finish bundles until its response is completed.
+    CompletableFuture<InstructionResponse> slowResponse = new CompletableFuture<>();
+    InstructionRequestHandler slowHandler = mock(InstructionRequestHandler.class);
+    when(slowHandler.handle(any())).thenReturn(slowResponse);
+    RemoteEnvironment slowEnvironment = mock(RemoteEnvironment.class);
+    when(slowEnvironment.getInstructionRequestHandler()).thenReturn(slowHandler);
+    when(envFactory.createEnvironment(eq(environment), any()))
+        .thenReturn(slowEnvironment, remoteEnvironment);
+
+    MetricsContainerImpl metricsContainer = new MetricsContainerImpl("stage");
+    try (Closeable scope = MetricsEnvironment.scopedMetricsContainer(metricsContainer);
+        DefaultJobBundleFactory bundleFactory =
+            new DefaultJobBundleFactory(
+                JobInfo.create("testJob", "testJob", "token", pipelineOptions),
+                envFactoryProviderMap,
+                stageIdGenerator,
+                serverInfo)) {
+      OutputReceiverFactory orf = mock(OutputReceiverFactory.class);
+      StateRequestHandler srh = mock(StateRequestHandler.class);
+      when(srh.getCacheTokens()).thenReturn(Collections.emptyList());
+      StageBundleFactory sbf = bundleFactory.forStage(getExecutableStage(environment));
+
+      RemoteBundle slowBundle = sbf.getBundle(orf, srh, BundleProgressHandler.ignored());
+      verify(slowHandler, Mockito.times(1)).handle(any());
+      assertThat(inFlightBundles(metricsContainer, 0), equalTo(1L));
+
+      // While the slow worker processes a bundle, bundles go to the idle worker.
+      for (int i = 0; i < 3; i++) {
+        RemoteBundle bundle = sbf.getBundle(orf, srh, BundleProgressHandler.ignored());
+        assertThat(inFlightBundles(metricsContainer, 1), equalTo(1L));
+        bundle.close();
+        assertThat(inFlightBundles(metricsContainer, 1), equalTo(0L));
+      }
+      verify(envFactory, Mockito.times(2)).createEnvironment(eq(environment), any());
+      verify(slowHandler, Mockito.times(1)).handle(any());
+      verify(instructionHandler, Mockito.times(3)).handle(any());
+
+      slowResponse.complete(instructionResponse);
+      slowBundle.close();
+      assertThat(inFlightBundles(metricsContainer, 0), equalTo(0L));
+
+      // Once both workers are idle, the stage prefers the worker it is pinned to.
+      sbf.getBundle(orf, srh, BundleProgressHandler.ignored()).close();
+      verify(slowHandler, Mockito.times(2)).handle(any());
+    }
+  }
+
+  private static long inFlightBundles(MetricsContainerImpl container, int workerIndex) {
+    return container
+        .getGauge(
+            MetricName.named(
+                DefaultJobBundleFactory.class, "in_flight_bundles_worker_" + workerIndex))
+        .getCumulative()
+        .value();
+  }
+
   @Test
   public void rejectsStateCachingWithLoadBalancing() throws Exception {
     PortablePipelineOptions portableOptions =
@@ -518,6 +586,28 @@ public class DefaultJobBundleFactoryTest {
     assertThat(e.getMessage(), containsString("state_cache_size"));
   }
 
+  @Test
+  public void rejectsStateCachingWithLeastLoadedRouting() throws Exception {
+    PortablePipelineOptions portableOptions =
+        PipelineOptionsFactory.as(PortablePipelineOptions.class);
+    portableOptions.setBundleRouting(PortablePipelineOptions.BundleRouting.LEAST_LOADED);
+    ExperimentalOptions options = portableOptions.as(ExperimentalOptions.class);
+    ExperimentalOptions.addExperiment(options, "state_cache_size=1");
+    Struct pipelineOptions = PipelineOptionsTranslation.toProto(options);
+
+    Exception e =
+        Assert.assertThrows(
+            IllegalArgumentException.class,
+            () ->
+                new DefaultJobBundleFactory(
+                        JobInfo.create("testJob", "testJob", "token", pipelineOptions),
+                        envFactoryProviderMap,
+                        stageIdGenerator,
+                        serverInfo)
+                    .close());
+    assertThat(e.getMessage(), containsString("state_cache_size"));
+  }
+
   private DefaultJobBundleFactory createDefaultJobBundleFactory(
       Map<String, EnvironmentFactory.Provider> envFactoryProviderMap) {
     return new DefaultJobBundleFactory(
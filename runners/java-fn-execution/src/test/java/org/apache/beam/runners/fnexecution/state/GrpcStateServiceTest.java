@@ -19,20 +19,30 @@ package org.apache.beam.runners.fnexecution.state;
 
 import static org.hamcrest.CoreMatchers.equalTo;
 import static org.hamcrest.MatcherAssert.assertThat;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
 import static org.mockito.Matchers.any;
 import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 
 import java.nio.charset.StandardCharsets;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.BlockingDeque;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.concurrent.LinkedBlockingDeque;
 import java.util.concurrent.TimeUnit;
 import org.apache.beam.model.fnexecution.v1.BeamFnApi;
 import org.apache.beam.sdk.fn.test.TestStreams;
 import org.apache.beam.vendor.grpc.v1p36p0.com.google.protobuf.ByteString;
 import org.apache.beam.vendor.grpc.v1p36p0.io.grpc.stub.StreamObserver;
+import org.apache.beam.vendor.guava.v26_0_jre.com.google.common.collect.ImmutableSet;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
@@ -128,4 +138,98 @@ public class GrpcStateServiceTest {
     verify(recordingResponseObserver, never()).onError(any());
     assertThat(response.getGet().getData(), equalTo(expectedResponseData));
   }
+
+  @Test
+  public void testConcurrentStateRequestsOverlap() throws Exception {
+    int numRequests = 4;
+    ExecutorService executor = Executors.newCachedThreadPool();
+    try {
+      GrpcStateService concurrentStateService = GrpcStateService.create(executor);
+      // Each request blocks until all requests are in flight, which only completes if they are
+      // served concurrently.
+      CountDownLatch inFlight = new CountDownLatch(numRequests);
+      StateRequestHandler latencyInjectingHandler =
+          request -> {
+            inFlight.countDown();
+            try {
+              assertTrue(inFlight.await(TIMEOUT_MS, TimeUnit.MILLISECONDS));
+            } catch (InterruptedException e) {
+              Thread.currentThread().interrupt();
+              throw new RuntimeException(e);
+            }
+            return CompletableFuture.completedFuture(BeamFnApi.StateResponse.newBuilder());
+          };
+      concurrentStateService.registerForProcessBundleInstructionId(
+          "bundle_instruction", latencyInjectingHandler);
+
+      BlockingDeque<BeamFnApi.StateResponse> responses = new LinkedBlockingDeque<>();
+      StreamObserver<BeamFnApi.StateRequest> requestObserver =
+          concurrentStateService.state(TestStreams.withOnNext(responses::add).build());
+      for (int i = 0; i < numRequests; i++) {
+        requestObserver.onNext(bagUserStateRequest(Integer.toString(i), "key" + i));
+      }
+
+      for (int i = 0; i < numRequests; i++) {
+        BeamFnApi.StateResponse response = responses.poll(TIMEOUT_MS, TimeUnit.MILLISECONDS);
+        assertTrue(response != null && response.getError().isEmpty());
+      }
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  @Test
+  public void testConcurrentStateRequestsForSameUserStateServedInOrder() throws Exception {
+    ExecutorService executor = Executors.newCachedThreadPool();
+    try {
+      GrpcStateService concurrentStateService = GrpcStateService.create(executor);
+      BlockingDeque<BeamFnApi.StateRequest> handledRequests = new LinkedBlockingDeque<>();
+      Map<String, CompletableFuture<BeamFnApi.StateResponse.Builder>> pendingResponses =
+          new ConcurrentHashMap<>();
+      StateRequestHandler recordingHandler =
+          request -> {
+            CompletableFuture<BeamFnApi.StateResponse.Builder> response =
+                new CompletableFuture<>();
+            pendingResponses.put(request.getId(), response);
+            handledRequests.add(request);
+            return response;
+          };
+      concurrentStateService.registerForProcessBundleInstructionId(
+          "bundle_instruction", recordingHandler);
+
+      BlockingDeque<BeamFnApi.StateResponse> responses = new LinkedBlockingDeque<>();
+      StreamObserver<BeamFnApi.StateRequest> requestObserver =
+          concurrentStateService.state(TestStreams.withOnNext(responses::add).build());
+      requestObserver.onNext(bagUserStateRequest("first", "key"));
+      requestObserver.onNext(bagUserStateRequest("second", "key"));
+      requestObserver.onNext(bagUserStateRequest("other", "otherKey"));
+
+      // The request for another key is served while the first request is pending, the second
+      // request for the same key only after the first completed.
+      Set<String> handledIds = new HashSet<>();
+      handledIds.add(handledRequests.poll(TIMEOUT_MS, TimeUnit.MILLISECONDS).getId());
+      handledIds.add(handledRequests.poll(TIMEOUT_MS, TimeUnit.MILLISECONDS).getId());
+      assertEquals(ImmutableSet.of("first", "other"), handledIds);
+      assertEquals(0, handledRequests.size());
+
+      pendingResponses.get("first").complete(BeamFnApi.StateResponse.newBuilder());
+      assertEquals("first", responses.poll(TIMEOUT_MS, TimeUnit.MILLISECONDS).getId());
+      assertEquals("second", handledRequests.poll(TIMEOUT_MS, TimeUnit.MILLISECONDS).getId());
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  private static BeamFnApi.StateRequest bagUserStateRequest(String id, String key) {
+    BeamFnApi.StateRequest.Builder request =
+        BeamFnApi.StateRequest.newBuilder().setId(id).setInstructionId("bundle_instruction");
+    request
+        .getStateKeyBuilder()
+        .getBagUserStateBuilder()
+        .setTransformId("transform")
+        .setUserStateId("state")
+        .setWindow(ByteString.EMPTY)
+        .setKey(ByteString.copyFromUtf8(key));
+    return request.build();
+  }
 }
@@ -23,6 +23,28 @@ import static org.hamcrest.core.Is.is;
 import java.util.Arrays;
 import java.util.List;
 import java.util.Map;
+import org.apache.beam.model.pipeline.v1.RunnerApi;
+import org.apache.beam.model.pipeline.v1.RunnerApi.ExecutableStagePayload;
+import org.apache.beam.model.pipeline.v1.RunnerApi.ExecutableStagePayload.WireCoderSetting;
+import org.apache.beam.runners.core.construction.BeamUrns;
+import org.apache.beam.runners.core.construction.Environments;
+import org.apache.beam.runners.core.construction.PTransformTranslation;
+import org.apache.beam.runners.core.construction.RehydratedComponents;
+import org.apache.beam.runners.core.construction.SdkComponents;
+import org.apache.beam.runners.core.construction.graph.ExecutableStage;
+import org.apache.beam.runners.core.construction.graph.PipelineNode;
+import org.apache.beam.runners.fnexecution.wire.WireCoders;
+import org.apache.beam.sdk.coders.ByteArrayCoder;
+import org.apache.beam.sdk.coders.Coder;
+import org.apache.beam.sdk.coders.KvCoder;
+import org.apache.beam.sdk.coders.LengthPrefixCoder;
+import org.apache.beam.sdk.coders.StringUtf8Coder;
+import org.apache.beam.sdk.coders.VarLongCoder;
+import org.apache.beam.sdk.transforms.windowing.GlobalWindow;
+import org.apache.beam.sdk.util.CoderUtils;
+import org.apache.beam.sdk.util.WindowedValue;
+import org.apache.beam.sdk.values.KV;
+import org.apache.beam.sdk.values.WindowingStrategy;
 import org.apache.beam.vendor.guava.v26_0_jre.com.google.common.collect.BiMap;
 import org.apache.beam.vendor.guava.v26_0_jre.com.google.common.collect.ImmutableMap;
 import org.junit.Test;
@@ -38,4 +60,166 @@ public class PipelineTranslatorUtilsTest {
         ImmutableMap.builder().put("output1", 0).put("output2", 1).put("output3", 2).build();
     assertThat(outputMap, is(expected));
   }
+
+  @Test
+  public void testOpaqueStageEdges() throws Exception {
+    RunnerApi.Components.Builder components = RunnerApi.Components.newBuilder();
+    for (String pCollection : Arrays.asList("impulse.out", "a1", "a2", "a3", "b1", "c1")) {
+      components.putPcollections(
+          pCollection, RunnerApi.PCollection.newBuilder().setUniqueName(pCollection).build());
+    }
+    components.putTransforms(
+        "impulse",
+        RunnerApi.PTransform.newBuilder()
+            .setSpec(
+                RunnerApi.FunctionSpec.newBuilder()
+                    .setUrn(PTransformTranslation.IMPULSE_TRANSFORM_URN))
+            .putOutputs("out", "impulse.out")
+            .build());
+    components.putTransforms(
+        "stageA",
+        stage(
+            ExecutableStagePayload.newBuilder()
+                .setInput("impulse.out")
+                .addOutputs("a1")
+                .addOutputs("a2")
+                .addOutputs("a3"),
+            ImmutableMap.of("in", "impulse.out")));
+    // Consumes a1 as its main input and a2 as a side input.
+    components.putTransforms(
+        "stageB",
+        stage(
+            ExecutableStagePayload.newBuilder()
+                .setInput("a1")
+                .addSideInputs(
+                    ExecutableStagePayload.SideInputId.newBuilder()
+                        .setTransformId("pardo")
+                        .setLocalName("side"))
+                .addOutputs("b1"),
+            ImmutableMap.of("in", "a1", "side", "a2")));
+    // Consumes a3 as the main input of a stateful stage.
+    components.putTransforms(
+        "stageC",
+        stage(
+            ExecutableStagePayload.newBuilder()
+                .setInput("a3")
+                .addUserStates(
+                    ExecutableStagePayload.UserStateId.newBuilder()
+                        .setTransformId("pardo")
+                        .setLocalName("state"))
+                .addOutputs("c1"),
+            ImmutableMap.of("in", "a3")));
+    components.putTransforms(
+        "gbk",
+        RunnerApi.PTransform.newBuilder()
+            .setSpec(
+                RunnerApi.FunctionSpec.newBuilder()
+                    .setUrn(PTransformTranslation.GROUP_BY_KEY_TRANSFORM_URN))
+            .putInputs("in", "b1")
+            .build());
+    RunnerApi.Pipeline pipeline =
+        RunnerApi.Pipeline.newBuilder()
+            .setComponents(components)
+            .addAllRootTransformIds(
+                Arrays.asList("impulse", "stageA", "stageB", "stageC", "gbk"))
+            .build();
+
+    RunnerApi.Components result =
+        PipelineTranslatorUtils.withOpaqueStageEdges(pipeline).getComponents();
+
+    ExecutableStagePayload stageA = payload(result, "stageA");
+    ExecutableStagePayload stageB = payload(result, "stageB");
+    ExecutableStagePayload stageC = payload(result, "stageC");
+    assertThat(PipelineTranslatorUtils.isOpaqueElement(stageA, "a1"), is(true));
+    assertThat(PipelineTranslatorUtils.isOpaqueElement(stageB, "a1"), is(true));
+    assertThat(PipelineTranslatorUtils.isOpaqueElement(stageA, "a2"), is(false));
+    assertThat(PipelineTranslatorUtils.isOpaqueElement(stageA, "a3"), is(false));
+    assertThat(PipelineTranslatorUtils.isOpaqueElement(stageC, "a3"), is(false));
+    assertThat(PipelineTranslatorUtils.isOpaqueElement(stageB, "b1"), is(false));
+    assertThat(PipelineTranslatorUtils.isOpaqueElement(stageA, "impulse.out"), is(false));
+    assertThat(result.getTransformsOrThrow("gbk"), is(components.getTransformsOrThrow("gbk")));
+  }
+
+  @Test
+  public void testOpaqueElementCoder() throws Exception {
+    SdkComponents sdkComponents = SdkComponents.create();
+    sdkComponents.registerEnvironment(Environments.createDockerEnvironment("java"));
+    String coderId =
+        sdkComponents.registerCoder(KvCoder.of(StringUtf8Coder.of(), VarLongCoder.of()));
+    String windowingStrategyId =
+        sdkComponents.registerWindowingStrategy(WindowingStrategy.globalDefault());
+    RunnerApi.Components components =
+        sdkComponents
+            .toComponents()
+            .toBuilder()
+            .putPcollections(
+                "pc",
+                RunnerApi.PCollection.newBuilder()
+                    .setUniqueName("pc")
+                    .setCoderId(coderId)
+                    .setWindowingStrategyId(windowingStrategyId)
+                    .build())
+            .build();
+    WireCoderSetting opaque =
+        WireCoderSetting.newBuilder()
+            .setUrn(BeamUrns.getUrn(RunnerApi.StandardCoders.Enum.WINDOWED_VALUE))
+            .setInputOrOutputId("pc")
+            .setOpaqueElement(true)
+            .build();
+
+    assertThat(
+        PipelineTranslatorUtils.instantiateCoder("pc", components),
+        is(
+            WindowedValue.getFullCoder(
+                KvCoder.of(StringUtf8Coder.of(), VarLongCoder.of()),
+                GlobalWindow.Coder.INSTANCE)));
+    assertThat(
+        PipelineTranslatorUtils.instantiateCoder("pc", components, opaque),
+        is(
+            WindowedValue.getFullCoder(
+                LengthPrefixCoder.of(ByteArrayCoder.of()), GlobalWindow.Coder.INSTANCE)));
+
+    // The SDK harness length prefixes the whole element, so the runner can keep its bytes.
+    RunnerApi.Components.Builder sdkSide = components.toBuilder();
+    String sdkWireCoderId =
+        WireCoders.addSdkWireCoder(
+            PipelineNode.pCollection("pc", components.getPcollectionsOrThrow("pc")),
+            sdkSide,
+            opaque);
+    Coder<WindowedValue<KV<String, Long>>> sdkWireCoder =
+        (Coder<WindowedValue<KV<String, Long>>>)
+            RehydratedComponents.forComponents(sdkSide.build()).getCoder(sdkWireCoderId);
+    Coder<WindowedValue<byte[]>> runnerWireCoder =
+        PipelineTranslatorUtils.instantiateCoder("pc", components, opaque);
+    WindowedValue<KV<String, Long>> element = WindowedValue.valueInGlobalWindow(KV.of("k", 1L));
+    byte[] encoded = CoderUtils.encodeToByteArray(sdkWireCoder, element);
+    WindowedValue<byte[]> runnerElement = CoderUtils.decodeFromByteArray(runnerWireCoder, encoded);
+    assertThat(
+        runnerElement.getValue(),
+        is(
+            CoderUtils.encodeToByteArray(
+                KvCoder.of(StringUtf8Coder.of(), VarLongCoder.of()), element.getValue())));
+    assertThat(CoderUtils.encodeToByteArray(runnerWireCoder, runnerElement), is(encoded));
+  }
+
+  private static RunnerApi.PTransform stage(
+      ExecutableStagePayload.Builder payload, Map<String, String> inputs) {
+    RunnerApi.PTransform.Builder transform =
+        RunnerApi.PTransform.newBuilder()
+            .setSpec(
+                RunnerApi.FunctionSpec.newBuilder()
+                    .setUrn(ExecutableStage.URN)
+                    .setPayload(payload.build().toByteString()))
+            .putAllInputs(inputs);
+    for (String output : payload.getOutputsList()) {
+      transform.putOutputs(output, output);
+    }
+    return transform.build();
+  }
+
+  private static ExecutableStagePayload payload(RunnerApi.Components components, String stageId)
+      throws Exception {
+    return ExecutableStagePayload.parseFrom(
+        components.getTransformsOrThrow(stageId).getSpec().getPayload());
+  }
 }
@@ -35,6 +35,13 @@ public abstract class StructuralKey<K> {
   /** Returns the key that this {@link StructuralKey} was created from. */
   public abstract K getKey();
 
+  /**
+   * Returns the key that this {@link StructuralKey} was created from encoded with its {@link
+   * Coder}. If the {@link Coder} is deterministic, two {@link StructuralKey StructuralKeys} created
+   * with {@link #of(Object, Coder)} are equal exactly when their encoded keys are equal.
+   */
+  public abstract byte[] getEncoded();
+
   /** Get the empty {@link StructuralKey}. All instances of the empty key are considered equal. */
   public static StructuralKey<?> empty() {
     return new StructuralKey<Object>() {
@@ -42,6 +49,11 @@ public abstract class StructuralKey<K> {
       public Object getKey() {
         return this;
       }
+
+      @Override
+      public byte[] getEncoded() {
+        return new byte[0];
+      }
     };
   }
 
@@ -76,6 +88,11 @@ public abstract class StructuralKey<K> {
       }
     }
 
+    @Override
+    public byte[] getEncoded() {
+      return encoded.clone();
+    }
+
     @Override
     public boolean equals(@Nullable Object other) {
       if (other == this) {
@@ -23,6 +23,7 @@ import static org.junit.Assert.assertArrayEquals;
 import org.apache.beam.sdk.coders.ByteArrayCoder;
 import org.apache.beam.sdk.coders.StringUtf8Coder;
 import org.apache.beam.sdk.coders.VarIntCoder;
+import org.apache.beam.sdk.util.CoderUtils;
 import org.hamcrest.Matchers;
 import org.junit.Test;
 import org.junit.runner.RunWith;
@@ -49,6 +50,14 @@ public class StructuralKeyTest {
     assertThat(key.getKey(), Matchers.not(Matchers.theInstance(original)));
   }
 
+  @Test
+  public void getEncodedEqualToEncodedKey() throws Exception {
+    assertArrayEquals(
+        CoderUtils.encodeToByteArray(StringUtf8Coder.of(), "foobar"),
+        StructuralKey.of("foobar", StringUtf8Coder.of()).getEncoded());
+    assertArrayEquals(new byte[0], StructuralKey.empty().getEncoded());
+  }
+
   @Test
   public void emptyKeysNotEqual() {
     StructuralKey<?> empty = StructuralKey.empty();
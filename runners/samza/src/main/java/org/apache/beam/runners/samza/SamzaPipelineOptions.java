@@ -100,6 +100,15 @@ public interface SamzaPipelineOptions extends PipelineOptions {
 
   void setStoreBatchGetSize(int storeBatchGetSize);
 
+  @Description(
+      "The maximum number of keys per state store that are cached in memory within a bundle. "
+          + "Writes to the cached keys are coalesced and written to the store when the bundle "
+          + "finishes. The cache is disabled if the size is 0.")
+  @Default.Integer(0)
+  int getStateCacheSize();
+
+  void setStateCacheSize(int stateCacheSize);
+
   @Description("Enable/disable Beam metrics in Samza Runner")
   @Default.Boolean(true)
   Boolean getEnableMetrics();
@@ -129,4 +138,13 @@ public interface SamzaPipelineOptions extends PipelineOptions {
   long getMaxBundleTimeMs();
 
   void setMaxBundleTimeMs(long maxBundleTimeMs);
+
+  @Description(
+      "The target time to process a bundle and resolve its outputs (in milliseconds). If set, the "
+          + "number of elements in a bundle adapts between 1 and maxBundleSize to the measured "
+          + "processing time of the previous bundles. Adaptive bundle sizing is disabled if 0.")
+  @Default.Long(0)
+  long getTargetBundleTimeMs();
+
+  void setTargetBundleTimeMs(long targetBundleTimeMs);
 }
@@ -27,6 +27,9 @@ import java.util.function.BiConsumer;
 import javax.annotation.Nullable;
 import org.apache.beam.runners.core.StateNamespaces;
 import org.apache.beam.runners.core.TimerInternals;
+import org.apache.beam.sdk.metrics.Gauge;
+import org.apache.beam.sdk.metrics.MetricName;
+import org.apache.beam.sdk.metrics.MetricsContainer;
 import org.apache.beam.sdk.state.TimeDomain;
 import org.apache.beam.sdk.transforms.windowing.BoundedWindow;
 import org.apache.beam.sdk.util.WindowedValue;
@@ -51,6 +54,12 @@ import org.slf4j.LoggerFactory;
  * processElement returns. 2. In case of asynchronous ParDo, outputs of the element is resolved when
  * all the future emitted by the processElement is resolved.
  *
+ * <p>A bundle is closed once it has as many elements as the bundle size or after the max bundle
+ * time. The bundle size is the max bundle size, unless a target bundle time is set. In that case
+ * the bundle size adapts to the time it took to complete the previous bundles, including the time
+ * to resolve their outputs, so that the bundles complete within the target time. It starts at 1
+ * and grows or shrinks within the max bundle size as the bundles complete.
+ *
  * <p>This class is not thread safe and the current implementation relies on the assumption that
  * messages are dispatched to BundleManager in a single threaded mode.
  *
@@ -65,11 +74,17 @@ public class BundleManager<OutT> {
 
   private final long maxBundleSize;
   private final long maxBundleTimeMs;
+  // The target time to complete a bundle, or 0 if the bundle size is not adapted
+  private final long targetBundleTimeMs;
+  @Nullable private final Gauge bundleSizeGauge;
+  @Nullable private final Gauge bundleTimeGauge;
   private final BundleProgressListener<OutT> bundleProgressListener;
   private final FutureCollector<OutT> futureCollector;
   private final Scheduler<KeyedTimerData<Void>> bundleTimerScheduler;
   private final String bundleCheckTimerId;
 
+  // Number of elements after which the current active bundle is closed
+  private transient AtomicLong bundleSize;
   // Number elements belonging to the current active bundle
   private transient AtomicLong currentBundleElementCount;
   // Number of bundles that are in progress but not yet finished
@@ -94,8 +109,37 @@ public class BundleManager<OutT> {
       long maxBundleTimeMs,
       Scheduler<KeyedTimerData<Void>> bundleTimerScheduler,
       String bundleCheckTimerId) {
+    this(
+        bundleProgressListener,
+        futureCollector,
+        maxBundleSize,
+        maxBundleTimeMs,
+        0L,
+        null,
+        bundleTimerScheduler,
+        bundleCheckTimerId);
+  }
+
+  public BundleManager(
+      BundleProgressListener<OutT> bundleProgressListener,
+      FutureCollector<OutT> futureCollector,
+      long maxBundleSize,
+      long maxBundleTimeMs,
+      long targetBundleTimeMs,
+      @Nullable MetricsContainer metricsContainer,
+      Scheduler<KeyedTimerData<Void>> bundleTimerScheduler,
+      String bundleCheckTimerId) {
     this.maxBundleSize = maxBundleSize;
     this.maxBundleTimeMs = maxBundleTimeMs;
+    this.targetBundleTimeMs = targetBundleTimeMs;
+    this.bundleSizeGauge =
+        metricsContainer == null
+            ? null
+            : metricsContainer.getGauge(MetricName.named(BundleManager.class, "bundleSize"));
+    this.bundleTimeGauge =
+        metricsContainer == null
+            ? null
+            : metricsContainer.getGauge(MetricName.named(BundleManager.class, "bundleTimeMs"));
     this.bundleProgressListener = bundleProgressListener;
     this.bundleTimerScheduler = bundleTimerScheduler;
     this.bundleCheckTimerId = bundleCheckTimerId;
@@ -106,6 +150,10 @@ public class BundleManager<OutT> {
     }
 
     // instance variable initialization for bundle tracking
+    this.bundleSize = new AtomicLong(targetBundleTimeMs > 0 ? 1L : maxBundleSize);
+    if (bundleSizeGauge != null) {
+      bundleSizeGauge.set(bundleSize.get());
+    }
     this.bundleStartTime = new AtomicLong(Long.MAX_VALUE);
     this.currentActiveBundleDoneFutureReference = new AtomicReference<>();
     this.currentBundleElementCount = new AtomicLong(0L);
@@ -229,8 +277,8 @@ public class BundleManager<OutT> {
       // reset the bundle count
       // seal the bundle and emit the result future (collection of results)
       // chain the finish bundle invocation on the finish bundle
-      currentBundleElementCount.set(0L);
-      bundleStartTime.set(Long.MAX_VALUE);
+      final long bundleElementCount = currentBundleElementCount.getAndSet(0L);
+      final long bundleStartTimeMs = bundleStartTime.getAndSet(Long.MAX_VALUE);
       Instant watermarkHold = bundleWatermarkHold;
       bundleWatermarkHold = null;
 
@@ -243,6 +291,10 @@ public class BundleManager<OutT> {
                   : CompletableFuture.completedFuture(null),
               (res, ignored) -> {
                 bundleProgressListener.onBundleFinished(emitter);
+                if (targetBundleTimeMs > 0) {
+                  adaptBundleSize(
+                      bundleElementCount, System.currentTimeMillis() - bundleStartTimeMs);
+                }
                 return res;
               });
 
@@ -279,6 +331,50 @@ public class BundleManager<OutT> {
     emitter.emitFuture(outputFuture);
   }
 
+  /**
+   * Adapts the size of the next bundles to a completed bundle. The number of elements that
+   * complete within the target bundle time is estimated from the time per element of the bundle
+   * and divided by the number of bundles whose outputs are pending, since those delay the
+   * completion of the next bundle too. The bundle size then moves half-way to the estimate but at
+   * most doubles, which smooths out the noise of single bundles.
+   */
+  private void adaptBundleSize(long elementCount, long bundleTimeMs) {
+    final double elementTimeMs = Math.max(bundleTimeMs, 1L) / (double) Math.max(elementCount, 1L);
+    final long pendingBundles = Math.max(pendingBundleCount.get(), 1L);
+    final long estimatedSize = (long) (targetBundleTimeMs / elementTimeMs / pendingBundles);
+    final long newBundleSize =
+        bundleSize.updateAndGet(size -> adaptedBundleSize(size, estimatedSize, maxBundleSize));
+    LOG.debug(
+        "Bundle of {} elements completed in {} ms, the bundle size is now {}.",
+        elementCount,
+        bundleTimeMs,
+        newBundleSize);
+
+    if (bundleSizeGauge != null) {
+      bundleSizeGauge.set(newBundleSize);
+    }
+    if (bundleTimeGauge != null) {
+      bundleTimeGauge.set(bundleTimeMs);
+    }
+  }
+
+  /**
+   * Returns the bundle size moved half-way from {@code size} to {@code estimatedSize}, rounding
+   * toward the estimate so that the estimate is reached, but at most doubled and within {@code [1,
+   * maxBundleSize]}.
+   */
+  @VisibleForTesting
+  static long adaptedBundleSize(long size, long estimatedSize, long maxBundleSize) {
+    final long step = estimatedSize - size;
+    final long adaptedSize = Math.min(2 * size, size + (step > 0 ? step + 1 : step - 1) / 2);
+    return Math.max(1L, Math.min(maxBundleSize, adaptedSize));
+  }
+
+  @VisibleForTesting
+  long getBundleSize() {
+    return bundleSize.longValue();
+  }
+
   @VisibleForTesting
   long getCurrentBundleElementCount() {
     return currentBundleElementCount.longValue();
@@ -317,14 +413,15 @@ public class BundleManager<OutT> {
 
   /**
    * We close the current bundle in progress if one of the following criteria is met 1. The bundle
-   * count &ge; maxBundleSize 2. Time elapsed since the bundle started is &ge; maxBundleTimeMs 3.
-   * Watermark hold equals to TIMESTAMP_MAX_VALUE which usually is the case for bounded jobs
+   * count &ge; bundleSize, which is maxBundleSize unless it adapts to targetBundleTimeMs 2. Time
+   * elapsed since the bundle started is &ge; maxBundleTimeMs 3. Watermark hold equals to
+   * TIMESTAMP_MAX_VALUE which usually is the case for bounded jobs
    *
    * @return true - if one of the criteria above is satisfied; false - otherwise
    */
   private boolean shouldFinishBundle() {
     return isBundleStarted.get()
-        && (currentBundleElementCount.get() >= maxBundleSize
+        && (currentBundleElementCount.get() >= bundleSize.get()
             || System.currentTimeMillis() - bundleStartTime.get() >= maxBundleTimeMs
             || BoundedWindow.TIMESTAMP_MAX_VALUE.equals(bundleWatermarkHold));
   }
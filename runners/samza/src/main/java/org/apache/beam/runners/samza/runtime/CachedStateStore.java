@@ -0,0 +1,241 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.beam.runners.samza.runtime;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import org.apache.beam.runners.samza.runtime.SamzaStoreStateInternals.ByteArray;
+import org.apache.beam.sdk.metrics.Counter;
+import org.apache.beam.sdk.metrics.MetricName;
+import org.apache.beam.sdk.metrics.MetricsContainer;
+import org.apache.samza.storage.kv.Entry;
+import org.apache.samza.storage.kv.KeyValueIterator;
+import org.apache.samza.storage.kv.KeyValueStore;
+import org.checkerframework.checker.nullness.qual.Nullable;
+
+/**
+ * A write-back and read-through cache in front of a Samza {@link KeyValueStore} for the state
+ * accessed within a bundle.
+ *
+ * <p>Reads of cached keys, including keys known to be absent, are served from memory. Writes and
+ * deletes are buffered in the cache, so repeated writes of the same key are coalesced, and are
+ * written to the store with {@link KeyValueStore#putAll} and {@link KeyValueStore#deleteAll} when
+ * the cache is flushed at the end of a bundle, or once the cache holds more than its size of keys.
+ * Range reads write the buffered changes to the store first so that they see them. A cache size of
+ * zero or less passes every access through to the store.
+ *
+ * <p>Hits, misses, coalesced writes and flushes are reported to the given {@link
+ * MetricsContainer}, which is the container of the step in the {@link
+ * org.apache.beam.runners.samza.metrics.SamzaMetricsContainer}.
+ *
+ * @param <V> type of the values in the store
+ */
+@SuppressWarnings({
+  "nullness" // TODO(https://issues.apache.org/jira/browse/BEAM-10402)
+})
+class CachedStateStore<V> {
+  private final KeyValueStore<ByteArray, V> store;
+  private final int cacheSize;
+  private final Map<ByteArray, CachedValue<V>> cache;
+
+  private final @Nullable Counter hits;
+  private final @Nullable Counter misses;
+  private final @Nullable Counter coalescedWrites;
+  private final @Nullable Counter flushes;
+  private final @Nullable Counter flushedWrites;
+  private final @Nullable Counter flushedDeletes;
+
+  CachedStateStore(
+      KeyValueStore<ByteArray, V> store,
+      int cacheSize,
+      @Nullable MetricsContainer metricsContainer) {
+    this.store = store;
+    this.cacheSize = cacheSize;
+    this.cache = new HashMap<>();
+
+    this.hits = counter(metricsContainer, "stateCacheHits");
+    this.misses = counter(metricsContainer, "stateCacheMisses");
+    this.coalescedWrites = counter(metricsContainer, "stateCacheCoalescedWrites");
+    this.flushes = counter(metricsContainer, "stateCacheFlushes");
+    this.flushedWrites = counter(metricsContainer, "stateCacheFlushedWrites");
+    this.flushedDeletes = counter(metricsContainer, "stateCacheFlushedDeletes");
+  }
+
+  synchronized V get(ByteArray key) {
+    if (cacheSize <= 0) {
+      return store.get(key);
+    }
+
+    final CachedValue<V> cached = cache.get(key);
+    if (cached != null) {
+      inc(hits, 1);
+      return cached.value;
+    }
+
+    inc(misses, 1);
+    final V value = store.get(key);
+    cache(key, new CachedValue<>(value, false));
+    return value;
+  }
+
+  /** Returns the values of the keys present, in the order of the given keys. */
+  synchronized Map<ByteArray, V> getAll(List<ByteArray> keys) {
+    if (cacheSize <= 0) {
+      return store.getAll(keys);
+    }
+
+    final List<ByteArray> missingKeys = new ArrayList<>();
+    for (ByteArray key : keys) {
+      if (!cache.containsKey(key)) {
+        missingKeys.add(key);
+      }
+    }
+    inc(hits, keys.size() - missingKeys.size());
+    inc(misses, missingKeys.size());
+
+    final Map<ByteArray, CachedValue<V>> fetched = new HashMap<>();
+    if (!missingKeys.isEmpty()) {
+      final Map<ByteArray, V> storeValues = store.getAll(missingKeys);
+      for (ByteArray key : missingKeys) {
+        fetched.put(key, new CachedValue<>(storeValues.get(key), false));
+      }
+    }
+
+    final Map<ByteArray, V> values = new LinkedHashMap<>();
+    for (ByteArray key : keys) {
+      final CachedValue<V> cached = fetched.containsKey(key) ? fetched.get(key) : cache.get(key);
+      if (cached.value != null) {
+        values.put(key, cached.value);
+      }
+    }
+    // cache the fetched values after the lookups above since caching may flush the cache
+    fetched.forEach(this::cache);
+    return values;
+  }
+
+  synchronized void put(ByteArray key, V value) {
+    if (cacheSize <= 0) {
+      store.put(key, value);
+    } else {
+      write(key, value);
+    }
+  }
+
+  synchronized void delete(ByteArray key) {
+    if (cacheSize <= 0) {
+      store.delete(key);
+    } else {
+      write(key, null);
+    }
+  }
+
+  synchronized void deleteAll(List<ByteArray> keys) {
+    if (cacheSize <= 0) {
+      store.deleteAll(keys);
+    } else {
+      keys.forEach(key -> write(key, null));
+    }
+  }
+
+  /**
+   * Returns an iterator over the store between the given keys, after writing the changes buffered
+   * in the cache to the store.
+   */
+  synchronized KeyValueIterator<ByteArray, V> range(ByteArray from, ByteArray to) {
+    writeBack();
+    return store.range(from, to);
+  }
+
+  /** Writes the changes buffered in the cache to the store and empties the cache. */
+  synchronized void flush() {
+    writeBack();
+    cache.clear();
+  }
+
+  private void write(ByteArray key, @Nullable V value) {
+    final CachedValue<V> previous = cache.get(key);
+    if (previous != null && previous.dirty) {
+      inc(coalescedWrites, 1);
+    }
+    cache(key, new CachedValue<>(value, true));
+  }
+
+  private void cache(ByteArray key, CachedValue<V> cached) {
+    cache.put(key, cached);
+    if (cache.size() > cacheSize) {
+      flush();
+    }
+  }
+
+  private void writeBack() {
+    final List<Entry<ByteArray, V>> puts = new ArrayList<>();
+    final List<ByteArray> deletes = new ArrayList<>();
+    for (Map.Entry<ByteArray, CachedValue<V>> entry : cache.entrySet()) {
+      final CachedValue<V> cached = entry.getValue();
+      if (cached.dirty) {
+        if (cached.value == null) {
+          deletes.add(entry.getKey());
+        } else {
+          puts.add(new Entry<>(entry.getKey(), cached.value));
+        }
+        entry.setValue(new CachedValue<>(cached.value, false));
+      }
+    }
+
+    if (puts.isEmpty() && deletes.isEmpty()) {
+      return;
+    }
+    if (!puts.isEmpty()) {
+      store.putAll(puts);
+    }
+    if (!deletes.isEmpty()) {
+      store.deleteAll(deletes);
+    }
+    inc(flushes, 1);
+    inc(flushedWrites, puts.size());
+    inc(flushedDeletes, deletes.size());
+  }
+
+  private static @Nullable Counter counter(
+      @Nullable MetricsContainer metricsContainer, String name) {
+    return metricsContainer == null
+        ? null
+        : metricsContainer.getCounter(MetricName.named(CachedStateStore.class, name));
+  }
+
+  private static void inc(@Nullable Counter counter, long n) {
+    if (counter != null && n > 0) {
+      counter.inc(n);
+    }
+  }
+
+  /** A cached value, which is null if the key is absent or deleted. */
+  private static class CachedValue<V> {
+    private final @Nullable V value;
+    // whether the value has not been written to the store yet
+    private final boolean dirty;
+
+    private CachedValue(@Nullable V value, boolean dirty) {
+      this.value = value;
+      this.dirty = dirty;
+    }
+  }
+}
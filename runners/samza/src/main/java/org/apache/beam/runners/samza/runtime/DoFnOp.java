@@ -47,6 +47,7 @@ import org.apache.beam.runners.samza.SamzaExecutionContext;
 import org.apache.beam.runners.samza.SamzaPipelineOptions;
 import org.apache.beam.runners.samza.util.FutureUtils;
 import org.apache.beam.sdk.coders.Coder;
+import org.apache.beam.sdk.metrics.MetricsContainer;
 import org.apache.beam.sdk.transforms.DoFn;
 import org.apache.beam.sdk.transforms.DoFnSchemaInformation;
 import org.apache.beam.sdk.transforms.join.RawUnionValue;
@@ -101,6 +102,8 @@ public class DoFnOp<InT, FnOutT, OutT> implements Op<InT, OutT, Void> {
   private final JobInfo jobInfo;
   private final HashMap<String, TupleTag<?>> idToTupleTagMap;
 
+  private transient SamzaStoreStateInternals.Factory<?> nonKeyedStateInternalsFactory;
+  private transient SamzaStoreStateInternals.Factory<?> stateInternalsFactory;
   private transient SamzaTimerInternalsFactory<?> timerInternalsFactory;
   private transient DoFnRunner<InT, FnOutT> fnRunner;
   private transient PushbackSideInputDoFnRunner<InT, FnOutT> pushbackFnRunner;
@@ -190,9 +193,16 @@ public class DoFnOp<InT, FnOutT, OutT> implements Op<InT, OutT, Void> {
     this.bundleDisabled = samzaPipelineOptions.getMaxBundleSize() <= 1;
 
     final String stateId = "pardo-" + transformId;
-    final SamzaStoreStateInternals.Factory<?> nonKeyedStateInternalsFactory =
+    final MetricsContainer stepMetricsContainer =
+        samzaPipelineOptions.getEnableMetrics()
+            ? samzaExecutionContext.getMetricsContainer().getContainer(transformFullName)
+            : null;
+    // the state is cached within a bundle and flushed to the stores when the bundle finishes
+    final int stateCacheSize = samzaPipelineOptions.getStateCacheSize();
+    this.nonKeyedStateInternalsFactory =
         SamzaStoreStateInternals.createNonKeyedStateInternalsFactory(
-            stateId, context.getTaskContext(), samzaPipelineOptions);
+                stateId, context.getTaskContext(), samzaPipelineOptions)
+            .withCache(stateCacheSize, stepMetricsContainer);
     final FutureCollector<OutT> outputFutureCollector = createFutureCollector();
 
     this.bundleManager =
@@ -201,6 +211,8 @@ public class DoFnOp<InT, FnOutT, OutT> implements Op<InT, OutT, Void> {
             outputFutureCollector,
             samzaPipelineOptions.getMaxBundleSize(),
             samzaPipelineOptions.getMaxBundleTimeMs(),
+            samzaPipelineOptions.getTargetBundleTimeMs(),
+            stepMetricsContainer,
             timerRegistry,
             bundleCheckTimerId);
 
@@ -239,18 +251,21 @@ public class DoFnOp<InT, FnOutT, OutT> implements Op<InT, OutT, Void> {
               context,
               transformFullName);
     } else {
+      this.stateInternalsFactory =
+          SamzaStoreStateInternals.createStateInternalsFactory(
+                  stateId, keyCoder, context.getTaskContext(), samzaPipelineOptions, signature)
+              .withCache(stateCacheSize, stepMetricsContainer);
       this.fnRunner =
           SamzaDoFnRunners.create(
               samzaPipelineOptions,
               doFn,
               windowingStrategy,
               transformFullName,
-              stateId,
+              stateInternalsFactory,
               context,
               mainOutputTag,
               sideInputHandler,
               timerInternalsFactory,
-              keyCoder,
               outputManagerFactory.create(emitter, outputFutureCollector),
               inputCoder,
               sideOutputTags,
@@ -334,6 +349,8 @@ public class DoFnOp<InT, FnOutT, OutT> implements Op<InT, OutT, Void> {
       timerInternalsFactory.setOutputWatermark(actualInputWatermark);
       emitter.emitWatermark(timerInternalsFactory.getOutputWatermark());
     }
+
+    flushState();
   }
 
   @Override
@@ -355,6 +372,7 @@ public class DoFnOp<InT, FnOutT, OutT> implements Op<InT, OutT, Void> {
     }
 
     sideInputHandler.addSideInputValue(view, retypedElements);
+    flushState();
 
     final List<WindowedValue<InT>> previousPushbackValues = new ArrayList<>(pushbackValues);
     pushbackWatermarkHold = BoundedWindow.TIMESTAMP_MAX_VALUE;
@@ -395,6 +413,7 @@ public class DoFnOp<InT, FnOutT, OutT> implements Op<InT, OutT, Void> {
     pushbackFnRunner.finishBundle();
 
     this.timerInternalsFactory.removeProcessingTimer((KeyedTimerData) keyedTimerData);
+    flushState();
   }
 
   @Override
@@ -426,6 +445,14 @@ public class DoFnOp<InT, FnOutT, OutT> implements Op<InT, OutT, Void> {
         timer.getDomain());
   }
 
+  /** Writes the state changes cached within the bundle to the stores. */
+  private void flushState() {
+    nonKeyedStateInternalsFactory.flush();
+    if (stateInternalsFactory != null) {
+      stateInternalsFactory.flush();
+    }
+  }
+
   // todo: should this go through bundle manager to start and finish the bundle?
   private void emitAllPushbackValues() {
     if (!pushbackValues.isEmpty()) {
@@ -453,6 +480,7 @@ public class DoFnOp<InT, FnOutT, OutT> implements Op<InT, OutT, Void> {
       @Override
       public void onBundleFinished(OpEmitter<OutT> emitter) {
         pushbackFnRunner.finishBundle();
+        flushState();
       }
 
       @Override
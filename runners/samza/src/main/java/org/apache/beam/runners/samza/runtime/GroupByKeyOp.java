@@ -27,7 +27,6 @@ import org.apache.beam.runners.core.KeyedWorkItemCoder;
 import org.apache.beam.runners.core.KeyedWorkItems;
 import org.apache.beam.runners.core.NullSideInputReader;
 import org.apache.beam.runners.core.StateInternals;
-import org.apache.beam.runners.core.StateInternalsFactory;
 import org.apache.beam.runners.core.StepContext;
 import org.apache.beam.runners.core.SystemReduceFn;
 import org.apache.beam.runners.core.TimerInternals;
@@ -36,6 +35,7 @@ import org.apache.beam.runners.samza.SamzaExecutionContext;
 import org.apache.beam.runners.samza.SamzaPipelineOptions;
 import org.apache.beam.runners.samza.metrics.DoFnRunnerWithMetrics;
 import org.apache.beam.sdk.coders.Coder;
+import org.apache.beam.sdk.metrics.MetricsContainer;
 import org.apache.beam.sdk.options.PipelineOptionsFactory;
 import org.apache.beam.sdk.transforms.DoFn;
 import org.apache.beam.sdk.transforms.DoFnSchemaInformation;
@@ -71,7 +71,8 @@ public class GroupByKeyOp<K, InputT, OutputT>
   private final String transformId;
   private final IsBounded isBounded;
 
-  private transient StateInternalsFactory<K> stateInternalsFactory;
+  private transient SamzaStoreStateInternals.Factory<?> nonKeyedStateInternalsFactory;
+  private transient SamzaStoreStateInternals.Factory<K> stateInternalsFactory;
   private transient SamzaTimerInternalsFactory<K> timerInternalsFactory;
   private transient DoFnRunner<KeyedWorkItem<K, InputT>, KV<K, OutputT>> fnRunner;
   private transient SamzaPipelineOptions pipelineOptions;
@@ -114,20 +115,27 @@ public class GroupByKeyOp<K, InputT, OutputT>
         (SamzaExecutionContext) context.getApplicationContainerContext();
     this.pipelineOptions = samzaExecutionContext.getPipelineOptions();
 
-    final SamzaStoreStateInternals.Factory<?> nonKeyedStateInternalsFactory =
+    // the state is cached while processing an element or firing timers and flushed afterwards
+    final MetricsContainer stateMetricsContainer =
+        pipelineOptions.getEnableMetrics()
+            ? samzaExecutionContext.getMetricsContainer().getContainer(transformFullName)
+            : null;
+    this.nonKeyedStateInternalsFactory =
         SamzaStoreStateInternals.createNonKeyedStateInternalsFactory(
-            transformId, context.getTaskContext(), pipelineOptions);
+                transformId, context.getTaskContext(), pipelineOptions)
+            .withCache(pipelineOptions.getStateCacheSize(), stateMetricsContainer);
 
     final DoFnRunners.OutputManager outputManager = outputManagerFactory.create(emitter);
 
     this.stateInternalsFactory =
         new SamzaStoreStateInternals.Factory<>(
-            transformId,
-            Collections.singletonMap(
-                SamzaStoreStateInternals.BEAM_STORE,
-                SamzaStoreStateInternals.getBeamStore(context.getTaskContext())),
-            keyCoder,
-            pipelineOptions.getStoreBatchGetSize());
+                transformId,
+                Collections.singletonMap(
+                    SamzaStoreStateInternals.BEAM_STORE,
+                    SamzaStoreStateInternals.getBeamStore(context.getTaskContext())),
+                keyCoder,
+                pipelineOptions.getStoreBatchGetSize())
+            .withCache(pipelineOptions.getStateCacheSize(), stateMetricsContainer);
 
     this.timerInternalsFactory =
         SamzaTimerInternalsFactory.createTimerInternalFactory(
@@ -180,11 +188,9 @@ public class GroupByKeyOp<K, InputT, OutputT>
             DoFnSchemaInformation.create(),
             Collections.emptyMap());
 
-    final SamzaExecutionContext executionContext =
-        (SamzaExecutionContext) context.getApplicationContainerContext();
     this.fnRunner =
         DoFnRunnerWithMetrics.wrap(
-            doFnRunner, executionContext.getMetricsContainer(), transformFullName);
+            doFnRunner, samzaExecutionContext.getMetricsContainer(), transformFullName);
   }
 
   @Override
@@ -193,6 +199,7 @@ public class GroupByKeyOp<K, InputT, OutputT>
     fnRunner.startBundle();
     fnRunner.processElement(inputElement);
     fnRunner.finishBundle();
+    flushState();
   }
 
   @Override
@@ -213,6 +220,8 @@ public class GroupByKeyOp<K, InputT, OutputT>
       timerInternalsFactory.setOutputWatermark(watermark);
       emitter.emitWatermark(timerInternalsFactory.getOutputWatermark());
     }
+
+    flushState();
   }
 
   @Override
@@ -222,6 +231,13 @@ public class GroupByKeyOp<K, InputT, OutputT>
     fnRunner.finishBundle();
 
     timerInternalsFactory.removeProcessingTimer(keyedTimerData);
+    flushState();
+  }
+
+  /** Writes the state changes cached while processing to the stores. */
+  private void flushState() {
+    nonKeyedStateInternalsFactory.flush();
+    stateInternalsFactory.flush();
   }
 
   private void fireTimer(K key, TimerData timer) {
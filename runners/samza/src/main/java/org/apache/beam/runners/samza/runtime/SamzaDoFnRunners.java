@@ -51,8 +51,6 @@ import org.apache.beam.sdk.state.BagState;
 import org.apache.beam.sdk.state.TimeDomain;
 import org.apache.beam.sdk.transforms.DoFn;
 import org.apache.beam.sdk.transforms.DoFnSchemaInformation;
-import org.apache.beam.sdk.transforms.reflect.DoFnSignature;
-import org.apache.beam.sdk.transforms.reflect.DoFnSignatures;
 import org.apache.beam.sdk.transforms.windowing.BoundedWindow;
 import org.apache.beam.sdk.transforms.windowing.PaneInfo;
 import org.apache.beam.sdk.util.WindowedValue;
@@ -78,12 +76,11 @@ public class SamzaDoFnRunners {
       DoFn<InT, FnOutT> doFn,
       WindowingStrategy<?, ?> windowingStrategy,
       String transformFullName,
-      String transformId,
+      SamzaStoreStateInternals.Factory<?> stateInternalsFactory,
       Context context,
       TupleTag<FnOutT> mainOutputTag,
       SideInputHandler sideInputHandler,
       SamzaTimerInternalsFactory<?> timerInternalsFactory,
-      Coder<?> keyCoder,
       DoFnRunners.OutputManager outputManager,
       Coder<InT> inputCoder,
       List<TupleTag<?>> sideOutputTags,
@@ -93,11 +90,6 @@ public class SamzaDoFnRunners {
     final KeyedInternals keyedInternals;
     final TimerInternals timerInternals;
     final StateInternals stateInternals;
-    final DoFnSignature signature = DoFnSignatures.getSignature(doFn.getClass());
-    final SamzaStoreStateInternals.Factory<?> stateInternalsFactory =
-        SamzaStoreStateInternals.createStateInternalsFactory(
-            transformId, keyCoder, context.getTaskContext(), pipelineOptions, signature);
-
     final SamzaExecutionContext executionContext =
         (SamzaExecutionContext) context.getApplicationContainerContext();
     if (StateUtils.isStateful(doFn)) {
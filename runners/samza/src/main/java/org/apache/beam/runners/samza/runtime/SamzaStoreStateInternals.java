@@ -51,6 +51,7 @@ import org.apache.beam.sdk.coders.BooleanCoder;
 import org.apache.beam.sdk.coders.Coder;
 import org.apache.beam.sdk.coders.InstantCoder;
 import org.apache.beam.sdk.coders.VoidCoder;
+import org.apache.beam.sdk.metrics.MetricsContainer;
 import org.apache.beam.sdk.state.BagState;
 import org.apache.beam.sdk.state.CombiningState;
 import org.apache.beam.sdk.state.MapState;
@@ -98,14 +99,14 @@ public class SamzaStoreStateInternals<K> implements StateInternals {
       new ThreadLocal<>();
 
   // the stores include both beamStore for system states as well as stores for user state
-  private final Map<String, KeyValueStore<ByteArray, StateValue<?>>> stores;
+  private final Map<String, CachedStateStore<StateValue<?>>> stores;
   private final K key;
   private final byte[] keyBytes;
   private final int batchGetSize;
   private final String stageId;
 
   private SamzaStoreStateInternals(
-      Map<String, KeyValueStore<ByteArray, StateValue<?>>> stores,
+      Map<String, CachedStateStore<StateValue<?>>> stores,
       @Nullable K key,
       byte @Nullable [] keyBytes,
       String stageId,
@@ -271,6 +272,7 @@ public class SamzaStoreStateInternals<K> implements StateInternals {
   public static class Factory<K> implements StateInternalsFactory<K> {
     private final String stageId;
     private final Map<String, KeyValueStore<ByteArray, StateValue<?>>> stores;
+    private final Map<String, CachedStateStore<StateValue<?>>> cachedStores;
     private final Coder<K> keyCoder;
     private final int batchGetSize;
 
@@ -279,10 +281,45 @@ public class SamzaStoreStateInternals<K> implements StateInternals {
         Map<String, KeyValueStore<ByteArray, StateValue<?>>> stores,
         Coder<K> keyCoder,
         int batchGetSize) {
+      this(stageId, stores, keyCoder, batchGetSize, 0, null);
+    }
+
+    private Factory(
+        String stageId,
+        Map<String, KeyValueStore<ByteArray, StateValue<?>>> stores,
+        Coder<K> keyCoder,
+        int batchGetSize,
+        int cacheSize,
+        @Nullable MetricsContainer metricsContainer) {
       this.stageId = stageId;
       this.stores = stores;
       this.keyCoder = keyCoder;
       this.batchGetSize = batchGetSize;
+      this.cachedStores = new HashMap<>();
+      stores.forEach(
+          (storeId, store) ->
+              cachedStores.put(
+                  storeId, new CachedStateStore<>(store, cacheSize, metricsContainer)));
+    }
+
+    /**
+     * Returns a factory of the same states that caches up to {@code cacheSize} keys of each store
+     * in memory and buffers the writes to them until {@link #flush()}. See {@link
+     * CachedStateStore}.
+     *
+     * @param cacheSize the maximum number of keys cached per store, or 0 to disable the cache
+     * @param metricsContainer the container to report the cache metrics to, if any
+     */
+    public Factory<K> withCache(int cacheSize, @Nullable MetricsContainer metricsContainer) {
+      return new Factory<>(stageId, stores, keyCoder, batchGetSize, cacheSize, metricsContainer);
+    }
+
+    /**
+     * Writes the state changes buffered in the cache to the stores and empties the cache. It is
+     * invoked when a bundle finishes.
+     */
+    public void flush() {
+      cachedStores.values().forEach(CachedStateStore::flush);
     }
 
     @Override
@@ -303,7 +340,8 @@ public class SamzaStoreStateInternals<K> implements StateInternals {
         throw new RuntimeException("Cannot encode key for state store", e);
       }
 
-      return new SamzaStoreStateInternals<>(stores, key, baos.toByteArray(), stageId, batchGetSize);
+      return new SamzaStoreStateInternals<>(
+          cachedStores, key, baos.toByteArray(), stageId, batchGetSize);
     }
   }
 
@@ -315,7 +353,7 @@ public class SamzaStoreStateInternals<K> implements StateInternals {
     private final byte[] keyBytes;
     private byte[] encodedStoreKey;
     protected final Coder<T> coder;
-    protected final KeyValueStore<ByteArray, StateValue<T>> store;
+    protected final CachedStateStore<StateValue<T>> store;
 
     @SuppressWarnings({"unchecked", "rawtypes"})
     protected AbstractSamzaState(
@@ -326,8 +364,8 @@ public class SamzaStoreStateInternals<K> implements StateInternals {
       this.isBeamStore = !stores.containsKey(address.getId());
       this.store =
           isBeamStore
-              ? (KeyValueStore) stores.get(BEAM_STORE)
-              : (KeyValueStore) stores.get(address.getId());
+              ? (CachedStateStore) stores.get(BEAM_STORE)
+              : (CachedStateStore) stores.get(address.getId());
       this.stageId = SamzaStoreStateInternals.this.stageId;
       this.keyBytes = SamzaStoreStateInternals.this.keyBytes;
     }
@@ -469,4 +469,60 @@ public final class BundleManagerTest {
     verify(mockEmitter, times(1)).emitFuture(captor.capture());
     assertFalse("tryFinishBundle() closed the bundle", bundleManager.isBundleStarted());
   }
+
+  @Test
+  public void testAdaptiveBundleSize() {
+    BundleManager<String> bundleManager =
+        new BundleManager<>(
+            bundleProgressListener,
+            mockFutureCollector,
+            8,
+            MAX_BUNDLE_TIME_MS,
+            1000,
+            null,
+            mockScheduler,
+            BUNDLE_CHECK_TIMER_ID);
+    OpEmitter<String> mockEmitter = mock(OpEmitter.class);
+
+    when(mockFutureCollector.finish())
+        .thenReturn(
+            CompletableFuture.completedFuture(Collections.singleton(mock(WindowedValue.class))));
+
+    // bundles completing well within the target time double the bundle size up to the max
+    assertEquals("Expected the bundle size to start at 1", 1L, bundleManager.getBundleSize());
+    for (long expectedBundleSize : new long[] {2, 4, 8, 8}) {
+      processBundle(bundleManager, mockEmitter);
+      assertEquals(
+          "Expected the bundle size to grow", expectedBundleSize, bundleManager.getBundleSize());
+    }
+
+    // bundles with many pending bundles before them shrink the bundle size
+    bundleManager.setPendingBundleCount(1_000_000);
+    processBundle(bundleManager, mockEmitter);
+    assertEquals("Expected the bundle size to shrink", 4L, bundleManager.getBundleSize());
+  }
+
+  @Test
+  public void testAdaptedBundleSizeReachesEstimate() {
+    // moving half-way rounds toward the estimate, so that one element short of it is not a stall
+    assertEquals(2L, BundleManager.adaptedBundleSize(1, 2, 100));
+    assertEquals(4L, BundleManager.adaptedBundleSize(5, 4, 100));
+    assertEquals(7L, BundleManager.adaptedBundleSize(5, 8, 100));
+    assertEquals(3L, BundleManager.adaptedBundleSize(5, 2, 100));
+    assertEquals(5L, BundleManager.adaptedBundleSize(5, 5, 100));
+    // the size at most doubles and stays within [1, maxBundleSize]
+    assertEquals(10L, BundleManager.adaptedBundleSize(5, 1000, 100));
+    assertEquals(100L, BundleManager.adaptedBundleSize(80, 1000, 100));
+    assertEquals(1L, BundleManager.adaptedBundleSize(1, 0, 100));
+  }
+
+  private static void processBundle(
+      BundleManager<String> bundleManager, OpEmitter<String> emitter) {
+    final long bundleSize = bundleManager.getBundleSize();
+    for (long i = 0; i < bundleSize; i++) {
+      bundleManager.tryStartBundle();
+      bundleManager.tryFinishBundle(emitter);
+    }
+    assertFalse("Expected the bundle to be finished", bundleManager.isBundleStarted());
+  }
 }
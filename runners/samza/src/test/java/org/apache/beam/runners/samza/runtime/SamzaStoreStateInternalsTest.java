@@ -21,6 +21,11 @@ import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 
 import java.io.File;
 import java.io.IOException;
@@ -33,8 +38,11 @@ import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import org.apache.beam.runners.core.StateNamespaces;
+import org.apache.beam.runners.core.StateTags;
 import org.apache.beam.runners.samza.SamzaPipelineOptions;
 import org.apache.beam.runners.samza.TestSamzaRunner;
+import org.apache.beam.runners.samza.runtime.SamzaStoreStateInternals.ByteArray;
 import org.apache.beam.runners.samza.runtime.SamzaStoreStateInternals.StateValue;
 import org.apache.beam.runners.samza.runtime.SamzaStoreStateInternals.StateValueSerdeFactory;
 import org.apache.beam.runners.samza.state.SamzaMapState;
@@ -50,6 +58,7 @@ import org.apache.beam.sdk.state.ReadableState;
 import org.apache.beam.sdk.state.SetState;
 import org.apache.beam.sdk.state.StateSpec;
 import org.apache.beam.sdk.state.StateSpecs;
+import org.apache.beam.sdk.state.ValueState;
 import org.apache.beam.sdk.testing.PAssert;
 import org.apache.beam.sdk.testing.TestPipeline;
 import org.apache.beam.sdk.transforms.Create;
@@ -75,6 +84,7 @@ import org.apache.samza.storage.kv.inmemory.InMemoryKeyValueStore;
 import org.apache.samza.system.SystemStreamPartition;
 import org.junit.Rule;
 import org.junit.Test;
+import org.mockito.ArgumentCaptor;
 
 /** Tests for SamzaStoreStateInternals. */
 @SuppressWarnings({
@@ -316,4 +326,44 @@ public class SamzaStoreStateInternalsTest implements Serializable {
     assertNull(nullBytes);
     assertNull(nullStateValue.getValue(coder));
   }
+
+  @Test
+  @SuppressWarnings("unchecked")
+  public void testStateCacheCoalescesWritesUntilFlush() {
+    final KeyValueStore<ByteArray, StateValue<?>> store = mock(KeyValueStore.class);
+    final SamzaStoreStateInternals.Factory<String> stateInternalsFactory =
+        new SamzaStoreStateInternals.Factory<>(
+                "42",
+                Collections.singletonMap(SamzaStoreStateInternals.BEAM_STORE, store),
+                StringUtf8Coder.of(),
+                100)
+            .withCache(10, null);
+    final ValueState<Integer> state =
+        stateInternalsFactory
+            .stateInternalsForKey("foo")
+            .state(StateNamespaces.global(), StateTags.value("bar", VarIntCoder.of()));
+
+    // the first read goes to the store, the writes and the following reads stay in the cache
+    assertNull(state.read());
+    state.write(1);
+    state.write(2);
+    assertEquals(2, state.read().intValue());
+    verify(store, times(1)).get(any());
+    verify(store, never()).put(any(), any());
+
+    stateInternalsFactory.flush();
+    final ArgumentCaptor<List<Entry<ByteArray, StateValue<?>>>> puts =
+        ArgumentCaptor.forClass(List.class);
+    verify(store).putAll(puts.capture());
+    assertEquals(1, puts.getValue().size());
+    final Entry<ByteArray, StateValue<?>> put = puts.getValue().get(0);
+    assertEquals(2, ((StateValue<Integer>) put.getValue()).getValue(VarIntCoder.of()).intValue());
+
+    // deletes are buffered as well and the cache no longer holds the value after the flush
+    state.clear();
+    assertNull(state.read());
+    verify(store, times(1)).get(any());
+    stateInternalsFactory.flush();
+    verify(store).deleteAll(Collections.singletonList(put.getKey()));
+  }
 }
@@ -26,6 +26,7 @@ import org.apache.beam.sdk.options.Description;
 import org.apache.beam.sdk.options.FileStagingOptions;
 import org.apache.beam.sdk.options.PipelineOptions;
 import org.apache.beam.sdk.options.StreamingOptions;
+import org.checkerframework.checker.nullness.qual.Nullable;
 
 /**
  * Spark runner {@link PipelineOptions} handles Spark execution-related configurations, such as the
@@ -56,6 +57,15 @@ public interface SparkCommonPipelineOptions
 
   void setEnableSparkMetricSinks(Boolean enableSparkMetricSinks);
 
+  @Description(
+      "The maximum estimated size in MB of the deserialized side inputs cached by each executor. "
+          + "Side inputs are estimated by their encoded size and the least recently used ones are "
+          + "evicted first. Defaults to a fifth of the executor's maximum heap size.")
+  @Nullable
+  Integer getSideInputCacheSizeMb();
+
+  void setSideInputCacheSizeMb(@Nullable Integer sideInputCacheSizeMb);
+
   /**
    * Returns the default checkpoint directory of /tmp/${job.name}. For testing purposes only.
    * Production applications should use a reliable filesystem such as HDFS/S3/GS.
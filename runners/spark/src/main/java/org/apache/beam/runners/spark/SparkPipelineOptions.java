@@ -94,4 +94,22 @@ public interface SparkPipelineOptions extends SparkCommonPipelineOptions {
   boolean isCacheDisabled();
 
   void setCacheDisabled(boolean value);
+
+  @Description(
+      "If set, Combine.perKey combines the values of each partition in a table of a bounded number"
+          + " of keys, then sorts the encoded partial accumulators by key and merges them one key at a time,"
+          + " instead of using Spark's combineByKey. This bounds the memory used for many or hot"
+          + " keys at the cost of sorting the partial accumulators.")
+  @Default.Boolean(false)
+  boolean isSortBasedCombinePerKey();
+
+  void setSortBasedCombinePerKey(boolean value);
+
+  @Description(
+      "The number of keys whose accumulators a partition keeps in memory before emitting them,"
+          + " when sortBasedCombinePerKey is set.")
+  @Default.Integer(10000)
+  int getMaxPartialAccumulatorsPerPartition();
+
+  void setMaxPartialAccumulatorsPerPartition(int value);
 }
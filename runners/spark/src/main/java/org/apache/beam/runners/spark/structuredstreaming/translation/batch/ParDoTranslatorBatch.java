@@ -33,14 +33,18 @@ import org.apache.beam.runners.spark.structuredstreaming.translation.helpers.Cod
 import org.apache.beam.runners.spark.structuredstreaming.translation.helpers.EncoderHelpers;
 import org.apache.beam.runners.spark.structuredstreaming.translation.helpers.MultiOutputCoder;
 import org.apache.beam.runners.spark.structuredstreaming.translation.helpers.SideInputBroadcast;
+import org.apache.beam.sdk.coders.ByteArrayCoder;
 import org.apache.beam.sdk.coders.Coder;
+import org.apache.beam.sdk.coders.KvCoder;
 import org.apache.beam.sdk.coders.SerializableCoder;
 import org.apache.beam.sdk.transforms.DoFn;
 import org.apache.beam.sdk.transforms.DoFnSchemaInformation;
+import org.apache.beam.sdk.transforms.Materializations;
 import org.apache.beam.sdk.transforms.PTransform;
 import org.apache.beam.sdk.transforms.reflect.DoFnSignatures;
 import org.apache.beam.sdk.transforms.windowing.BoundedWindow;
 import org.apache.beam.sdk.util.WindowedValue;
+import org.apache.beam.sdk.values.KV;
 import org.apache.beam.sdk.values.PCollection;
 import org.apache.beam.sdk.values.PCollectionTuple;
 import org.apache.beam.sdk.values.PCollectionView;
@@ -172,15 +176,36 @@ class ParDoTranslatorBatch<InputT, OutputT>
       Coder<? extends BoundedWindow> windowCoder =
           sideInput.getPCollection().getWindowingStrategy().getWindowFn().windowCoder();
 
-      Coder<WindowedValue<?>> windowedValueCoder =
-          (Coder<WindowedValue<?>>)
-              (Coder<?>)
-                  WindowedValue.getFullCoder(sideInput.getPCollection().getCoder(), windowCoder);
       Dataset<WindowedValue<?>> broadcastSet = context.getSideInputDataSet(sideInput);
       List<WindowedValue<?>> valuesList = broadcastSet.collectAsList();
       List<byte[]> codedValues = new ArrayList<>();
-      for (WindowedValue<?> v : valuesList) {
-        codedValues.add(CoderHelpers.toByteArray(v, windowedValueCoder));
+      Coder<WindowedValue<?>> windowedValueCoder;
+      if (Materializations.MULTIMAP_MATERIALIZATION_URN.equals(
+          sideInput.getViewFn().getMaterialization().getUrn())) {
+        // Keys and values of multimap side inputs are broadcast encoded, so that executors only
+        // decode the values of the keys which are looked up.
+        KvCoder<Object, Object> kvCoder = (KvCoder<Object, Object>) sideInput.getCoderInternal();
+        windowedValueCoder =
+            (Coder<WindowedValue<?>>)
+                (Coder<?>)
+                    WindowedValue.getFullCoder(
+                        KvCoder.of(ByteArrayCoder.of(), ByteArrayCoder.of()), windowCoder);
+        for (WindowedValue<?> v : valuesList) {
+          KV<Object, Object> kv = (KV<Object, Object>) v.getValue();
+          KV<byte[], byte[]> encodedKv =
+              KV.of(
+                  CoderHelpers.toByteArray(kv.getKey(), kvCoder.getKeyCoder()),
+                  CoderHelpers.toByteArray(kv.getValue(), kvCoder.getValueCoder()));
+          codedValues.add(CoderHelpers.toByteArray(v.withValue(encodedKv), windowedValueCoder));
+        }
+      } else {
+        windowedValueCoder =
+            (Coder<WindowedValue<?>>)
+                (Coder<?>)
+                    WindowedValue.getFullCoder(sideInput.getPCollection().getCoder(), windowCoder);
+        for (WindowedValue<?> v : valuesList) {
+          codedValues.add(CoderHelpers.toByteArray(v, windowedValueCoder));
+        }
       }
 
       sideInputBroadcast.add(
@@ -21,16 +21,16 @@ import static org.apache.beam.vendor.guava.v26_0_jre.com.google.common.base.Prec
 import static org.apache.beam.vendor.guava.v26_0_jre.com.google.common.base.Preconditions.checkNotNull;
 
 import java.util.ArrayList;
-import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
-import java.util.stream.Collectors;
-import org.apache.beam.runners.core.InMemoryMultimapSideInputView;
 import org.apache.beam.runners.core.SideInputReader;
 import org.apache.beam.runners.spark.structuredstreaming.translation.helpers.CoderHelpers;
 import org.apache.beam.runners.spark.structuredstreaming.translation.helpers.SideInputBroadcast;
+import org.apache.beam.runners.spark.util.CachedSideInputReader.WeighingSideInputReader;
+import org.apache.beam.runners.spark.util.LazyMultimapSideInputView;
+import org.apache.beam.runners.spark.util.SideInputStorage.Value;
 import org.apache.beam.sdk.coders.Coder;
 import org.apache.beam.sdk.coders.KvCoder;
 import org.apache.beam.sdk.transforms.Materializations;
@@ -50,7 +50,7 @@ import org.checkerframework.checker.nullness.qual.Nullable;
   "rawtypes", // TODO(https://issues.apache.org/jira/browse/BEAM-10556)
   "nullness" // TODO(https://issues.apache.org/jira/browse/BEAM-10402)
 })
-public class SparkSideInputReader implements SideInputReader {
+public class SparkSideInputReader implements WeighingSideInputReader {
   private static final Set<String> SUPPORTED_MATERIALIZATIONS =
       ImmutableSet.of(
           Materializations.ITERABLE_MATERIALIZATION_URN,
@@ -80,6 +80,11 @@ public class SparkSideInputReader implements SideInputReader {
 
   @Override
   public <T> @Nullable T get(PCollectionView<T> view, BoundedWindow window) {
+    return getWeighed(view, window).getValue();
+  }
+
+  @Override
+  public <T> Value<T> getWeighed(PCollectionView<T> view, BoundedWindow window) {
     checkNotNull(view, "View passed to sideInput cannot be null");
     TupleTag<?> tag = view.getTagInternal();
     checkNotNull(sideInputs.get(tag), "Side input for " + view + " not available.");
@@ -88,33 +93,40 @@ public class SparkSideInputReader implements SideInputReader {
         (List<byte[]>) broadcastStateData.getBroadcastValue(tag.getId()).getValue();
     Coder<?> coder = broadcastStateData.getCoder(tag.getId());
 
-    List<WindowedValue<?>> decodedValues = new ArrayList<>();
+    // only keep the values of the requested window, weighed by their encoded size
+    List<Object> values = new ArrayList<>();
+    long weight = 0;
     for (byte[] value : sideInputsValues) {
-      decodedValues.add((WindowedValue<?>) CoderHelpers.fromByteArray(value, coder));
+      WindowedValue<?> decodedValue = (WindowedValue<?>) CoderHelpers.fromByteArray(value, coder);
+      if (decodedValue.getWindows().contains(window)) {
+        values.add(decodedValue.getValue());
+        weight += value.length;
+      }
     }
 
-    Map<BoundedWindow, T> sideInputs = initializeBroadcastVariable(decodedValues, view);
-    T result = sideInputs.get(window);
-    if (result == null) {
-      switch (view.getViewFn().getMaterialization().getUrn()) {
-        case Materializations.ITERABLE_MATERIALIZATION_URN:
-          {
-            ViewFn<IterableView, T> viewFn = (ViewFn<IterableView, T>) view.getViewFn();
-            return viewFn.apply(() -> Collections.emptyList());
-          }
-        case Materializations.MULTIMAP_MATERIALIZATION_URN:
-          {
-            ViewFn<MultimapView, T> viewFn = (ViewFn<MultimapView, T>) view.getViewFn();
-            return viewFn.apply(InMemoryMultimapSideInputView.empty());
-          }
-        default:
-          throw new IllegalStateException(
-              String.format(
-                  "Unknown side input materialization format requested '%s'",
-                  view.getViewFn().getMaterialization().getUrn()));
-      }
+    switch (view.getViewFn().getMaterialization().getUrn()) {
+      case Materializations.ITERABLE_MATERIALIZATION_URN:
+        {
+          ViewFn<IterableView, T> viewFn = (ViewFn<IterableView, T>) view.getViewFn();
+          return new Value<>(viewFn.apply(() -> values), weight);
+        }
+      case Materializations.MULTIMAP_MATERIALIZATION_URN:
+        {
+          // multimap side inputs are broadcast with encoded keys and values
+          ViewFn<MultimapView, T> viewFn = (ViewFn<MultimapView, T>) view.getViewFn();
+          KvCoder<?, ?> kvCoder = (KvCoder<?, ?>) view.getCoderInternal();
+          return new Value<>(
+              viewFn.apply(
+                  LazyMultimapSideInputView.of(
+                      kvCoder.getKeyCoder(), kvCoder.getValueCoder(), (List) values)),
+              weight);
+        }
+      default:
+        throw new IllegalStateException(
+            String.format(
+                "Unknown side input materialization format requested '%s'",
+                view.getViewFn().getMaterialization().getUrn()));
     }
-    return result;
   }
 
   @Override
@@ -126,61 +138,4 @@ public class SparkSideInputReader implements SideInputReader {
   public boolean isEmpty() {
     return sideInputs.isEmpty();
   }
-
-  private <T> Map<BoundedWindow, T> initializeBroadcastVariable(
-      Iterable<WindowedValue<?>> inputValues, PCollectionView<T> view) {
-
-    // first partition into windows
-    Map<BoundedWindow, List<WindowedValue<?>>> partitionedElements = new HashMap<>();
-    for (WindowedValue<?> value : inputValues) {
-      for (BoundedWindow window : value.getWindows()) {
-        List<WindowedValue<?>> windowedValues =
-            partitionedElements.computeIfAbsent(window, k -> new ArrayList<>());
-        windowedValues.add(value);
-      }
-    }
-
-    Map<BoundedWindow, T> resultMap = new HashMap<>();
-
-    for (Map.Entry<BoundedWindow, List<WindowedValue<?>>> elements :
-        partitionedElements.entrySet()) {
-
-      switch (view.getViewFn().getMaterialization().getUrn()) {
-        case Materializations.ITERABLE_MATERIALIZATION_URN:
-          {
-            ViewFn<IterableView, T> viewFn = (ViewFn<IterableView, T>) view.getViewFn();
-            resultMap.put(
-                elements.getKey(),
-                viewFn.apply(
-                    () ->
-                        elements.getValue().stream()
-                            .map(WindowedValue::getValue)
-                            .collect(Collectors.toList())));
-          }
-          break;
-        case Materializations.MULTIMAP_MATERIALIZATION_URN:
-          {
-            ViewFn<MultimapView, T> viewFn = (ViewFn<MultimapView, T>) view.getViewFn();
-            Coder<?> keyCoder = ((KvCoder<?, ?>) view.getCoderInternal()).getKeyCoder();
-            resultMap.put(
-                elements.getKey(),
-                viewFn.apply(
-                    InMemoryMultimapSideInputView.fromIterable(
-                        keyCoder,
-                        (Iterable)
-                            elements.getValue().stream()
-                                .map(WindowedValue::getValue)
-                                .collect(Collectors.toList()))));
-          }
-          break;
-        default:
-          throw new IllegalStateException(
-              String.format(
-                  "Unknown side input materialization format requested '%s'",
-                  view.getViewFn().getMaterialization().getUrn()));
-      }
-    }
-
-    return resultMap;
-  }
 }
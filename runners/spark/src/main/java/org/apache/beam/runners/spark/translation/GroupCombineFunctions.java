@@ -17,6 +17,10 @@
  */
 package org.apache.beam.runners.spark.translation;
 
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
 import org.apache.beam.runners.spark.coders.CoderHelpers;
 import org.apache.beam.runners.spark.util.ByteArray;
 import org.apache.beam.sdk.coders.Coder;
@@ -26,7 +30,12 @@ import org.apache.beam.sdk.util.WindowedValue;
 import org.apache.beam.sdk.util.WindowedValue.WindowedValueCoder;
 import org.apache.beam.sdk.values.KV;
 import org.apache.beam.sdk.values.WindowingStrategy;
+import org.apache.beam.vendor.guava.v26_0_jre.com.google.common.annotations.VisibleForTesting;
+import org.apache.beam.vendor.guava.v26_0_jre.com.google.common.collect.AbstractIterator;
 import org.apache.beam.vendor.guava.v26_0_jre.com.google.common.collect.Iterables;
+import org.apache.beam.vendor.guava.v26_0_jre.com.google.common.collect.Iterators;
+import org.apache.beam.vendor.guava.v26_0_jre.com.google.common.collect.PeekingIterator;
+import org.apache.spark.HashPartitioner;
 import org.apache.spark.Partitioner;
 import org.apache.spark.api.java.JavaPairRDD;
 import org.apache.spark.api.java.JavaRDD;
@@ -151,13 +160,8 @@ public class GroupCombineFunctions {
     // Once Spark provides a way to include keys in the arguments of combine/merge functions,
     // we won't need to duplicate the keys anymore.
     // Key has to bw windowed in order to group by window as well.
-    final JavaPairRDD<ByteArray, WindowedValue<KV<K, V>>> inRddDuplicatedKeyPair;
-    if (!mustBringWindowToKey) {
-      inRddDuplicatedKeyPair = rdd.mapToPair(TranslationUtils.toPairByKeyInWindowedValue(keyCoder));
-    } else {
-      inRddDuplicatedKeyPair =
-          GroupNonMergingWindowsFunctions.bringWindowToKey(rdd, keyCoder, windowCoder);
-    }
+    final JavaPairRDD<ByteArray, WindowedValue<KV<K, V>>> inRddDuplicatedKeyPair =
+        duplicateKey(rdd, keyCoder, windowCoder, mustBringWindowToKey);
 
     JavaPairRDD<
             ByteArray,
@@ -182,6 +186,169 @@ public class GroupCombineFunctions {
                 CoderHelpers.fromByteArray(i._1.getValue(), keyCoder), i._2.getOrDecode(waCoder)));
   }
 
+  /**
+   * Apply a composite {@link org.apache.beam.sdk.transforms.Combine.PerKey} transformation with a
+   * sort-based aggregation whose memory use is bounded.
+   *
+   * <p>Unlike {@link #combinePerKey}, which keeps one accumulator for every key of a partition in
+   * Spark's {@code ExternalAppendOnlyMap}, the values of each partition are combined in a table of
+   * at most {@code maxPartialAccumulators} keys, which is emitted whenever a new key does not fit.
+   * The partial accumulators are encoded with their Beam coder and sorted by their encoded key
+   * with Spark's repartitionAndSortWithinPartitions, which spills to disk as needed. The sorted
+   * accumulators are then merged one key at a time (via {@link MergeSortedAccumulatorsIterator}).
+   */
+  public static <K, V, AccumT>
+      JavaPairRDD<K, SparkCombineFn.WindowedAccumulator<KV<K, V>, V, AccumT, ?>>
+          combinePerKeySorted(
+              JavaRDD<WindowedValue<KV<K, V>>> rdd,
+              final SparkCombineFn<KV<K, V>, V, AccumT, ?> sparkCombineFn,
+              final Coder<K> keyCoder,
+              final Coder<AccumT> aCoder,
+              final WindowingStrategy<?, ?> windowingStrategy,
+              @Nullable Partitioner partitioner,
+              int maxPartialAccumulators) {
+
+    boolean mustBringWindowToKey = sparkCombineFn.mustBringWindowToKey();
+    @SuppressWarnings("unchecked")
+    Coder<BoundedWindow> windowCoder = (Coder) windowingStrategy.getWindowFn().windowCoder();
+    final SparkCombineFn.WindowedAccumulatorCoder<KV<K, V>, V, AccumT> waCoder =
+        sparkCombineFn.accumulatorCoder(windowCoder, aCoder, windowingStrategy);
+
+    JavaPairRDD<ByteArray, byte[]> partialAccumulators =
+        duplicateKey(rdd, keyCoder, windowCoder, mustBringWindowToKey)
+            .mapPartitionsToPair(
+                it ->
+                    new PartialCombiningIterator<>(
+                        it, sparkCombineFn, waCoder, maxPartialAccumulators));
+
+    return partialAccumulators
+        .repartitionAndSortWithinPartitions(
+            partitioner != null ? partitioner : new HashPartitioner(rdd.getNumPartitions()))
+        .mapPartitionsToPair(
+            it -> new MergeSortedAccumulatorsIterator<>(it, sparkCombineFn, keyCoder, waCoder));
+  }
+
+  /**
+   * Pairs each value with its encoded key, followed by its encoded window if the combine needs the
+   * window in the key.
+   */
+  private static <K, V> JavaPairRDD<ByteArray, WindowedValue<KV<K, V>>> duplicateKey(
+      JavaRDD<WindowedValue<KV<K, V>>> rdd,
+      Coder<K> keyCoder,
+      Coder<BoundedWindow> windowCoder,
+      boolean mustBringWindowToKey) {
+    if (!mustBringWindowToKey) {
+      return rdd.mapToPair(TranslationUtils.toPairByKeyInWindowedValue(keyCoder));
+    } else {
+      return GroupNonMergingWindowsFunctions.bringWindowToKey(rdd, keyCoder, windowCoder);
+    }
+  }
+
+  /**
+   * Combines the values of a partition into accumulators of at most {@code maxAccumulators}
+   * distinct keys at a time, emitting them encoded when a new key does not fit anymore.
+   */
+  @VisibleForTesting
+  static class PartialCombiningIterator<K, V, AccumT>
+      extends AbstractIterator<Tuple2<ByteArray, byte[]>> {
+
+    private final Iterator<Tuple2<ByteArray, WindowedValue<KV<K, V>>>> inner;
+    private final SparkCombineFn<KV<K, V>, V, AccumT, ?> sparkCombineFn;
+    private final Coder<SparkCombineFn.WindowedAccumulator<KV<K, V>, V, AccumT, ?>> waCoder;
+    private final int maxAccumulators;
+
+    private Map<ByteArray, SparkCombineFn.WindowedAccumulator<KV<K, V>, V, AccumT, ?>>
+        accumulators = new HashMap<>();
+    private Iterator<
+            Map.Entry<ByteArray, SparkCombineFn.WindowedAccumulator<KV<K, V>, V, AccumT, ?>>>
+        emitting = Collections.emptyIterator();
+
+    PartialCombiningIterator(
+        Iterator<Tuple2<ByteArray, WindowedValue<KV<K, V>>>> inner,
+        SparkCombineFn<KV<K, V>, V, AccumT, ?> sparkCombineFn,
+        Coder<SparkCombineFn.WindowedAccumulator<KV<K, V>, V, AccumT, ?>> waCoder,
+        int maxAccumulators) {
+      this.inner = inner;
+      this.sparkCombineFn = sparkCombineFn;
+      this.waCoder = waCoder;
+      this.maxAccumulators = maxAccumulators;
+    }
+
+    @Override
+    protected Tuple2<ByteArray, byte[]> computeNext() {
+      while (!emitting.hasNext()) {
+        if (!inner.hasNext()) {
+          if (accumulators.isEmpty()) {
+            return endOfData();
+          }
+          emitAccumulators();
+          break;
+        }
+        Tuple2<ByteArray, WindowedValue<KV<K, V>>> next = inner.next();
+        SparkCombineFn.WindowedAccumulator<KV<K, V>, V, AccumT, ?> accumulator =
+            accumulators.get(next._1);
+        if (accumulator != null) {
+          accumulators.put(next._1, sparkCombineFn.mergeValue(accumulator, next._2));
+        } else {
+          if (accumulators.size() >= maxAccumulators) {
+            emitAccumulators();
+          }
+          accumulators.put(next._1, sparkCombineFn.createCombiner(next._2));
+        }
+      }
+      Map.Entry<ByteArray, SparkCombineFn.WindowedAccumulator<KV<K, V>, V, AccumT, ?>> entry =
+          emitting.next();
+      return new Tuple2<>(entry.getKey(), CoderHelpers.toByteArray(entry.getValue(), waCoder));
+    }
+
+    private void emitAccumulators() {
+      emitting = accumulators.entrySet().iterator();
+      accumulators = new HashMap<>();
+    }
+  }
+
+  /**
+   * Merges the encoded accumulators of a partition sorted by their encoded key, holding the
+   * accumulator of a single key in memory at a time.
+   */
+  @VisibleForTesting
+  static class MergeSortedAccumulatorsIterator<K, V, AccumT>
+      extends AbstractIterator<
+          Tuple2<K, SparkCombineFn.WindowedAccumulator<KV<K, V>, V, AccumT, ?>>> {
+
+    private final PeekingIterator<Tuple2<ByteArray, byte[]>> inner;
+    private final SparkCombineFn<KV<K, V>, V, AccumT, ?> sparkCombineFn;
+    private final Coder<K> keyCoder;
+    private final Coder<SparkCombineFn.WindowedAccumulator<KV<K, V>, V, AccumT, ?>> waCoder;
+
+    MergeSortedAccumulatorsIterator(
+        Iterator<Tuple2<ByteArray, byte[]>> inner,
+        SparkCombineFn<KV<K, V>, V, AccumT, ?> sparkCombineFn,
+        Coder<K> keyCoder,
+        Coder<SparkCombineFn.WindowedAccumulator<KV<K, V>, V, AccumT, ?>> waCoder) {
+      this.inner = Iterators.peekingIterator(inner);
+      this.sparkCombineFn = sparkCombineFn;
+      this.keyCoder = keyCoder;
+      this.waCoder = waCoder;
+    }
+
+    @Override
+    protected Tuple2<K, SparkCombineFn.WindowedAccumulator<KV<K, V>, V, AccumT, ?>> computeNext() {
+      if (!inner.hasNext()) {
+        return endOfData();
+      }
+      Tuple2<ByteArray, byte[]> first = inner.next();
+      SparkCombineFn.WindowedAccumulator<KV<K, V>, V, AccumT, ?> accumulator =
+          CoderHelpers.fromByteArray(first._2, waCoder);
+      while (inner.hasNext() && first._1.equals(inner.peek()._1)) {
+        accumulator =
+            sparkCombineFn.mergeCombiners(
+                accumulator, CoderHelpers.fromByteArray(inner.next()._2, waCoder));
+      }
+      return new Tuple2<>(CoderHelpers.fromByteArray(first._1.getValue(), keyCoder), accumulator);
+    }
+  }
+
   /** An implementation of {@link Reshuffle} for the Spark runner. */
   public static <T> JavaRDD<WindowedValue<T>> reshuffle(
       JavaRDD<WindowedValue<T>> rdd, WindowedValueCoder<T> wvCoder) {
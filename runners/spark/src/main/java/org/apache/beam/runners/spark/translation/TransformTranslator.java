@@ -329,14 +329,28 @@ public final class TransformTranslator {
 
         JavaPairRDD<K, SparkCombineFn.WindowedAccumulator<KV<K, InputT>, InputT, AccumT, ?>>
             accumulatePerKey;
-        accumulatePerKey =
-            GroupCombineFunctions.combinePerKey(
-                inRdd,
-                sparkCombineFn,
-                inputCoder.getKeyCoder(),
-                inputCoder.getValueCoder(),
-                vaCoder,
-                windowingStrategy);
+        SparkPipelineOptions options =
+            context.getSerializableOptions().get().as(SparkPipelineOptions.class);
+        if (options.isSortBasedCombinePerKey()) {
+          accumulatePerKey =
+              GroupCombineFunctions.combinePerKeySorted(
+                  inRdd,
+                  sparkCombineFn,
+                  inputCoder.getKeyCoder(),
+                  vaCoder,
+                  windowingStrategy,
+                  getPartitioner(context),
+                  options.getMaxPartialAccumulatorsPerPartition());
+        } else {
+          accumulatePerKey =
+              GroupCombineFunctions.combinePerKey(
+                  inRdd,
+                  sparkCombineFn,
+                  inputCoder.getKeyCoder(),
+                  inputCoder.getValueCoder(),
+                  vaCoder,
+                  windowingStrategy);
+        }
 
         JavaPairRDD<K, WindowedValue<OutputT>> kwvs =
             SparkCompat.extractOutput(accumulatePerKey, sparkCombineFn);
@@ -19,10 +19,12 @@ package org.apache.beam.runners.spark.util;
 
 import java.util.concurrent.ExecutionException;
 import org.apache.beam.runners.core.SideInputReader;
+import org.apache.beam.runners.spark.SparkCommonPipelineOptions;
 import org.apache.beam.runners.spark.util.SideInputStorage.Key;
 import org.apache.beam.runners.spark.util.SideInputStorage.Value;
 import org.apache.beam.sdk.transforms.windowing.BoundedWindow;
 import org.apache.beam.sdk.values.PCollectionView;
+import org.apache.beam.vendor.guava.v26_0_jre.com.google.common.annotations.VisibleForTesting;
 import org.apache.beam.vendor.guava.v26_0_jre.com.google.common.cache.Cache;
 import org.apache.spark.util.SizeEstimator;
 import org.checkerframework.checker.nullness.qual.Nullable;
@@ -41,39 +43,72 @@ public class CachedSideInputReader implements SideInputReader {
    * Create a new cached {@link SideInputReader}.
    *
    * @param delegate wrapped reader
+   * @param options options limiting the size of the cache
    * @return cached reader
    */
-  public static CachedSideInputReader of(SideInputReader delegate) {
-    return new CachedSideInputReader(delegate);
+  public static CachedSideInputReader of(
+      SideInputReader delegate, SparkCommonPipelineOptions options) {
+    return new CachedSideInputReader(
+        delegate, SideInputStorage.getMaterializedSideInputs(options));
+  }
+
+  @VisibleForTesting
+  static CachedSideInputReader of(SideInputReader delegate, Cache<Key<?>, Value<?>> cache) {
+    return new CachedSideInputReader(delegate, cache);
+  }
+
+  /**
+   * A {@link SideInputReader} which estimates the size of the side inputs it reads from their
+   * encoded size. The size of side inputs read by other readers is estimated by the {@link
+   * SizeEstimator}.
+   */
+  public interface WeighingSideInputReader extends SideInputReader {
+    /** Returns the side input of the given window along with its estimated size in bytes. */
+    <T> Value<T> getWeighed(PCollectionView<T> view, BoundedWindow window);
   }
 
   /** Wrapped {@link SideInputReader} which results will be cached. */
   private final SideInputReader delegate;
 
-  private CachedSideInputReader(SideInputReader delegate) {
+  private final Cache<Key<?>, Value<?>> materialized;
+
+  private CachedSideInputReader(SideInputReader delegate, Cache<Key<?>, Value<?>> materialized) {
     this.delegate = delegate;
+    this.materialized = materialized;
   }
 
   @Override
   public <T> @Nullable T get(PCollectionView<T> view, BoundedWindow window) {
     @SuppressWarnings("unchecked")
     final Cache<Key<T>, Value<T>> materializedCasted =
-        (Cache) SideInputStorage.getMaterializedSideInputs();
+        (Cache) materialized;
 
     Key<T> sideInputKey = new Key<>(view, window);
 
+    Value<T> cachedResult = materializedCasted.getIfPresent(sideInputKey);
+    if (cachedResult != null) {
+      SideInputStorage.CACHE_HITS.inc();
+      return cachedResult.getValue();
+    }
+    SideInputStorage.CACHE_MISSES.inc();
     try {
-      Value<T> cachedResult =
+      cachedResult =
           materializedCasted.get(
               sideInputKey,
               () -> {
-                final T result = delegate.get(view, window);
+                final Value<T> result;
+                if (delegate instanceof WeighingSideInputReader) {
+                  result = ((WeighingSideInputReader) delegate).getWeighed(view, window);
+                } else {
+                  T value = delegate.get(view, window);
+                  result = new Value<>(value, SizeEstimator.estimate(value));
+                }
                 LOG.debug(
                     "Caching de-serialized side input for {} of size [{}B] in memory.",
                     sideInputKey,
-                    SizeEstimator.estimate(result));
+                    result.getWeight());
 
-                return new Value<>(result);
+                return result;
               });
       return cachedResult.getValue();
     } catch (ExecutionException e) {
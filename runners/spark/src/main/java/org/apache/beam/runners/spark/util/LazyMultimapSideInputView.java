@@ -0,0 +1,102 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.beam.runners.spark.util;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import org.apache.beam.runners.spark.coders.CoderHelpers;
+import org.apache.beam.sdk.coders.Coder;
+import org.apache.beam.sdk.transforms.Materializations.MultimapView;
+import org.apache.beam.sdk.values.KV;
+import org.apache.beam.vendor.guava.v26_0_jre.com.google.common.collect.Iterables;
+import org.checkerframework.checker.nullness.qual.Nullable;
+
+/**
+ * A {@link MultimapView} over encoded keys and values, which decodes only the values of the keys
+ * looked up. The index of the keys is built from their encodings on first access, so keys are only
+ * decoded when all keys are iterated.
+ *
+ * <p>Keys are compared by their encoding, which multimap side inputs allow by requiring a
+ * deterministic key coder.
+ */
+@SuppressWarnings({
+  "nullness" // TODO(https://issues.apache.org/jira/browse/BEAM-10402)
+})
+public class LazyMultimapSideInputView<K, V> implements MultimapView<K, V> {
+
+  /**
+   * Creates a {@link MultimapView} from keys and values encoded with {@link
+   * CoderHelpers#toByteArray} and the given coders.
+   */
+  public static <K, V> LazyMultimapSideInputView<K, V> of(
+      Coder<K> keyCoder, Coder<V> valueCoder, Iterable<KV<byte[], byte[]>> encodedValues) {
+    return new LazyMultimapSideInputView<>(keyCoder, valueCoder, encodedValues);
+  }
+
+  private final Coder<K> keyCoder;
+  private final Coder<V> valueCoder;
+  private final Iterable<KV<byte[], byte[]>> encodedValues;
+  private volatile @Nullable Map<ByteArray, List<byte[]>> index;
+
+  private LazyMultimapSideInputView(
+      Coder<K> keyCoder, Coder<V> valueCoder, Iterable<KV<byte[], byte[]>> encodedValues) {
+    this.keyCoder = keyCoder;
+    this.valueCoder = valueCoder;
+    this.encodedValues = encodedValues;
+  }
+
+  @Override
+  public Iterable<K> get() {
+    return Iterables.unmodifiableIterable(
+        Iterables.transform(
+            index().keySet(), key -> CoderHelpers.fromByteArray(key.getValue(), keyCoder)));
+  }
+
+  @Override
+  public Iterable<V> get(@Nullable K k) {
+    List<byte[]> values = index().get(new ByteArray(CoderHelpers.toByteArray(k, keyCoder)));
+    if (values == null) {
+      return Collections.emptyList();
+    }
+    List<V> decodedValues = new ArrayList<>(values.size());
+    for (byte[] value : values) {
+      decodedValues.add(CoderHelpers.fromByteArray(value, valueCoder));
+    }
+    return Collections.unmodifiableList(decodedValues);
+  }
+
+  private Map<ByteArray, List<byte[]>> index() {
+    if (index == null) {
+      synchronized (this) {
+        if (index == null) {
+          Map<ByteArray, List<byte[]>> keyToValues = new LinkedHashMap<>();
+          for (KV<byte[], byte[]> encodedValue : encodedValues) {
+            keyToValues
+                .computeIfAbsent(new ByteArray(encodedValue.getKey()), key -> new ArrayList<>())
+                .add(encodedValue.getValue());
+          }
+          index = keyToValues;
+        }
+      }
+    }
+    return index;
+  }
+}
@@ -19,29 +19,76 @@ package org.apache.beam.runners.spark.util;
 
 import java.util.Objects;
 import java.util.concurrent.TimeUnit;
+import org.apache.beam.runners.spark.SparkCommonPipelineOptions;
+import org.apache.beam.sdk.metrics.Counter;
+import org.apache.beam.sdk.metrics.Metrics;
 import org.apache.beam.sdk.transforms.windowing.BoundedWindow;
 import org.apache.beam.sdk.values.PCollectionView;
+import org.apache.beam.vendor.guava.v26_0_jre.com.google.common.annotations.VisibleForTesting;
 import org.apache.beam.vendor.guava.v26_0_jre.com.google.common.cache.Cache;
 import org.apache.beam.vendor.guava.v26_0_jre.com.google.common.cache.CacheBuilder;
 import org.checkerframework.checker.nullness.qual.Nullable;
 
 /**
  * Cache deserialized side inputs for executor so every task doesn't need to deserialize them again.
- * Side inputs are stored in {@link Cache} with 5 minutes expireAfterAccess.
+ * Side inputs are stored in {@link Cache} with 5 minutes expireAfterAccess. The cache evicts the
+ * least recently used side inputs once their estimated total size exceeds {@link
+ * SparkCommonPipelineOptions#getSideInputCacheSizeMb()}, which defaults to a fifth of the heap.
+ * A side input larger than that limit is evicted right after it is read.
+ *
+ * <p>Hits, misses and evictions are counted by the metrics of the step reading the side input, and
+ * are thereby reported through {@link
+ * org.apache.beam.runners.spark.metrics.SparkBeamMetricSource}.
  */
 @SuppressWarnings({
   "nullness" // TODO(https://issues.apache.org/jira/browse/BEAM-10402)
 })
-class SideInputStorage {
+public class SideInputStorage {
+
+  static final Counter CACHE_HITS = Metrics.counter(SideInputStorage.class, "sideInputCacheHits");
+  static final Counter CACHE_MISSES =
+      Metrics.counter(SideInputStorage.class, "sideInputCacheMisses");
+  private static final Counter CACHE_EVICTIONS =
+      Metrics.counter(SideInputStorage.class, "sideInputCacheEvictions");
 
-  /** JVM deserialized side input cache. */
-  private static final Cache<Key<?>, Value<?>> materializedSideInputs =
-      CacheBuilder.newBuilder().expireAfterAccess(5, TimeUnit.MINUTES).build();
+  /** JVM deserialized side input cache, created with the size limit of the first pipeline. */
+  private static volatile Cache<Key<?>, Value<?>> materializedSideInputs;
 
-  static Cache<Key<?>, Value<?>> getMaterializedSideInputs() {
+  static Cache<Key<?>, Value<?>> getMaterializedSideInputs(SparkCommonPipelineOptions options) {
+    if (materializedSideInputs == null) {
+      synchronized (SideInputStorage.class) {
+        if (materializedSideInputs == null) {
+          Integer cacheSizeMb = options.getSideInputCacheSizeMb();
+          long maximumWeight =
+              cacheSizeMb != null
+                  ? cacheSizeMb * 1024L * 1024L
+                  : Runtime.getRuntime().maxMemory() / 5;
+          materializedSideInputs = createCache(maximumWeight);
+        }
+      }
+    }
     return materializedSideInputs;
   }
 
+  @VisibleForTesting
+  static Cache<Key<?>, Value<?>> createCache(long maximumWeight) {
+    return CacheBuilder.newBuilder()
+        .expireAfterAccess(5, TimeUnit.MINUTES)
+        // A single segment, as the cache splits the maximum weight evenly between its segments.
+        // Otherwise side inputs larger than a share would be evicted although they fit the cache.
+        .concurrencyLevel(1)
+        .maximumWeight(maximumWeight)
+        .<Key<?>, Value<?>>weigher(
+            (key, value) -> (int) Math.min(value.getWeight(), Integer.MAX_VALUE))
+        .<Key<?>, Value<?>>removalListener(
+            notification -> {
+              if (notification.wasEvicted()) {
+                CACHE_EVICTIONS.inc();
+              }
+            })
+        .build();
+  }
+
   /**
    * Composite key of {@link PCollectionView} and {@link BoundedWindow} used to identify
    * materialized results.
@@ -91,17 +138,23 @@ class SideInputStorage {
 
   /**
    * Null value is not allowed in guava's Cache and is valid in SideInput so we use wrapper for
-   * cache value.
+   * cache value. The wrapper also holds the estimated size of the value in bytes.
    */
   public static class Value<T> {
     final T value;
+    final long weight;
 
-    Value(T value) {
+    public Value(T value, long weight) {
       this.value = value;
+      this.weight = weight;
     }
 
     public T getValue() {
       return value;
     }
+
+    public long getWeight() {
+      return weight;
+    }
   }
 }
@@ -24,6 +24,8 @@ import java.util.stream.Collectors;
 import java.util.stream.StreamSupport;
 import org.apache.beam.runners.core.InMemoryMultimapSideInputView;
 import org.apache.beam.runners.core.SideInputReader;
+import org.apache.beam.runners.spark.util.CachedSideInputReader.WeighingSideInputReader;
+import org.apache.beam.runners.spark.util.SideInputStorage.Value;
 import org.apache.beam.sdk.coders.Coder;
 import org.apache.beam.sdk.coders.KvCoder;
 import org.apache.beam.sdk.transforms.Materializations;
@@ -32,11 +34,13 @@ import org.apache.beam.sdk.transforms.Materializations.MultimapView;
 import org.apache.beam.sdk.transforms.ViewFn;
 import org.apache.beam.sdk.transforms.windowing.BoundedWindow;
 import org.apache.beam.sdk.util.WindowedValue;
+import org.apache.beam.sdk.util.common.ElementByteSizeObserver;
 import org.apache.beam.sdk.values.KV;
 import org.apache.beam.sdk.values.PCollectionView;
 import org.apache.beam.sdk.values.TupleTag;
 import org.apache.beam.sdk.values.WindowingStrategy;
 import org.apache.beam.vendor.guava.v26_0_jre.com.google.common.collect.Iterables;
+import org.apache.spark.util.SizeEstimator;
 import org.checkerframework.checker.nullness.qual.Nullable;
 
 /** A {@link SideInputReader} for the SparkRunner. */
@@ -44,7 +48,7 @@ import org.checkerframework.checker.nullness.qual.Nullable;
   "rawtypes", // TODO(https://issues.apache.org/jira/browse/BEAM-10556)
   "nullness" // TODO(https://issues.apache.org/jira/browse/BEAM-10402)
 })
-public class SparkSideInputReader implements SideInputReader {
+public class SparkSideInputReader implements WeighingSideInputReader {
   private final Map<TupleTag<?>, KV<WindowingStrategy<?, ?>, SideInputBroadcast<?>>> sideInputs;
 
   public SparkSideInputReader(
@@ -54,6 +58,11 @@ public class SparkSideInputReader implements SideInputReader {
 
   @Override
   public <T> @Nullable T get(PCollectionView<T> view, BoundedWindow window) {
+    return getWeighed(view, window).getValue();
+  }
+
+  @Override
+  public <T> Value<T> getWeighed(PCollectionView<T> view, BoundedWindow window) {
     // --- validate sideInput.
     checkNotNull(view, "The PCollectionView passed to sideInput cannot be null ");
     KV<WindowingStrategy<?, ?>, SideInputBroadcast<?>> windowedBroadcastHelper =
@@ -81,19 +90,23 @@ public class SparkSideInputReader implements SideInputReader {
             .stream()
             .map(WindowedValue::getValue)
             .collect(Collectors.toList());
+    long weight = estimateEncodedSize(view.getCoderInternal(), sideInputForWindow);
 
     switch (view.getViewFn().getMaterialization().getUrn()) {
       case Materializations.ITERABLE_MATERIALIZATION_URN:
         {
           ViewFn<IterableView, T> viewFn = (ViewFn<IterableView, T>) view.getViewFn();
-          return viewFn.apply(() -> sideInputForWindow);
+          return new Value<>(viewFn.apply(() -> sideInputForWindow), weight);
         }
       case Materializations.MULTIMAP_MATERIALIZATION_URN:
         {
           ViewFn<MultimapView, T> viewFn = (ViewFn<MultimapView, T>) view.getViewFn();
           Coder<?> keyCoder = ((KvCoder<?, ?>) view.getCoderInternal()).getKeyCoder();
-          return viewFn.apply(
-              InMemoryMultimapSideInputView.fromIterable(keyCoder, (Iterable) sideInputForWindow));
+          return new Value<>(
+              viewFn.apply(
+                  InMemoryMultimapSideInputView.fromIterable(
+                      keyCoder, (Iterable) sideInputForWindow)),
+              weight);
         }
       default:
         throw new IllegalStateException(
@@ -103,6 +116,30 @@ public class SparkSideInputReader implements SideInputReader {
     }
   }
 
+  /**
+   * Estimates the encoded size of the given values, falling back to the {@link SizeEstimator} for
+   * coders which can't observe their encoded size.
+   */
+  private static long estimateEncodedSize(Coder coder, Iterable<?> values) {
+    long[] size = new long[1];
+    ElementByteSizeObserver observer =
+        new ElementByteSizeObserver() {
+          @Override
+          protected void reportElementSize(long elementByteSize) {
+            size[0] += elementByteSize;
+          }
+        };
+    try {
+      for (Object value : values) {
+        coder.registerByteSizeObserver(value, observer);
+        observer.advance();
+      }
+    } catch (Exception e) {
+      return SizeEstimator.estimate(values);
+    }
+    return size[0];
+  }
+
   @Override
   public <T> boolean contains(PCollectionView<T> view) {
     return sideInputs.containsKey(view.getTagInternal());
@@ -0,0 +1,108 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.beam.runners.spark.translation;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.containsInAnyOrder;
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import org.apache.beam.runners.core.construction.SerializablePipelineOptions;
+import org.apache.beam.runners.spark.util.ByteArray;
+import org.apache.beam.sdk.coders.Coder;
+import org.apache.beam.sdk.coders.CoderRegistry;
+import org.apache.beam.sdk.coders.StringUtf8Coder;
+import org.apache.beam.sdk.coders.VarIntCoder;
+import org.apache.beam.sdk.options.PipelineOptionsFactory;
+import org.apache.beam.sdk.transforms.Combine;
+import org.apache.beam.sdk.transforms.CombineWithContext;
+import org.apache.beam.sdk.transforms.Sum;
+import org.apache.beam.sdk.transforms.windowing.GlobalWindow;
+import org.apache.beam.sdk.util.CombineFnUtil;
+import org.apache.beam.sdk.util.WindowedValue;
+import org.apache.beam.sdk.values.KV;
+import org.apache.beam.sdk.values.WindowingStrategy;
+import org.apache.beam.vendor.guava.v26_0_jre.com.google.common.collect.Iterables;
+import org.apache.beam.vendor.guava.v26_0_jre.com.google.common.collect.Iterators;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+import scala.Tuple2;
+
+/** Tests for {@link GroupCombineFunctions}. */
+@RunWith(JUnit4.class)
+public class GroupCombineFunctionsTest {
+
+  @Test
+  @SuppressWarnings({"unchecked", "rawtypes"})
+  public void testSortBasedCombinePerKey() throws Exception {
+    Combine.CombineFn<Integer, int[], Integer> sumFn = Sum.ofIntegers();
+    SparkCombineFn<KV<String, Integer>, Integer, int[], Integer> sparkCombineFn =
+        SparkCombineFn.keyed(
+            (CombineWithContext.CombineFnWithContext<Integer, int[], Integer>)
+                CombineFnUtil.toFnWithContext(sumFn),
+            new SerializablePipelineOptions(PipelineOptionsFactory.create()),
+            Collections.emptyMap(),
+            WindowingStrategy.globalDefault());
+    Coder<SparkCombineFn.WindowedAccumulator<KV<String, Integer>, Integer, int[], ?>> waCoder =
+        sparkCombineFn.accumulatorCoder(
+            (Coder) GlobalWindow.Coder.INSTANCE,
+            sumFn.getAccumulatorCoder(CoderRegistry.createDefault(), VarIntCoder.of()),
+            WindowingStrategy.globalDefault());
+
+    List<Tuple2<ByteArray, WindowedValue<KV<String, Integer>>>> input = new ArrayList<>();
+    for (KV<String, Integer> kv :
+        Arrays.asList(
+            KV.of("a", 1),
+            KV.of("b", 10),
+            KV.of("a", 2),
+            KV.of("c", 5),
+            KV.of("a", 3),
+            KV.of("b", 4))) {
+      input.add(
+          TranslationUtils.<String, Integer>toPairByKeyInWindowedValue(StringUtf8Coder.of())
+              .call(WindowedValue.valueInGlobalWindow(kv)));
+    }
+
+    // At most two keys are combined at a time, so "a" and "b" are emitted twice.
+    List<Tuple2<ByteArray, byte[]>> partialAccumulators = new ArrayList<>();
+    Iterators.addAll(
+        partialAccumulators,
+        new GroupCombineFunctions.PartialCombiningIterator<>(
+            input.iterator(), sparkCombineFn, waCoder, 2));
+    assertEquals(5, partialAccumulators.size());
+
+    partialAccumulators.sort((x, y) -> x._1.compareTo(y._1));
+    List<KV<String, Integer>> combined = new ArrayList<>();
+    GroupCombineFunctions.MergeSortedAccumulatorsIterator<String, Integer, int[]> merged =
+        new GroupCombineFunctions.MergeSortedAccumulatorsIterator<>(
+            partialAccumulators.iterator(), sparkCombineFn, StringUtf8Coder.of(), waCoder);
+    while (merged.hasNext()) {
+      Tuple2<String, SparkCombineFn.WindowedAccumulator<KV<String, Integer>, Integer, int[], ?>>
+          keyAndAccumulator = merged.next();
+      WindowedValue<Integer> output =
+          Iterables.getOnlyElement(sparkCombineFn.extractOutput(keyAndAccumulator._2));
+      assertEquals(GlobalWindow.INSTANCE, Iterables.getOnlyElement(output.getWindows()));
+      combined.add(KV.of(keyAndAccumulator._1, output.getValue()));
+    }
+    assertThat(combined, containsInAnyOrder(KV.of("a", 6), KV.of("b", 14), KV.of("c", 5)));
+  }
+}
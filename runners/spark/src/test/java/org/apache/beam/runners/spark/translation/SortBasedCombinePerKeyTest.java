@@ -0,0 +1,131 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.beam.runners.spark.translation;
+
+import org.apache.beam.runners.spark.SparkPipelineOptions;
+import org.apache.beam.runners.spark.TestSparkPipelineOptions;
+import org.apache.beam.runners.spark.TestSparkRunner;
+import org.apache.beam.sdk.Pipeline;
+import org.apache.beam.sdk.PipelineResult;
+import org.apache.beam.sdk.options.PipelineOptionsFactory;
+import org.apache.beam.sdk.testing.PAssert;
+import org.apache.beam.sdk.testing.TestPipeline;
+import org.apache.beam.sdk.transforms.Combine;
+import org.apache.beam.sdk.transforms.Create;
+import org.apache.beam.sdk.transforms.Sum;
+import org.apache.beam.sdk.transforms.windowing.BoundedWindow;
+import org.apache.beam.sdk.transforms.windowing.FixedWindows;
+import org.apache.beam.sdk.transforms.windowing.IntervalWindow;
+import org.apache.beam.sdk.transforms.windowing.Sessions;
+import org.apache.beam.sdk.transforms.windowing.Window;
+import org.apache.beam.sdk.transforms.windowing.WindowFn;
+import org.apache.beam.sdk.values.KV;
+import org.apache.beam.sdk.values.PCollection;
+import org.apache.beam.sdk.values.TimestampedValue;
+import org.joda.time.Duration;
+import org.joda.time.Instant;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/**
+ * Tests that {@link SparkPipelineOptions#isSortBasedCombinePerKey()} translates {@link
+ * Combine.PerKey} to the same output as Spark's combineByKey.
+ */
+@RunWith(JUnit4.class)
+public class SortBasedCombinePerKeyTest {
+
+  @Test
+  public void testFixedWindows() throws Exception {
+    // Non-merging windows are brought to the key.
+    for (boolean sortBased : new boolean[] {false, true}) {
+      runFixedWindows(sortBased, 0L);
+    }
+  }
+
+  @Test
+  public void testFixedWindowsWithBundleSize() throws Exception {
+    // With a bundle size, the accumulators are partitioned like the input instead of by the
+    // default parallelism.
+    for (boolean sortBased : new boolean[] {false, true}) {
+      runFixedWindows(sortBased, 1L);
+    }
+  }
+
+  @Test
+  public void testSessions() throws Exception {
+    // Merging windows are kept in the accumulators rather than brought to the key.
+    for (boolean sortBased : new boolean[] {false, true}) {
+      Pipeline pipeline = createPipeline(sortBased, 0L);
+      PCollection<KV<String, Integer>> sums =
+          sumPerKey(pipeline, Sessions.withGapDuration(Duration.standardSeconds(10)));
+
+      PAssert.that(sums).inWindow(window(0, 11)).containsInAnyOrder(KV.of("a", 3));
+      PAssert.that(sums).inWindow(window(2, 13)).containsInAnyOrder(KV.of("b", 14));
+      PAssert.that(sums).inWindow(window(61, 71)).containsInAnyOrder(KV.of("a", 3));
+      PAssert.that(sums).inWindow(window(62, 72)).containsInAnyOrder(KV.of("c", 5));
+      run(pipeline);
+    }
+  }
+
+  private static void runFixedWindows(boolean sortBased, long bundleSize) {
+    Pipeline pipeline = createPipeline(sortBased, bundleSize);
+    PCollection<KV<String, Integer>> sums =
+        sumPerKey(pipeline, FixedWindows.of(Duration.standardMinutes(1)));
+
+    PAssert.that(sums).inWindow(window(0, 60)).containsInAnyOrder(KV.of("a", 3), KV.of("b", 14));
+    PAssert.that(sums).inWindow(window(60, 120)).containsInAnyOrder(KV.of("a", 3), KV.of("c", 5));
+    run(pipeline);
+  }
+
+  private static Pipeline createPipeline(boolean sortBased, long bundleSize) {
+    SparkPipelineOptions options =
+        PipelineOptionsFactory.create().as(TestSparkPipelineOptions.class);
+    options.setRunner(TestSparkRunner.class);
+    options.setSortBasedCombinePerKey(sortBased);
+    // Emits partial accumulators before all keys of a partition were seen, so that they are merged
+    // after being sorted.
+    options.setMaxPartialAccumulatorsPerPartition(1);
+    options.setBundleSize(bundleSize);
+    return Pipeline.create(options);
+  }
+
+  private static PCollection<KV<String, Integer>> sumPerKey(
+      Pipeline pipeline, WindowFn<Object, ? extends BoundedWindow> windowFn) {
+    return pipeline
+        .apply(
+            Create.timestamped(
+                TimestampedValue.of(KV.of("a", 1), new Instant(0)),
+                TimestampedValue.of(KV.of("b", 10), new Instant(2_000)),
+                TimestampedValue.of(KV.of("a", 2), new Instant(1_000)),
+                TimestampedValue.of(KV.of("c", 5), new Instant(62_000)),
+                TimestampedValue.of(KV.of("a", 3), new Instant(61_000)),
+                TimestampedValue.of(KV.of("b", 4), new Instant(3_000))))
+        .apply(Window.into(windowFn))
+        .apply(Combine.perKey(Sum.ofIntegers()));
+  }
+
+  private static IntervalWindow window(int startSeconds, int endSeconds) {
+    return new IntervalWindow(new Instant(startSeconds * 1_000L), new Instant(endSeconds * 1_000L));
+  }
+
+  private static void run(Pipeline pipeline) {
+    PipelineResult result = pipeline.run();
+    TestPipeline.verifyPAssertsSucceeded(pipeline, result);
+  }
+}
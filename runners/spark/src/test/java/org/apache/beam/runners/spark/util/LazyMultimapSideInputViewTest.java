@@ -0,0 +1,84 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.beam.runners.spark.util;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.containsInAnyOrder;
+import static org.hamcrest.Matchers.emptyIterable;
+import static org.junit.Assert.assertEquals;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.List;
+import org.apache.beam.runners.spark.coders.CoderHelpers;
+import org.apache.beam.sdk.coders.AtomicCoder;
+import org.apache.beam.sdk.coders.StringUtf8Coder;
+import org.apache.beam.sdk.coders.VarIntCoder;
+import org.apache.beam.sdk.values.KV;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** Tests for {@link LazyMultimapSideInputView}. */
+@RunWith(JUnit4.class)
+public class LazyMultimapSideInputViewTest {
+
+  /** A {@link StringUtf8Coder} counting the values it decodes. */
+  private static class CountingCoder extends AtomicCoder<String> {
+    private int decoded;
+
+    @Override
+    public void encode(String value, OutputStream outStream) throws IOException {
+      StringUtf8Coder.of().encode(value, outStream);
+    }
+
+    @Override
+    public String decode(InputStream inStream) throws IOException {
+      decoded++;
+      return StringUtf8Coder.of().decode(inStream);
+    }
+  }
+
+  private static KV<byte[], byte[]> encode(Integer key, String value, CountingCoder valueCoder) {
+    return KV.of(
+        CoderHelpers.toByteArray(key, VarIntCoder.of()),
+        CoderHelpers.toByteArray(value, valueCoder));
+  }
+
+  @Test
+  public void testDecodesOnlyValuesOfKeysLookedUp() {
+    CountingCoder valueCoder = new CountingCoder();
+    List<KV<byte[], byte[]>> encodedValues =
+        Arrays.asList(
+            encode(1, "a", valueCoder),
+            encode(2, "b", valueCoder),
+            encode(1, "c", valueCoder),
+            encode(3, "d", valueCoder));
+    LazyMultimapSideInputView<Integer, String> view =
+        LazyMultimapSideInputView.of(VarIntCoder.of(), valueCoder, encodedValues);
+
+    assertThat(view.get(1), contains("a", "c"));
+    assertEquals(2, valueCoder.decoded);
+    assertThat(view.get(4), emptyIterable());
+    assertThat(view.get(), containsInAnyOrder(1, 2, 3));
+    assertEquals(2, valueCoder.decoded);
+  }
+}
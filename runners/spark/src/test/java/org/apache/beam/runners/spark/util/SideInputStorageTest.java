@@ -0,0 +1,146 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.beam.runners.spark.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.mockito.Mockito.mock;
+
+import java.io.Closeable;
+import java.io.IOException;
+import org.apache.beam.runners.core.metrics.MetricsContainerImpl;
+import org.apache.beam.runners.spark.util.CachedSideInputReader.WeighingSideInputReader;
+import org.apache.beam.runners.spark.util.SideInputStorage.Key;
+import org.apache.beam.runners.spark.util.SideInputStorage.Value;
+import org.apache.beam.sdk.metrics.MetricName;
+import org.apache.beam.sdk.metrics.MetricsEnvironment;
+import org.apache.beam.sdk.transforms.windowing.BoundedWindow;
+import org.apache.beam.sdk.transforms.windowing.IntervalWindow;
+import org.apache.beam.sdk.values.PCollectionView;
+import org.apache.beam.vendor.guava.v26_0_jre.com.google.common.cache.Cache;
+import org.checkerframework.checker.nullness.qual.Nullable;
+import org.joda.time.Instant;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** Tests for {@link SideInputStorage} and {@link CachedSideInputReader}. */
+@RunWith(JUnit4.class)
+public class SideInputStorageTest {
+
+  @SuppressWarnings("unchecked")
+  private final PCollectionView<String> view = mock(PCollectionView.class);
+
+  private static BoundedWindow window(long end) {
+    return new IntervalWindow(new Instant(0), new Instant(end));
+  }
+
+  /** Reads the window's end as the side input, weighing the given number of bytes. */
+  private static class FixedWeightReader implements WeighingSideInputReader {
+    private final long weight;
+    private int reads;
+
+    FixedWeightReader(long weight) {
+      this.weight = weight;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> Value<T> getWeighed(PCollectionView<T> view, BoundedWindow window) {
+      reads++;
+      return new Value<>((T) String.valueOf(window.maxTimestamp().getMillis() + 1), weight);
+    }
+
+    @Override
+    public <T> @Nullable T get(PCollectionView<T> view, BoundedWindow window) {
+      return getWeighed(view, window).getValue();
+    }
+
+    @Override
+    public <T> boolean contains(PCollectionView<T> view) {
+      return true;
+    }
+
+    @Override
+    public boolean isEmpty() {
+      return false;
+    }
+  }
+
+  @Test
+  public void testCacheIsBoundedByWeight() {
+    Cache<Key<?>, Value<?>> cache = SideInputStorage.createCache(100);
+    cache.put(new Key<>(view, window(1)), new Value<>("1", 40));
+    cache.put(new Key<>(view, window(2)), new Value<>("2", 40));
+    cache.getIfPresent(new Key<>(view, window(1)));
+    cache.put(new Key<>(view, window(3)), new Value<>("3", 40));
+
+    // The least recently used side input is evicted.
+    assertEquals(2, cache.size());
+    assertNotNull(cache.getIfPresent(new Key<>(view, window(1))));
+    assertNull(cache.getIfPresent(new Key<>(view, window(2))));
+    assertNotNull(cache.getIfPresent(new Key<>(view, window(3))));
+  }
+
+  @Test
+  public void testSideInputFillingTheCacheIsKept() {
+    // Would be evicted right away if the weight was split between several segments.
+    Cache<Key<?>, Value<?>> cache = SideInputStorage.createCache(100);
+    cache.put(new Key<>(view, window(1)), new Value<>("1", 100));
+    assertNotNull(cache.getIfPresent(new Key<>(view, window(1))));
+
+    cache.put(new Key<>(view, window(2)), new Value<>("2", 101));
+    assertNull(cache.getIfPresent(new Key<>(view, window(2))));
+  }
+
+  @Test
+  public void testWeightsAboveIntegerRangeAreCapped() {
+    Cache<Key<?>, Value<?>> cache = SideInputStorage.createCache(Long.MAX_VALUE);
+    cache.put(new Key<>(view, window(1)), new Value<>("1", Long.MAX_VALUE));
+    cache.put(new Key<>(view, window(2)), new Value<>("2", Long.MAX_VALUE));
+    assertEquals(2, cache.size());
+  }
+
+  @Test
+  public void testHitsMissesAndEvictionsAreCounted() throws IOException {
+    FixedWeightReader delegate = new FixedWeightReader(60);
+    CachedSideInputReader reader =
+        CachedSideInputReader.of(delegate, SideInputStorage.createCache(100));
+    MetricsContainerImpl container = new MetricsContainerImpl("step");
+    try (Closeable ignored = MetricsEnvironment.scopedMetricsContainer(container)) {
+      assertEquals("1", reader.get(view, window(1)));
+      assertEquals("1", reader.get(view, window(1)));
+      // Evicts the first side input, which is then read again.
+      assertEquals("2", reader.get(view, window(2)));
+      assertEquals("1", reader.get(view, window(1)));
+    }
+
+    assertEquals(3, delegate.reads);
+    assertEquals(1L, counter(container, "sideInputCacheHits"));
+    assertEquals(3L, counter(container, "sideInputCacheMisses"));
+    assertEquals(2L, counter(container, "sideInputCacheEvictions"));
+  }
+
+  private static long counter(MetricsContainerImpl container, String name) {
+    return container
+        .getCounter(MetricName.named(SideInputStorage.class, name))
+        .getCumulative()
+        .longValue();
+  }
+}
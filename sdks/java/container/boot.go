@@ -53,6 +53,7 @@ const (
 	enableGoogleCloudHeapSamplingOption = "enable_google_cloud_heap_sampling"
 	googleCloudProfilerAgentBaseArgs    = "-agentpath:/opt/google_cloud_profiler/profiler_java_agent.so=-logtostderr,-cprof_service=%s,-cprof_service_version=%s"
 	googleCloudProfilerAgentHeapArgs    = googleCloudProfilerAgentBaseArgs + ",-cprof_enable_heap_sampling,-cprof_heap_sampling_interval=2097152"
+	appCdsArchive                       = "/opt/apache/beam/beam-sdks-java-harness.jsa"
 )
 
 func main() {
@@ -159,6 +160,13 @@ func main() {
 		"-cp", strings.Join(cp, ":"),
 	}
 
+	// Start from the AppCDS archive of the classes the harness loads before its
+	// first bundle, if the image has one. The JVM ignores an archive that does not
+	// match the classpath.
+	if _, err := os.Stat(appCdsArchive); err == nil {
+		args = append(args, "-XX:SharedArchiveFile="+appCdsArchive)
+	}
+
 	enableGoogleCloudProfiler := strings.Contains(options, enableGoogleCloudProfilerOption)
 	enableGoogleCloudHeapSampling := strings.Contains(options, enableGoogleCloudHeapSamplingOption)
 	if enableGoogleCloudProfiler {
@@ -0,0 +1,161 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.beam.sdk.coders;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.io.File;
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Compares JMH results written as JSON against a baseline written the same way, and fails if any
+ * benchmark regressed by more than a threshold.
+ *
+ * <p>A benchmark regressed if its score got worse, i.e. its throughput dropped or its average time
+ * grew, or if it allocates more bytes per operation, as reported by the {@code gc} profiler. Record
+ * a baseline, e.g. before upgrading, and compare later runs against it with:
+ *
+ * <pre>{@code
+ * ./gradlew :sdks:java:core:jmh -Pbenchmark=CoderBenchmark -PbenchmarkResults=baseline.json
+ * ./gradlew :sdks:java:core:jmh -Pbenchmark=CoderBenchmark -PbenchmarkResults=results.json
+ * ./gradlew :sdks:java:core:jmhCompareBaseline -PbenchmarkBaseline=baseline.json \
+ *     -PbenchmarkResults=results.json -PbenchmarkMaxRegressionPercent=10
+ * }</pre>
+ */
+public class BenchmarkBaseline {
+
+  private static final String ALLOCATION_METRIC = "gc.alloc.rate.norm";
+
+  /** Allocation differences below this many bytes per operation are ignored as noise. */
+  private static final double MIN_ALLOCATION_DIFFERENCE = 16;
+
+  public static void main(String[] args) throws IOException {
+    if (args.length < 2 || args.length > 3) {
+      System.err.println(
+          "Usage: BenchmarkBaseline <baseline.json> <results.json> [maxRegressionPercent]");
+      System.exit(2);
+    }
+    Map<String, JsonNode> baseline = read(new File(args[0]));
+    Map<String, JsonNode> results = read(new File(args[1]));
+    double maxRegression = (args.length > 2 ? Double.parseDouble(args[2]) : 10) / 100;
+
+    int regressions = 0;
+    for (Map.Entry<String, JsonNode> result : results.entrySet()) {
+      JsonNode baselineResult = baseline.get(result.getKey());
+      if (baselineResult == null) {
+        System.out.printf("NEW         %s%n", result.getKey());
+        continue;
+      }
+      boolean higherIsBetter = "thrpt".equals(result.getValue().path("mode").asText());
+      if (compare(
+          result.getKey(),
+          result.getValue().path("primaryMetric"),
+          baselineResult.path("primaryMetric"),
+          higherIsBetter,
+          maxRegression,
+          0)) {
+        regressions++;
+      }
+      JsonNode allocation = allocationMetric(result.getValue());
+      JsonNode baselineAllocation = allocationMetric(baselineResult);
+      if (allocation != null
+          && baselineAllocation != null
+          && compare(
+              result.getKey() + " " + ALLOCATION_METRIC,
+              allocation,
+              baselineAllocation,
+              false,
+              maxRegression,
+              MIN_ALLOCATION_DIFFERENCE)) {
+        regressions++;
+      }
+    }
+    for (String missing : baseline.keySet()) {
+      if (!results.containsKey(missing)) {
+        System.out.printf("MISSING     %s%n", missing);
+      }
+    }
+
+    if (regressions > 0) {
+      System.out.printf(
+          "%d benchmark metrics regressed by more than %.0f%%%n", regressions, maxRegression * 100);
+      System.exit(1);
+    }
+  }
+
+  /**
+   * Prints the change of a metric against its baseline, returning whether it got worse by more
+   * than {@code maxRegression} of the baseline and more than {@code minDifference}.
+   */
+  private static boolean compare(
+      String name,
+      JsonNode metric,
+      JsonNode baselineMetric,
+      boolean higherIsBetter,
+      double maxRegression,
+      double minDifference) {
+    double score = metric.path("score").asDouble();
+    double baselineScore = baselineMetric.path("score").asDouble();
+    double worsening = higherIsBetter ? baselineScore - score : score - baselineScore;
+    boolean regressed =
+        worsening > minDifference && worsening > Math.abs(baselineScore) * maxRegression;
+    double change = baselineScore == 0 ? 0 : (score - baselineScore) / Math.abs(baselineScore);
+    System.out.printf(
+        "%-11s %s: %.3f -> %.3f %s (%+.1f%%)%n",
+        regressed ? "REGRESSION" : "OK",
+        name,
+        baselineScore,
+        score,
+        metric.path("scoreUnit").asText(),
+        change * 100);
+    return regressed;
+  }
+
+  private static JsonNode allocationMetric(JsonNode result) {
+    Iterator<Map.Entry<String, JsonNode>> metrics = result.path("secondaryMetrics").fields();
+    while (metrics.hasNext()) {
+      Map.Entry<String, JsonNode> metric = metrics.next();
+      // JMH prefixes the names of profiler metrics with a separator character.
+      if (metric.getKey().endsWith(ALLOCATION_METRIC)) {
+        return metric.getValue();
+      }
+    }
+    return null;
+  }
+
+  /** Reads JMH results keyed by the benchmark, its mode and its parameters. */
+  private static Map<String, JsonNode> read(File file) throws IOException {
+    Map<String, JsonNode> results = new LinkedHashMap<>();
+    for (JsonNode result : new ObjectMapper().readTree(file)) {
+      Map<String, String> params = new TreeMap<>();
+      Iterator<Map.Entry<String, JsonNode>> fields = result.path("params").fields();
+      while (fields.hasNext()) {
+        Map.Entry<String, JsonNode> param = fields.next();
+        params.put(param.getKey(), param.getValue().asText());
+      }
+      results.put(
+          result.path("benchmark").asText() + " [" + result.path("mode").asText() + "] " + params,
+          result);
+    }
+    return results;
+  }
+}
@@ -0,0 +1,244 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.beam.sdk.coders;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import org.apache.beam.sdk.schemas.Schema;
+import org.apache.beam.sdk.schemas.Schema.FieldType;
+import org.apache.beam.sdk.transforms.windowing.GlobalWindow;
+import org.apache.beam.sdk.transforms.windowing.IntervalWindow;
+import org.apache.beam.sdk.transforms.windowing.PaneInfo;
+import org.apache.beam.sdk.util.WindowedValue;
+import org.apache.beam.sdk.util.WindowedValue.FullWindowedValueCoder;
+import org.apache.beam.sdk.values.KV;
+import org.apache.beam.sdk.values.Row;
+import org.joda.time.Duration;
+import org.joda.time.Instant;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Benchmarks encoding and decoding a batch of values with each of the core coders.
+ *
+ * <p>The values are shaped after typical pipeline data: integers and longs of mixed magnitude,
+ * mostly ASCII words and sentences, word counts, grouped values, rows of a small record schema, and
+ * values in the global window and in fixed windows. Run with {@code -Pbenchmark=CoderBenchmark},
+ * which also reports the bytes allocated per operation as {@code gc.alloc.rate.norm}, and compare
+ * the results against a baseline as described in {@link BenchmarkBaseline}.
+ */
+public class CoderBenchmark {
+
+  private static final Schema RECORD_SCHEMA =
+      Schema.builder()
+          .addInt64Field("id")
+          .addStringField("name")
+          .addDoubleField("score")
+          .addBooleanField("active")
+          .addNullableField("parentId", FieldType.INT64)
+          .build();
+
+  private static final Duration WINDOW_SIZE = Duration.standardMinutes(1);
+
+  /** A batch of values and their encoding with a coder. */
+  @State(Scope.Thread)
+  public static class Values {
+    @Param({
+      "VAR_INT",
+      "VAR_LONG",
+      "STRING_UTF8",
+      "KV",
+      "ITERABLE",
+      "ROW",
+      "LENGTH_PREFIX",
+      "NULLABLE",
+      "WINDOWED_VALUE_GLOBAL",
+      "WINDOWED_VALUE_INTERVAL"
+    })
+    public String coderName;
+
+    @Param({"1000"})
+    public int numValues;
+
+    Coder<Object> coder;
+    List<Object> values;
+    byte[] encoding;
+    ByteArrayOutputStream outStream;
+    ByteArrayInputStream inStream;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+      Random random = new Random(1);
+      values = new ArrayList<>(numValues);
+      switch (coderName) {
+        case "VAR_INT":
+          coder = cast(VarIntCoder.of());
+          for (int i = 0; i < numValues; i++) {
+            values.add(randomInt(random));
+          }
+          break;
+        case "VAR_LONG":
+          coder = cast(VarLongCoder.of());
+          for (int i = 0; i < numValues; i++) {
+            values.add(randomLong(random));
+          }
+          break;
+        case "STRING_UTF8":
+          coder = cast(StringUtf8Coder.of());
+          for (int i = 0; i < numValues; i++) {
+            values.add(randomString(random));
+          }
+          break;
+        case "KV":
+          coder = cast(KvCoder.of(StringUtf8Coder.of(), VarLongCoder.of()));
+          for (int i = 0; i < numValues; i++) {
+            values.add(KV.of(randomWord(random), randomLong(random)));
+          }
+          break;
+        case "ITERABLE":
+          coder = cast(IterableCoder.of(VarLongCoder.of()));
+          for (int i = 0; i < numValues; i++) {
+            List<Long> group = new ArrayList<>();
+            for (int j = random.nextInt(100); j >= 0; j--) {
+              group.add(randomLong(random));
+            }
+            values.add(group);
+          }
+          break;
+        case "ROW":
+          coder = cast(RowCoder.of(RECORD_SCHEMA));
+          for (int i = 0; i < numValues; i++) {
+            values.add(
+                Row.withSchema(RECORD_SCHEMA)
+                    .addValues(
+                        random.nextLong(),
+                        randomWord(random),
+                        random.nextDouble(),
+                        random.nextBoolean(),
+                        random.nextInt(4) == 0 ? null : randomLong(random))
+                    .build());
+          }
+          break;
+        case "LENGTH_PREFIX":
+          coder = cast(LengthPrefixCoder.of(StringUtf8Coder.of()));
+          for (int i = 0; i < numValues; i++) {
+            values.add(randomString(random));
+          }
+          break;
+        case "NULLABLE":
+          coder = cast(NullableCoder.of(StringUtf8Coder.of()));
+          for (int i = 0; i < numValues; i++) {
+            values.add(random.nextInt(10) == 0 ? null : randomString(random));
+          }
+          break;
+        case "WINDOWED_VALUE_GLOBAL":
+          coder =
+              cast(FullWindowedValueCoder.of(StringUtf8Coder.of(), GlobalWindow.Coder.INSTANCE));
+          for (int i = 0; i < numValues; i++) {
+            values.add(WindowedValue.valueInGlobalWindow(randomString(random)));
+          }
+          break;
+        case "WINDOWED_VALUE_INTERVAL":
+          coder = cast(FullWindowedValueCoder.of(StringUtf8Coder.of(), IntervalWindow.getCoder()));
+          for (int i = 0; i < numValues; i++) {
+            Instant timestamp = new Instant(1_600_000_000_000L + random.nextInt(3_600_000));
+            IntervalWindow window =
+                new IntervalWindow(
+                    new Instant(timestamp.getMillis() - timestamp.getMillis() % 60_000),
+                    WINDOW_SIZE);
+            values.add(
+                WindowedValue.of(
+                    randomString(random), timestamp, window, PaneInfo.ON_TIME_AND_ONLY_FIRING));
+          }
+          break;
+        default:
+          throw new IllegalArgumentException("Unknown coder " + coderName);
+      }
+
+      outStream = new ByteArrayOutputStream();
+      for (Object value : values) {
+        coder.encode(value, outStream);
+      }
+      encoding = outStream.toByteArray();
+      inStream = new ByteArrayInputStream(encoding);
+    }
+  }
+
+  @Benchmark
+  public int testEncode(Values values) throws IOException {
+    ByteArrayOutputStream outStream = values.outStream;
+    outStream.reset();
+    for (Object value : values.values) {
+      values.coder.encode(value, outStream);
+    }
+    return outStream.size();
+  }
+
+  @Benchmark
+  public void testDecode(Values values, Blackhole blackhole) throws IOException {
+    ByteArrayInputStream inStream = values.inStream;
+    inStream.reset();
+    for (int i = 0; i < values.numValues; i++) {
+      blackhole.consume(values.coder.decode(inStream));
+    }
+  }
+
+  @SuppressWarnings("unchecked")
+  private static Coder<Object> cast(Coder<?> coder) {
+    return (Coder<Object>) coder;
+  }
+
+  /** Returns an int which is small more often than large, as counts and indices are. */
+  private static int randomInt(Random random) {
+    return random.nextInt() >>> random.nextInt(32);
+  }
+
+  /** Returns a non-negative long which is small more often than large. */
+  private static long randomLong(Random random) {
+    return random.nextLong() >>> (1 + random.nextInt(63));
+  }
+
+  private static String randomWord(Random random) {
+    StringBuilder word = new StringBuilder();
+    for (int i = random.nextInt(10); i >= 0; i--) {
+      word.append((char) ('a' + random.nextInt(26)));
+    }
+    return word.toString();
+  }
+
+  /** Returns a sentence of up to 20 words, one in ten of which contains a non-ASCII character. */
+  private static String randomString(Random random) {
+    StringBuilder sentence = new StringBuilder(randomWord(random));
+    for (int i = random.nextInt(20); i > 0; i--) {
+      sentence.append(' ').append(randomWord(random));
+      if (random.nextInt(10) == 0) {
+        sentence.append('\u00e9');
+      }
+    }
+    return sentence.toString();
+  }
+}
@@ -0,0 +1,160 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.beam.sdk.coders;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import org.apache.beam.sdk.schemas.Schema;
+import org.apache.beam.sdk.schemas.Schema.FieldType;
+import org.apache.beam.sdk.values.Row;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Benchmarks encoding and decoding a batch of rows with a {@link RowCoder}, comparing encoding
+ * each row with {@link RowCoder#encode} against encoding the whole batch column by column with
+ * {@link RowCoder#encodeBatch}.
+ *
+ * <p>The narrow schema has a field of each primitive type, the wide schema has {@code 100} fields
+ * cycling through the primitive types and strings. A tenth of the values are null. Run with
+ * {@code -Pbenchmark=RowCoderBenchmark}.
+ */
+public class RowCoderBenchmark {
+
+  private static final FieldType[] FIELD_TYPES = {
+    FieldType.BYTE,
+    FieldType.INT16,
+    FieldType.INT32,
+    FieldType.INT64,
+    FieldType.FLOAT,
+    FieldType.DOUBLE,
+    FieldType.BOOLEAN,
+    FieldType.STRING
+  };
+
+  /** A batch of rows, and its encodings row by row and column by column. */
+  @State(Scope.Benchmark)
+  public static class Batch {
+    @Param({"NARROW", "WIDE"})
+    public String schemaWidth;
+
+    @Param({"1000"})
+    public int batchSize;
+
+    RowCoder coder;
+    List<Row> rows;
+    byte[] rowEncoding;
+    byte[] batchEncoding;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+      int numFields = "NARROW".equals(schemaWidth) ? FIELD_TYPES.length : 100;
+      Schema.Builder schemaBuilder = Schema.builder();
+      for (int i = 0; i < numFields; i++) {
+        schemaBuilder.addNullableField("f" + i, FIELD_TYPES[i % FIELD_TYPES.length]);
+      }
+      Schema schema = schemaBuilder.build();
+      coder = RowCoder.of(schema);
+
+      Random random = new Random(1);
+      rows = new ArrayList<>(batchSize);
+      for (int i = 0; i < batchSize; i++) {
+        Row.Builder row = Row.withSchema(schema);
+        for (int field = 0; field < numFields; field++) {
+          row.addValue(
+              random.nextInt(10) == 0
+                  ? null
+                  : randomValue(schema.getField(field).getType(), random));
+        }
+        rows.add(row.build());
+      }
+
+      ByteArrayOutputStream outStream = new ByteArrayOutputStream();
+      for (Row row : rows) {
+        coder.encode(row, outStream);
+      }
+      rowEncoding = outStream.toByteArray();
+      outStream.reset();
+      coder.encodeBatch(rows, outStream);
+      batchEncoding = outStream.toByteArray();
+    }
+  }
+
+  @Benchmark
+  public byte[] testEncodeRows(Batch batch) throws IOException {
+    ByteArrayOutputStream outStream = new ByteArrayOutputStream(batch.rowEncoding.length);
+    for (Row row : batch.rows) {
+      batch.coder.encode(row, outStream);
+    }
+    return outStream.toByteArray();
+  }
+
+  @Benchmark
+  public byte[] testEncodeBatch(Batch batch) throws IOException {
+    ByteArrayOutputStream outStream = new ByteArrayOutputStream(batch.batchEncoding.length);
+    batch.coder.encodeBatch(batch.rows, outStream);
+    return outStream.toByteArray();
+  }
+
+  @Benchmark
+  public void testDecodeRows(Batch batch, Blackhole blackhole) throws IOException {
+    ByteArrayInputStream inStream = new ByteArrayInputStream(batch.rowEncoding);
+    for (int i = 0; i < batch.batchSize; i++) {
+      blackhole.consume(batch.coder.decode(inStream));
+    }
+  }
+
+  @Benchmark
+  public List<Row> testDecodeBatch(Batch batch) throws IOException {
+    List<Row> rows = new ArrayList<>(batch.batchSize);
+    batch.coder.decodeBatch(new ByteArrayInputStream(batch.batchEncoding), rows);
+    return rows;
+  }
+
+  private static Object randomValue(FieldType type, Random random) {
+    switch (type.getTypeName()) {
+      case BYTE:
+        return (byte) random.nextInt();
+      case INT16:
+        return (short) random.nextInt();
+      case INT32:
+        return random.nextInt(1 << 20);
+      case INT64:
+        return random.nextLong();
+      case FLOAT:
+        return random.nextFloat();
+      case DOUBLE:
+        return random.nextDouble();
+      case BOOLEAN:
+        return random.nextBoolean();
+      case STRING:
+        return Long.toHexString(random.nextLong());
+      default:
+        throw new IllegalArgumentException("Unsupported type " + type);
+    }
+  }
+}
@@ -0,0 +1,134 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.beam.sdk.io;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+import org.apache.beam.sdk.io.fs.EmptyMatchTreatment;
+import org.apache.beam.sdk.io.fs.MatchResult;
+import org.apache.beam.sdk.options.ExperimentalOptions;
+import org.apache.beam.sdk.options.PipelineOptions;
+import org.apache.beam.sdk.options.PipelineOptionsFactory;
+import org.apache.beam.sdk.options.ValueProvider.StaticValueProvider;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Benchmarks reading a local text file with {@link TextSource}, comparing reading through the
+ * channel against reading through memory mapped windows of the file, and decoding each line
+ * against emitting its bytes.
+ *
+ * <p>The throughput in MB of the file read per second is reported as the {@code megabytes}
+ * secondary result. Run with {@code -Pbenchmark=TextSourceBenchmark}.
+ */
+public class TextSourceBenchmark {
+
+  /** A local text file and a source reading the whole file as a single split. */
+  @State(Scope.Benchmark)
+  public static class TextFile {
+    @Param({"CHANNEL", "MEMORY_MAPPED"})
+    public String readPath;
+
+    @Param({"STRING", "BYTES"})
+    public String output;
+
+    @Param({"20", "200"})
+    public int averageLineLength;
+
+    @Param({"256"})
+    public int fileSizeMb;
+
+    Path file;
+    FileBasedSource<?> source;
+    PipelineOptions options;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+      file = Files.createTempFile("text-source-benchmark", ".txt");
+      Random random = new Random(1);
+      long remaining = fileSizeMb * 1024L * 1024L;
+      try (BufferedWriter writer = Files.newBufferedWriter(file, UTF_8)) {
+        StringBuilder line = new StringBuilder();
+        while (remaining > 0) {
+          line.setLength(0);
+          int length = Math.min(random.nextInt(2 * averageLineLength) + 1, (int) remaining);
+          for (int i = 0; i < length - 1; i++) {
+            line.append((char) ('a' + random.nextInt(26)));
+          }
+          line.append('\n');
+          writer.write(line.toString());
+          remaining -= length;
+        }
+      }
+
+      options = PipelineOptionsFactory.create();
+      if ("MEMORY_MAPPED".equals(readPath)) {
+        ExperimentalOptions.addExperiment(
+            options.as(ExperimentalOptions.class), TextSource.MEMORY_MAPPED_READS_EXPERIMENT);
+      }
+      StaticValueProvider<String> fileSpec = StaticValueProvider.of(file.toString());
+      MatchResult.Metadata metadata = FileSystems.matchSingleFileSpec(file.toString());
+      source =
+          "STRING".equals(output)
+              ? new TextSource(fileSpec, EmptyMatchTreatment.DISALLOW, null)
+                  .createForSubrangeOfFile(metadata, 0, metadata.sizeBytes())
+              : new TextSource.ByteArrayTextSource(fileSpec, EmptyMatchTreatment.DISALLOW, null)
+                  .createForSubrangeOfFile(metadata, 0, metadata.sizeBytes());
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+      Files.deleteIfExists(file);
+    }
+  }
+
+  /** Reports the number of MB of the file read per unit of time. */
+  @AuxCounters(AuxCounters.Type.OPERATIONS)
+  @State(Scope.Thread)
+  public static class Throughput {
+    public double megabytes;
+
+    @Setup(Level.Iteration)
+    public void reset() {
+      megabytes = 0;
+    }
+  }
+
+  @Benchmark
+  public void testReadFile(TextFile file, Throughput throughput, Blackhole blackhole)
+      throws IOException {
+    try (BoundedSource.BoundedReader<?> reader = file.source.createReader(file.options)) {
+      for (boolean more = reader.start(); more; more = reader.advance()) {
+        blackhole.consume(reader.getCurrent());
+      }
+    }
+    throughput.megabytes += file.fileSizeMb;
+  }
+}
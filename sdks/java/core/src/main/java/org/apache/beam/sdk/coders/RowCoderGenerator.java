@@ -19,6 +19,9 @@ package org.apache.beam.sdk.coders;
 
 import static org.apache.beam.vendor.guava.v26_0_jre.com.google.common.base.Preconditions.checkState;
 
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
@@ -26,6 +29,7 @@ import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Modifier;
 import java.util.Arrays;
 import java.util.BitSet;
+import java.util.List;
 import java.util.Map;
 import java.util.UUID;
 import javax.annotation.Nullable;
@@ -35,6 +39,7 @@ import org.apache.beam.sdk.schemas.Schema;
 import org.apache.beam.sdk.schemas.Schema.Field;
 import org.apache.beam.sdk.schemas.Schema.FieldType;
 import org.apache.beam.sdk.schemas.SchemaCoder;
+import org.apache.beam.sdk.util.VarInt;
 import org.apache.beam.sdk.values.Row;
 import org.apache.beam.vendor.bytebuddy.v1_11_0.net.bytebuddy.ByteBuddy;
 import org.apache.beam.vendor.bytebuddy.v1_11_0.net.bytebuddy.description.modifier.FieldManifestation;
@@ -58,6 +63,7 @@ import org.apache.beam.vendor.bytebuddy.v1_11_0.net.bytebuddy.implementation.byt
 import org.apache.beam.vendor.bytebuddy.v1_11_0.net.bytebuddy.matcher.ElementMatchers;
 import org.apache.beam.vendor.guava.v26_0_jre.com.google.common.base.Preconditions;
 import org.apache.beam.vendor.guava.v26_0_jre.com.google.common.collect.Maps;
+import org.apache.beam.vendor.guava.v26_0_jre.com.google.common.io.ByteStreams;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -94,8 +100,29 @@ import org.slf4j.LoggerFactory;
  *     // Delegate to a method that evaluates each coder in the static array.
  *     return decodeDelegate(FIELD_CODERS, inStream);
  *   }
+ *
+ *  {@literal @}Override
+ *   public void encodeBatch(List<Row> rows, OutputStream outStream) {
+ *     // Delegate to a method that encodes each field of the rows with its column codec.
+ *     encodeBatchDelegate(FIELD_COLUMNS, rows, outStream);
+ *   }
+ *
+ *  {@literal @}Override
+ *   public void decodeBatch(InputStream inStream, List<? super Row> rows) {
+ *     // Delegate to a method that decodes each field of the rows with its column codec.
+ *     decodeBatchDelegate(FIELD_COLUMNS, inStream, rows);
+ *   }
  * }
  * </code></pre>
+ *
+ * <p>The generated class also implements {@link BatchCoder}, which encodes a batch of rows column
+ * by column: the number of rows and fields, followed by each field in encoding position order as a
+ * bitmap of the rows in which it is null and the values of the rows in which it is not. Each field
+ * is prefixed with its length in bytes so that fields removed from the schema can be skipped. The
+ * values of fields of primitive types are encoded and decoded by a loop specialized to the type,
+ * rather than through a {@link Coder} and a stream allocated for each value. Those loops avoid
+ * boxing only within the codec: the values are still boxed when they are read from or attached to
+ * each {@link Row}.
  */
 @Experimental(Kind.SCHEMAS)
 @SuppressWarnings({
@@ -112,6 +139,7 @@ public abstract class RowCoderGenerator {
 
   private static final String CODERS_FIELD_NAME = "FIELD_CODERS";
   private static final String POSITIONS_FIELD_NAME = "FIELD_ENCODING_POSITIONS";
+  private static final String COLUMNS_FIELD_NAME = "FIELD_COLUMNS";
 
   // Cache for Coder class that are already generated.
   private static final Map<UUID, Coder<Row>> GENERATED_CODERS = Maps.newConcurrentMap();
@@ -120,6 +148,18 @@ public abstract class RowCoderGenerator {
 
   private static final Logger LOG = LoggerFactory.getLogger(RowCoderGenerator.class);
 
+  /**
+   * Encodes and decodes batches of {@link Row Rows} in a columnar format. Every {@link Coder}
+   * returned by {@link #generate(Schema)} implements {@link BatchCoder}.
+   */
+  public interface BatchCoder {
+    /** Encodes the provided rows, which must all have the schema of this coder, as one batch. */
+    void encodeBatch(List<Row> rows, OutputStream outStream) throws IOException;
+
+    /** Decodes a batch encoded by {@link #encodeBatch}, appending its rows to {@code rows}. */
+    void decodeBatch(InputStream inStream, List<? super Row> rows) throws IOException;
+  }
+
   public static void overrideEncodingPositions(UUID uuid, Map<String, Integer> encodingPositions) {
     ENCODING_POSITION_OVERRIDES.put(uuid, encodingPositions);
   }
@@ -133,7 +173,7 @@ public abstract class RowCoderGenerator {
       TypeDescription.Generic coderType =
           TypeDescription.Generic.Builder.parameterizedType(Coder.class, Row.class).build();
       DynamicType.Builder<Coder> builder =
-          (DynamicType.Builder<Coder>) BYTE_BUDDY.subclass(coderType);
+          (DynamicType.Builder<Coder>) BYTE_BUDDY.subclass(coderType).implement(BatchCoder.class);
       builder = implementMethods(schema, builder);
 
       int[] encodingPosToRowIndex = new int[schema.getFieldCount()];
@@ -151,12 +191,14 @@ public abstract class RowCoderGenerator {
       // Component coders are ordered by encoding position, but may encode a field with a different
       // row index.
       Coder[] componentCoders = new Coder[schema.getFieldCount()];
+      ColumnCodec[] columnCodecs = new ColumnCodec[schema.getFieldCount()];
       for (int i = 0; i < schema.getFieldCount(); ++i) {
         int rowIndex = encodingPosToRowIndex[i];
         // We use withNullable(false) as nulls are handled by the RowCoder and the individual
         // component coders therefore do not need to handle nulls.
-        componentCoders[i] =
-            SchemaCoder.coderForFieldType(schema.getField(rowIndex).getType().withNullable(false));
+        FieldType fieldType = schema.getField(rowIndex).getType().withNullable(false);
+        componentCoders[i] = SchemaCoder.coderForFieldType(fieldType);
+        columnCodecs[i] = ColumnCodec.forField(fieldType, componentCoders[i]);
       }
 
       builder =
@@ -165,8 +207,13 @@ public abstract class RowCoderGenerator {
                   CODERS_FIELD_NAME, Coder[].class, Visibility.PRIVATE, FieldManifestation.FINAL)
               .defineField(
                   POSITIONS_FIELD_NAME, int[].class, Visibility.PRIVATE, FieldManifestation.FINAL)
+              .defineField(
+                  COLUMNS_FIELD_NAME,
+                  ColumnCodec[].class,
+                  Visibility.PRIVATE,
+                  FieldManifestation.FINAL)
               .defineConstructor(Modifier.PUBLIC)
-              .withParameters(Coder[].class, int[].class)
+              .withParameters(Coder[].class, int[].class, ColumnCodec[].class)
               .intercept(new GeneratedCoderConstructor());
 
       try {
@@ -175,8 +222,9 @@ public abstract class RowCoderGenerator {
                 .make()
                 .load(Coder.class.getClassLoader(), ClassLoadingStrategy.Default.INJECTION)
                 .getLoaded()
-                .getDeclaredConstructor(Coder[].class, int[].class)
-                .newInstance((Object) componentCoders, (Object) encodingPosToRowIndex);
+                .getDeclaredConstructor(Coder[].class, int[].class, ColumnCodec[].class)
+                .newInstance(
+                    (Object) componentCoders, (Object) encodingPosToRowIndex, columnCodecs);
       } catch (InstantiationException
           | IllegalAccessException
           | NoSuchMethodException
@@ -219,6 +267,7 @@ public abstract class RowCoderGenerator {
                             .filter(ElementMatchers.named(CODERS_FIELD_NAME))
                             .getOnly())
                     .write(),
+                Duplication.SINGLE,
                 // Store the list of encoding offsets as a member variable.
                 MethodVariableAccess.REFERENCE.loadFrom(2),
                 FieldAccess.forField(
@@ -228,6 +277,15 @@ public abstract class RowCoderGenerator {
                             .filter(ElementMatchers.named(POSITIONS_FIELD_NAME))
                             .getOnly())
                     .write(),
+                // Store the codecs of the columns of batches as a member variable.
+                MethodVariableAccess.REFERENCE.loadFrom(3),
+                FieldAccess.forField(
+                        implementationTarget
+                            .getInstrumentedType()
+                            .getDeclaredFields()
+                            .filter(ElementMatchers.named(COLUMNS_FIELD_NAME))
+                            .getOnly())
+                    .write(),
                 MethodReturn.VOID);
         StackManipulation.Size size = stackManipulation.apply(methodVisitor, implementationContext);
         return new Size(size.getMaximalSize(), numLocals);
@@ -247,7 +305,11 @@ public abstract class RowCoderGenerator {
         .method(ElementMatchers.named("encode"))
         .intercept(new EncodeInstruction())
         .method(ElementMatchers.named("decode"))
-        .intercept(new DecodeInstruction());
+        .intercept(new DecodeInstruction())
+        .method(ElementMatchers.named("encodeBatch"))
+        .intercept(new EncodeBatchInstruction())
+        .method(ElementMatchers.named("decodeBatch"))
+        .intercept(new DecodeBatchInstruction());
   }
 
   private static class EncodeInstruction implements Implementation {
@@ -450,4 +512,370 @@ public abstract class RowCoderGenerator {
       return Row.withSchema(schema).attachValues(fieldValues);
     }
   }
+
+  private static class EncodeBatchInstruction implements Implementation {
+    static final ForLoadedType LOADED_TYPE = new ForLoadedType(EncodeBatchInstruction.class);
+
+    @Override
+    public ByteCodeAppender appender(Target implementationTarget) {
+      return (methodVisitor, implementationContext, instrumentedMethod) -> {
+        StackManipulation manipulation =
+            new StackManipulation.Compound(
+                // Array of column codecs.
+                MethodVariableAccess.loadThis(),
+                FieldAccess.forField(
+                        implementationContext
+                            .getInstrumentedType()
+                            .getDeclaredFields()
+                            .filter(ElementMatchers.named(COLUMNS_FIELD_NAME))
+                            .getOnly())
+                    .read(),
+                MethodVariableAccess.loadThis(),
+                FieldAccess.forField(
+                        implementationContext
+                            .getInstrumentedType()
+                            .getDeclaredFields()
+                            .filter(ElementMatchers.named(POSITIONS_FIELD_NAME))
+                            .getOnly())
+                    .read(),
+                // Rows to encode. (offset 1, as offset 0 is always "this").
+                MethodVariableAccess.REFERENCE.loadFrom(1),
+                // OutputStream.
+                MethodVariableAccess.REFERENCE.loadFrom(2),
+                // Call EncodeBatchInstruction.encodeBatchDelegate
+                MethodInvocation.invoke(
+                    LOADED_TYPE
+                        .getDeclaredMethods()
+                        .filter(
+                            ElementMatchers.isStatic()
+                                .and(ElementMatchers.named("encodeBatchDelegate")))
+                        .getOnly()),
+                MethodReturn.VOID);
+        StackManipulation.Size size = manipulation.apply(methodVisitor, implementationContext);
+        return new ByteCodeAppender.Size(size.getMaximalSize(), instrumentedMethod.getStackSize());
+      };
+    }
+
+    @Override
+    public InstrumentedType prepare(InstrumentedType instrumentedType) {
+      return instrumentedType;
+    }
+
+    // The encodeBatch method of the generated Coder delegates to this method to encode each column
+    // of the batch with its ColumnCodec.
+    static void encodeBatchDelegate(
+        ColumnCodec[] columns, int[] encodingPosToIndex, List<Row> rows, OutputStream outputStream)
+        throws IOException {
+      Row[] batch = rows.toArray(new Row[0]);
+      for (Row row : batch) {
+        checkState(row.getFieldCount() == encodingPosToIndex.length);
+      }
+      VAR_INT_CODER.encode(batch.length, outputStream);
+      VAR_INT_CODER.encode(columns.length, outputStream);
+
+      // The non-null values and the encoding of the current column, reused for every column.
+      Object[] values = new Object[batch.length];
+      BitSet nullRows = new BitSet(batch.length);
+      ByteArrayOutputStream columnBytes = new ByteArrayOutputStream();
+      for (int encodingPos = 0; encodingPos < columns.length; ++encodingPos) {
+        int rowIndex = encodingPosToIndex[encodingPos];
+        int count = 0;
+        nullRows.clear();
+        for (int i = 0; i < batch.length; ++i) {
+          @Nullable Object fieldValue = batch[i].getValue(rowIndex);
+          if (fieldValue == null) {
+            nullRows.set(i);
+          } else {
+            values[count++] = fieldValue;
+          }
+        }
+        // Each column is prefixed with its length so that decoders of a schema without the field
+        // can skip it.
+        columnBytes.reset();
+        NULL_LIST_CODER.encode(nullRows, columnBytes);
+        columns[encodingPos].encode(values, count, columnBytes);
+        VarInt.encode(columnBytes.size(), outputStream);
+        columnBytes.writeTo(outputStream);
+      }
+    }
+  }
+
+  private static class DecodeBatchInstruction implements Implementation {
+    static final ForLoadedType LOADED_TYPE = new ForLoadedType(DecodeBatchInstruction.class);
+
+    @Override
+    public ByteCodeAppender appender(Target implementationTarget) {
+      return (methodVisitor, implementationContext, instrumentedMethod) -> {
+        StackManipulation manipulation =
+            new StackManipulation.Compound(
+                // Schema of the decoded rows.
+                MethodInvocation.invoke(
+                    implementationContext
+                        .getInstrumentedType()
+                        .getDeclaredMethods()
+                        .filter(ElementMatchers.named("getSchema"))
+                        .getOnly()),
+                // Array of column codecs.
+                MethodVariableAccess.loadThis(),
+                FieldAccess.forField(
+                        implementationContext
+                            .getInstrumentedType()
+                            .getDeclaredFields()
+                            .filter(ElementMatchers.named(COLUMNS_FIELD_NAME))
+                            .getOnly())
+                    .read(),
+                MethodVariableAccess.loadThis(),
+                FieldAccess.forField(
+                        implementationContext
+                            .getInstrumentedType()
+                            .getDeclaredFields()
+                            .filter(ElementMatchers.named(POSITIONS_FIELD_NAME))
+                            .getOnly())
+                    .read(),
+                // InputStream. (offset 1, as offset 0 is always "this").
+                MethodVariableAccess.REFERENCE.loadFrom(1),
+                // List the decoded rows are appended to.
+                MethodVariableAccess.REFERENCE.loadFrom(2),
+                // Call DecodeBatchInstruction.decodeBatchDelegate
+                MethodInvocation.invoke(
+                    LOADED_TYPE
+                        .getDeclaredMethods()
+                        .filter(
+                            ElementMatchers.isStatic()
+                                .and(ElementMatchers.named("decodeBatchDelegate")))
+                        .getOnly()),
+                MethodReturn.VOID);
+        StackManipulation.Size size = manipulation.apply(methodVisitor, implementationContext);
+        return new ByteCodeAppender.Size(size.getMaximalSize(), instrumentedMethod.getStackSize());
+      };
+    }
+
+    @Override
+    public InstrumentedType prepare(InstrumentedType instrumentedType) {
+      return instrumentedType;
+    }
+
+    // The decodeBatch method of the generated Coder delegates to this method to decode each column
+    // of the batch with its ColumnCodec.
+    static void decodeBatchDelegate(
+        Schema schema,
+        ColumnCodec[] columns,
+        int[] encodingPosToIndex,
+        InputStream inputStream,
+        List<? super Row> rows)
+        throws IOException {
+      int rowCount = VAR_INT_CODER.decode(inputStream);
+      int fieldCount = VAR_INT_CODER.decode(inputStream);
+
+      // Fields missing from the batch because the schema was evolved to contain more fields are
+      // left null.
+      Object[][] fieldValues = new Object[rowCount][columns.length];
+      Object[] values = new Object[rowCount];
+      for (int encodingPos = 0; encodingPos < fieldCount; ++encodingPos) {
+        long columnLength = VarInt.decodeLong(inputStream);
+        // In the case of a schema change going backwards, fieldCount might be > columns.length,
+        // in which case we skip the extra fields.
+        if (encodingPos >= columns.length) {
+          ByteStreams.skipFully(inputStream, columnLength);
+          continue;
+        }
+        int rowIndex = encodingPosToIndex[encodingPos];
+        BitSet nullRows = NULL_LIST_CODER.decode(inputStream);
+        columns[encodingPos].decode(inputStream, values, rowCount - nullRows.cardinality());
+        int next = 0;
+        for (int i = 0; i < rowCount; ++i) {
+          if (!nullRows.get(i)) {
+            fieldValues[i][rowIndex] = values[next];
+            values[next++] = null;
+          }
+        }
+      }
+      // As in decodeDelegate, the rows take ownership of the decoded values rather than validating
+      // and copying them.
+      for (Object[] rowValues : fieldValues) {
+        rows.add(Row.withSchema(schema).attachValues(rowValues));
+      }
+    }
+  }
+
+  /**
+   * Encodes and decodes the non-null values of a field of a batch of rows consecutively. Fields of
+   * primitive types use a loop specialized to the type which writes and reads the primitive
+   * encoding directly, other fields use the {@link Coder} of the field. Values are boxed at the
+   * {@link Row} boundary in either case.
+   */
+  private abstract static class ColumnCodec {
+    static ColumnCodec forField(FieldType fieldType, Coder coder) {
+      switch (fieldType.getTypeName()) {
+        case BYTE:
+          return new ByteColumn();
+        case INT16:
+          return new Int16Column();
+        case INT32:
+          return new Int32Column();
+        case INT64:
+          return new Int64Column();
+        case FLOAT:
+          return new FloatColumn();
+        case DOUBLE:
+          return new DoubleColumn();
+        case BOOLEAN:
+          return new BooleanColumn();
+        default:
+          return new CoderColumn(coder);
+      }
+    }
+
+    /** Encodes the first {@code count} of the provided values. */
+    abstract void encode(Object[] values, int count, OutputStream outputStream) throws IOException;
+
+    /** Decodes {@code count} values into the start of the provided array. */
+    abstract void decode(InputStream inputStream, Object[] values, int count) throws IOException;
+  }
+
+  private static class CoderColumn extends ColumnCodec {
+    private final Coder coder;
+
+    CoderColumn(Coder coder) {
+      this.coder = coder;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    void encode(Object[] values, int count, OutputStream outputStream) throws IOException {
+      for (int i = 0; i < count; ++i) {
+        coder.encode(values[i], outputStream);
+      }
+    }
+
+    @Override
+    void decode(InputStream inputStream, Object[] values, int count) throws IOException {
+      for (int i = 0; i < count; ++i) {
+        values[i] = coder.decode(inputStream);
+      }
+    }
+  }
+
+  // The encodings of the primitive columns match those of the coders returned by
+  // SchemaCoder.coderForFieldType.
+
+  private static class ByteColumn extends ColumnCodec {
+    @Override
+    void encode(Object[] values, int count, OutputStream outputStream) throws IOException {
+      for (int i = 0; i < count; ++i) {
+        outputStream.write((Byte) values[i]);
+      }
+    }
+
+    @Override
+    void decode(InputStream inputStream, Object[] values, int count) throws IOException {
+      DataInputStream dataInput = new DataInputStream(inputStream);
+      for (int i = 0; i < count; ++i) {
+        values[i] = dataInput.readByte();
+      }
+    }
+  }
+
+  private static class Int16Column extends ColumnCodec {
+    @Override
+    void encode(Object[] values, int count, OutputStream outputStream) throws IOException {
+      DataOutputStream dataOutput = new DataOutputStream(outputStream);
+      for (int i = 0; i < count; ++i) {
+        dataOutput.writeShort((Short) values[i]);
+      }
+    }
+
+    @Override
+    void decode(InputStream inputStream, Object[] values, int count) throws IOException {
+      DataInputStream dataInput = new DataInputStream(inputStream);
+      for (int i = 0; i < count; ++i) {
+        values[i] = dataInput.readShort();
+      }
+    }
+  }
+
+  private static class Int32Column extends ColumnCodec {
+    @Override
+    void encode(Object[] values, int count, OutputStream outputStream) throws IOException {
+      for (int i = 0; i < count; ++i) {
+        VarInt.encode((int) (Integer) values[i], outputStream);
+      }
+    }
+
+    @Override
+    void decode(InputStream inputStream, Object[] values, int count) throws IOException {
+      for (int i = 0; i < count; ++i) {
+        values[i] = VarInt.decodeInt(inputStream);
+      }
+    }
+  }
+
+  private static class Int64Column extends ColumnCodec {
+    @Override
+    void encode(Object[] values, int count, OutputStream outputStream) throws IOException {
+      for (int i = 0; i < count; ++i) {
+        VarInt.encode((long) (Long) values[i], outputStream);
+      }
+    }
+
+    @Override
+    void decode(InputStream inputStream, Object[] values, int count) throws IOException {
+      for (int i = 0; i < count; ++i) {
+        values[i] = VarInt.decodeLong(inputStream);
+      }
+    }
+  }
+
+  private static class FloatColumn extends ColumnCodec {
+    @Override
+    void encode(Object[] values, int count, OutputStream outputStream) throws IOException {
+      DataOutputStream dataOutput = new DataOutputStream(outputStream);
+      for (int i = 0; i < count; ++i) {
+        dataOutput.writeFloat((Float) values[i]);
+      }
+    }
+
+    @Override
+    void decode(InputStream inputStream, Object[] values, int count) throws IOException {
+      DataInputStream dataInput = new DataInputStream(inputStream);
+      for (int i = 0; i < count; ++i) {
+        values[i] = dataInput.readFloat();
+      }
+    }
+  }
+
+  private static class DoubleColumn extends ColumnCodec {
+    @Override
+    void encode(Object[] values, int count, OutputStream outputStream) throws IOException {
+      DataOutputStream dataOutput = new DataOutputStream(outputStream);
+      for (int i = 0; i < count; ++i) {
+        dataOutput.writeDouble((Double) values[i]);
+      }
+    }
+
+    @Override
+    void decode(InputStream inputStream, Object[] values, int count) throws IOException {
+      DataInputStream dataInput = new DataInputStream(inputStream);
+      for (int i = 0; i < count; ++i) {
+        values[i] = dataInput.readDouble();
+      }
+    }
+  }
+
+  private static class BooleanColumn extends ColumnCodec {
+    @Override
+    void encode(Object[] values, int count, OutputStream outputStream) throws IOException {
+      for (int i = 0; i < count; ++i) {
+        outputStream.write((Boolean) values[i] ? 1 : 0);
+      }
+    }
+
+    @Override
+    void decode(InputStream inputStream, Object[] values, int count) throws IOException {
+      DataInputStream dataInput = new DataInputStream(inputStream);
+      for (int i = 0; i < count; ++i) {
+        values[i] = dataInput.readByte() == 1;
+      }
+    }
+  }
 }
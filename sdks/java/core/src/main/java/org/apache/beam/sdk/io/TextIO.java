@@ -77,6 +77,13 @@ import org.joda.time.Duration;
  * one line of an input UTF-8 text file (split into lines delimited by '\n', '\r', or '\r\n', or
  * specified delimiter see {@link TextIO.Read#withDelimiter}).
  *
+ * <p>{@link #readBytes} works like {@link #read}, but returns the undecoded bytes of each line as a
+ * {@code byte[]}, skipping the cost of decoding lines which are later parsed as bytes anyway.
+ *
+ * <p>Uncompressed files which are opened as a {@link java.nio.channels.FileChannel}, such as local
+ * files, are read through memory mapped windows of the file rather than copied through an
+ * intermediate buffer if the {@code use_memory_mapped_text_reads} experiment is enabled.
+ *
  * <h3>Filepattern expansion and watching</h3>
  *
  * <p>By default, the filepatterns are expanded only once. {@link Read#watchForNewFiles} or the
@@ -197,6 +204,18 @@ public class TextIO {
         .build();
   }
 
+  /**
+   * A {@link PTransform} that works like {@link #read}, but returns the bytes of each line, without
+   * the delimiter and a leading UTF-8 byte order mark, rather than decoding them to a {@link
+   * String}. The files may be in any encoding whose line delimiters match the delimiter.
+   */
+  public static ReadBytes readBytes() {
+    return new AutoValue_TextIO_ReadBytes.Builder()
+        .setCompression(Compression.AUTO)
+        .setMatchConfiguration(MatchConfiguration.create(EmptyMatchTreatment.DISALLOW))
+        .build();
+  }
+
   /**
    * A {@link PTransform} that works like {@link #read}, but reads each file in a {@link
    * PCollection} of filepatterns.
@@ -441,6 +460,96 @@ public class TextIO {
 
   /////////////////////////////////////////////////////////////////////////////
 
+  /** Implementation of {@link #readBytes}. */
+  @AutoValue
+  public abstract static class ReadBytes extends PTransform<PBegin, PCollection<byte[]>> {
+
+    abstract @Nullable ValueProvider<String> getFilepattern();
+
+    abstract MatchConfiguration getMatchConfiguration();
+
+    abstract Compression getCompression();
+
+    @SuppressWarnings("mutable") // this returns an array that can be mutated by the caller
+    abstract byte @Nullable [] getDelimiter();
+
+    abstract Builder toBuilder();
+
+    @AutoValue.Builder
+    abstract static class Builder {
+      abstract Builder setFilepattern(ValueProvider<String> filepattern);
+
+      abstract Builder setMatchConfiguration(MatchConfiguration matchConfiguration);
+
+      abstract Builder setCompression(Compression compression);
+
+      abstract Builder setDelimiter(byte @Nullable [] delimiter);
+
+      abstract ReadBytes build();
+    }
+
+    /** See {@link Read#from(String)}. */
+    public ReadBytes from(String filepattern) {
+      checkArgument(filepattern != null, "filepattern can not be null");
+      return from(StaticValueProvider.of(filepattern));
+    }
+
+    /** Same as {@code from(filepattern)}, but accepting a {@link ValueProvider}. */
+    public ReadBytes from(ValueProvider<String> filepattern) {
+      checkArgument(filepattern != null, "filepattern can not be null");
+      return toBuilder().setFilepattern(filepattern).build();
+    }
+
+    /** See {@link Read#withCompression}. */
+    public ReadBytes withCompression(Compression compression) {
+      return toBuilder().setCompression(compression).build();
+    }
+
+    /** See {@link MatchConfiguration#withEmptyMatchTreatment}. */
+    public ReadBytes withEmptyMatchTreatment(EmptyMatchTreatment treatment) {
+      return toBuilder()
+          .setMatchConfiguration(getMatchConfiguration().withEmptyMatchTreatment(treatment))
+          .build();
+    }
+
+    /** See {@link Read#withDelimiter}. */
+    public ReadBytes withDelimiter(byte[] delimiter) {
+      checkArgument(delimiter != null, "delimiter can not be null");
+      checkArgument(!Read.isSelfOverlapping(delimiter), "delimiter must not self-overlap");
+      return toBuilder().setDelimiter(delimiter).build();
+    }
+
+    @Override
+    public PCollection<byte[]> expand(PBegin input) {
+      checkNotNull(getFilepattern(), "need to set the filepattern of a TextIO.ReadBytes transform");
+      return input.apply(
+          "Read",
+          org.apache.beam.sdk.io.Read.from(
+              CompressedSource.from(
+                      new TextSource.ByteArrayTextSource(
+                          getFilepattern(),
+                          getMatchConfiguration().getEmptyMatchTreatment(),
+                          getDelimiter()))
+                  .withCompression(getCompression())));
+    }
+
+    @Override
+    public void populateDisplayData(DisplayData.Builder builder) {
+      super.populateDisplayData(builder);
+      builder
+          .add(
+              DisplayData.item("compressionType", getCompression().toString())
+                  .withLabel("Compression Type"))
+          .addIfNotNull(DisplayData.item("filePattern", getFilepattern()).withLabel("File Pattern"))
+          .include("matchConfiguration", getMatchConfiguration())
+          .addIfNotNull(
+              DisplayData.item("delimiter", Arrays.toString(getDelimiter()))
+                  .withLabel("Custom delimiter to split records"));
+    }
+  }
+
+  /////////////////////////////////////////////////////////////////////////////
+
   /**
    * Implementation of {@link #readAll}.
    *
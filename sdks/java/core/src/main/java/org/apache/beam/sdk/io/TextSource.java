@@ -21,16 +21,22 @@ import static org.apache.beam.vendor.guava.v26_0_jre.com.google.common.base.Prec
 
 import java.io.IOException;
 import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
 import java.nio.channels.ReadableByteChannel;
 import java.nio.channels.SeekableByteChannel;
 import java.util.NoSuchElementException;
+import java.util.function.Function;
+import org.apache.beam.sdk.coders.ByteArrayCoder;
 import org.apache.beam.sdk.coders.Coder;
 import org.apache.beam.sdk.coders.StringUtf8Coder;
 import org.apache.beam.sdk.io.fs.EmptyMatchTreatment;
 import org.apache.beam.sdk.io.fs.MatchResult;
+import org.apache.beam.sdk.options.ExperimentalOptions;
 import org.apache.beam.sdk.options.PipelineOptions;
 import org.apache.beam.sdk.options.ValueProvider;
 import org.apache.beam.vendor.grpc.v1p36p0.com.google.protobuf.ByteString;
+import org.apache.beam.vendor.grpc.v1p36p0.com.google.protobuf.UnsafeByteOperations;
 import org.apache.beam.vendor.guava.v26_0_jre.com.google.common.annotations.VisibleForTesting;
 import org.checkerframework.checker.nullness.qual.Nullable;
 
@@ -46,12 +52,19 @@ import org.checkerframework.checker.nullness.qual.Nullable;
  * <p>This source supports reading from any arbitrary byte position within the stream. If the
  * starting position is not {@code 0}, then bytes are skipped until the first delimiter is found
  * representing the beginning of the first record to be decoded.
+ *
+ * <p>If the {@value #MEMORY_MAPPED_READS_EXPERIMENT} experiment is enabled and the file is opened
+ * as a {@link FileChannel}, as it is by the {@link LocalFileSystem}, the split is read through
+ * memory mapped windows of the file instead of being copied through an intermediate buffer.
  */
 @VisibleForTesting
 @SuppressWarnings({
   "nullness" // TODO(https://issues.apache.org/jira/browse/BEAM-10402)
 })
 class TextSource extends FileBasedSource<String> {
+  /** The experiment enabling memory mapped reads of files opened as a {@link FileChannel}. */
+  static final String MEMORY_MAPPED_READS_EXPERIMENT = "use_memory_mapped_text_reads";
+
   byte[] delimiter;
 
   TextSource(
@@ -73,7 +86,12 @@ class TextSource extends FileBasedSource<String> {
 
   @Override
   protected FileBasedReader<String> createSingleFileReader(PipelineOptions options) {
-    return new TextBasedReader(this, delimiter);
+    return new TextBasedReader<>(
+        this, delimiter, ByteString::toStringUtf8, useMemoryMapping(options));
+  }
+
+  static boolean useMemoryMapping(PipelineOptions options) {
+    return ExperimentalOptions.hasExperiment(options, MEMORY_MAPPED_READS_EXPERIMENT);
   }
 
   @Override
@@ -81,18 +99,68 @@ class TextSource extends FileBasedSource<String> {
     return StringUtf8Coder.of();
   }
 
+  /**
+   * A {@link FileBasedSource} which splits files into records exactly as {@link TextSource} does,
+   * but emits the bytes of each record instead of decoding them to a {@link String}.
+   *
+   * <p>This avoids validating and decoding UTF-8 for consumers which only need the raw bytes of
+   * each line, such as parsers operating on bytes. Used by {@link TextIO#readBytes}.
+   */
+  static class ByteArrayTextSource extends FileBasedSource<byte[]> {
+    byte[] delimiter;
+
+    ByteArrayTextSource(
+        ValueProvider<String> fileSpec, EmptyMatchTreatment emptyMatchTreatment, byte[] delimiter) {
+      super(fileSpec, emptyMatchTreatment, 1L);
+      this.delimiter = delimiter;
+    }
+
+    private ByteArrayTextSource(
+        MatchResult.Metadata metadata, long start, long end, byte[] delimiter) {
+      super(metadata, 1L, start, end);
+      this.delimiter = delimiter;
+    }
+
+    @Override
+    protected FileBasedSource<byte[]> createForSubrangeOfFile(
+        MatchResult.Metadata metadata, long start, long end) {
+      return new ByteArrayTextSource(metadata, start, end, delimiter);
+    }
+
+    @Override
+    protected FileBasedReader<byte[]> createSingleFileReader(PipelineOptions options) {
+      return new TextBasedReader<>(
+          this, delimiter, ByteString::toByteArray, useMemoryMapping(options));
+    }
+
+    @Override
+    public Coder<byte[]> getOutputCoder() {
+      return ByteArrayCoder.of();
+    }
+  }
+
   /**
    * A {@link FileBasedReader FileBasedReader} which can decode records delimited by delimiter
    * characters.
    *
+   * <p>The bytes of each record, excluding the delimiter and a leading UTF-8 byte order mark at the
+   * start of the file, are converted to elements using the given {@code decoder}. When reading
+   * through memory mapped windows of the file, the bytes given to the decoder are a view of the
+   * mapped file which must not be retained.
+   *
    * <p>See {@link TextSource} for further details.
    */
   @VisibleForTesting
-  static class TextBasedReader extends FileBasedReader<String> {
+  static class TextBasedReader<T> extends FileBasedReader<T> {
     private static final int READ_BUFFER_SIZE = 8192;
+    /** The number of bytes of the file mapped at once unless a record spans more bytes. */
+    private static final int MAPPED_WINDOW_SIZE = 64 * 1024 * 1024;
+
     private static final ByteString UTF8_BOM =
         ByteString.copyFrom(new byte[] {(byte) 0xEF, (byte) 0xBB, (byte) 0xBF});
     private final ByteBuffer readBuffer = ByteBuffer.allocate(READ_BUFFER_SIZE);
+    private final Function<ByteString, T> decoder;
+    private final boolean useMemoryMapping;
     private ByteString buffer;
     private int startOfDelimiterInBuffer;
     private int endOfDelimiterInBuffer;
@@ -100,14 +168,29 @@ class TextSource extends FileBasedSource<String> {
     private volatile long startOfNextRecord;
     private volatile boolean eof;
     private volatile boolean elementIsPresent;
-    private @Nullable String currentValue;
+    private @Nullable T currentValue;
     private @Nullable ReadableByteChannel inChannel;
     private byte @Nullable [] delimiter;
 
-    private TextBasedReader(TextSource source, byte[] delimiter) {
+    // The state used when reading through memory mapped windows of the file, in which case the
+    // bounds of the next delimiter are absolute offsets within the file.
+    private @Nullable FileChannel mappedChannel;
+    private @Nullable ByteBuffer mappedWindow;
+    private long mappedWindowStart;
+    private long fileSize;
+    private long startOfDelimiter;
+    private long endOfDelimiter;
+
+    TextBasedReader(
+        FileBasedSource<T> source,
+        byte @Nullable [] delimiter,
+        Function<ByteString, T> decoder,
+        boolean useMemoryMapping) {
       super(source);
       buffer = ByteString.EMPTY;
       this.delimiter = delimiter;
+      this.decoder = decoder;
+      this.useMemoryMapping = useMemoryMapping;
     }
 
     @Override
@@ -127,16 +210,26 @@ class TextSource extends FileBasedSource<String> {
     }
 
     @Override
-    public String getCurrent() throws NoSuchElementException {
+    public T getCurrent() throws NoSuchElementException {
       if (!elementIsPresent) {
         throw new NoSuchElementException();
       }
       return currentValue;
     }
 
+    /** Returns whether this reader reads through memory mapped windows of the file. */
+    @VisibleForTesting
+    boolean isMemoryMapped() {
+      return mappedChannel != null;
+    }
+
     @Override
     protected void startReading(ReadableByteChannel channel) throws IOException {
       this.inChannel = channel;
+      if (useMemoryMapping && channel instanceof FileChannel) {
+        mappedChannel = (FileChannel) channel;
+        fileSize = mappedChannel.size();
+      }
       // If the first offset is greater than zero, we need to skip bytes until we see our
       // first delimiter.
       long startOffset = getCurrentSource().getStartOffset();
@@ -152,6 +245,11 @@ class TextSource extends FileBasedSource<String> {
           // all the bytes of the delimiter in the call to findDelimiterBounds() below
           requiredPosition = startOffset - delimiter.length;
         }
+        if (mappedChannel != null) {
+          findMappedDelimiterBounds(requiredPosition);
+          startOfNextRecord = endOfDelimiter;
+          return;
+        }
         ((SeekableByteChannel) channel).position(requiredPosition);
         findDelimiterBounds();
         buffer = buffer.substring(endOfDelimiterInBuffer);
@@ -234,6 +332,9 @@ class TextSource extends FileBasedSource<String> {
     @Override
     protected boolean readNextRecord() throws IOException {
       startOfRecord = startOfNextRecord;
+      if (mappedChannel != null) {
+        return readNextMappedRecord();
+      }
       findDelimiterBounds();
 
       // If we have reached EOF file and consumed all of the buffer then we know
@@ -255,14 +356,17 @@ class TextSource extends FileBasedSource<String> {
      * endOfDelimiterInBuffer}.
      */
     private void decodeCurrentElement() throws IOException {
-      ByteString dataToDecode = buffer.substring(0, startOfDelimiterInBuffer);
+      decode(buffer.substring(0, startOfDelimiterInBuffer));
+      buffer = buffer.substring(endOfDelimiterInBuffer);
+    }
+
+    private void decode(ByteString dataToDecode) {
       // If present, the UTF8 Byte Order Mark (BOM) will be removed.
       if (startOfRecord == 0 && dataToDecode.startsWith(UTF8_BOM)) {
         dataToDecode = dataToDecode.substring(UTF8_BOM.size());
       }
-      currentValue = dataToDecode.toStringUtf8();
+      currentValue = decoder.apply(dataToDecode);
       elementIsPresent = true;
-      buffer = buffer.substring(endOfDelimiterInBuffer);
     }
 
     /** Returns false if we were unable to ensure the minimum capacity by consuming the channel. */
@@ -278,5 +382,193 @@ class TextSource extends FileBasedSource<String> {
       // Return true if we were able to honor the minimum buffer capacity request
       return buffer.size() >= minCapacity;
     }
+
+    /**
+     * Reads the record starting at {@code startOfRecord} from the mapped window, which is wrapped
+     * rather than copied before being handed to the decoder.
+     */
+    private boolean readNextMappedRecord() throws IOException {
+      if (startOfRecord >= fileSize) {
+        elementIsPresent = false;
+        return false;
+      }
+      findMappedDelimiterBounds(startOfRecord);
+      ByteBuffer record = mappedWindow.duplicate();
+      record.limit((int) (startOfDelimiter - mappedWindowStart));
+      record.position((int) (startOfRecord - mappedWindowStart));
+      decode(UnsafeByteOperations.unsafeWrap(record));
+      startOfNextRecord = endOfDelimiter;
+      return true;
+    }
+
+    /**
+     * Locates the start position and end position of the first delimiter at or after {@code from}
+     * within the file, mapping as much of the file as needed to hold all bytes from {@code from} up
+     * to the end of the delimiter. Both positions are set to the size of the file if there is no
+     * further delimiter.
+     */
+    private void findMappedDelimiterBounds(long from) throws IOException {
+      long position = from;
+      while (position < fileSize) {
+        ensureMapped(from, position);
+        long scanLimit = mappedScanLimit();
+        int candidate =
+            indexOfDelimiterCandidate(
+                mappedWindow,
+                (int) (position - mappedWindowStart),
+                (int) (scanLimit - mappedWindowStart));
+        if (candidate < 0) {
+          position = scanLimit;
+          continue;
+        }
+        int delimiterLength = delimiterLengthAt(mappedWindow, candidate);
+        if (delimiterLength > 0) {
+          startOfDelimiter = mappedWindowStart + candidate;
+          endOfDelimiter = startOfDelimiter + delimiterLength;
+          return;
+        }
+        position = mappedWindowStart + candidate + 1;
+      }
+      startOfDelimiter = endOfDelimiter = fileSize;
+    }
+
+    /**
+     * Ensures that the mapped window starts at or before {@code from} and that the delimiter
+     * candidates at {@code position} can be scanned within it, remapping the file starting at
+     * {@code from} otherwise.
+     */
+    private void ensureMapped(long from, long position) throws IOException {
+      if (mappedWindow != null && from >= mappedWindowStart && position < mappedScanLimit()) {
+        return;
+      }
+      long size =
+          Math.min(fileSize - from, Math.max(MAPPED_WINDOW_SIZE, 2 * (position - from + 1)));
+      checkState(
+          size <= Integer.MAX_VALUE,
+          "Unable to read a record of more than %s bytes starting at offset %s of %s.",
+          Integer.MAX_VALUE,
+          from,
+          getCurrentSource().getSingleFileMetadata().resourceId());
+      mappedWindow = mappedChannel.map(FileChannel.MapMode.READ_ONLY, from, size);
+      mappedWindow.order(ByteOrder.LITTLE_ENDIAN);
+      mappedWindowStart = from;
+    }
+
+    /**
+     * Returns the offset up to which delimiters can be located within the mapped window, leaving
+     * room to read the remaining bytes of a delimiter unless the window extends to the end of file.
+     */
+    private long mappedScanLimit() {
+      long end = mappedWindowStart + mappedWindow.limit();
+      if (end == fileSize) {
+        return end;
+      }
+      return end - (delimiter == null ? 1 : delimiter.length - 1);
+    }
+
+    /**
+     * Returns the index of the first byte within {@code [from, limit)} of the buffer which may
+     * start a delimiter, or -1 if there is none.
+     */
+    private int indexOfDelimiterCandidate(ByteBuffer buffer, int from, int limit) {
+      if (delimiter == null) {
+        return WordScanner.indexOfEither(buffer, (byte) '\n', (byte) '\r', from, limit);
+      }
+      return WordScanner.indexOf(buffer, delimiter[0], from, limit);
+    }
+
+    /**
+     * Returns the length of the delimiter starting at the given index of the buffer, or 0 if the
+     * bytes at the index are not a delimiter.
+     */
+    private int delimiterLengthAt(ByteBuffer buffer, int index) {
+      if (delimiter == null) {
+        if (buffer.get(index) == '\r'
+            && index + 1 < buffer.limit()
+            && buffer.get(index + 1) == '\n') {
+          return 2;
+        }
+        return 1;
+      }
+      if (index + delimiter.length > buffer.limit()) {
+        // corner case: delimiter truncated at the end of the file
+        return 0;
+      }
+      for (int i = 1; i < delimiter.length; i++) {
+        if (buffer.get(index + i) != delimiter[i]) {
+          return 0;
+        }
+      }
+      return delimiter.length;
+    }
+  }
+
+  /**
+   * Locates bytes within a little endian {@link ByteBuffer} eight bytes at a time.
+   *
+   * <p>Each word read from the buffer is XORed with the byte being searched for repeated across the
+   * word, turning matching bytes into zero bytes which are then found without branching on each
+   * byte. The lowest set bit of {@link #zeroBytes} always marks the first zero byte of the word.
+   */
+  @VisibleForTesting
+  static class WordScanner {
+    private static final long ONES = 0x0101010101010101L;
+    private static final long HIGH_BITS = 0x8080808080808080L;
+
+    private WordScanner() {}
+
+    /** Returns the index of the first occurrence of {@code b} within {@code [from, limit)}. */
+    static int indexOf(ByteBuffer buffer, byte b, int from, int limit) {
+      long pattern = repeat(b);
+      int i = from;
+      for (; i <= limit - Long.BYTES; i += Long.BYTES) {
+        long zeroBytes = zeroBytes(buffer.getLong(i) ^ pattern);
+        if (zeroBytes != 0) {
+          return i + (Long.numberOfTrailingZeros(zeroBytes) >>> 3);
+        }
+      }
+      for (; i < limit; i++) {
+        if (buffer.get(i) == b) {
+          return i;
+        }
+      }
+      return -1;
+    }
+
+    /**
+     * Returns the index of the first occurrence of either {@code b1} or {@code b2} within {@code
+     * [from, limit)}.
+     */
+    static int indexOfEither(ByteBuffer buffer, byte b1, byte b2, int from, int limit) {
+      long pattern1 = repeat(b1);
+      long pattern2 = repeat(b2);
+      int i = from;
+      for (; i <= limit - Long.BYTES; i += Long.BYTES) {
+        long word = buffer.getLong(i);
+        long zeroBytes = zeroBytes(word ^ pattern1) | zeroBytes(word ^ pattern2);
+        if (zeroBytes != 0) {
+          return i + (Long.numberOfTrailingZeros(zeroBytes) >>> 3);
+        }
+      }
+      for (; i < limit; i++) {
+        byte current = buffer.get(i);
+        if (current == b1 || current == b2) {
+          return i;
+        }
+      }
+      return -1;
+    }
+
+    private static long repeat(byte b) {
+      return (b & 0xFFL) * ONES;
+    }
+
+    /**
+     * Returns a word whose lowest set bit is the high bit of the first zero byte of the given word,
+     * or 0 if there is no zero byte.
+     */
+    private static long zeroBytes(long word) {
+      return (word - ONES) & ~word & HIGH_BITS;
+    }
   }
 }
@@ -93,6 +93,24 @@ public interface PortablePipelineOptions extends PipelineOptions, FileStagingOpt
 
   void setLoadBalanceBundles(boolean loadBalanceBundles);
 
+  @Description(
+      "Specifies how bundles are assigned to SDK workers when sdk_worker_parallelism is greater than 1 and bundles are not load balanced. PINNED sends all bundles of a runner task to the same SDK worker. LEAST_LOADED sends each bundle to the SDK worker with the fewest bundles in progress, which helps pipelines with skewed bundle execution times without limiting each SDK worker to a single bundle. LEAST_LOADED requires the state_cache_size experiment to be 0.")
+  @Default.Enum("PINNED")
+  BundleRouting getBundleRouting();
+
+  void setBundleRouting(BundleRouting bundleRouting);
+
+  /** How bundles are assigned to SDK workers. */
+  enum BundleRouting {
+    /** All bundles of a runner task are processed by the same SDK worker. */
+    PINNED,
+    /**
+     * Each bundle is processed by the SDK worker with the fewest bundles in progress. Requires the
+     * {@code state_cache_size} experiment to be 0.
+     */
+    LEAST_LOADED
+  }
+
   @Description("The output path for the executable file to be created.")
   @Nullable
   String getOutputExecutablePath();
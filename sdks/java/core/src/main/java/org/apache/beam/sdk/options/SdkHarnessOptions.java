@@ -96,6 +96,58 @@ public interface SdkHarnessOptions extends PipelineOptions {
 
   void setGroupingTableMaxSizeMb(int value);
 
+  /**
+   * Whether the grouping tables used to pre-combine elements store encoded keys and accumulators
+   * off-heap instead of as Java objects. Once full, an off-heap grouping table only flushes its
+   * least recently used keys. Keys whose coder is not deterministic always use the on-heap grouping
+   * table.
+   */
+  @Description(
+      "If true, the grouping tables used to pre-combine elements before shuffling store encoded "
+          + "keys and accumulators off-heap, and only flush their least recently used keys once "
+          + "full. Keys whose coder is not deterministic always use the on-heap grouping table.")
+  @Default.Boolean(false)
+  boolean getUseOffHeapGroupingTable();
+
+  void setUseOffHeapGroupingTable(boolean value);
+
+  /**
+   * Size (in MB) of the process wide cache of state which the SDK harness keeps across bundles. If
+   * unset, defaults to 100 MB.
+   *
+   * <p>The cache is split between side inputs, bag user state and multimap side inputs according to
+   * {@link #getStateCacheSideInputFraction()}, {@link #getStateCacheBagUserStateFraction()} and
+   * {@link #getStateCacheMultimapFraction()}.
+   */
+  @Description(
+      "The size (in MB) of the cache of state which the SDK harness keeps across bundles. "
+          + "Larger values may reduce the number of state requests made to the runner.")
+  @Default.Integer(100)
+  int getStateCacheSizeMb();
+
+  void setStateCacheSizeMb(int value);
+
+  /** The fraction of the state cache reserved for iterable side inputs. */
+  @Description("The fraction of the state cache reserved for iterable side inputs.")
+  @Default.Double(0.4)
+  double getStateCacheSideInputFraction();
+
+  void setStateCacheSideInputFraction(double value);
+
+  /** The fraction of the state cache reserved for bag user state. */
+  @Description("The fraction of the state cache reserved for bag user state.")
+  @Default.Double(0.4)
+  double getStateCacheBagUserStateFraction();
+
+  void setStateCacheBagUserStateFraction(double value);
+
+  /** The fraction of the state cache reserved for multimap side inputs. */
+  @Description("The fraction of the state cache reserved for multimap side inputs.")
+  @Default.Double(0.2)
+  double getStateCacheMultimapFraction();
+
+  void setStateCacheMultimapFraction(double value);
+
   /**
    * Defines a log level override for a specific class, package, or name.
    *
@@ -22,6 +22,8 @@ import static org.apache.beam.vendor.guava.v26_0_jre.com.google.common.base.Prec
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 import java.util.UUID;
@@ -38,6 +40,7 @@ import org.apache.beam.sdk.util.SerializableUtils;
 import org.apache.beam.sdk.values.Row;
 import org.apache.beam.sdk.values.TypeDescriptor;
 import org.apache.beam.vendor.guava.v26_0_jre.com.google.common.collect.ImmutableList;
+import org.apache.beam.vendor.guava.v26_0_jre.com.google.common.collect.Lists;
 import org.checkerframework.checker.nullness.qual.Nullable;
 
 /** {@link SchemaCoder} is used as the coder for types that have schemas registered. */
@@ -129,6 +132,31 @@ public class SchemaCoder<T> extends CustomCoder<T> {
     return fromRowFunction.apply(getDelegateCoder().decode(inStream));
   }
 
+  /**
+   * Encodes a batch of values column by column, so that each field of the batch is written with a
+   * loop specialized to its type. The batch must be decoded with {@link #decodeBatch}, the
+   * encoding is not compatible with that of {@link #encode}.
+   */
+  public void encodeBatch(List<T> values, OutputStream outStream) throws IOException {
+    getBatchCoder().encodeBatch(Lists.transform(values, toRowFunction::apply), outStream);
+  }
+
+  /**
+   * Decodes a batch of values encoded by {@link #encodeBatch}, adding them to {@code values} in
+   * the order they were encoded.
+   */
+  public void decodeBatch(InputStream inStream, List<? super T> values) throws IOException {
+    List<Row> rows = new ArrayList<>();
+    getBatchCoder().decodeBatch(inStream, rows);
+    for (Row row : rows) {
+      values.add(fromRowFunction.apply(row));
+    }
+  }
+
+  private RowCoderGenerator.BatchCoder getBatchCoder() {
+    return (RowCoderGenerator.BatchCoder) getDelegateCoder();
+  }
+
   @Override
   public void verifyDeterministic()
       throws org.apache.beam.sdk.coders.Coder.NonDeterministicException {
@@ -20,7 +20,9 @@ package org.apache.beam.sdk.util;
 import com.google.auto.value.AutoValue;
 import java.io.Serializable;
 import java.math.RoundingMode;
+import java.util.List;
 import org.apache.beam.sdk.annotations.Experimental;
+import org.apache.beam.vendor.guava.v26_0_jre.com.google.common.collect.ImmutableList;
 import org.apache.beam.vendor.guava.v26_0_jre.com.google.common.math.DoubleMath;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -78,6 +80,20 @@ public class HistogramData implements Serializable {
     return new HistogramData(LinearBuckets.of(start, width, numBuckets));
   }
 
+  /**
+   * Create a histogram with exponential buckets, which suits values such as latencies that span
+   * several orders of magnitude.
+   *
+   * @param start Lower bound of a starting bucket. Must be greater than zero.
+   * @param base The ratio between the bounds of each bucket. Must be greater than one.
+   * @param numBuckets The number of buckets. Upper bound of an ending bucket is defined by start *
+   *     base ^ numBuckets.
+   * @return a new Histogram instance.
+   */
+  public static HistogramData exponential(double start, double base, int numBuckets) {
+    return new HistogramData(ExponentialBuckets.of(start, base, numBuckets));
+  }
+
   public void record(double... values) {
     for (double value : values) {
       record(value);
@@ -275,4 +291,128 @@ public class HistogramData implements Serializable {
 
     // Note: equals() and hashCode() are implemented by the AutoValue.
   }
+
+  @AutoValue
+  public abstract static class ExponentialBuckets implements BucketType {
+    public abstract double getStart();
+
+    public abstract double getBase();
+
+    @Override
+    public abstract int getNumBuckets();
+
+    public static ExponentialBuckets of(double start, double base, int numBuckets) {
+      if (start <= 0) {
+        throw new IllegalArgumentException(
+            String.format("start should be greater than zero: %f", start));
+      }
+      if (base <= 1) {
+        throw new IllegalArgumentException(
+            String.format("base should be greater than one: %f", base));
+      }
+      if (numBuckets <= 0) {
+        throw new IllegalArgumentException(
+            String.format("numBuckets should be greater than zero: %d", numBuckets));
+      }
+      return new AutoValue_HistogramData_ExponentialBuckets(start, base, numBuckets);
+    }
+
+    @Override
+    public int getBucketIndex(double value) {
+      int index =
+          DoubleMath.roundToInt(
+              Math.log(value / getStart()) / Math.log(getBase()), RoundingMode.FLOOR);
+      // Guard against rounding errors close to the bucket bounds.
+      return Math.max(0, Math.min(index, getNumBuckets() - 1));
+    }
+
+    @Override
+    public double getBucketSize(int index) {
+      return getStart() * Math.pow(getBase(), index) * (getBase() - 1);
+    }
+
+    @Override
+    public double getAccumulatedBucketSize(int endIndex) {
+      return getStart() * (Math.pow(getBase(), endIndex) - 1);
+    }
+
+    @Override
+    public double getRangeFrom() {
+      return getStart();
+    }
+
+    @Override
+    public double getRangeTo() {
+      return getStart() * Math.pow(getBase(), getNumBuckets());
+    }
+
+    // Note: equals() and hashCode() are implemented by the AutoValue.
+  }
+
+  /**
+   * Buckets with arbitrary, strictly increasing bounds. Used for histograms whose bounds were
+   * encoded elsewhere, for example in a MonitoringInfo.
+   */
+  @AutoValue
+  public abstract static class ExplicitBuckets implements BucketType {
+    public abstract ImmutableList<Double> getBounds();
+
+    public static ExplicitBuckets of(List<Double> bounds) {
+      if (bounds.size() < 2) {
+        throw new IllegalArgumentException(
+            String.format("bounds should contain at least two values: %s", bounds));
+      }
+      for (int i = 1; i < bounds.size(); i++) {
+        if (!(bounds.get(i) > bounds.get(i - 1))) {
+          throw new IllegalArgumentException(
+              String.format("bounds should be strictly increasing: %s", bounds));
+        }
+      }
+      return new AutoValue_HistogramData_ExplicitBuckets(ImmutableList.copyOf(bounds));
+    }
+
+    @Override
+    public int getNumBuckets() {
+      return getBounds().size() - 1;
+    }
+
+    @Override
+    public int getBucketIndex(double value) {
+      // Finds the last bucket whose lower bound is at most the value.
+      List<Double> bounds = getBounds();
+      int low = 0;
+      int high = getNumBuckets() - 1;
+      while (low < high) {
+        int mid = (low + high + 1) >>> 1;
+        if (bounds.get(mid) <= value) {
+          low = mid;
+        } else {
+          high = mid - 1;
+        }
+      }
+      return low;
+    }
+
+    @Override
+    public double getBucketSize(int index) {
+      return getBounds().get(index + 1) - getBounds().get(index);
+    }
+
+    @Override
+    public double getAccumulatedBucketSize(int endIndex) {
+      return getBounds().get(endIndex) - getBounds().get(0);
+    }
+
+    @Override
+    public double getRangeFrom() {
+      return getBounds().get(0);
+    }
+
+    @Override
+    public double getRangeTo() {
+      return getBounds().get(getNumBuckets());
+    }
+
+    // Note: equals() and hashCode() are implemented by the AutoValue.
+  }
 }
@@ -22,6 +22,7 @@ import static org.junit.Assert.assertEquals;
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.math.BigDecimal;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
@@ -502,4 +503,199 @@ public class RowCoderTest {
     Row decoded = RowCoder.of(schema2).decode(new ByteArrayInputStream(os.toByteArray()));
     assertEquals(expected, decoded);
   }
+
+  @Test
+  public void testBatchPrimitiveTypesWithNulls() throws Exception {
+    Schema schema =
+        Schema.builder()
+            .addNullableField("f_byte", FieldType.BYTE)
+            .addNullableField("f_int16", FieldType.INT16)
+            .addNullableField("f_int32", FieldType.INT32)
+            .addNullableField("f_int64", FieldType.INT64)
+            .addNullableField("f_float", FieldType.FLOAT)
+            .addNullableField("f_double", FieldType.DOUBLE)
+            .addNullableField("f_boolean", FieldType.BOOLEAN)
+            .addNullableField("f_string", FieldType.STRING)
+            .addNullableField("f_decimal", FieldType.DECIMAL)
+            .build();
+
+    List<Row> rows = new ArrayList<>();
+    for (int i = 0; i < 100; i++) {
+      Row.Builder builder = Row.withSchema(schema);
+      for (int field = 0; field < schema.getFieldCount(); field++) {
+        builder.addValue(
+            (i + field) % 3 == 0 ? null : valueOf(schema.getField(field).getType(), i - 50));
+      }
+      rows.add(builder.build());
+    }
+
+    assertEquals(rows, roundTripBatch(RowCoder.of(schema), rows));
+  }
+
+  @Test
+  public void testBatchNestedTypes() throws Exception {
+    Schema nestedSchema = Schema.builder().addInt32Field("f1_int").addStringField("f1_str").build();
+    Schema schema =
+        Schema.builder()
+            .addInt32Field("f_int")
+            .addRowField("nested", nestedSchema)
+            .addArrayField("f_array", FieldType.INT64)
+            .addMapField("f_map", FieldType.STRING, FieldType.DOUBLE)
+            .build();
+
+    List<Row> rows = new ArrayList<>();
+    for (int i = 0; i < 10; i++) {
+      Row nestedRow = Row.withSchema(nestedSchema).addValues(i, "nested" + i).build();
+      rows.add(
+          Row.withSchema(schema)
+              .addValues(
+                  i,
+                  nestedRow,
+                  Collections.nCopies(i, (long) i),
+                  ImmutableMap.of("key" + i, (double) i))
+              .build());
+    }
+
+    assertEquals(rows, roundTripBatch(RowCoder.of(schema), rows));
+  }
+
+  @Test
+  public void testBatchEmpty() throws Exception {
+    Schema schema = Schema.builder().addInt32Field("f_int").addStringField("f_string").build();
+    assertEquals(
+        Collections.emptyList(), roundTripBatch(RowCoder.of(schema), Collections.emptyList()));
+  }
+
+  @Test
+  public void testBatchEncodingPositionAddNewFields() throws Exception {
+    Schema schema1 =
+        Schema.builder()
+            .addNullableField("f_int32", FieldType.INT32)
+            .addNullableField("f_string", FieldType.STRING)
+            .build();
+    Schema schema2 =
+        Schema.builder()
+            .addNullableField("f_int32", FieldType.INT32)
+            .addNullableField("f_boolean", FieldType.BOOLEAN)
+            .addNullableField("f_string", FieldType.STRING)
+            .build();
+    schema2.setEncodingPositions(ImmutableMap.of("f_int32", 0, "f_string", 1, "f_boolean", 2));
+
+    List<Row> rows =
+        ImmutableList.of(
+            Row.withSchema(schema1).addValues(42, "hello world!").build(),
+            Row.withSchema(schema1).addValues(null, "goodbye").build());
+    List<Row> expected =
+        ImmutableList.of(
+            Row.withSchema(schema2).addValues(42, null, "hello world!").build(),
+            Row.withSchema(schema2).addValues(null, null, "goodbye").build());
+
+    ByteArrayOutputStream os = new ByteArrayOutputStream();
+    RowCoder.of(schema1).encodeBatch(rows, os);
+    List<Row> decoded = new ArrayList<>();
+    RowCoder.of(schema2).decodeBatch(new ByteArrayInputStream(os.toByteArray()), decoded);
+    assertEquals(expected, decoded);
+  }
+
+  @Test
+  public void testBatchEncodingPositionRemoveFields() throws Exception {
+    Schema schema1 =
+        Schema.builder()
+            .addNullableField("f_int32", FieldType.INT32)
+            .addNullableField("f_string", FieldType.STRING)
+            .addNullableField("f_boolean", FieldType.BOOLEAN)
+            .build();
+    Schema schema2 =
+        Schema.builder()
+            .addNullableField("f_int32", FieldType.INT32)
+            .addNullableField("f_string", FieldType.STRING)
+            .build();
+
+    List<Row> rows =
+        ImmutableList.of(
+            Row.withSchema(schema1).addValues(42, "hello world!", true).build(),
+            Row.withSchema(schema1).addValues(7, null, false).build());
+    List<Row> expected =
+        ImmutableList.of(
+            Row.withSchema(schema2).addValues(42, "hello world!").build(),
+            Row.withSchema(schema2).addValues(7, null).build());
+
+    ByteArrayOutputStream os = new ByteArrayOutputStream();
+    RowCoder.of(schema1).encodeBatch(rows, os);
+    List<Row> decoded = new ArrayList<>();
+    RowCoder.of(schema2).decodeBatch(new ByteArrayInputStream(os.toByteArray()), decoded);
+    assertEquals(expected, decoded);
+  }
+
+  @Test
+  public void testBatchDecodingSkipsExtraFields() throws Exception {
+    Schema schema1 =
+        Schema.builder()
+            .addNullableField("f_int32", FieldType.INT32)
+            .addNullableField("f_string", FieldType.STRING)
+            .addNullableField("f_extra_string", FieldType.STRING)
+            .addNullableField("f_extra_int64", FieldType.INT64)
+            .build();
+    Schema schema2 =
+        Schema.builder()
+            .addNullableField("f_int32", FieldType.INT32)
+            .addNullableField("f_string", FieldType.STRING)
+            .build();
+
+    List<Row> firstBatch =
+        ImmutableList.of(
+            Row.withSchema(schema1).addValues(42, "hello world!", "extra", 1L).build(),
+            Row.withSchema(schema1).addValues(7, null, null, 2L).build());
+    List<Row> secondBatch =
+        ImmutableList.of(Row.withSchema(schema1).addValues(null, "goodbye", "more", null).build());
+    List<Row> expected =
+        ImmutableList.of(
+            Row.withSchema(schema2).addValues(42, "hello world!").build(),
+            Row.withSchema(schema2).addValues(7, null).build(),
+            Row.withSchema(schema2).addValues(null, "goodbye").build());
+
+    // The extra columns of the first batch must be skipped to decode the second one.
+    ByteArrayOutputStream os = new ByteArrayOutputStream();
+    RowCoder.of(schema1).encodeBatch(firstBatch, os);
+    RowCoder.of(schema1).encodeBatch(secondBatch, os);
+    ByteArrayInputStream is = new ByteArrayInputStream(os.toByteArray());
+    List<Row> decoded = new ArrayList<>();
+    RowCoder.of(schema2).decodeBatch(is, decoded);
+    RowCoder.of(schema2).decodeBatch(is, decoded);
+    assertEquals(expected, decoded);
+    assertEquals(0, is.available());
+  }
+
+  private static List<Row> roundTripBatch(RowCoder coder, List<Row> rows) throws Exception {
+    ByteArrayOutputStream os = new ByteArrayOutputStream();
+    coder.encodeBatch(rows, os);
+    List<Row> decoded = new ArrayList<>();
+    coder.decodeBatch(new ByteArrayInputStream(os.toByteArray()), decoded);
+    return decoded;
+  }
+
+  private static Object valueOf(FieldType type, int i) {
+    switch (type.getTypeName()) {
+      case BYTE:
+        return (byte) i;
+      case INT16:
+        return (short) (i * 1000);
+      case INT32:
+        return i * 100000;
+      case INT64:
+        return i * 10000000000L;
+      case FLOAT:
+        return i / 3.0f;
+      case DOUBLE:
+        return i / 3.0d;
+      case BOOLEAN:
+        return i % 2 == 0;
+      case STRING:
+        return "str" + i;
+      case DECIMAL:
+        return new BigDecimal(i).movePointLeft(2);
+      default:
+        throw new IllegalArgumentException("Unsupported type " + type);
+    }
+  }
 }
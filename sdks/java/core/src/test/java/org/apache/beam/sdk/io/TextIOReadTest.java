@@ -18,6 +18,7 @@
 package org.apache.beam.sdk.io;
 
 import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.nio.file.StandardOpenOption.APPEND;
 import static org.apache.beam.sdk.TestUtils.LINES_ARRAY;
 import static org.apache.beam.sdk.TestUtils.NO_LINES_ARRAY;
 import static org.apache.beam.sdk.io.Compression.AUTO;
@@ -28,6 +29,7 @@ import static org.apache.beam.sdk.io.Compression.UNCOMPRESSED;
 import static org.apache.beam.sdk.io.Compression.ZIP;
 import static org.apache.beam.sdk.transforms.display.DisplayDataMatchers.hasDisplayItem;
 import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
 import static org.hamcrest.Matchers.containsInAnyOrder;
 import static org.hamcrest.Matchers.equalTo;
 import static org.hamcrest.Matchers.greaterThan;
@@ -59,6 +61,8 @@ import java.util.zip.ZipOutputStream;
 import org.apache.beam.sdk.Pipeline;
 import org.apache.beam.sdk.coders.StringUtf8Coder;
 import org.apache.beam.sdk.io.fs.EmptyMatchTreatment;
+import org.apache.beam.sdk.io.fs.MatchResult;
+import org.apache.beam.sdk.options.ExperimentalOptions;
 import org.apache.beam.sdk.options.PipelineOptions;
 import org.apache.beam.sdk.options.PipelineOptionsFactory;
 import org.apache.beam.sdk.options.ValueProvider;
@@ -85,6 +89,7 @@ import org.apache.beam.vendor.guava.v26_0_jre.com.google.common.base.Joiner;
 import org.apache.beam.vendor.guava.v26_0_jre.com.google.common.collect.ImmutableList;
 import org.apache.beam.vendor.guava.v26_0_jre.com.google.common.collect.Iterables;
 import org.apache.beam.vendor.guava.v26_0_jre.com.google.common.collect.Lists;
+import org.apache.beam.vendor.guava.v26_0_jre.com.google.common.primitives.Bytes;
 import org.apache.commons.compress.compressors.bzip2.BZip2CompressorOutputStream;
 import org.apache.commons.compress.compressors.deflate.DeflateCompressorOutputStream;
 import org.apache.commons.lang3.SystemUtils;
@@ -244,6 +249,13 @@ public class TextIOReadTest {
         delimiter);
   }
 
+  private static PipelineOptions memoryMappedReadOptions() {
+    PipelineOptions options = PipelineOptionsFactory.create();
+    ExperimentalOptions.addExperiment(
+        options.as(ExperimentalOptions.class), TextSource.MEMORY_MAPPED_READS_EXPERIMENT);
+    return options;
+  }
+
   private static String getFileSuffix(Compression compression) {
     switch (compression) {
       case UNCOMPRESSED:
@@ -371,13 +383,29 @@ public class TextIOReadTest {
       SourceTestUtils.assertSplitAtFractionExhaustive(source, PipelineOptionsFactory.create());
     }
 
+    @Test
+    public void testReadLinesWithDelimiterMemoryMapped() throws Exception {
+      runTestReadWithData(line.getBytes(UTF_8), expected, memoryMappedReadOptions());
+    }
+
+    @Test
+    public void testSplittingSourceMemoryMapped() throws Exception {
+      TextSource source = prepareSource(line.getBytes(UTF_8));
+      SourceTestUtils.assertSplitAtFractionExhaustive(source, memoryMappedReadOptions());
+    }
+
     private TextSource prepareSource(byte[] data) throws IOException {
       return TextIOReadTest.prepareSource(tempFolder, data, null);
     }
 
     private void runTestReadWithData(byte[] data, List<String> expectedResults) throws Exception {
+      runTestReadWithData(data, expectedResults, PipelineOptionsFactory.create());
+    }
+
+    private void runTestReadWithData(
+        byte[] data, List<String> expectedResults, PipelineOptions options) throws Exception {
       TextSource source = prepareSource(data);
-      List<String> actual = SourceTestUtils.readFromSource(source, PipelineOptionsFactory.create());
+      List<String> actual = SourceTestUtils.readFromSource(source, options);
       assertThat(
           actual, containsInAnyOrder(new ArrayList<>(expectedResults).toArray(new String[0])));
     }
@@ -408,6 +436,23 @@ public class TextIOReadTest {
       p.run();
     }
 
+    @Test
+    @Category(NeedsRunner.class)
+    public void testReadBytes() throws Exception {
+      byte[] invalidUtf8 = new byte[] {(byte) 0xC3, (byte) 0x28};
+      File tmpFile = tempFolder.newFile();
+      Files.write(
+          tmpFile.toPath(),
+          Bytes.concat(
+              "\uFEFFfirst\r\nsecond\n".getBytes(UTF_8), invalidUtf8, "\n".getBytes(UTF_8)));
+
+      PCollection<byte[]> output = p.apply(TextIO.readBytes().from(tmpFile.getPath()));
+
+      PAssert.that(output)
+          .containsInAnyOrder("first".getBytes(UTF_8), "second".getBytes(UTF_8), invalidUtf8);
+      p.run();
+    }
+
     @Test
     public void testDelimiterSelfOverlaps() {
       assertFalse(TextIO.Read.isSelfOverlapping(new byte[] {'a', 'b', 'c'}));
@@ -449,6 +494,16 @@ public class TextIOReadTest {
 
     @Test
     public void testSplittingSourceWithCustomDelimiter() throws Exception {
+      runTestSplittingSourceWithCustomDelimiter(PipelineOptionsFactory.create());
+    }
+
+    @Test
+    public void testSplittingSourceWithCustomDelimiterMemoryMapped() throws Exception {
+      runTestSplittingSourceWithCustomDelimiter(memoryMappedReadOptions());
+    }
+
+    private void runTestSplittingSourceWithCustomDelimiter(PipelineOptions options)
+        throws Exception {
       List<String> testCases = Lists.newArrayList();
       String infix = "first|*second|*|*third";
       String[] affixes = new String[] {"", "|", "*", "|*"};
@@ -461,7 +516,7 @@ public class TextIOReadTest {
         SourceTestUtils.assertSplitAtFractionExhaustive(
             TextIOReadTest.prepareSource(
                 tempFolder, testCase.getBytes(UTF_8), new byte[] {'|', '*'}),
-            PipelineOptionsFactory.create());
+            options);
       }
     }
 
@@ -918,6 +973,49 @@ public class TextIOReadTest {
       pipeline.run();
     }
 
+    @Test
+    public void testMemoryMappedReadOfLocalFile() throws Exception {
+      Path path = createTestFile("test_txt_mmap", UTF_8, "\uFEFF1,mmap-テスト", "2,mmap");
+      MatchResult.Metadata metadata = FileSystems.matchSingleFileSpec(path.toString());
+      TextSource source =
+          new TextSource(
+              ValueProvider.StaticValueProvider.of(path.toString()),
+              EmptyMatchTreatment.DISALLOW,
+              null);
+
+      List<String> actual = new ArrayList<>();
+      try (BoundedSource.BoundedReader<String> reader =
+          source
+              .createForSubrangeOfFile(metadata, 0, metadata.sizeBytes())
+              .createReader(memoryMappedReadOptions())) {
+        for (boolean more = reader.start(); more; more = reader.advance()) {
+          assertTrue(((TextSource.TextBasedReader<?>) reader).isMemoryMapped());
+          actual.add(reader.getCurrent());
+        }
+      }
+      assertEquals(ImmutableList.of("1,mmap-テスト", "2,mmap"), actual);
+    }
+
+    @Test
+    public void testReadUndecodedBytes() throws Exception {
+      byte[] invalidUtf8 = new byte[] {(byte) 0xC3, (byte) 0x28};
+      Path path = createTestFile("test_txt_bytes", UTF_8, "\uFEFF1,bytes", "2,bytes");
+      Files.write(path, Bytes.concat(invalidUtf8, "\r\n".getBytes(UTF_8)), APPEND);
+      TextSource.ByteArrayTextSource source =
+          new TextSource.ByteArrayTextSource(
+              ValueProvider.StaticValueProvider.of(path.toString()),
+              EmptyMatchTreatment.DISALLOW,
+              null);
+
+      for (PipelineOptions options :
+          ImmutableList.of(PipelineOptionsFactory.create(), memoryMappedReadOptions())) {
+        List<byte[]> actual = SourceTestUtils.readFromSource(source, options);
+        assertThat(
+            actual,
+            contains("1,bytes".getBytes(UTF_8), "2,bytes".getBytes(UTF_8), invalidUtf8));
+      }
+    }
+
     private static class FileReadDoFn extends DoFn<FileIO.ReadableFile, String> {
 
       @ProcessElement
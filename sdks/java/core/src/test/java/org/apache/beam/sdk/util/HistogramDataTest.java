@@ -141,6 +141,25 @@ public class HistogramDataTest {
     assertThat(histogramData.p99(), equalTo(Double.NaN));
   }
 
+  @Test
+  public void testExponentialBuckets() {
+    HistogramData histogramData = HistogramData.exponential(1, 2, 4);
+    histogramData.record(0.5, 1, 3, 4, 7.9, 16);
+    assertThat(histogramData.getBottomBucketCount(), equalTo(1L));
+    assertThat(histogramData.getCount(0), equalTo(1L));
+    assertThat(histogramData.getCount(1), equalTo(1L));
+    assertThat(histogramData.getCount(2), equalTo(2L));
+    assertThat(histogramData.getCount(3), equalTo(0L));
+    assertThat(histogramData.getTopBucketCount(), equalTo(1L));
+  }
+
+  @Test
+  public void testExponentialBucketsP50() {
+    HistogramData histogramData = HistogramData.exponential(1, 2, 4);
+    histogramData.record(2, 3);
+    assertThat(histogramData.p50(), equalTo(3.0));
+  }
+
   @Test
   public void testClear() {
     HistogramData histogramData = HistogramData.linear(0, 0.2, 50);
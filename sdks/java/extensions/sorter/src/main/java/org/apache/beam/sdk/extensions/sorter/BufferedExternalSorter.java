@@ -32,7 +32,7 @@ import org.checkerframework.checker.nullness.qual.RequiresNonNull;
  */
 public class BufferedExternalSorter implements Sorter {
   public static Options options() {
-    return new Options("/tmp", 100, SorterType.HADOOP);
+    return new Options("/tmp", 100, SorterType.HADOOP, 1);
   }
 
   /** Contains configuration for the sorter. */
@@ -40,12 +40,15 @@ public class BufferedExternalSorter implements Sorter {
     private final String tempLocation;
     private final int memoryMB;
     private final SorterType sorterType;
+    private final int sortThreads;
 
-    private Options(String tempLocation, int memoryMB, SorterType sorterType) {
+    private Options(String tempLocation, int memoryMB, SorterType sorterType, int sortThreads) {
       checkMemoryMB(memoryMB, sorterType);
+      checkArgument(sortThreads > 0, "sortThreads must be greater than zero");
       this.tempLocation = tempLocation;
       this.memoryMB = memoryMB;
       this.sorterType = sorterType;
+      this.sortThreads = sortThreads;
     }
 
     /** Sets the path to a temporary location where the sorter writes intermediate files. */
@@ -54,7 +57,7 @@ public class BufferedExternalSorter implements Sorter {
           !tempLocation.startsWith("gs://"),
           "BufferedExternalSorter does not support GCS temporary location");
 
-      return new Options(tempLocation, memoryMB, sorterType);
+      return new Options(tempLocation, memoryMB, sorterType, sortThreads);
     }
 
     /** Returns the configured temporary location. */
@@ -68,7 +71,7 @@ public class BufferedExternalSorter implements Sorter {
      * less than 2048 if sorter type is Hadoop.
      */
     public Options withMemoryMB(int memoryMB) {
-      return new Options(tempLocation, memoryMB, sorterType);
+      return new Options(tempLocation, memoryMB, sorterType, sortThreads);
     }
 
     /** Returns the configured size of the memory buffer. */
@@ -78,7 +81,7 @@ public class BufferedExternalSorter implements Sorter {
 
     /** Sets the external sorter type. */
     public Options withExternalSorterType(SorterType sorterType) {
-      return new Options(tempLocation, memoryMB, sorterType);
+      return new Options(tempLocation, memoryMB, sorterType, sortThreads);
     }
 
     /** Returns the external sorter type. */
@@ -86,6 +89,19 @@ public class BufferedExternalSorter implements Sorter {
       return sorterType;
     }
 
+    /**
+     * Sets the number of threads the native external sorter sorts blocks of records and merges
+     * their runs with. Must be greater than zero. Ignored if sorter type is Hadoop.
+     */
+    public Options withSortThreads(int sortThreads) {
+      return new Options(tempLocation, memoryMB, sorterType, sortThreads);
+    }
+
+    /** Returns the configured number of sort threads. */
+    public int getSortThreads() {
+      return sortThreads;
+    }
+
     private static void checkMemoryMB(int memoryMB, SorterType sorterType) {
       checkArgument(memoryMB > 0, "memoryMB must be greater than zero");
       if (sorterType == SorterType.HADOOP) {
@@ -111,6 +127,7 @@ public class BufferedExternalSorter implements Sorter {
     externalSorterOptions.setTempLocation(options.getTempLocation());
     externalSorterOptions.setSorterType(options.getExternalSorterType());
     externalSorterOptions.setMemoryMB(options.getMemoryMB());
+    externalSorterOptions.setSortThreads(options.getSortThreads());
 
     InMemorySorter.Options inMemorySorterOptions = new InMemorySorter.Options();
     inMemorySorterOptions.setMemoryMB(options.getMemoryMB());
@@ -30,6 +30,7 @@ public abstract class ExternalSorter implements Sorter {
     private String tempLocation = "/tmp";
     private int memoryMB = 100;
     private SorterType sorterType = SorterType.HADOOP;
+    private int sortThreads = 1;
 
     /** Sorter type. */
     public enum SorterType {
@@ -79,6 +80,21 @@ public abstract class ExternalSorter implements Sorter {
       return sorterType;
     }
 
+    /**
+     * Sets the number of threads the native sorter sorts blocks of records and merges their runs
+     * with. Must be greater than zero. Ignored by the Hadoop sorter.
+     */
+    public Options setSortThreads(int sortThreads) {
+      checkArgument(sortThreads > 0, "sortThreads must be greater than zero");
+      this.sortThreads = sortThreads;
+      return this;
+    }
+
+    /** Returns the configured number of sort threads. */
+    public int getSortThreads() {
+      return sortThreads;
+    }
+
     private void checkMemoryMB() {
       checkArgument(memoryMB > 0, "memoryMB must be greater than zero");
       if (getSorterType() == SorterType.HADOOP) {
@@ -0,0 +1,119 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.beam.sdk.extensions.sorter;
+
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import org.checkerframework.checker.nullness.qual.Nullable;
+
+/**
+ * Merges sorted iterators using a loser tree (tournament tree).
+ *
+ * <p>The tree keeps the loser of the comparison at each of its internal nodes and the overall
+ * winner at its root. Replacing the winner by the next element of its iterator replays only the
+ * comparisons on the path from the leaf of that iterator to the root, so each element costs about
+ * {@code log2(k)} comparisons for {@code k} iterators, half of what a binary heap needs. Elements
+ * which compare equal are returned in the order of their iterators.
+ */
+class LoserTree<T> implements Iterator<T> {
+  private final Iterator<? extends T>[] sources;
+  private final Comparator<? super T> comparator;
+
+  /** The current element of each source, {@code null} once the source is exhausted. */
+  private final @Nullable T[] heads;
+
+  /**
+   * The winner at index 0 and the losers at the internal nodes {@code 1..k-1}. The leaf of source
+   * {@code i} is the implicit node {@code k + i}, and the children of node {@code n} are the nodes
+   * {@code 2n} and {@code 2n + 1}.
+   */
+  private final int[] tree;
+
+  @SuppressWarnings("unchecked")
+  LoserTree(List<? extends Iterator<? extends T>> sources, Comparator<? super T> comparator) {
+    this.sources = sources.toArray(new Iterator[0]);
+    this.comparator = comparator;
+    this.heads = (T[]) new Object[this.sources.length];
+    this.tree = new int[Math.max(1, this.sources.length)];
+    for (int i = 0; i < this.sources.length; i++) {
+      heads[i] = this.sources[i].hasNext() ? this.sources[i].next() : null;
+    }
+    if (this.sources.length > 0) {
+      tree[0] = build(1);
+    }
+  }
+
+  /** Plays the matches of the subtree rooted at {@code node}, returning its winner. */
+  private int build(int node) {
+    int k = sources.length;
+    if (node >= k) {
+      return node - k;
+    }
+    int left = build(2 * node);
+    int right = build(2 * node + 1);
+    if (beats(left, right)) {
+      tree[node] = right;
+      return left;
+    } else {
+      tree[node] = left;
+      return right;
+    }
+  }
+
+  /** Returns whether the head of source {@code a} is ordered before that of source {@code b}. */
+  private boolean beats(int a, int b) {
+    @Nullable T headA = heads[a];
+    @Nullable T headB = heads[b];
+    if (headA == null || headB == null) {
+      return headB == null && (headA != null || a < b);
+    }
+    int result = comparator.compare(headA, headB);
+    return result < 0 || (result == 0 && a < b);
+  }
+
+  @Override
+  public boolean hasNext() {
+    return sources.length > 0 && heads[tree[0]] != null;
+  }
+
+  @Override
+  public T next() {
+    if (sources.length == 0) {
+      throw new NoSuchElementException();
+    }
+    int winner = tree[0];
+    @Nullable T result = heads[winner];
+    if (result == null) {
+      throw new NoSuchElementException();
+    }
+    heads[winner] = sources[winner].hasNext() ? sources[winner].next() : null;
+
+    // Replay the matches on the path from the leaf of the winner to the root.
+    for (int node = (winner + sources.length) / 2; node > 0; node /= 2) {
+      if (beats(tree[node], winner)) {
+        int loser = winner;
+        winner = tree[node];
+        tree[node] = loser;
+      }
+    }
+    tree[0] = winner;
+    return result;
+  }
+}
@@ -63,7 +63,9 @@ class NativeExternalSorter extends ExternalSorter {
     if (sorter == null) {
       sorter =
           new NativeFileSorter(
-              Paths.get(options.getTempLocation()), (long) options.getMemoryMB() * 1024 * 1024);
+              Paths.get(options.getTempLocation()),
+              (long) options.getMemoryMB() * 1024 * 1024,
+              options.getSortThreads());
     }
     return sorter;
   }
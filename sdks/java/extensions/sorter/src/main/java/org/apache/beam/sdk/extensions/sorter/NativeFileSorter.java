@@ -21,25 +21,30 @@ import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
 import java.io.BufferedInputStream;
 import java.io.BufferedOutputStream;
 import java.io.EOFException;
-import java.io.File;
-import java.io.FileInputStream;
-import java.io.FileNotFoundException;
-import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Comparator;
+import java.util.Deque;
 import java.util.Iterator;
 import java.util.List;
 import java.util.NoSuchElementException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import org.apache.beam.sdk.coders.ByteArrayCoder;
 import org.apache.beam.sdk.values.KV;
 import org.apache.beam.vendor.guava.v26_0_jre.com.google.common.base.Preconditions;
-import org.apache.beam.vendor.guava.v26_0_jre.com.google.common.collect.Iterators;
+import org.apache.beam.vendor.guava.v26_0_jre.com.google.common.base.Throwables;
 import org.apache.beam.vendor.guava.v26_0_jre.com.google.common.primitives.UnsignedBytes;
+import org.apache.beam.vendor.guava.v26_0_jre.com.google.common.util.concurrent.ThreadFactoryBuilder;
 import org.checkerframework.checker.nullness.qual.Nullable;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -47,36 +52,72 @@ import org.slf4j.LoggerFactory;
 /**
  * External Sorter based on <a
  * href="https://github.com/lemire/externalsortinginjava">lemire/externalsortinginjava</a>.
+ *
+ * <p>Records are buffered in memory in blocks. Each full block is sorted and written to a temporary
+ * run file on a background thread while the next block is being buffered, with up to {@code
+ * sortThreads} blocks being sorted at once. The runs are then merged with a {@link LoserTree},
+ * reading each run through a large buffer. If all records fit into a single block they are sorted
+ * in memory without writing any run.
  */
 class NativeFileSorter {
 
   private static final Logger LOG = LoggerFactory.getLogger(NativeFileSorter.class);
 
+  /** The largest number of runs merged at once. More runs are first merged in groups. */
   private static final int MAX_TEMP_FILES = 1024;
+
   private static final long OBJECT_OVERHEAD = getObjectOverhead();
 
+  /** Bounds of the size of the buffer each run is written and read through. */
+  private static final int MIN_IO_BUFFER_SIZE = 64 * 1024;
+
+  private static final int MAX_IO_BUFFER_SIZE = 8 * 1024 * 1024;
+
   private static final Comparator<byte[]> COMPARATOR = UnsignedBytes.lexicographicalComparator();
   private static final Comparator<KV<byte[], byte[]>> KV_COMPARATOR =
       (x, y) -> COMPARATOR.compare(x.getKey(), y.getKey());
   private static final ByteArrayCoder CODER = ByteArrayCoder.of();
 
+  /**
+   * Sorts and merges runs for all sorters. The number of tasks of each sorter is bounded by its
+   * {@code sortThreads}.
+   */
+  private static final ExecutorService EXECUTOR =
+      Executors.newCachedThreadPool(
+          new ThreadFactoryBuilder()
+              .setDaemon(true)
+              .setNameFormat("native-file-sorter-%d")
+              .build());
+
   private final Path tempDir;
-  private final long maxMemory;
-  private final File dataFile;
-  private final OutputStream dataStream;
+  private final long memory;
+  private final long blockSize;
+  private final int sortThreads;
 
-  private boolean sortCalled = false;
+  /** The records buffered since the last block was handed off to be sorted. */
+  private List<KV<byte[], byte[]>> block = new ArrayList<>();
 
-  /** Create a new file sorter. */
-  public NativeFileSorter(Path tempDir, long maxMemory) throws IOException {
-    this.tempDir = tempDir;
-    this.maxMemory = maxMemory;
+  private long currentBlockSize = 0;
+
+  /** The runs being sorted and written, oldest first. */
+  private final Deque<Future<Path>> pendingRuns = new ArrayDeque<>();
 
-    this.dataFile = Files.createTempFile(tempDir, "input", "seq").toFile();
-    this.dataStream = new BufferedOutputStream(new FileOutputStream(dataFile));
-    dataFile.deleteOnExit();
+  private final List<Path> runs = new ArrayList<>();
+
+  private boolean sortCalled = false;
 
-    LOG.debug("Created input file {}", dataFile);
+  /**
+   * Create a new file sorter using at most {@code maxMemory} bytes, or the available memory if it
+   * is not positive, to buffer records, and sorting up to {@code sortThreads} blocks of records at
+   * once.
+   */
+  public NativeFileSorter(Path tempDir, long maxMemory, int sortThreads) {
+    Preconditions.checkArgument(sortThreads > 0, "sortThreads must be greater than zero");
+    this.tempDir = tempDir;
+    this.memory = maxMemory > 0 ? maxMemory : estimateAvailableMemory();
+    this.sortThreads = sortThreads;
+    // The block being buffered and the blocks being sorted share the memory.
+    this.blockSize = Math.max(1, memory / (sortThreads + 1));
   }
 
   /**
@@ -86,8 +127,12 @@ class NativeFileSorter {
    */
   public void add(byte[] key, byte[] value) throws IOException {
     Preconditions.checkState(!sortCalled, "Records can only be added before sort()");
-    CODER.encode(key, dataStream);
-    CODER.encode(value, dataStream);
+    KV<byte[], byte[]> kv = KV.of(key, value);
+    block.add(kv);
+    currentBlockSize += estimateSizeOf(kv);
+    if (currentBlockSize >= blockSize) {
+      sortBlockInBackground();
+    }
   }
 
   /**
@@ -99,89 +144,126 @@ class NativeFileSorter {
     Preconditions.checkState(!sortCalled, "sort() can only be called once.");
     sortCalled = true;
 
-    dataStream.close();
-
-    return mergeSortedFiles(sortInBatch());
+    if (pendingRuns.isEmpty() && runs.isEmpty()) {
+      // All of the records fit into a single block.
+      block.sort(KV_COMPARATOR);
+      return Collections.unmodifiableList(block);
+    }
+    if (!block.isEmpty()) {
+      sortBlockInBackground();
+    }
+    block = Collections.emptyList();
+    while (!pendingRuns.isEmpty()) {
+      runs.add(getRun(pendingRuns.removeFirst()));
+    }
+    return mergeSortedFiles(mergeRunsInGroups(runs));
   }
 
   ////////////////////////////////////////////////////////////////////////////////
 
   /**
-   * Loads the file by blocks of records, sorts in memory, and writes the result to temporary files
-   * that have to be merged later.
+   * Hands off the current block to be sorted and written to a run, first waiting for the oldest
+   * block being sorted if there are already {@code sortThreads} of them.
    */
-  private List<File> sortInBatch() throws IOException {
-    final long fileSize = Files.size(dataFile.toPath());
-    final long memory = maxMemory > 0 ? maxMemory : estimateAvailableMemory();
-    final long blockSize = estimateBestBlockSize(fileSize, memory); // in bytes
-    LOG.debug(
-        "Sort in batch with fileSize: {}, memory: {}, blockSize: {}", fileSize, memory, blockSize);
-
-    final List<File> files = new ArrayList<>();
-    InputStream inputStream = new BufferedInputStream(new FileInputStream(dataFile));
-    try {
-      final List<KV<byte[], byte[]>> tempList = new ArrayList<>();
-      @Nullable KV<byte[], byte[]> kv = KV.of(new byte[0], new byte[0]);
-      while (kv != null) {
-        long currentBlockSize = 0;
-        while (currentBlockSize < blockSize) {
-          kv = readKeyValue(inputStream);
-          if (kv == null) {
-            break;
-          }
-
-          // as long as you have enough memory
-          tempList.add(kv);
-          currentBlockSize += estimateSizeOf(kv);
-        }
-        files.add(sortAndSave(tempList));
-        tempList.clear();
-      }
-    } finally {
-      inputStream.close();
+  private void sortBlockInBackground() throws IOException {
+    while (pendingRuns.size() >= sortThreads) {
+      runs.add(getRun(pendingRuns.removeFirst()));
     }
-    return files;
+    List<KV<byte[], byte[]>> fullBlock = block;
+    LOG.debug("Sort in background block of {} records, blockSize: {}", fullBlock.size(), blockSize);
+    pendingRuns.addLast(EXECUTOR.submit(() -> sortAndSave(fullBlock)));
+    block = new ArrayList<>(fullBlock.size());
+    currentBlockSize = 0;
   }
 
   /** Sort a list and save it to a temporary file. */
-  private File sortAndSave(List<KV<byte[], byte[]>> tempList) throws IOException {
-    final File tempFile = Files.createTempFile(tempDir, "sort", "seq").toFile();
-    tempFile.deleteOnExit();
-    LOG.debug("Sort and save {}", tempFile);
-
+  private Path sortAndSave(List<KV<byte[], byte[]>> tempList) throws IOException {
     tempList.sort(KV_COMPARATOR);
+    return save(tempList.iterator());
+  }
 
-    OutputStream outputStream = new BufferedOutputStream(new FileOutputStream(tempFile));
-    try {
-      for (KV<byte[], byte[]> kv : tempList) {
+  /** Saves sorted records to a temporary file. */
+  private Path save(Iterator<KV<byte[], byte[]>> records) throws IOException {
+    final Path tempFile = Files.createTempFile(tempDir, "sort", "seq");
+    tempFile.toFile().deleteOnExit();
+    LOG.debug("Save {}", tempFile);
+
+    try (OutputStream outputStream =
+        new BufferedOutputStream(Files.newOutputStream(tempFile), MAX_IO_BUFFER_SIZE)) {
+      while (records.hasNext()) {
+        KV<byte[], byte[]> kv = records.next();
         CODER.encode(kv.getKey(), outputStream);
         CODER.encode(kv.getValue(), outputStream);
       }
-    } finally {
-      outputStream.close();
     }
     return tempFile;
   }
 
+  /**
+   * Merges groups of {@link #MAX_TEMP_FILES} runs into larger runs, up to {@code sortThreads}
+   * groups at once, until at most {@link #MAX_TEMP_FILES} runs remain.
+   */
+  private List<Path> mergeRunsInGroups(List<Path> runs) throws IOException {
+    while (runs.size() > MAX_TEMP_FILES) {
+      LOG.debug("Merge {} runs in groups of {}", runs.size(), MAX_TEMP_FILES);
+      List<Path> mergedRuns = new ArrayList<>();
+      Deque<Future<Path>> pendingMerges = new ArrayDeque<>();
+      for (int start = 0; start < runs.size(); start += MAX_TEMP_FILES) {
+        List<Path> group = runs.subList(start, Math.min(start + MAX_TEMP_FILES, runs.size()));
+        while (pendingMerges.size() >= sortThreads) {
+          mergedRuns.add(getRun(pendingMerges.removeFirst()));
+        }
+        pendingMerges.addLast(EXECUTOR.submit(mergeAndSave(group, memory / sortThreads)));
+      }
+      while (!pendingMerges.isEmpty()) {
+        mergedRuns.add(getRun(pendingMerges.removeFirst()));
+      }
+      runs = mergedRuns;
+    }
+    return runs;
+  }
+
+  /** Merges runs into a single run using at most {@code memory} bytes, deleting them. */
+  private Callable<Path> mergeAndSave(List<Path> group, long memory) {
+    return () -> {
+      List<Iterator<KV<byte[], byte[]>>> iterators = new ArrayList<>(group.size());
+      int bufferSize = ioBufferSize(memory, group.size());
+      for (Path run : group) {
+        iterators.add(iterateFile(run, bufferSize));
+      }
+      Path merged = save(new LoserTree<>(iterators, KV_COMPARATOR));
+      for (Path run : group) {
+        Files.deleteIfExists(run);
+      }
+      return merged;
+    };
+  }
+
   /** Merges a list of temporary flat files. */
-  private Iterable<KV<byte[], byte[]>> mergeSortedFiles(List<File> files) {
+  private Iterable<KV<byte[], byte[]>> mergeSortedFiles(List<Path> files) {
+    LOG.debug("Merge {} runs", files.size());
+    int bufferSize = ioBufferSize(memory, files.size());
     return () -> {
-      final List<Iterator<KV<byte[], byte[]>>> iterators = new ArrayList<>();
-      for (File file : files) {
+      final List<Iterator<KV<byte[], byte[]>>> iterators = new ArrayList<>(files.size());
+      for (Path file : files) {
         try {
-          iterators.add(iterateFile(file));
-        } catch (FileNotFoundException e) {
+          iterators.add(iterateFile(file, bufferSize));
+        } catch (IOException e) {
           throw new IllegalStateException(e);
         }
       }
 
-      return Iterators.mergeSorted(iterators, KV_COMPARATOR);
+      return new LoserTree<>(iterators, KV_COMPARATOR);
     };
   }
 
-  /** Creates an {@link Iterator} over the key-value pairs in a file. */
-  private Iterator<KV<byte[], byte[]>> iterateFile(File file) throws FileNotFoundException {
-    final InputStream inputStream = new BufferedInputStream(new FileInputStream(file));
+  /**
+   * Creates an {@link Iterator} over the key-value pairs in a file, which closes the file once
+   * exhausted.
+   */
+  private Iterator<KV<byte[], byte[]>> iterateFile(Path file, int bufferSize) throws IOException {
+    final InputStream inputStream =
+        new BufferedInputStream(Files.newInputStream(file), bufferSize);
     return new Iterator<KV<byte[], byte[]>>() {
       @Nullable KV<byte[], byte[]> nextKv = readKeyValueOrFail(inputStream);
 
@@ -204,9 +286,11 @@ class NativeFileSorter {
 
   private @Nullable KV<byte[], byte[]> readKeyValueOrFail(InputStream inputStream) {
     try {
-      return readKeyValue(inputStream);
-    } catch (EOFException e) {
-      return null;
+      @Nullable KV<byte[], byte[]> kv = readKeyValue(inputStream);
+      if (kv == null) {
+        inputStream.close();
+      }
+      return kv;
     } catch (IOException e) {
       throw new IllegalStateException(e);
     }
@@ -223,6 +307,26 @@ class NativeFileSorter {
     }
   }
 
+  /** Returns the result of a task writing a run, rethrowing its failure. */
+  private static Path getRun(Future<Path> run) throws IOException {
+    try {
+      return run.get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IOException("Interrupted while sorting", e);
+    } catch (ExecutionException e) {
+      Throwables.throwIfInstanceOf(e.getCause(), IOException.class);
+      Throwables.throwIfUnchecked(e.getCause());
+      throw new IOException(e.getCause());
+    }
+  }
+
+  /** Divides the memory between the buffers of the runs being read. */
+  private static int ioBufferSize(long memory, int numRuns) {
+    return (int)
+        Math.max(MIN_IO_BUFFER_SIZE, Math.min(MAX_IO_BUFFER_SIZE, memory / Math.max(1, numRuns)));
+  }
+
   ////////////////////////////////////////////////////////////////////////////////
 
   /**
@@ -238,26 +342,6 @@ class NativeFileSorter {
     return r.maxMemory() - allocatedMemory;
   }
 
-  /**
-   * We divide the file into small blocks. If the blocks are too small, we shall create too many
-   * temporary files. If they are too big, we shall be using too much memory.
-   *
-   * @param sizeOfFile how much data (in bytes) can we expect
-   * @param maxMemory Maximum memory to use (in bytes)
-   */
-  private static long estimateBestBlockSize(final long sizeOfFile, final long maxMemory) {
-    // we don't want to open up much more than MAX_TEMP_FILES temporary files, better run out of
-    // memory first.
-    long blockSize = sizeOfFile / MAX_TEMP_FILES + (sizeOfFile % MAX_TEMP_FILES == 0 ? 0 : 1);
-
-    // on the other hand, we don't want to create many temporary files for naught. If blockSize is
-    // smaller than half the free memory, grow it.
-    if (blockSize < maxMemory / 2) {
-      blockSize = maxMemory / 2;
-    }
-    return blockSize;
-  }
-
   private static long getObjectOverhead() {
     // By default we assume 64 bit JVM
     // (defensive approach since we will get larger estimations in case we are not sure)
@@ -17,6 +17,8 @@
  */
 package org.apache.beam.sdk.extensions.sorter;
 
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
 import java.io.IOException;
@@ -27,7 +29,11 @@ import java.nio.file.SimpleFileVisitor;
 import java.nio.file.attribute.BasicFileAttributes;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.Random;
 import org.apache.beam.sdk.extensions.sorter.ExternalSorter.Options.SorterType;
+import org.apache.beam.sdk.values.KV;
+import org.apache.beam.vendor.guava.v26_0_jre.com.google.common.primitives.Ints;
+import org.apache.beam.vendor.guava.v26_0_jre.com.google.common.primitives.UnsignedBytes;
 import org.checkerframework.checker.nullness.qual.EnsuresNonNull;
 import org.checkerframework.checker.nullness.qual.Nullable;
 import org.junit.AfterClass;
@@ -138,6 +144,50 @@ public class ExternalSorterTest {
         1000000);
   }
 
+  @Test
+  public void testRandomWithSortThreads() throws Exception {
+    SorterTestUtils.testRandom(
+        () ->
+            ExternalSorter.create(
+                new ExternalSorter.Options()
+                    .setTempLocation(getTmpLocation().toString())
+                    .setSorterType(sorterType)
+                    .setMemoryMB(1)
+                    .setSortThreads(4)),
+        1,
+        200000);
+  }
+
+  @Test
+  public void testMergeManyRuns() throws Exception {
+    // Enough small runs for the native sorter to merge them in groups first.
+    Sorter sorter =
+        ExternalSorter.create(
+            new ExternalSorter.Options()
+                .setTempLocation(getTmpLocation().toString())
+                .setSorterType(sorterType)
+                .setMemoryMB(1)
+                .setSortThreads(16));
+    Random random = new Random(0L);
+    int numRecords = 700000;
+    for (int i = 0; i < numRecords; i++) {
+      byte[] key = new byte[8];
+      random.nextBytes(key);
+      sorter.add(KV.of(key, Ints.toByteArray(i)));
+    }
+
+    int count = 0;
+    byte[] prevKey = null;
+    for (KV<byte[], byte[]> record : sorter.sort()) {
+      assertTrue(
+          prevKey == null
+              || UnsignedBytes.lexicographicalComparator().compare(prevKey, record.getKey()) <= 0);
+      prevKey = record.getKey();
+      count++;
+    }
+    assertEquals(numRecords, count);
+  }
+
   @Test
   public void testAddAfterSort() throws Exception {
     SorterTestUtils.testAddAfterSort(
@@ -176,6 +226,13 @@ public class ExternalSorterTest {
     options.setMemoryMB(0);
   }
 
+  @Test
+  public void testZeroSortThreads() {
+    thrown.expect(IllegalArgumentException.class);
+    thrown.expectMessage("sortThreads must be greater than zero");
+    new ExternalSorter.Options().setSorterType(sorterType).setSortThreads(0);
+  }
+
   @Test
   public void testMemoryTooLarge() {
     if (sorterType == SorterType.HADOOP) {
@@ -0,0 +1,131 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.beam.sdk.extensions.sorter;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.emptyIterable;
+import static org.hamcrest.Matchers.equalTo;
+import static org.junit.Assert.assertFalse;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Random;
+import org.apache.beam.sdk.values.KV;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** Tests for {@link LoserTree}. */
+@RunWith(JUnit4.class)
+public class LoserTreeTest {
+
+  @Test
+  public void testNoIterators() {
+    LoserTree<Integer> tree = new LoserTree<>(Collections.emptyList(), Comparator.naturalOrder());
+    assertFalse(tree.hasNext());
+  }
+
+  @Test(expected = NoSuchElementException.class)
+  public void testNextWhenExhausted() {
+    LoserTree<Integer> tree =
+        new LoserTree<>(
+            Arrays.asList(Collections.<Integer>emptyIterator(), Arrays.asList(1).iterator()),
+            Comparator.naturalOrder());
+    tree.next();
+    tree.next();
+  }
+
+  @Test
+  public void testEmptyIterators() {
+    assertThat(
+        merge(Arrays.asList(Collections.emptyList(), Collections.emptyList())), emptyIterable());
+  }
+
+  @Test
+  public void testSingleIterator() {
+    assertThat(merge(Arrays.asList(Arrays.asList(1, 2, 3))), contains(1, 2, 3));
+  }
+
+  @Test
+  public void testMultipleIterators() {
+    assertThat(
+        merge(
+            Arrays.asList(
+                Arrays.asList(1, 4, 7),
+                Collections.emptyList(),
+                Arrays.asList(2, 5, 8, 9),
+                Arrays.asList(3, 6))),
+        contains(1, 2, 3, 4, 5, 6, 7, 8, 9));
+  }
+
+  @Test
+  public void testEqualElementsInIteratorOrder() {
+    List<Iterator<KV<Integer, String>>> iterators =
+        Arrays.asList(
+            Arrays.asList(KV.of(1, "a"), KV.of(2, "a")).iterator(),
+            Arrays.asList(KV.of(1, "b")).iterator(),
+            Arrays.asList(KV.of(0, "c"), KV.of(1, "c"), KV.of(2, "c")).iterator());
+    LoserTree<KV<Integer, String>> tree =
+        new LoserTree<>(iterators, Comparator.comparing(KV::getKey));
+    List<String> values = new ArrayList<>();
+    while (tree.hasNext()) {
+      values.add(tree.next().getValue());
+    }
+    assertThat(values, contains("c", "a", "b", "c", "a", "c"));
+  }
+
+  @Test
+  public void testRandom() {
+    Random random = new Random(0L);
+    for (int numIterators = 1; numIterators <= 70; numIterators++) {
+      List<List<Integer>> lists = new ArrayList<>();
+      List<Integer> expected = new ArrayList<>();
+      for (int i = 0; i < numIterators; i++) {
+        List<Integer> list = new ArrayList<>();
+        int size = random.nextInt(50);
+        for (int j = 0; j < size; j++) {
+          list.add(random.nextInt(100));
+        }
+        Collections.sort(list);
+        lists.add(list);
+        expected.addAll(list);
+      }
+      Collections.sort(expected);
+      assertThat(merge(lists), equalTo(expected));
+    }
+  }
+
+  private static List<Integer> merge(List<List<Integer>> lists) {
+    List<Iterator<Integer>> iterators = new ArrayList<>();
+    for (List<Integer> list : lists) {
+      iterators.add(list.iterator());
+    }
+    LoserTree<Integer> tree = new LoserTree<>(iterators, Comparator.naturalOrder());
+    List<Integer> merged = new ArrayList<>();
+    while (tree.hasNext()) {
+      merged.add(tree.next());
+    }
+    return merged;
+  }
+}
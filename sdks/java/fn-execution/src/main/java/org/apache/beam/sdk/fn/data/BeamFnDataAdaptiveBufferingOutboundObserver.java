@@ -0,0 +1,286 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.beam.sdk.fn.data;
+
+import java.io.IOException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+import org.apache.beam.model.fnexecution.v1.BeamFnApi;
+import org.apache.beam.sdk.coders.Coder;
+import org.apache.beam.sdk.fn.stream.DirectStreamObserver;
+import org.apache.beam.vendor.grpc.v1p36p0.io.grpc.stub.CallStreamObserver;
+import org.apache.beam.vendor.grpc.v1p36p0.io.grpc.stub.StreamObserver;
+import org.apache.beam.vendor.guava.v26_0_jre.com.google.common.annotations.VisibleForTesting;
+import org.apache.beam.vendor.guava.v26_0_jre.com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.checkerframework.checker.nullness.qual.Nullable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A buffering outbound {@link FnDataReceiver} for the Beam Fn Data API which adapts the number of
+ * bytes it buffers before flushing to the elements it is given and to the backpressure of the
+ * outbound stream.
+ *
+ * <p>The flush threshold moves between {@code minFlushBytes} and {@code maxFlushBytes}. After each
+ * flush, the threshold is doubled if the outbound stream is not ready to accept more messages, so
+ * that a saturated stream is sent fewer, larger messages. Otherwise it halves towards the size of
+ * {@link #TARGET_ELEMENTS_PER_FLUSH} average elements, so that streams of small elements are not
+ * sent more often than needed and streams of large elements do not buffer more than needed.
+ *
+ * <p>Elements are encoded into a buffer taken from a {@link BeamFnDataOutboundBufferPool} which is
+ * reused across flushes and returned to the pool on close. If {@code timeLimitMs} is positive, the
+ * buffered elements are also flushed periodically once the first element was given.
+ */
+public class BeamFnDataAdaptiveBufferingOutboundObserver<T>
+    implements BeamFnDataBufferingOutboundObserver<T> {
+  private static final Logger LOG =
+      LoggerFactory.getLogger(BeamFnDataAdaptiveBufferingOutboundObserver.class);
+
+  /** The number of average sized elements the flush threshold tends to without backpressure. */
+  @VisibleForTesting static final int TARGET_ELEMENTS_PER_FLUSH = 100;
+
+  private static final ScheduledExecutorService FLUSH_EXECUTOR =
+      Executors.newSingleThreadScheduledExecutor(
+          new ThreadFactoryBuilder()
+              .setDaemon(true)
+              .setNameFormat("DataBufferAdaptiveOutboundFlusher-thread")
+              .build());
+
+  /** The reason the buffered elements were flushed. */
+  public enum FlushCause {
+    /** The buffered elements reached the flush threshold. */
+    SIZE,
+    /** The time limit elapsed since the previous periodic flush. */
+    TIME,
+    /** {@link #flush()} was called. */
+    EXPLICIT,
+    /** The observer was closed. */
+    CLOSE
+  }
+
+  private final int minFlushBytes;
+  private final int maxFlushBytes;
+  private final LogicalEndpoint outputLocation;
+  private final Coder<T> coder;
+  private final StreamObserver<BeamFnApi.Elements> outboundObserver;
+  private final BooleanSupplier outboundReady;
+  private final BeamFnDataOutboundBufferPool pool;
+  private final long timeLimitMs;
+
+  private BeamFnDataOutboundBufferPool.@Nullable Buffer buffer;
+  private @Nullable ScheduledFuture<?> flushFuture;
+  private @Nullable IOException flushFailure;
+  private int flushThreshold;
+  private double averageElementBytes;
+  private long byteCounter;
+  private long counter;
+  private boolean closed;
+
+  BeamFnDataAdaptiveBufferingOutboundObserver(
+      int minFlushBytes,
+      int maxFlushBytes,
+      long timeLimitMs,
+      LogicalEndpoint outputLocation,
+      Coder<T> coder,
+      StreamObserver<BeamFnApi.Elements> outboundObserver,
+      BeamFnDataOutboundBufferPool pool) {
+    this.minFlushBytes = Math.min(minFlushBytes, maxFlushBytes);
+    this.maxFlushBytes = maxFlushBytes;
+    this.outputLocation = outputLocation;
+    this.coder = coder;
+    this.outboundObserver = outboundObserver;
+    this.outboundReady = readinessOf(outboundObserver);
+    this.pool = pool;
+    this.timeLimitMs = timeLimitMs;
+    this.flushThreshold = this.minFlushBytes;
+  }
+
+  private static BooleanSupplier readinessOf(StreamObserver<?> outboundObserver) {
+    if (outboundObserver instanceof DirectStreamObserver) {
+      return ((DirectStreamObserver<?>) outboundObserver)::isReady;
+    }
+    if (outboundObserver instanceof CallStreamObserver) {
+      return ((CallStreamObserver<?>) outboundObserver)::isReady;
+    }
+    return () -> true;
+  }
+
+  @Override
+  public synchronized void accept(T t) throws IOException {
+    if (closed) {
+      throw new IllegalStateException("Already closed.");
+    }
+    checkFlushFailure();
+    BeamFnDataOutboundBufferPool.Buffer currentBuffer = buffer;
+    if (currentBuffer == null) {
+      currentBuffer = pool.acquire(minFlushBytes);
+      buffer = currentBuffer;
+      if (timeLimitMs > 0 && flushFuture == null) {
+        flushFuture =
+            FLUSH_EXECUTOR.scheduleAtFixedRate(
+                new PeriodicFlush(), timeLimitMs, timeLimitMs, TimeUnit.MILLISECONDS);
+      }
+    }
+    int sizeBefore = currentBuffer.size();
+    coder.encode(t, currentBuffer);
+    counter += 1;
+    averageElementBytes += (currentBuffer.size() - sizeBefore - averageElementBytes) / 8;
+    if (currentBuffer.size() >= flushThreshold) {
+      flush(FlushCause.SIZE);
+    }
+  }
+
+  @Override
+  public synchronized void flush() throws IOException {
+    flush(FlushCause.EXPLICIT);
+  }
+
+  @Override
+  public synchronized void close() throws Exception {
+    if (closed) {
+      return;
+    }
+    closed = true;
+    ScheduledFuture<?> future = flushFuture;
+    if (future != null) {
+      future.cancel(false);
+    }
+    checkFlushFailure();
+    BeamFnApi.Elements.Builder elements = BeamFnApi.Elements.newBuilder();
+    int bytes = addBufferedElements(elements);
+    // This will add an empty data block representing the end of stream.
+    if (outputLocation.isTimer()) {
+      elements
+          .addTimersBuilder()
+          .setInstructionId(outputLocation.getInstructionId())
+          .setTransformId(outputLocation.getTransformId())
+          .setTimerFamilyId(outputLocation.getTimerFamilyId())
+          .setIsLast(true);
+    } else {
+      elements
+          .addDataBuilder()
+          .setInstructionId(outputLocation.getInstructionId())
+          .setTransformId(outputLocation.getTransformId())
+          .setIsLast(true);
+    }
+    BeamFnDataOutboundBufferPool.Buffer currentBuffer = buffer;
+    if (currentBuffer != null) {
+      pool.release(currentBuffer);
+      buffer = null;
+    }
+
+    LOG.debug(
+        "Closing stream for instruction {} and "
+            + "transform {} having transmitted {} values {} bytes",
+        outputLocation.getInstructionId(),
+        outputLocation.getTransformId(),
+        counter,
+        byteCounter);
+    outboundObserver.onNext(elements.build());
+    if (bytes > 0) {
+      pool.recordFlush(FlushCause.CLOSE, bytes);
+    }
+  }
+
+  @VisibleForTesting
+  synchronized int getFlushThreshold() {
+    return flushThreshold;
+  }
+
+  private void flush(FlushCause cause) {
+    BeamFnApi.Elements.Builder elements = BeamFnApi.Elements.newBuilder();
+    int bytes = addBufferedElements(elements);
+    if (bytes == 0) {
+      return;
+    }
+    outboundObserver.onNext(elements.build());
+    pool.recordFlush(cause, bytes);
+    adaptFlushThreshold();
+  }
+
+  /** Moves the flush threshold according to the backpressure and the average element size. */
+  private void adaptFlushThreshold() {
+    int target =
+        (int)
+            Math.max(
+                minFlushBytes,
+                Math.min(maxFlushBytes, averageElementBytes * TARGET_ELEMENTS_PER_FLUSH));
+    if (outboundReady.getAsBoolean()) {
+      flushThreshold = Math.max(target, flushThreshold / 2);
+    } else {
+      flushThreshold = (int) Math.min(maxFlushBytes, Math.max(target, 2L * flushThreshold));
+    }
+  }
+
+  /** Moves the buffered elements into the given message, returning their size in bytes. */
+  private int addBufferedElements(BeamFnApi.Elements.Builder elements) {
+    BeamFnDataOutboundBufferPool.Buffer currentBuffer = buffer;
+    if (currentBuffer == null || currentBuffer.size() == 0) {
+      return 0;
+    }
+    int bytes = currentBuffer.size();
+    if (outputLocation.isTimer()) {
+      elements
+          .addTimersBuilder()
+          .setInstructionId(outputLocation.getInstructionId())
+          .setTransformId(outputLocation.getTransformId())
+          .setTimerFamilyId(outputLocation.getTimerFamilyId())
+          .setTimers(currentBuffer.toByteString());
+    } else {
+      elements
+          .addDataBuilder()
+          .setInstructionId(outputLocation.getInstructionId())
+          .setTransformId(outputLocation.getTransformId())
+          .setData(currentBuffer.toByteString());
+    }
+    byteCounter += bytes;
+    currentBuffer.reset();
+    return bytes;
+  }
+
+  private void checkFlushFailure() throws IOException {
+    IOException failure = flushFailure;
+    if (failure != null) {
+      throw failure;
+    }
+  }
+
+  /** Flushes the buffered elements and stops periodic flushing if that fails. */
+  private class PeriodicFlush implements Runnable {
+    @Override
+    public void run() {
+      synchronized (BeamFnDataAdaptiveBufferingOutboundObserver.this) {
+        if (closed || flushFailure != null) {
+          return;
+        }
+        try {
+          flush(FlushCause.TIME);
+        } catch (RuntimeException e) {
+          flushFailure = new IOException("Periodic flush failed.", e);
+          ScheduledFuture<?> future = flushFuture;
+          if (future != null) {
+            future.cancel(false);
+          }
+        }
+      }
+    }
+  }
+}
@@ -37,6 +37,11 @@ import org.apache.beam.vendor.guava.v26_0_jre.com.google.common.annotations.Visi
  *
  * <p>The default time-based buffer threshold can be overridden by specifying the experiment {@code
  * data_buffer_time_limit_ms=<milliseconds>}
+ *
+ * <p>Specifying the experiment {@code data_buffer_adaptive} selects a {@link
+ * BeamFnDataAdaptiveBufferingOutboundObserver}, which flushes between {@code
+ * data_buffer_min_size=<bytes>} and the size-based buffer threshold depending on the sizes of the
+ * elements and the backpressure of the outbound stream.
  */
 public interface BeamFnDataBufferingOutboundObserver<T> extends CloseableFnDataReceiver<T> {
   // TODO: Consider moving this constant out of this interface
@@ -55,14 +60,41 @@ public interface BeamFnDataBufferingOutboundObserver<T> extends CloseableFnDataR
   String DATA_BUFFER_TIME_LIMIT_MS = "data_buffer_time_limit_ms=";
   long DEFAULT_BUFFER_LIMIT_TIME_MS = -1L;
 
-  static <T> BeamFnDataSizeBasedBufferingOutboundObserver<T> forLocation(
+  String DATA_BUFFER_ADAPTIVE = "data_buffer_adaptive";
+  String DATA_BUFFER_MIN_SIZE = "data_buffer_min_size=";
+  int DEFAULT_BUFFER_MIN_BYTES = 65_536;
+
+  static <T> BeamFnDataBufferingOutboundObserver<T> forLocation(
       PipelineOptions options,
       LogicalEndpoint endpoint,
       Coder<T> coder,
       StreamObserver<BeamFnApi.Elements> outboundObserver) {
+    return forLocation(
+        options, endpoint, coder, outboundObserver, BeamFnDataOutboundBufferPool.getDefault());
+  }
+
+  /**
+   * Returns a buffering outbound observer for the given endpoint. Adaptive observers take their
+   * buffers from {@code bufferPool}.
+   */
+  static <T> BeamFnDataBufferingOutboundObserver<T> forLocation(
+      PipelineOptions options,
+      LogicalEndpoint endpoint,
+      Coder<T> coder,
+      StreamObserver<BeamFnApi.Elements> outboundObserver,
+      BeamFnDataOutboundBufferPool bufferPool) {
     int sizeLimit = getSizeLimit(options);
     long timeLimit = getTimeLimit(options);
-    if (timeLimit > 0) {
+    if (ExperimentalOptions.hasExperiment(options, DATA_BUFFER_ADAPTIVE)) {
+      return new BeamFnDataAdaptiveBufferingOutboundObserver<>(
+          getMinSize(options),
+          sizeLimit,
+          timeLimit,
+          endpoint,
+          coder,
+          outboundObserver,
+          bufferPool);
+    } else if (timeLimit > 0) {
       return new BeamFnDataTimeBasedBufferingOutboundObserver<>(
           sizeLimit, timeLimit, endpoint, coder, outboundObserver);
     } else {
@@ -87,6 +119,16 @@ public interface BeamFnDataBufferingOutboundObserver<T> extends CloseableFnDataR
     return DEFAULT_BUFFER_LIMIT_BYTES;
   }
 
+  static int getMinSize(PipelineOptions options) {
+    List<String> experiments = options.as(ExperimentalOptions.class).getExperiments();
+    for (String experiment : experiments == null ? Collections.<String>emptyList() : experiments) {
+      if (experiment.startsWith(DATA_BUFFER_MIN_SIZE)) {
+        return Integer.parseInt(experiment.substring(DATA_BUFFER_MIN_SIZE.length()));
+      }
+    }
+    return DEFAULT_BUFFER_MIN_BYTES;
+  }
+
   static long getTimeLimit(PipelineOptions options) {
     List<String> experiments = options.as(ExperimentalOptions.class).getExperiments();
     for (String experiment : experiments == null ? Collections.<String>emptyList() : experiments) {
@@ -0,0 +1,152 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.beam.sdk.fn.data;
+
+import java.io.ByteArrayOutputStream;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.atomic.AtomicLong;
+import org.apache.beam.sdk.fn.data.BeamFnDataAdaptiveBufferingOutboundObserver.FlushCause;
+import org.apache.beam.sdk.metrics.Distribution;
+import org.apache.beam.sdk.metrics.Gauge;
+import org.apache.beam.vendor.grpc.v1p36p0.com.google.protobuf.ByteString;
+import org.checkerframework.checker.nullness.qual.Nullable;
+
+/**
+ * A pool of the buffers that {@link BeamFnDataAdaptiveBufferingOutboundObserver}s encode elements
+ * into, shared by all outbound observers of a data client.
+ *
+ * <p>An observer takes a buffer from the pool when it is given its first element and returns it
+ * when it is closed, so that bundles reuse the buffers of earlier bundles instead of allocating
+ * new ones. At most {@code maxPooledBytes} of idle buffers are kept.
+ *
+ * <p>The pool also reports the size and {@link FlushCause} of each flush of its observers, and the
+ * number of bytes of idle buffers it holds.
+ */
+public class BeamFnDataOutboundBufferPool {
+
+  /** The default number of bytes of idle buffers kept by a pool. */
+  public static final long DEFAULT_MAX_POOLED_BYTES = 64L << 20;
+
+  private static final BeamFnDataOutboundBufferPool DEFAULT =
+      new BeamFnDataOutboundBufferPool(
+          DEFAULT_MAX_POOLED_BYTES, null, new EnumMap<>(FlushCause.class));
+
+  private final long maxPooledBytes;
+  private final @Nullable Gauge pooledBytesGauge;
+  private final Map<FlushCause, Distribution> flushBytes;
+  private final ConcurrentLinkedDeque<Buffer> buffers;
+  private final AtomicLong pooledBytes;
+
+  /** Returns the pool shared by observers which are not given a pool of their own. */
+  public static BeamFnDataOutboundBufferPool getDefault() {
+    return DEFAULT;
+  }
+
+  /**
+   * Returns a pool keeping at most {@code maxPooledBytes} of idle buffers, which sets {@code
+   * pooledBytes} to the bytes of idle buffers it holds and reports the size of each flush to the
+   * {@link Distribution} of its {@link FlushCause}.
+   */
+  public static BeamFnDataOutboundBufferPool create(
+      long maxPooledBytes, Gauge pooledBytes, Map<FlushCause, Distribution> flushBytes) {
+    return new BeamFnDataOutboundBufferPool(
+        maxPooledBytes, pooledBytes, new EnumMap<>(flushBytes));
+  }
+
+  private BeamFnDataOutboundBufferPool(
+      long maxPooledBytes,
+      @Nullable Gauge pooledBytesGauge,
+      Map<FlushCause, Distribution> flushBytes) {
+    this.maxPooledBytes = maxPooledBytes;
+    this.pooledBytesGauge = pooledBytesGauge;
+    this.flushBytes = flushBytes;
+    this.buffers = new ConcurrentLinkedDeque<>();
+    this.pooledBytes = new AtomicLong();
+  }
+
+  /** Returns an empty buffer, reusing an idle one if there is any. */
+  Buffer acquire(int initialCapacity) {
+    Buffer buffer = buffers.pollFirst();
+    if (buffer == null) {
+      return new Buffer(initialCapacity);
+    }
+    updatePooledBytes(-buffer.capacity());
+    return buffer;
+  }
+
+  /** Returns a buffer to the pool, dropping it if the pool is full. */
+  void release(Buffer buffer) {
+    buffer.reset();
+    int capacity = buffer.capacity();
+    if (pooledBytes.addAndGet(capacity) > maxPooledBytes) {
+      pooledBytes.addAndGet(-capacity);
+      return;
+    }
+    buffers.offerFirst(buffer);
+    reportPooledBytes();
+  }
+
+  /** Records a flush of {@code bytes} of encoded elements. */
+  void recordFlush(FlushCause cause, int bytes) {
+    Distribution distribution = flushBytes.get(cause);
+    if (distribution != null) {
+      distribution.update(bytes);
+    }
+  }
+
+  /** Returns the number of bytes of idle buffers held by the pool. */
+  public long getPooledBytes() {
+    return pooledBytes.get();
+  }
+
+  private void updatePooledBytes(long delta) {
+    pooledBytes.addAndGet(delta);
+    reportPooledBytes();
+  }
+
+  private void reportPooledBytes() {
+    Gauge gauge = pooledBytesGauge;
+    if (gauge != null) {
+      // Reads the bytes under the lock, so that the last value set is the current one.
+      synchronized (gauge) {
+        gauge.set(pooledBytes.get());
+      }
+    }
+  }
+
+  /** A growable buffer whose contents are copied into a {@link ByteString} when flushed. */
+  static class Buffer extends ByteArrayOutputStream {
+    Buffer(int initialCapacity) {
+      super(initialCapacity);
+    }
+
+    int capacity() {
+      return buf.length;
+    }
+
+    /**
+     * Returns a copy of the contents of this buffer. The contents are copied since the {@link
+     * ByteString} may outlive the buffer being reused.
+     */
+    ByteString toByteString() {
+      return ByteString.copyFrom(buf, 0, count);
+    }
+  }
+}
@@ -0,0 +1,359 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.beam.sdk.fn.data;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.apache.beam.model.fnexecution.v1.BeamFnApi.Elements;
+import org.apache.beam.model.pipeline.v1.Endpoints.ApiServiceDescriptor;
+import org.apache.beam.sdk.options.ExperimentalOptions;
+import org.apache.beam.sdk.options.PipelineOptions;
+import org.apache.beam.vendor.grpc.v1p36p0.com.google.protobuf.CodedInputStream;
+import org.apache.beam.vendor.grpc.v1p36p0.com.google.protobuf.CodedOutputStream;
+import org.apache.beam.vendor.grpc.v1p36p0.io.grpc.stub.CallStreamObserver;
+import org.apache.beam.vendor.grpc.v1p36p0.io.grpc.stub.StreamObserver;
+import org.checkerframework.checker.nullness.qual.Nullable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A bidirectional stream of {@link Elements} between a runner and an SDK harness on the same host,
+ * through a pair of {@link SharedMemoryRingBuffer}s instead of gRPC.
+ *
+ * <p>The SDK harness {@link #connect connects} by creating the ring buffers in the directory of the
+ * data {@link ApiServiceDescriptor} and requesting the runner's {@link SharedMemoryDataServer} to
+ * accept them. If the runner does not offer shared memory for the descriptor, or does not accept in
+ * time, the SDK harness falls back to gRPC.
+ *
+ * <p>Each {@link Elements} message is written to the ring buffer as its length followed by its
+ * serialized bytes, and read by a thread which passes it to the inbound observer.
+ */
+public class SharedMemoryDataChannel implements AutoCloseable {
+  private static final Logger LOG = LoggerFactory.getLogger(SharedMemoryDataChannel.class);
+
+  /** The experiment enabling shared memory data channels in the runner and the SDK harness. */
+  public static final String EXPERIMENT = "use_shared_memory_data_plane";
+
+  /** The number of bytes of each ring buffer created by {@link #connect(Path)}. */
+  public static final int DEFAULT_CAPACITY = 8 * 1024 * 1024;
+
+  /** How long {@link #connect(Path)} waits for the runner to accept. */
+  public static final long DEFAULT_CONNECT_TIMEOUT_MILLIS = 2000;
+
+  static final String INBOUND_SUFFIX = ".in";
+  static final String OUTBOUND_SUFFIX = ".out";
+  static final String REQUEST_SUFFIX = ".request";
+  static final String CLAIMED_SUFFIX = ".claimed";
+  static final String ACCEPTED_SUFFIX = ".accepted";
+
+  private static final long CONNECT_POLL_MILLIS = 5;
+
+  /** Returns whether the pipeline enables shared memory data channels. */
+  public static boolean isEnabled(PipelineOptions options) {
+    return ExperimentalOptions.hasExperiment(options, EXPERIMENT);
+  }
+
+  /**
+   * Returns the directory in which shared memory data channels for the data service at the given
+   * {@link ApiServiceDescriptor} are negotiated.
+   */
+  public static Path directoryFor(ApiServiceDescriptor apiServiceDescriptor) {
+    return Paths.get(
+        System.getProperty("java.io.tmpdir"),
+        "beam-shared-memory-data",
+        apiServiceDescriptor.getUrl().replaceAll("[^A-Za-z0-9._-]", "_"));
+  }
+
+  /**
+   * Connects to the {@link SharedMemoryDataServer} accepting channels in {@code directory} with the
+   * default capacity and timeout.
+   */
+  public static @Nullable SharedMemoryDataChannel connect(Path directory) throws IOException {
+    return connect(directory, DEFAULT_CAPACITY, DEFAULT_CONNECT_TIMEOUT_MILLIS);
+  }
+
+  /**
+   * Connects to the {@link SharedMemoryDataServer} accepting channels in {@code directory}.
+   *
+   * @return the connected channel, or {@code null} if no server accepted the channel in time
+   */
+  public static @Nullable SharedMemoryDataChannel connect(
+      Path directory, int capacity, long timeoutMillis) throws IOException {
+    if (!Files.isDirectory(directory)) {
+      return null;
+    }
+    String id = UUID.randomUUID().toString();
+    Path inboundFile = directory.resolve(id + INBOUND_SUFFIX);
+    Path outboundFile = directory.resolve(id + OUTBOUND_SUFFIX);
+    Path request = directory.resolve(id + REQUEST_SUFFIX);
+    Path claimed = directory.resolve(id + CLAIMED_SUFFIX);
+    Path accepted = directory.resolve(id + ACCEPTED_SUFFIX);
+    SharedMemoryRingBuffer inbound = null;
+    SharedMemoryRingBuffer outbound = null;
+    try {
+      inbound = SharedMemoryRingBuffer.create(inboundFile, capacity);
+      outbound = SharedMemoryRingBuffer.create(outboundFile, capacity);
+      Files.createFile(request);
+
+      long deadline = System.currentTimeMillis() + timeoutMillis;
+      while (!Files.exists(accepted)) {
+        // The server renames the request to claimed and then to accepted, or deletes it to reject
+        // it. Checking in that order does not miss a request which is being accepted.
+        if (!Files.exists(request) && !Files.exists(claimed) && !Files.exists(accepted)) {
+          LOG.debug("The shared memory data server rejected {} in {}", id, directory);
+          inbound.close();
+          outbound.close();
+          return null;
+        }
+        // Withdraw the request unless the server claimed it in the meantime.
+        if (System.currentTimeMillis() > deadline && Files.deleteIfExists(request)) {
+          LOG.debug("No shared memory data server accepted {} in {}", id, directory);
+          inbound.close();
+          outbound.close();
+          return null;
+        }
+        Thread.sleep(CONNECT_POLL_MILLIS);
+      }
+      return new SharedMemoryDataChannel(inbound, outbound);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IOException("Interrupted connecting to the shared memory data server", e);
+    } catch (IOException | RuntimeException e) {
+      if (inbound != null) {
+        inbound.close();
+      }
+      if (outbound != null) {
+        outbound.close();
+      }
+      Files.deleteIfExists(request);
+      throw e;
+    } finally {
+      // Both sides have mapped the ring buffers once accepted, so their files are no longer needed.
+      Files.deleteIfExists(inboundFile);
+      Files.deleteIfExists(outboundFile);
+      Files.deleteIfExists(accepted);
+    }
+  }
+
+  /**
+   * Claims the channel requested by the client with the given {@code id} in {@code directory},
+   * opens its ring buffers and accepts it.
+   *
+   * <p>The request is claimed first, so that the client can no longer withdraw it and delete the
+   * ring buffers while they are opened. If they fail to open, the claim is deleted, which rejects
+   * the request.
+   *
+   * @return the accepted channel, or {@code null} if the client withdrew its request
+   */
+  static @Nullable SharedMemoryDataChannel accept(Path directory, String id) throws IOException {
+    Path claimed = directory.resolve(id + CLAIMED_SUFFIX);
+    try {
+      Files.move(directory.resolve(id + REQUEST_SUFFIX), claimed, StandardCopyOption.ATOMIC_MOVE);
+    } catch (NoSuchFileException e) {
+      return null;
+    }
+    SharedMemoryRingBuffer inbound = null;
+    SharedMemoryRingBuffer outbound = null;
+    try {
+      // The inbound ring buffer of the client is the outbound one of the server and vice versa.
+      inbound = SharedMemoryRingBuffer.open(directory.resolve(id + OUTBOUND_SUFFIX));
+      outbound = SharedMemoryRingBuffer.open(directory.resolve(id + INBOUND_SUFFIX));
+      Files.move(claimed, directory.resolve(id + ACCEPTED_SUFFIX), StandardCopyOption.ATOMIC_MOVE);
+    } catch (IOException | RuntimeException e) {
+      if (inbound != null) {
+        inbound.close();
+      }
+      if (outbound != null) {
+        outbound.close();
+      }
+      Files.deleteIfExists(claimed);
+      throw e;
+    }
+    return new SharedMemoryDataChannel(inbound, outbound);
+  }
+
+  private final SharedMemoryRingBuffer inbound;
+  private final SharedMemoryRingBuffer outbound;
+  private final OutboundObserver outboundObserver;
+  // The inbound and outbound streams which did not end yet. The channel closes once both ended.
+  private final AtomicInteger openStreams = new AtomicInteger(2);
+  private final AtomicBoolean closed = new AtomicBoolean();
+  private volatile boolean outboundCompleted;
+  private volatile Runnable onClose = () -> {};
+
+  private SharedMemoryDataChannel(
+      SharedMemoryRingBuffer inbound, SharedMemoryRingBuffer outbound) {
+    this.inbound = inbound;
+    this.outbound = outbound;
+    this.outboundObserver = new OutboundObserver();
+  }
+
+  /**
+   * Starts passing the inbound {@link Elements} to {@code inboundObserver}, and returns the
+   * observer of the outbound {@link Elements}.
+   *
+   * <p>Suitable as the {@link org.apache.beam.sdk.fn.stream.OutboundObserverFactory.BasicFactory}
+   * of a client's {@link BeamFnDataGrpcMultiplexer2}.
+   */
+  public StreamObserver<Elements> connect(StreamObserver<Elements> inboundObserver) {
+    start(inboundObserver);
+    return outboundObserver;
+  }
+
+  /** Returns the observer of the outbound {@link Elements}. */
+  public CallStreamObserver<Elements> getOutboundObserver() {
+    return outboundObserver;
+  }
+
+  /** Starts a daemon thread passing the inbound {@link Elements} to {@code inboundObserver}. */
+  public void start(StreamObserver<Elements> inboundObserver) {
+    Thread reader =
+        new Thread(
+            () -> readInbound(inboundObserver),
+            "shared-memory-data-" + inbound.getFile().getFileName());
+    reader.setDaemon(true);
+    reader.start();
+  }
+
+  /**
+   * Fails the outbound stream if it was not completed, and stops reading the inbound stream.
+   *
+   * <p>Called once both streams ended, so that the ring buffers of a finished channel are released.
+   */
+  @Override
+  public void close() {
+    if (!closed.compareAndSet(false, true)) {
+      return;
+    }
+    if (!outboundCompleted) {
+      outbound.fail();
+    }
+    inbound.closeReader();
+    outbound.close();
+    inbound.close();
+    onClose.run();
+  }
+
+  /** Sets the action run once this channel closes. */
+  void setOnClose(Runnable onClose) {
+    this.onClose = onClose;
+  }
+
+  private void streamEnded() {
+    if (openStreams.decrementAndGet() == 0) {
+      close();
+    }
+  }
+
+  private void readInbound(StreamObserver<Elements> inboundObserver) {
+    byte[] length = new byte[4];
+    byte[] message = new byte[1024];
+    try {
+      while (inbound.read(length, 0, length.length)) {
+        int size =
+            (length[0] & 0xff) << 24
+                | (length[1] & 0xff) << 16
+                | (length[2] & 0xff) << 8
+                | (length[3] & 0xff);
+        if (size > message.length) {
+          message = new byte[Math.max(size, 2 * message.length)];
+        }
+        if (!inbound.read(message, 0, size)) {
+          throw new IOException("The writer completed in the middle of a message");
+        }
+        inboundObserver.onNext(Elements.parseFrom(CodedInputStream.newInstance(message, 0, size)));
+      }
+      inboundObserver.onCompleted();
+    } catch (IOException | RuntimeException e) {
+      if (!closed.get()) {
+        LOG.warn("Failed to read from shared memory data channel {}", inbound.getFile(), e);
+        inboundObserver.onError(e);
+        // Nothing more can be exchanged with a peer which failed or exited.
+        close();
+      }
+    } finally {
+      inbound.closeReader();
+      streamEnded();
+    }
+  }
+
+  /**
+   * Writes each {@link Elements} to the outbound ring buffer. Always ready, as writing waits for
+   * the reader to free up space.
+   */
+  private class OutboundObserver extends CallStreamObserver<Elements> {
+    private byte[] message = new byte[1024];
+
+    @Override
+    public synchronized void onNext(Elements value) {
+      int size = value.getSerializedSize();
+      if (size + 4 > message.length) {
+        message = new byte[Math.max(size + 4, 2 * message.length)];
+      }
+      message[0] = (byte) (size >>> 24);
+      message[1] = (byte) (size >>> 16);
+      message[2] = (byte) (size >>> 8);
+      message[3] = (byte) size;
+      try {
+        CodedOutputStream output = CodedOutputStream.newInstance(message, 4, size);
+        value.writeTo(output);
+        output.checkNoSpaceLeft();
+        outbound.write(message, 0, size + 4);
+      } catch (IOException e) {
+        throw new RuntimeException(e);
+      }
+    }
+
+    @Override
+    public synchronized void onError(Throwable t) {
+      LOG.debug("Closing shared memory data channel {}", outbound.getFile(), t);
+      close();
+    }
+
+    @Override
+    public synchronized void onCompleted() {
+      outboundCompleted = true;
+      outbound.complete();
+      streamEnded();
+    }
+
+    @Override
+    public boolean isReady() {
+      return true;
+    }
+
+    @Override
+    public void setOnReadyHandler(Runnable onReadyHandler) {}
+
+    @Override
+    public void disableAutoInboundFlowControl() {}
+
+    @Override
+    public void request(int count) {}
+
+    @Override
+    public void setMessageCompression(boolean enable) {}
+  }
+}
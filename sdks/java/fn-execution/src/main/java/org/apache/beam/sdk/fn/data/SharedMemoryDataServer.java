@@ -0,0 +1,166 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.beam.sdk.fn.data;
+
+import java.io.IOException;
+import java.nio.file.DirectoryIteratorException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import org.apache.beam.model.fnexecution.v1.BeamFnApi.Elements;
+import org.apache.beam.sdk.fn.stream.OutboundObserverFactory;
+import org.apache.beam.vendor.guava.v26_0_jre.com.google.common.annotations.VisibleForTesting;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Accepts {@link SharedMemoryDataChannel}s which SDK harnesses on the same host request in a
+ * directory, and connects each of them to a data service.
+ *
+ * <p>The directory exists for as long as the server accepts channels, which tells clients that
+ * shared memory is offered. A daemon thread polls it for requests.
+ */
+public class SharedMemoryDataServer implements AutoCloseable {
+  private static final Logger LOG = LoggerFactory.getLogger(SharedMemoryDataServer.class);
+
+  private static final long POLL_MILLIS = 10;
+  private static final long RETRY_MILLIS = 1000;
+
+  /**
+   * Creates a server accepting channels in {@code directory}. The {@code service} is called with
+   * the observer of the {@link Elements} sent to the client of each channel and returns the
+   * observer of the {@link Elements} received from it, like {@code BeamFnDataImplBase#data}.
+   */
+  public static SharedMemoryDataServer create(
+      Path directory, OutboundObserverFactory.BasicFactory<Elements, Elements> service)
+      throws IOException {
+    Files.createDirectories(directory);
+    SharedMemoryDataServer server = new SharedMemoryDataServer(directory, service);
+    Thread acceptor = new Thread(server::acceptChannels, "shared-memory-data-server");
+    acceptor.setDaemon(true);
+    acceptor.start();
+    return server;
+  }
+
+  private final Path directory;
+  private final OutboundObserverFactory.BasicFactory<Elements, Elements> service;
+  private final List<SharedMemoryDataChannel> channels;
+  private volatile boolean closed;
+
+  private SharedMemoryDataServer(
+      Path directory, OutboundObserverFactory.BasicFactory<Elements, Elements> service) {
+    this.directory = directory;
+    this.service = service;
+    this.channels = new ArrayList<>();
+  }
+
+  /** Returns the directory in which channels are accepted. */
+  public Path getDirectory() {
+    return directory;
+  }
+
+  private void acceptChannels() {
+    while (!closed) {
+      long sleepMillis = POLL_MILLIS;
+      try (DirectoryStream<Path> requests =
+          Files.newDirectoryStream(directory, "*" + SharedMemoryDataChannel.REQUEST_SUFFIX)) {
+        for (Path request : requests) {
+          String fileName = directory.relativize(request).toString();
+          accept(
+              fileName.substring(
+                  0, fileName.length() - SharedMemoryDataChannel.REQUEST_SUFFIX.length()));
+        }
+      } catch (IOException | DirectoryIteratorException e) {
+        if (closed) {
+          return;
+        }
+        // Keep accepting channels, the directory may only be unavailable temporarily.
+        LOG.warn("Failed to accept shared memory data channels in {}", directory, e);
+        sleepMillis = RETRY_MILLIS;
+      }
+      try {
+        Thread.sleep(sleepMillis);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        return;
+      }
+    }
+  }
+
+  private void accept(String id) {
+    try {
+      SharedMemoryDataChannel channel = SharedMemoryDataChannel.accept(directory, id);
+      if (channel == null) {
+        return;
+      }
+      synchronized (channels) {
+        if (closed) {
+          channel.close();
+          return;
+        }
+        channels.add(channel);
+      }
+      channel.setOnClose(
+          () -> {
+            synchronized (channels) {
+              channels.remove(channel);
+            }
+          });
+      LOG.info("Accepted shared memory data channel {}", id);
+      channel.start(service.outboundObserverFor(channel.getOutboundObserver()));
+    } catch (IOException e) {
+      LOG.warn("Failed to accept shared memory data channel {} in {}", id, directory, e);
+      try {
+        // Rejects the request, so that the client falls back to gRPC.
+        Files.deleteIfExists(directory.resolve(id + SharedMemoryDataChannel.REQUEST_SUFFIX));
+      } catch (IOException deleteException) {
+        LOG.warn("Failed to reject shared memory data channel {}", id, deleteException);
+      }
+    }
+  }
+
+  /** Returns the number of accepted channels which did not close yet. */
+  @VisibleForTesting
+  int getNumChannels() {
+    synchronized (channels) {
+      return channels.size();
+    }
+  }
+
+  /** Stops accepting channels, closes the accepted channels and deletes the directory. */
+  @Override
+  public void close() throws IOException {
+    closed = true;
+    List<SharedMemoryDataChannel> accepted;
+    synchronized (channels) {
+      accepted = new ArrayList<>(channels);
+      channels.clear();
+    }
+    for (SharedMemoryDataChannel channel : accepted) {
+      channel.close();
+    }
+    try (DirectoryStream<Path> files = Files.newDirectoryStream(directory)) {
+      for (Path file : files) {
+        Files.deleteIfExists(file);
+      }
+    }
+    Files.deleteIfExists(directory);
+  }
+}
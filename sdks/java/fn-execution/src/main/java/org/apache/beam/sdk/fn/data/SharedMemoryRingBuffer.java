@@ -0,0 +1,339 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.beam.sdk.fn.data;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+import org.apache.beam.vendor.guava.v26_0_jre.com.google.common.base.Preconditions;
+
+/**
+ * A single producer, single consumer ring buffer of bytes in a memory mapped file, through which a
+ * writer and a reader in different processes on the same host can stream bytes to each other.
+ *
+ * <p>The file starts with a header holding the total number of bytes written and read so far, and
+ * whether the writer completed or failed and whether the reader closed, each written by only one
+ * side. The writer copies bytes into the free space of the ring and then publishes the new write
+ * position, and the reader copies bytes out and then publishes the new read position. Either side
+ * spins, yields and then parks while it waits for the other. The other side may be in a different
+ * process, so it cannot wake a parked thread; instead the parks grow longer the longer the wait
+ * lasts, so that an idle stream costs little CPU while a busy one has little latency.
+ *
+ * <p>Each side holds an exclusive lock on its own byte of the header for as long as it has the ring
+ * buffer open. The operating system releases the lock when a process exits, so a side which waits
+ * for a long time checks whether the lock of the other side can be taken, and fails the wait if so
+ * rather than waiting forever on a process which died without completing or closing.
+ *
+ * <p>At most one thread may write and at most one thread may read at a time.
+ */
+public class SharedMemoryRingBuffer implements AutoCloseable {
+  private static final int MAGIC = 0x4245414d;
+  private static final int MAGIC_OFFSET = 0;
+  private static final int CAPACITY_OFFSET = 4;
+  // The bytes locked by the side which created and the side which opened the ring buffer.
+  private static final int CREATOR_LOCK_OFFSET = 8;
+  private static final int OPENER_LOCK_OFFSET = 9;
+  // The fields written by the writer and by the reader are on separate cache lines.
+  private static final int WRITE_POSITION_OFFSET = 64;
+  private static final int WRITER_STATE_OFFSET = 72;
+  private static final int READ_POSITION_OFFSET = 128;
+  private static final int READER_STATE_OFFSET = 136;
+  private static final int HEADER_SIZE = 192;
+
+  private static final int OPEN = 0;
+  private static final int COMPLETED = 1;
+  private static final int FAILED = 2;
+  private static final int CLOSED = 1;
+
+  private static final int SPIN_TRIES = 1000;
+  private static final int YIELD_TRIES = 100;
+  private static final long MIN_PARK_NANOS = 50_000;
+  private static final long MAX_PARK_NANOS = 10_000_000;
+  // The number of parks between checks whether the other side is still alive, about a second.
+  private static final int PEER_CHECK_PARKS = 100;
+
+  /** Creates a ring buffer holding up to {@code capacity} bytes in a new file. */
+  public static SharedMemoryRingBuffer create(Path file, int capacity) throws IOException {
+    Preconditions.checkArgument(capacity > 0, "capacity must be positive, but was %s", capacity);
+    FileChannel channel =
+        FileChannel.open(
+            file, StandardOpenOption.CREATE_NEW, StandardOpenOption.READ, StandardOpenOption.WRITE);
+    try {
+      lock(channel, CREATOR_LOCK_OFFSET, file);
+      MappedByteBuffer buffer = channel.map(MapMode.READ_WRITE, 0, HEADER_SIZE + (long) capacity);
+      buffer.putInt(CAPACITY_OFFSET, capacity);
+      buffer.putInt(MAGIC_OFFSET, MAGIC);
+      return new SharedMemoryRingBuffer(file, channel, buffer, capacity, OPENER_LOCK_OFFSET);
+    } catch (IOException | RuntimeException e) {
+      channel.close();
+      throw e;
+    }
+  }
+
+  /** Opens a ring buffer created in {@code file} by {@link #create}. */
+  public static SharedMemoryRingBuffer open(Path file) throws IOException {
+    FileChannel channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE);
+    try {
+      long size = channel.size();
+      if (size < HEADER_SIZE) {
+        throw new IOException(String.format("%s is not a ring buffer", file));
+      }
+      MappedByteBuffer buffer = channel.map(MapMode.READ_WRITE, 0, size);
+      int capacity = buffer.getInt(CAPACITY_OFFSET);
+      if (buffer.getInt(MAGIC_OFFSET) != MAGIC
+          || HEADER_SIZE + (long) capacity != buffer.capacity()) {
+        throw new IOException(String.format("%s is not a ring buffer", file));
+      }
+      lock(channel, OPENER_LOCK_OFFSET, file);
+      return new SharedMemoryRingBuffer(file, channel, buffer, capacity, CREATOR_LOCK_OFFSET);
+    } catch (IOException | RuntimeException e) {
+      channel.close();
+      throw e;
+    }
+  }
+
+  private static void lock(FileChannel channel, int offset, Path file) throws IOException {
+    if (channel.tryLock(offset, 1, false) == null) {
+      throw new IOException(String.format("%s is already open", file));
+    }
+  }
+
+  private final Path file;
+  /** Kept open to hold the lock of this side, which signals the other side that it is alive. */
+  private final FileChannel channel;
+
+  private final MappedByteBuffer buffer;
+  private final int capacity;
+  // Separate views of the ring for the writer and the reader, as they move their positions.
+  private final ByteBuffer writeView;
+  private final ByteBuffer readView;
+  /** Accessed only to order the accesses to the mapped buffer around it. */
+  private final AtomicInteger fence = new AtomicInteger();
+
+  private final int peerLockOffset;
+
+  private volatile boolean closed;
+  private volatile boolean peerExited;
+
+  private SharedMemoryRingBuffer(
+      Path file, FileChannel channel, MappedByteBuffer buffer, int capacity, int peerLockOffset) {
+    this.file = file;
+    this.channel = channel;
+    this.buffer = buffer;
+    this.capacity = capacity;
+    this.peerLockOffset = peerLockOffset;
+    buffer.position(HEADER_SIZE);
+    ByteBuffer ring = buffer.slice();
+    this.writeView = ring.duplicate();
+    this.readView = ring.duplicate();
+  }
+
+  /** Returns the file backing this ring buffer. */
+  public Path getFile() {
+    return file;
+  }
+
+  /** Returns the number of bytes the ring buffer holds at most. */
+  public int getCapacity() {
+    return capacity;
+  }
+
+  /**
+   * Writes {@code length} bytes, waiting for the reader to free up space as necessary.
+   *
+   * @throws IOException if the reader closed or exited, or this ring buffer was closed while
+   *     waiting
+   */
+  public void write(byte[] bytes, int offset, int length) throws IOException {
+    Preconditions.checkState(
+        buffer.getInt(WRITER_STATE_OFFSET) == OPEN, "Cannot write after completing the writer");
+    long writePosition = buffer.getLong(WRITE_POSITION_OFFSET);
+    while (length > 0) {
+      int free = 0;
+      for (int attempt = 0; ; attempt++) {
+        free = capacity - (int) (writePosition - getPeerLong(READ_POSITION_OFFSET));
+        if (free > 0) {
+          break;
+        }
+        if (buffer.getInt(READER_STATE_OFFSET) == CLOSED) {
+          throw new IOException(String.format("The reader of %s closed", file));
+        }
+        idle(attempt);
+      }
+      int index = (int) (writePosition % capacity);
+      int chunk = Math.min(length, Math.min(free, capacity - index));
+      writeView.position(index);
+      writeView.put(bytes, offset, chunk);
+      offset += chunk;
+      length -= chunk;
+      writePosition += chunk;
+      putPublishedLong(WRITE_POSITION_OFFSET, writePosition);
+    }
+  }
+
+  /**
+   * Reads exactly {@code length} bytes, waiting for the writer as necessary.
+   *
+   * @return {@code false} if the writer completed before writing any more bytes
+   * @throws EOFException if the writer completed after writing only some of the bytes
+   * @throws IOException if the writer failed or exited, or this ring buffer was closed while
+   *     waiting
+   */
+  public boolean read(byte[] bytes, int offset, int length) throws IOException {
+    long readPosition = buffer.getLong(READ_POSITION_OFFSET);
+    int remaining = length;
+    while (remaining > 0) {
+      int available = 0;
+      for (int attempt = 0; ; attempt++) {
+        available = (int) (getPeerLong(WRITE_POSITION_OFFSET) - readPosition);
+        if (available > 0) {
+          break;
+        }
+        int writerState = buffer.getInt(WRITER_STATE_OFFSET);
+        if (writerState == FAILED) {
+          throw new IOException(String.format("The writer of %s failed", file));
+        } else if (writerState == COMPLETED
+            && getPeerLong(WRITE_POSITION_OFFSET) == readPosition) {
+          if (remaining == length) {
+            return false;
+          }
+          throw new EOFException(
+              String.format("The writer of %s completed in the middle of a message", file));
+        }
+        idle(attempt);
+      }
+      int index = (int) (readPosition % capacity);
+      int chunk = Math.min(remaining, Math.min(available, capacity - index));
+      readView.position(index);
+      readView.get(bytes, offset, chunk);
+      offset += chunk;
+      remaining -= chunk;
+      readPosition += chunk;
+      putPublishedLong(READ_POSITION_OFFSET, readPosition);
+    }
+    return true;
+  }
+
+  /** Signals the reader that no more bytes will be written. */
+  public void complete() {
+    setState(WRITER_STATE_OFFSET, COMPLETED);
+  }
+
+  /** Signals the reader that no more bytes will be written because the writer failed. */
+  public void fail() {
+    setState(WRITER_STATE_OFFSET, FAILED);
+  }
+
+  /** Signals the writer that no more bytes will be read. */
+  public void closeReader() {
+    setState(READER_STATE_OFFSET, CLOSED);
+  }
+
+  /** Stops any wait of this process for the other side, and releases the lock of this side. */
+  @Override
+  public void close() {
+    closed = true;
+    try {
+      channel.close();
+    } catch (IOException e) {
+      // The lock is released along with the process in any case.
+    }
+  }
+
+  /** Returns whether the other side still holds its lock. */
+  private boolean isPeerAlive() throws IOException {
+    FileLock peerLock;
+    try {
+      peerLock = channel.tryLock(peerLockOffset, 1, false);
+    } catch (OverlappingFileLockException e) {
+      // The other side is within this process and holds its lock.
+      return true;
+    }
+    if (peerLock == null) {
+      return true;
+    }
+    peerLock.release();
+    return false;
+  }
+
+  private void setState(int offset, int state) {
+    fence.incrementAndGet();
+    if (buffer.getInt(offset) == OPEN) {
+      buffer.putInt(offset, state);
+    }
+    fence.incrementAndGet();
+  }
+
+  /**
+   * Reads a position published by the other side. The fence orders the read before the reads of
+   * the bytes it covers.
+   */
+  private long getPeerLong(int offset) {
+    long value = buffer.getLong(offset);
+    fence.incrementAndGet();
+    return value;
+  }
+
+  /**
+   * Publishes a position to the other side. The fence orders the accesses to the bytes it covers
+   * before the write.
+   */
+  private void putPublishedLong(int offset, long value) {
+    fence.incrementAndGet();
+    buffer.putLong(offset, value);
+  }
+
+  private void idle(int attempt) throws IOException {
+    if (closed) {
+      throw new IOException(String.format("%s was closed", file));
+    }
+    // Only fails once the positions and states were checked again after noticing the exit, so that
+    // a side which completed or closed right before it exited is not reported as failed.
+    if (peerExited) {
+      throw new IOException(String.format("The other side of %s exited", file));
+    }
+    if (attempt < SPIN_TRIES) {
+      return;
+    } else if (attempt < SPIN_TRIES + YIELD_TRIES) {
+      Thread.yield();
+    } else {
+      int parks = attempt - SPIN_TRIES - YIELD_TRIES;
+      if (parks > 0 && parks % PEER_CHECK_PARKS == 0 && !isPeerAlive()) {
+        peerExited = true;
+        return;
+      }
+      // Doubles the park on every attempt, up to the maximum.
+      int doublings = Math.min(parks, 20);
+      LockSupport.parkNanos(Math.min(MIN_PARK_NANOS << doublings, MAX_PARK_NANOS));
+      if (Thread.interrupted()) {
+        Thread.currentThread().interrupt();
+        throw new InterruptedIOException(String.format("Interrupted waiting on %s", file));
+      }
+    }
+  }
+}
@@ -99,6 +99,14 @@ public final class DirectStreamObserver<T> implements StreamObserver<T> {
     }
   }
 
+  /**
+   * Returns whether the underlying {@link CallStreamObserver} can accept more messages without
+   * waiting.
+   */
+  public boolean isReady() {
+    return outboundObserver.isReady();
+  }
+
   @Override
   public void onError(Throwable t) {
     synchronized (outboundObserver) {
@@ -0,0 +1,292 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.beam.sdk.fn.data;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.empty;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.instanceOf;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import org.apache.beam.model.fnexecution.v1.BeamFnApi.Elements;
+import org.apache.beam.sdk.coders.ByteArrayCoder;
+import org.apache.beam.sdk.coders.Coder;
+import org.apache.beam.sdk.coders.LengthPrefixCoder;
+import org.apache.beam.sdk.fn.data.BeamFnDataAdaptiveBufferingOutboundObserver.FlushCause;
+import org.apache.beam.sdk.fn.test.TestStreams;
+import org.apache.beam.sdk.metrics.Distribution;
+import org.apache.beam.sdk.metrics.Gauge;
+import org.apache.beam.sdk.options.ExperimentalOptions;
+import org.apache.beam.sdk.options.PipelineOptions;
+import org.apache.beam.sdk.options.PipelineOptionsFactory;
+import org.apache.beam.vendor.grpc.v1p36p0.com.google.protobuf.ByteString;
+import org.apache.beam.vendor.grpc.v1p36p0.io.grpc.stub.StreamObserver;
+import org.apache.beam.vendor.guava.v26_0_jre.com.google.common.collect.ImmutableMap;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+import org.junit.runners.Parameterized.Parameters;
+
+/** Tests for {@link BeamFnDataAdaptiveBufferingOutboundObserver}. */
+@RunWith(Parameterized.class)
+public class BeamFnDataAdaptiveBufferingOutboundObserverTest {
+  private static final LogicalEndpoint DATA_OUTPUT_LOCATION = LogicalEndpoint.data("777L", "555L");
+  private static final LogicalEndpoint TIMER_OUTPUT_LOCATION =
+      LogicalEndpoint.timer("999L", "333L", "111L");
+  private static final Coder<byte[]> CODER = LengthPrefixCoder.of(ByteArrayCoder.of());
+
+  @Parameters
+  public static Collection<LogicalEndpoint> data() {
+    return Arrays.asList(DATA_OUTPUT_LOCATION, TIMER_OUTPUT_LOCATION);
+  }
+
+  private final LogicalEndpoint endpoint;
+
+  public BeamFnDataAdaptiveBufferingOutboundObserverTest(LogicalEndpoint endpoint) {
+    this.endpoint = endpoint;
+  }
+
+  @Test
+  public void testSmallElementsFlushAtMinimumSize() throws Exception {
+    List<Elements> values = new ArrayList<>();
+    BeamFnDataAdaptiveBufferingOutboundObserver<byte[]> consumer =
+        createObserver(
+            options(200, 10_000),
+            TestStreams.<Elements>withOnNext(values::add).build(),
+            BeamFnDataOutboundBufferPool.getDefault());
+
+    // Each element is encoded as a single byte, so the threshold stays at the minimum.
+    for (int i = 0; i < 199; i++) {
+      consumer.accept(new byte[0]);
+    }
+    assertThat(values, empty());
+    consumer.accept(new byte[0]);
+    assertEquals(1, values.size());
+    assertEquals(200, dataOf(values.get(0)).size());
+    assertEquals(200, consumer.getFlushThreshold());
+
+    consumer.accept(new byte[0]);
+    consumer.close();
+    assertEquals(endMessage(new byte[0]), values.get(1));
+  }
+
+  @Test
+  public void testThresholdFollowsBackpressure() throws Exception {
+    List<Elements> values = new ArrayList<>();
+    AtomicBoolean ready = new AtomicBoolean(false);
+    BeamFnDataAdaptiveBufferingOutboundObserver<byte[]> consumer =
+        createObserver(
+            options(200, 1000),
+            TestStreams.<Elements>withOnNext(values::add).withIsReady(ready::get).build(),
+            BeamFnDataOutboundBufferPool.getDefault());
+
+    // The threshold doubles after each flush while the stream is not ready, up to the maximum.
+    for (int expectedThreshold : new int[] {400, 800, 1000, 1000}) {
+      flushOnce(consumer, values);
+      assertEquals(expectedThreshold, consumer.getFlushThreshold());
+    }
+
+    // The threshold halves after each flush once the stream is ready, down to the minimum.
+    ready.set(true);
+    for (int expectedThreshold : new int[] {500, 250, 200, 200}) {
+      flushOnce(consumer, values);
+      assertEquals(expectedThreshold, consumer.getFlushThreshold());
+    }
+    consumer.close();
+  }
+
+  @Test
+  public void testLargeElementsRaiseThreshold() throws Exception {
+    List<Elements> values = new ArrayList<>();
+    BeamFnDataAdaptiveBufferingOutboundObserver<byte[]> consumer =
+        createObserver(
+            options(100, 100_000),
+            TestStreams.<Elements>withOnNext(values::add).build(),
+            BeamFnDataOutboundBufferPool.getDefault());
+
+    // Each element is encoded as 100 bytes, so the threshold tends to the size of the target
+    // number of elements per flush.
+    for (int i = 0; i < 1000; i++) {
+      consumer.accept(new byte[99]);
+    }
+    int targetElements = BeamFnDataAdaptiveBufferingOutboundObserver.TARGET_ELEMENTS_PER_FLUSH;
+    assertThat(consumer.getFlushThreshold(), greaterThan(90 * targetElements));
+    assertThat(consumer.getFlushThreshold(), lessThanOrEqualTo(100 * targetElements));
+    for (Elements value : values) {
+      assertThat(dataOf(value).size(), lessThanOrEqualTo(100_000));
+    }
+    consumer.close();
+  }
+
+  @Test
+  public void testBuffersAreReusedAndFlushesReported() throws Exception {
+    Gauge pooledBytes = mock(Gauge.class);
+    Distribution sizeFlushes = mock(Distribution.class);
+    Distribution closeFlushes = mock(Distribution.class);
+    BeamFnDataOutboundBufferPool pool =
+        BeamFnDataOutboundBufferPool.create(
+            1 << 20,
+            pooledBytes,
+            ImmutableMap.of(FlushCause.SIZE, sizeFlushes, FlushCause.CLOSE, closeFlushes));
+    List<Elements> values = new ArrayList<>();
+
+    BeamFnDataAdaptiveBufferingOutboundObserver<byte[]> first =
+        createObserver(options(200, 1000), TestStreams.withOnNext(values::add).build(), pool);
+    first.accept(new byte[198]);
+    first.accept(new byte[9]);
+    first.close();
+    verify(sizeFlushes).update(200);
+    verify(closeFlushes).update(10);
+    long releasedBytes = pool.getPooledBytes();
+    assertThat(releasedBytes, greaterThan(0L));
+    verify(pooledBytes).set(releasedBytes);
+
+    BeamFnDataAdaptiveBufferingOutboundObserver<byte[]> second =
+        createObserver(options(200, 1000), TestStreams.withOnNext(values::add).build(), pool);
+    second.accept(new byte[9]);
+    assertEquals(0, pool.getPooledBytes());
+    verify(pooledBytes).set(0L);
+    second.close();
+    assertEquals(releasedBytes, pool.getPooledBytes());
+    verify(pooledBytes, times(2)).set(releasedBytes);
+  }
+
+  @Test
+  public void testTimeLimit() throws Exception {
+    PipelineOptions options =
+        options(200, 1000, BeamFnDataBufferingOutboundObserver.DATA_BUFFER_TIME_LIMIT_MS + "1");
+    List<Elements> values = new ArrayList<>();
+    CountDownLatch flushed = new CountDownLatch(1);
+    BeamFnDataAdaptiveBufferingOutboundObserver<byte[]> consumer =
+        createObserver(
+            options,
+            TestStreams.<Elements>withOnNext(
+                    value -> {
+                      synchronized (values) {
+                        values.add(value);
+                      }
+                      flushed.countDown();
+                    })
+                .build(),
+            BeamFnDataOutboundBufferPool.getDefault());
+
+    consumer.accept(new byte[1]);
+    assertTrue(flushed.await(10, TimeUnit.SECONDS));
+    synchronized (values) {
+      assertEquals(messageWithData(new byte[1]), values.get(0));
+    }
+    consumer.close();
+  }
+
+  private void flushOnce(
+      BeamFnDataAdaptiveBufferingOutboundObserver<byte[]> consumer, List<Elements> values)
+      throws IOException {
+    int flushes = values.size();
+    while (values.size() == flushes) {
+      consumer.accept(new byte[0]);
+    }
+  }
+
+  private static PipelineOptions options(int minSize, int sizeLimit, String... experiments) {
+    List<String> allExperiments =
+        new ArrayList<>(
+            Arrays.asList(
+                BeamFnDataBufferingOutboundObserver.DATA_BUFFER_ADAPTIVE,
+                BeamFnDataBufferingOutboundObserver.DATA_BUFFER_MIN_SIZE + minSize,
+                BeamFnDataBufferingOutboundObserver.DATA_BUFFER_SIZE_LIMIT + sizeLimit));
+    allExperiments.addAll(Arrays.asList(experiments));
+    PipelineOptions options = PipelineOptionsFactory.create();
+    options.as(ExperimentalOptions.class).setExperiments(allExperiments);
+    return options;
+  }
+
+  private BeamFnDataAdaptiveBufferingOutboundObserver<byte[]> createObserver(
+      PipelineOptions options,
+      StreamObserver<Elements> outboundObserver,
+      BeamFnDataOutboundBufferPool pool) {
+    BeamFnDataBufferingOutboundObserver<byte[]> consumer =
+        BeamFnDataBufferingOutboundObserver.forLocation(
+            options, endpoint, CODER, outboundObserver, pool);
+    assertThat(consumer, instanceOf(BeamFnDataAdaptiveBufferingOutboundObserver.class));
+    return (BeamFnDataAdaptiveBufferingOutboundObserver<byte[]>) consumer;
+  }
+
+  private ByteString dataOf(Elements elements) {
+    return endpoint.isTimer() ? elements.getTimers(0).getTimers() : elements.getData(0).getData();
+  }
+
+  private Elements.Builder messageWithDataBuilder(byte[]... datum) throws IOException {
+    ByteString.Output output = ByteString.newOutput();
+    for (byte[] data : datum) {
+      CODER.encode(data, output);
+    }
+    if (endpoint.isTimer()) {
+      return Elements.newBuilder()
+          .addTimers(
+              Elements.Timers.newBuilder()
+                  .setInstructionId(endpoint.getInstructionId())
+                  .setTransformId(endpoint.getTransformId())
+                  .setTimerFamilyId(endpoint.getTimerFamilyId())
+                  .setTimers(output.toByteString()));
+    } else {
+      return Elements.newBuilder()
+          .addData(
+              Elements.Data.newBuilder()
+                  .setInstructionId(endpoint.getInstructionId())
+                  .setTransformId(endpoint.getTransformId())
+                  .setData(output.toByteString()));
+    }
+  }
+
+  private Elements messageWithData(byte[]... datum) throws IOException {
+    return messageWithDataBuilder(datum).build();
+  }
+
+  /** The message sent when closing with the given elements buffered. */
+  private Elements endMessage(byte[]... datum) throws IOException {
+    Elements.Builder builder = messageWithDataBuilder(datum);
+    if (endpoint.isTimer()) {
+      builder.addTimers(
+          Elements.Timers.newBuilder()
+              .setInstructionId(endpoint.getInstructionId())
+              .setTransformId(endpoint.getTransformId())
+              .setTimerFamilyId(endpoint.getTimerFamilyId())
+              .setIsLast(true));
+    } else {
+      builder.addData(
+          Elements.Data.newBuilder()
+              .setInstructionId(endpoint.getInstructionId())
+              .setTransformId(endpoint.getTransformId())
+              .setIsLast(true));
+    }
+    return builder.build();
+  }
+}
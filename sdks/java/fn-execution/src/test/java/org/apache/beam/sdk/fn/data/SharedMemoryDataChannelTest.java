@@ -0,0 +1,201 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.beam.sdk.fn.data;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.empty;
+import static org.hamcrest.Matchers.instanceOf;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import org.apache.beam.model.fnexecution.v1.BeamFnApi.Elements;
+import org.apache.beam.model.pipeline.v1.Endpoints;
+import org.apache.beam.sdk.fn.test.TestStreams;
+import org.apache.beam.vendor.grpc.v1p36p0.com.google.protobuf.ByteString;
+import org.apache.beam.vendor.grpc.v1p36p0.io.grpc.stub.StreamObserver;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** Tests for {@link SharedMemoryDataChannel} and {@link SharedMemoryDataServer}. */
+@RunWith(JUnit4.class)
+public class SharedMemoryDataChannelTest {
+  @Rule public TemporaryFolder tempFolder = new TemporaryFolder();
+
+  @Test
+  public void testDirectoryFor() {
+    Path directory =
+        SharedMemoryDataChannel.directoryFor(
+            Endpoints.ApiServiceDescriptor.newBuilder().setUrl("localhost:12345").build());
+    assertEquals("localhost_12345", String.valueOf(directory.getFileName()));
+  }
+
+  @Test
+  public void testEcho() throws Exception {
+    Path directory = tempFolder.getRoot().toPath().resolve("data");
+    try (SharedMemoryDataServer server =
+        SharedMemoryDataServer.create(
+            directory,
+            outboundObserver ->
+                TestStreams.withOnNext(outboundObserver::onNext)
+                    .withOnCompleted(outboundObserver::onCompleted)
+                    .build())) {
+      // Messages larger than the ring buffers are streamed through them.
+      SharedMemoryDataChannel channel = SharedMemoryDataChannel.connect(directory, 1000, 10_000);
+      assertNotNull(channel);
+
+      List<Elements> received = new ArrayList<>();
+      CountDownLatch completed = new CountDownLatch(1);
+      StreamObserver<Elements> outboundObserver =
+          channel.connect(
+              TestStreams.withOnNext(
+                      (Elements elements) -> {
+                        synchronized (received) {
+                          received.add(elements);
+                        }
+                      })
+                  .withOnCompleted(completed::countDown)
+                  .build());
+      List<Elements> sent = new ArrayList<>();
+      for (int i = 0; i < 100; i++) {
+        Elements elements =
+            Elements.newBuilder()
+                .addData(
+                    Elements.Data.newBuilder()
+                        .setInstructionId("instruction" + i)
+                        .setTransformId("transform")
+                        .setData(ByteString.copyFrom(new byte[i * 50])))
+                .build();
+        sent.add(elements);
+        outboundObserver.onNext(elements);
+      }
+      outboundObserver.onCompleted();
+
+      assertTrue(completed.await(1, TimeUnit.MINUTES));
+      synchronized (received) {
+        assertEquals(sent, received);
+      }
+      // The files of the channel are deleted once both sides mapped them.
+      assertThat(listFiles(directory), empty());
+      // The server releases the channel once both of its streams ended.
+      for (int i = 0; i < 600 && server.getNumChannels() > 0; i++) {
+        Thread.sleep(100);
+      }
+      assertEquals(0, server.getNumChannels());
+    }
+    assertFalse(Files.exists(directory));
+  }
+
+  @Test
+  public void testNotOfferedFallsBack() throws Exception {
+    assertNull(SharedMemoryDataChannel.connect(tempFolder.getRoot().toPath().resolve("missing")));
+  }
+
+  @Test
+  public void testNotAcceptedFallsBack() throws Exception {
+    Path directory = tempFolder.newFolder("idle").toPath();
+    assertNull(SharedMemoryDataChannel.connect(directory, 1000, 100));
+    assertThat(listFiles(directory), empty());
+  }
+
+  @Test
+  public void testRejectedFallsBackBeforeTimeout() throws Exception {
+    Path directory = tempFolder.newFolder("rejecting").toPath();
+    // Claims each request and then rejects it, like a server which fails to open the ring buffers.
+    Thread rejector =
+        new Thread(
+            () -> {
+              try {
+                while (!Thread.currentThread().isInterrupted()) {
+                  for (Path file : listFiles(directory)) {
+                    String fileName = file.getFileName().toString();
+                    if (fileName.endsWith(SharedMemoryDataChannel.REQUEST_SUFFIX)) {
+                      Path claimed =
+                          file.resolveSibling(
+                              fileName.replace(
+                                  SharedMemoryDataChannel.REQUEST_SUFFIX,
+                                  SharedMemoryDataChannel.CLAIMED_SUFFIX));
+                      Files.move(file, claimed);
+                      Files.delete(claimed);
+                    }
+                  }
+                  Thread.sleep(1);
+                }
+              } catch (IOException | InterruptedException e) {
+                // Stops rejecting.
+              }
+            });
+    rejector.setDaemon(true);
+    rejector.start();
+    try {
+      long start = System.currentTimeMillis();
+      assertNull(SharedMemoryDataChannel.connect(directory, 1000, 60_000));
+      assertTrue(System.currentTimeMillis() - start < 30_000);
+      assertThat(listFiles(directory), empty());
+    } finally {
+      rejector.interrupt();
+    }
+  }
+
+  @Test
+  public void testCloseFailsPeer() throws Exception {
+    Path directory = tempFolder.getRoot().toPath().resolve("data");
+    List<Throwable> errors = new ArrayList<>();
+    CountDownLatch failed = new CountDownLatch(1);
+    try (SharedMemoryDataServer server =
+        SharedMemoryDataServer.create(
+            directory,
+            outboundObserver ->
+                TestStreams.withOnNext((Elements elements) -> {})
+                    .withOnError(
+                        (Throwable t) -> {
+                          errors.add(t);
+                          failed.countDown();
+                        })
+                    .build())) {
+      SharedMemoryDataChannel channel = SharedMemoryDataChannel.connect(directory);
+      assertNotNull(channel);
+      channel.connect(TestStreams.withOnNext((Elements elements) -> {}).build());
+      channel.close();
+
+      assertTrue(failed.await(1, TimeUnit.MINUTES));
+      assertThat(errors, contains(instanceOf(IOException.class)));
+    }
+  }
+
+  private static List<Path> listFiles(Path directory) throws IOException {
+    try (Stream<Path> files = Files.list(directory)) {
+      return files.collect(Collectors.toList());
+    }
+  }
+}
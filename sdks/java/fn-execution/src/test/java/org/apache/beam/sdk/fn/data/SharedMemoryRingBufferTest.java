@@ -0,0 +1,180 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.beam.sdk.fn.data;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** Tests for {@link SharedMemoryRingBuffer}. */
+@RunWith(JUnit4.class)
+public class SharedMemoryRingBufferTest {
+  @Rule public TemporaryFolder tempFolder = new TemporaryFolder();
+  @Rule public ExpectedException thrown = ExpectedException.none();
+
+  private ExecutorService executor;
+  private Path file;
+
+  @Before
+  public void setUp() {
+    executor = Executors.newSingleThreadExecutor();
+    file = tempFolder.getRoot().toPath().resolve("ring");
+  }
+
+  @After
+  public void tearDown() {
+    executor.shutdownNow();
+  }
+
+  @Test
+  public void testOpen() throws Exception {
+    SharedMemoryRingBuffer.create(file, 100);
+    assertEquals(100, SharedMemoryRingBuffer.open(file).getCapacity());
+  }
+
+  @Test
+  public void testOpenInvalidFile() throws Exception {
+    Files.write(file, new byte[1000]);
+    thrown.expect(IOException.class);
+    thrown.expectMessage("is not a ring buffer");
+    SharedMemoryRingBuffer.open(file);
+  }
+
+  @Test
+  public void testWriteAndReadMoreThanCapacity() throws Exception {
+    SharedMemoryRingBuffer writer = SharedMemoryRingBuffer.create(file, 1000);
+    SharedMemoryRingBuffer reader = SharedMemoryRingBuffer.open(file);
+    byte[] bytes = new byte[1 << 20];
+    new Random(0).nextBytes(bytes);
+    Future<?> writes =
+        executor.submit(
+            () -> {
+              Random random = new Random(1);
+              for (int offset = 0; offset < bytes.length; ) {
+                int length = Math.min(bytes.length - offset, 1 + random.nextInt(3000));
+                writer.write(bytes, offset, length);
+                offset += length;
+              }
+              writer.complete();
+              return null;
+            });
+
+    byte[] read = new byte[bytes.length];
+    Random random = new Random(2);
+    for (int offset = 0; offset < read.length; ) {
+      int length = Math.min(read.length - offset, 1 + random.nextInt(2500));
+      assertTrue(reader.read(read, offset, length));
+      offset += length;
+    }
+    assertFalse(reader.read(new byte[1], 0, 1));
+    writes.get();
+    assertArrayEquals(bytes, read);
+  }
+
+  @Test
+  public void testReadAfterWriterFailed() throws Exception {
+    SharedMemoryRingBuffer writer = SharedMemoryRingBuffer.create(file, 16);
+    SharedMemoryRingBuffer reader = SharedMemoryRingBuffer.open(file);
+    writer.write(new byte[] {1, 2, 3}, 0, 3);
+    writer.fail();
+
+    byte[] read = new byte[3];
+    assertTrue(reader.read(read, 0, 3));
+    assertArrayEquals(new byte[] {1, 2, 3}, read);
+    thrown.expect(IOException.class);
+    thrown.expectMessage("failed");
+    reader.read(read, 0, 1);
+  }
+
+  @Test
+  public void testWriterCompletedInTheMiddleOfARead() throws Exception {
+    SharedMemoryRingBuffer writer = SharedMemoryRingBuffer.create(file, 16);
+    SharedMemoryRingBuffer reader = SharedMemoryRingBuffer.open(file);
+    writer.write(new byte[2], 0, 2);
+    writer.complete();
+
+    thrown.expect(EOFException.class);
+    reader.read(new byte[3], 0, 3);
+  }
+
+  @Test
+  public void testWriteAfterReaderClosed() throws Exception {
+    SharedMemoryRingBuffer writer = SharedMemoryRingBuffer.create(file, 16);
+    SharedMemoryRingBuffer.open(file).closeReader();
+
+    writer.write(new byte[16], 0, 16);
+    thrown.expect(IOException.class);
+    thrown.expectMessage("closed");
+    writer.write(new byte[1], 0, 1);
+  }
+
+  @Test
+  public void testCloseStopsWaiting() throws Exception {
+    SharedMemoryRingBuffer.create(file, 16);
+    SharedMemoryRingBuffer reader = SharedMemoryRingBuffer.open(file);
+    Future<Boolean> read = executor.submit(() -> reader.read(new byte[1], 0, 1));
+    reader.close();
+
+    thrown.expectMessage("was closed");
+    read.get();
+  }
+
+  @Test
+  public void testPeerExitFailsWaiting() throws Exception {
+    SharedMemoryRingBuffer writer = SharedMemoryRingBuffer.create(file, 16);
+    SharedMemoryRingBuffer reader = SharedMemoryRingBuffer.open(file);
+    // Closing releases the lock of the writer like its process exiting, without completing.
+    writer.close();
+
+    thrown.expect(IOException.class);
+    thrown.expectMessage("exited");
+    reader.read(new byte[1], 0, 1);
+  }
+
+  @Test
+  public void testPeerExitAfterCompletingIsNotAFailure() throws Exception {
+    SharedMemoryRingBuffer writer = SharedMemoryRingBuffer.create(file, 16);
+    SharedMemoryRingBuffer reader = SharedMemoryRingBuffer.open(file);
+    writer.write(new byte[] {1}, 0, 1);
+    writer.complete();
+    writer.close();
+
+    byte[] bytes = new byte[1];
+    assertTrue(reader.read(bytes, 0, 1));
+    assertEquals(1, bytes[0]);
+    assertFalse(reader.read(bytes, 0, 1));
+  }
+}
@@ -0,0 +1,278 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.beam.fn.harness;
+
+import static org.apache.beam.sdk.util.WindowedValue.valueInGlobalWindow;
+import static org.apache.beam.vendor.guava.v26_0_jre.com.google.common.base.Preconditions.checkState;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import org.apache.beam.model.fnexecution.v1.BeamFnApi.LogEntry;
+import org.apache.beam.model.pipeline.v1.Endpoints.ApiServiceDescriptor;
+import org.apache.beam.model.pipeline.v1.RunnerApi;
+import org.apache.beam.runners.core.construction.PipelineOptionsTranslation;
+import org.apache.beam.runners.core.construction.PipelineTranslation;
+import org.apache.beam.runners.core.construction.graph.ExecutableStage;
+import org.apache.beam.runners.core.construction.graph.FusedPipeline;
+import org.apache.beam.runners.core.construction.graph.GreedyPipelineFuser;
+import org.apache.beam.runners.fnexecution.control.BundleProgressHandler;
+import org.apache.beam.runners.fnexecution.control.ControlClientPool;
+import org.apache.beam.runners.fnexecution.control.FnApiControlClientPoolService;
+import org.apache.beam.runners.fnexecution.control.InstructionRequestHandler;
+import org.apache.beam.runners.fnexecution.control.MapControlClientPool;
+import org.apache.beam.runners.fnexecution.control.ProcessBundleDescriptors;
+import org.apache.beam.runners.fnexecution.control.ProcessBundleDescriptors.ExecutableProcessBundleDescriptor;
+import org.apache.beam.runners.fnexecution.control.RemoteBundle;
+import org.apache.beam.runners.fnexecution.control.RemoteOutputReceiver;
+import org.apache.beam.runners.fnexecution.control.SdkHarnessClient;
+import org.apache.beam.runners.fnexecution.data.GrpcDataService;
+import org.apache.beam.runners.fnexecution.logging.GrpcLoggingService;
+import org.apache.beam.runners.fnexecution.logging.LogWriter;
+import org.apache.beam.sdk.Pipeline;
+import org.apache.beam.sdk.coders.Coder;
+import org.apache.beam.sdk.fn.data.FnDataReceiver;
+import org.apache.beam.sdk.fn.server.GrpcContextHeaderAccessorProvider;
+import org.apache.beam.sdk.fn.server.GrpcFnServer;
+import org.apache.beam.sdk.fn.server.ServerFactory;
+import org.apache.beam.sdk.fn.stream.OutboundObserverFactory;
+import org.apache.beam.sdk.options.PipelineOptionsFactory;
+import org.apache.beam.sdk.transforms.DoFn;
+import org.apache.beam.sdk.transforms.Impulse;
+import org.apache.beam.sdk.transforms.ParDo;
+import org.apache.beam.sdk.util.WindowedValue;
+import org.apache.beam.vendor.grpc.v1p36p0.com.google.protobuf.TextFormat;
+import org.apache.beam.vendor.guava.v26_0_jre.com.google.common.collect.Iterables;
+import org.apache.beam.vendor.guava.v26_0_jre.com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks the cold start of the SDK harness, from starting its process until it responds to its
+ * first {@code ProcessBundleRequest}, against in-process runner services.
+ *
+ * <p>Each invocation starts a new JVM running {@link FnHarness} with the classpath of the
+ * benchmark. Set the {@code jvmArgs} parameter to compare JVM flags, for example {@code -p
+ * jvmArgs=-XX:SharedArchiveFile=harness.jsa} to start the SDK harness from an AppCDS archive. Run
+ * with {@code -Pbenchmark=FnHarnessStartupBenchmark}.
+ *
+ * <p>{@link #main} instead starts the SDK harness once and records the classes it loads until its
+ * first bundle into a class list, which {@code :sdks:java:harness:generateAppCdsClassList} uses to
+ * create the AppCDS archive of the Java container images.
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 1)
+@Measurement(iterations = 10)
+public class FnHarnessStartupBenchmark {
+
+  private static final String WORKER_ID = "startup_benchmark_worker";
+
+  /** Runner services which SDK harness processes connect to, and the stage they process. */
+  @State(Scope.Benchmark)
+  public static class RunnerServices {
+    @Param({""})
+    public String jvmArgs;
+
+    GrpcFnServer<FnApiControlClientPoolService> controlServer;
+    GrpcFnServer<GrpcDataService> dataServer;
+    GrpcFnServer<GrpcLoggingService> loggingServer;
+    ControlClientPool clientPool;
+    ExecutableProcessBundleDescriptor descriptor;
+    ExecutorService serverExecutor;
+    File harnessOutput;
+    int workerCount;
+
+    Process harness;
+    SdkHarnessClient controlClient;
+
+    private static class OutputLength extends DoFn<byte[], Integer> {
+      @ProcessElement
+      public void process(ProcessContext ctxt) {
+        ctxt.output(ctxt.element().length);
+      }
+    }
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+      serverExecutor =
+          Executors.newCachedThreadPool(new ThreadFactoryBuilder().setDaemon(true).build());
+      ServerFactory serverFactory = ServerFactory.createDefault();
+      dataServer =
+          GrpcFnServer.allocatePortAndCreateFor(
+              GrpcDataService.create(
+                  PipelineOptionsFactory.create(),
+                  serverExecutor,
+                  OutboundObserverFactory.serverDirect()),
+              serverFactory);
+      loggingServer =
+          GrpcFnServer.allocatePortAndCreateFor(
+              GrpcLoggingService.forWriter(
+                  new LogWriter() {
+                    @Override
+                    public void log(LogEntry entry) {
+                      // no-op
+                    }
+                  }),
+              serverFactory);
+      clientPool = MapControlClientPool.create();
+      controlServer =
+          GrpcFnServer.allocatePortAndCreateFor(
+              FnApiControlClientPoolService.offeringClientsToPool(
+                  clientPool.getSink(), GrpcContextHeaderAccessorProvider.getHeaderAccessor()),
+              serverFactory);
+      harnessOutput = File.createTempFile("fn-harness-startup", ".log");
+
+      Pipeline p = Pipeline.create();
+      p.apply("impulse", Impulse.create()).apply("length", ParDo.of(new OutputLength()));
+      FusedPipeline fused = GreedyPipelineFuser.fuse(PipelineTranslation.toProto(p));
+      checkState(fused.getFusedStages().size() == 1, "Expected exactly one fused stage");
+      ExecutableStage stage = fused.getFusedStages().iterator().next();
+      descriptor =
+          ProcessBundleDescriptors.fromExecutableStage(
+              "my_stage", stage, dataServer.getApiServiceDescriptor());
+    }
+
+    /** Starts an SDK harness process with the given additional JVM arguments. */
+    void startHarness(List<String> harnessJvmArgs) throws Exception {
+      String workerId = WORKER_ID + workerCount++;
+      List<String> command = new ArrayList<>();
+      command.add(
+          System.getProperty("java.home") + File.separator + "bin" + File.separator + "java");
+      command.addAll(harnessJvmArgs);
+      command.add("-cp");
+      command.add(System.getProperty("java.class.path"));
+      command.add(FnHarness.class.getName());
+      ProcessBuilder processBuilder =
+          new ProcessBuilder(command)
+              .redirectErrorStream(true)
+              .redirectOutput(ProcessBuilder.Redirect.appendTo(harnessOutput));
+      Map<String, String> environment = processBuilder.environment();
+      environment.put("HARNESS_ID", workerId);
+      environment.put(
+          "PIPELINE_OPTIONS", PipelineOptionsTranslation.toJson(PipelineOptionsFactory.create()));
+      environment.put(
+          "LOGGING_API_SERVICE_DESCRIPTOR", toText(loggingServer.getApiServiceDescriptor()));
+      environment.put(
+          "CONTROL_API_SERVICE_DESCRIPTOR", toText(controlServer.getApiServiceDescriptor()));
+      harness = processBuilder.start();
+
+      InstructionRequestHandler instructionHandler =
+          clientPool.getSource().take(workerId, Duration.ofMinutes(1));
+      controlClient =
+          SdkHarnessClient.usingFnApiClient(instructionHandler, dataServer.getService());
+    }
+
+    /** Processes a bundle of a single element, returning once the SDK harness responded. */
+    void processBundle() throws Exception {
+      Map<String, RemoteOutputReceiver<?>> outputReceivers = new HashMap<>();
+      for (Entry<String, ? super Coder<WindowedValue<?>>> remoteOutputCoder :
+          descriptor.getRemoteOutputCoders().entrySet()) {
+        outputReceivers.put(
+            remoteOutputCoder.getKey(),
+            RemoteOutputReceiver.of(
+                (Coder) remoteOutputCoder.getValue(),
+                (FnDataReceiver<? super WindowedValue<?>>)
+                    (WindowedValue<?> value) -> {}));
+      }
+      try (RemoteBundle bundle =
+          controlClient
+              .getProcessor(
+                  descriptor.getProcessBundleDescriptor(), descriptor.getRemoteInputDestinations())
+              .newBundle(outputReceivers, BundleProgressHandler.ignored())) {
+        Iterables.getOnlyElement(bundle.getInputReceivers().values())
+            .accept(valueInGlobalWindow(new byte[0]));
+      }
+    }
+
+    /** Disconnects from the SDK harness and waits for its process to exit. */
+    @TearDown(Level.Invocation)
+    public void stopHarness() throws Exception {
+      if (controlClient != null) {
+        controlClient.close();
+        controlClient = null;
+      }
+      if (harness != null) {
+        // The SDK harness exits once the runner closes the control stream.
+        if (!harness.waitFor(1, TimeUnit.MINUTES)) {
+          harness.destroyForcibly().waitFor();
+        }
+        harness = null;
+      }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+      controlServer.close();
+      dataServer.close();
+      loggingServer.close();
+      serverExecutor.shutdownNow();
+      Files.deleteIfExists(harnessOutput.toPath());
+    }
+
+    private static String toText(ApiServiceDescriptor apiServiceDescriptor) {
+      return TextFormat.printToString(apiServiceDescriptor);
+    }
+  }
+
+  @Benchmark
+  public void testStartupUntilFirstBundle(RunnerServices runnerServices) throws Exception {
+    runnerServices.startHarness(
+        runnerServices.jvmArgs.isEmpty()
+            ? Collections.emptyList()
+            : Arrays.asList(runnerServices.jvmArgs.split("\\s+")));
+    runnerServices.processBundle();
+  }
+
+  /**
+   * Starts the SDK harness with {@code -XX:DumpLoadedClassList} and processes a bundle, writing the
+   * classes that the SDK harness loaded to the class list file given as the only argument.
+   */
+  public static void main(String[] args) throws Exception {
+    checkState(args.length == 1, "Expected the path of the class list file to write");
+    RunnerServices runnerServices = new RunnerServices();
+    runnerServices.setup();
+    try {
+      runnerServices.startHarness(Collections.singletonList("-XX:DumpLoadedClassList=" + args[0]));
+      runnerServices.processBundle();
+    } finally {
+      runnerServices.stopHarness();
+      runnerServices.tearDown();
+    }
+  }
+}
@@ -0,0 +1,124 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.beam.fn.harness;
+
+import static org.apache.beam.sdk.util.WindowedValue.valueInGlobalWindow;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import org.apache.beam.fn.harness.GroupingTable.Receiver;
+import org.apache.beam.sdk.coders.Coder;
+import org.apache.beam.sdk.coders.CoderRegistry;
+import org.apache.beam.sdk.coders.StringUtf8Coder;
+import org.apache.beam.sdk.coders.VarLongCoder;
+import org.apache.beam.sdk.options.PipelineOptions;
+import org.apache.beam.sdk.options.PipelineOptionsFactory;
+import org.apache.beam.sdk.options.SdkHarnessOptions;
+import org.apache.beam.sdk.transforms.Combine.BinaryCombineLongFn;
+import org.apache.beam.sdk.transforms.Sum;
+import org.apache.beam.sdk.util.WindowedValue;
+import org.apache.beam.sdk.values.KV;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Benchmarks comparing {@link PrecombineGroupingTable} against {@link
+ * OffHeapPrecombineGroupingTable} when summing longs per key.
+ *
+ * <p>Each invocation puts {@link #ELEMENTS_PER_BUNDLE} elements into the table and flushes it, as
+ * a bundle would. Run with {@code -Pbenchmark=PrecombineGroupingTableBenchmark} and {@code -prof
+ * gc} to also compare allocation rates.
+ */
+public class PrecombineGroupingTableBenchmark {
+
+  private static final int ELEMENTS_PER_BUNDLE = 100_000;
+
+  /** The elements of a single bundle and the grouping tables under test. */
+  @State(Scope.Benchmark)
+  public static class Bundle {
+    @Param({"VarLong", "StringUtf8"})
+    public String keyType;
+
+    @Param({"100", "10000", "1000000"})
+    public int distinctKeys;
+
+    @Param({"1", "100"})
+    public int groupingTableMaxSizeMb;
+
+    List<WindowedValue<KV<Object, Long>>> elements;
+    GroupingTable<WindowedValue<Object>, Long, long[]> onHeapTable;
+    GroupingTable<WindowedValue<Object>, Long, long[]> offHeapTable;
+
+    @Setup(Level.Trial)
+    @SuppressWarnings("unchecked")
+    public void setup() throws Exception {
+      PipelineOptions options = PipelineOptionsFactory.create();
+      options.as(SdkHarnessOptions.class).setGroupingTableMaxSizeMb(groupingTableMaxSizeMb);
+      BinaryCombineLongFn combineFn = Sum.ofLongs();
+      Coder<long[]> accumulatorCoder =
+          combineFn.getAccumulatorCoder(CoderRegistry.createDefault(), VarLongCoder.of());
+      Coder<Object> keyCoder =
+          (Coder<Object>) ("VarLong".equals(keyType) ? VarLongCoder.of() : StringUtf8Coder.of());
+
+      Random random = new Random(1);
+      elements = new ArrayList<>(ELEMENTS_PER_BUNDLE);
+      for (int i = 0; i < ELEMENTS_PER_BUNDLE; i++) {
+        long key = random.nextInt(distinctKeys);
+        Object typedKey = "VarLong".equals(keyType) ? key : "user-" + key;
+        elements.add(valueInGlobalWindow(KV.of(typedKey, (long) random.nextInt(1000))));
+      }
+
+      onHeapTable =
+          PrecombineGroupingTable.combiningAndSampling(
+              options, combineFn, keyCoder, accumulatorCoder, 0.001);
+      offHeapTable =
+          OffHeapPrecombineGroupingTable.combining(options, combineFn, keyCoder, accumulatorCoder);
+    }
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(ELEMENTS_PER_BUNDLE)
+  public void testOnHeapTable(Bundle bundle, Blackhole blackhole) throws Exception {
+    runBundle(bundle.onHeapTable, bundle.elements, blackhole);
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(ELEMENTS_PER_BUNDLE)
+  public void testOffHeapTable(Bundle bundle, Blackhole blackhole) throws Exception {
+    runBundle(bundle.offHeapTable, bundle.elements, blackhole);
+  }
+
+  private static void runBundle(
+      GroupingTable<?, ?, ?> table,
+      List<WindowedValue<KV<Object, Long>>> elements,
+      Blackhole blackhole)
+      throws Exception {
+    Receiver receiver = blackhole::consume;
+    for (WindowedValue<KV<Object, Long>> element : elements) {
+      table.put(element, receiver);
+    }
+    table.flush(receiver);
+  }
+}
@@ -31,6 +31,7 @@ import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
 import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.atomic.AtomicInteger;
+import org.apache.beam.fn.harness.data.PCollectionConsumerRegistry;
 import org.apache.beam.model.fnexecution.v1.BeamFnApi.LogEntry;
 import org.apache.beam.model.pipeline.v1.RunnerApi;
 import org.apache.beam.runners.core.construction.PipelineTranslation;
@@ -53,6 +54,7 @@ import org.apache.beam.runners.fnexecution.data.GrpcDataService;
 import org.apache.beam.runners.fnexecution.logging.GrpcLoggingService;
 import org.apache.beam.runners.fnexecution.logging.LogWriter;
 import org.apache.beam.runners.fnexecution.state.GrpcStateService;
+import org.apache.beam.runners.fnexecution.state.StateRequestHandler;
 import org.apache.beam.sdk.Pipeline;
 import org.apache.beam.sdk.coders.BigEndianLongCoder;
 import org.apache.beam.sdk.coders.Coder;
@@ -64,6 +66,7 @@ import org.apache.beam.sdk.fn.server.GrpcContextHeaderAccessorProvider;
 import org.apache.beam.sdk.fn.server.GrpcFnServer;
 import org.apache.beam.sdk.fn.server.ServerFactory;
 import org.apache.beam.sdk.fn.stream.OutboundObserverFactory;
+import org.apache.beam.sdk.options.PipelineOptions;
 import org.apache.beam.sdk.options.PipelineOptionsFactory;
 import org.apache.beam.sdk.transforms.DoFn;
 import org.apache.beam.sdk.transforms.GroupByKey;
@@ -78,6 +81,7 @@ import org.openjdk.jmh.annotations.Scope;
 import org.openjdk.jmh.annotations.State;
 import org.openjdk.jmh.annotations.TearDown;
 import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.infra.Blackhole;
 
 /** Benchmarks for processing a bundle end to end. */
 public class ProcessBundleBenchmark {
@@ -99,6 +103,10 @@ public class ProcessBundleBenchmark {
     final Future<?> sdkHarnessExecutorFuture;
 
     public SdkHarness() {
+      this(PipelineOptionsFactory.create());
+    }
+
+    public SdkHarness(PipelineOptions sdkHarnessOptions) {
       try {
         // Setup execution-time servers
         ThreadFactory threadFactory = new ThreadFactoryBuilder().setDaemon(true).build();
@@ -139,7 +147,7 @@ public class ProcessBundleBenchmark {
                   try {
                     FnHarness.main(
                         WORKER_ID,
-                        PipelineOptionsFactory.create(),
+                        sdkHarnessOptions,
                         Collections.emptySet(), // Runner capabilities.
                         loggingServer.getApiServiceDescriptor(),
                         controlServer.getApiServiceDescriptor(),
@@ -203,6 +211,11 @@ public class ProcessBundleBenchmark {
     }
 
     public TrivialTransform() {
+      this(PipelineOptionsFactory.create());
+    }
+
+    public TrivialTransform(PipelineOptions sdkHarnessOptions) {
+      super(sdkHarnessOptions);
       try {
         Pipeline p = Pipeline.create();
         p.apply("impulse", Impulse.create())
@@ -231,6 +244,19 @@ public class ProcessBundleBenchmark {
     }
   }
 
+  /** A {@link TrivialTransform} which samples the processing time of one element in a hundred. */
+  @State(Scope.Benchmark)
+  public static class TrivialTransformWithProcessingTimeSampling extends TrivialTransform {
+    public TrivialTransformWithProcessingTimeSampling() {
+      super(
+          PipelineOptionsFactory.fromArgs(
+                  "--experiments="
+                      + PCollectionConsumerRegistry.PROCESSING_TIME_SAMPLING_RATE_EXPERIMENT
+                      + "=0.01")
+              .create());
+    }
+  }
+
   @Benchmark
   @Threads(16) // Use several threads since we expect contention during bundle processing.
   public void testTinyBundle(TrivialTransform trivialTransform) throws Exception {
@@ -280,4 +306,58 @@ public class ProcessBundleBenchmark {
     }
     assertEquals(3_000, outputValuesCount.getAndSet(0));
   }
+
+  @Benchmark
+  @Threads(16) // Use several threads since we expect contention during bundle processing.
+  public void testLargeBundleWithProcessingTimeSampling(
+      TrivialTransformWithProcessingTimeSampling trivialTransform) throws Exception {
+    testLargeBundle(trivialTransform);
+  }
+
+  /**
+   * Processes a large bundle while requesting progress every hundred elements and asking the SDK
+   * harness to split off half of the remaining elements midway through the bundle.
+   */
+  @Benchmark
+  @Threads(16) // Use several threads since we expect contention during bundle processing.
+  public void testLargeBundleWithProgressAndSplit(
+      TrivialTransform trivialTransform, Blackhole blackhole) throws Exception {
+    Map<String, ? super Coder<WindowedValue<?>>> remoteOutputCoders =
+        trivialTransform.descriptor.getRemoteOutputCoders();
+    Map<String, RemoteOutputReceiver<?>> outputReceivers = new HashMap<>();
+    AtomicInteger outputValuesCount = new AtomicInteger();
+    AtomicInteger splitsCount = new AtomicInteger();
+    for (Entry<String, ? super Coder<WindowedValue<?>>> remoteOutputCoder :
+        remoteOutputCoders.entrySet()) {
+      outputReceivers.put(
+          remoteOutputCoder.getKey(),
+          RemoteOutputReceiver.of(
+              (Coder) remoteOutputCoder.getValue(),
+              (FnDataReceiver<? super WindowedValue<?>>)
+                  (WindowedValue<?> value) -> outputValuesCount.incrementAndGet()));
+    }
+    try (RemoteBundle bundle =
+        trivialTransform.processor.newBundle(
+            outputReceivers,
+            Collections.emptyMap(),
+            StateRequestHandler.unsupported(),
+            BundleProgressHandler.ignored(),
+            splitResponse -> splitsCount.incrementAndGet(),
+            checkpointResponse -> {},
+            bundleId -> {})) {
+      for (int i = 0; i < 1_000; i++) {
+        Iterables.getOnlyElement(bundle.getInputReceivers().values())
+            .accept(valueInGlobalWindow(new byte[0]));
+        if (i % 100 == 99) {
+          bundle.requestProgress();
+        }
+        if (i == 499) {
+          bundle.split(0.5);
+        }
+      }
+    }
+    // The number of outputs depends on where the SDK harness was able to split the bundle.
+    blackhole.consume(outputValuesCount.getAndSet(0));
+    blackhole.consume(splitsCount.get());
+  }
 }
@@ -0,0 +1,182 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.beam.fn.harness.data;
+
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import org.apache.beam.model.fnexecution.v1.BeamFnApi.Elements;
+import org.apache.beam.model.fnexecution.v1.BeamFnDataGrpc;
+import org.apache.beam.sdk.fn.channel.ManagedChannelFactory;
+import org.apache.beam.sdk.fn.data.SharedMemoryDataChannel;
+import org.apache.beam.sdk.fn.data.SharedMemoryDataServer;
+import org.apache.beam.sdk.fn.server.FnService;
+import org.apache.beam.sdk.fn.server.GrpcFnServer;
+import org.apache.beam.sdk.fn.server.ServerFactory;
+import org.apache.beam.sdk.fn.stream.OutboundObserverFactory;
+import org.apache.beam.vendor.grpc.v1p36p0.com.google.protobuf.ByteString;
+import org.apache.beam.vendor.grpc.v1p36p0.io.grpc.ManagedChannel;
+import org.apache.beam.vendor.grpc.v1p36p0.io.grpc.stub.StreamObserver;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+/**
+ * Benchmarks exchanging {@link Elements} with a data service over gRPC against over a {@link
+ * SharedMemoryDataChannel}.
+ *
+ * <p>The data service echoes every {@link Elements} it receives. The throughput benchmark streams a
+ * batch of messages and waits for all of their echoes, the round trip benchmark waits for the echo
+ * of each message before sending the next. Run with {@code -Pbenchmark=DataPlaneBenchmark}.
+ */
+public class DataPlaneBenchmark {
+
+  private static final int BATCH_SIZE = 100;
+
+  /** A data service echoing every {@link Elements} back to the client. */
+  private static class EchoDataService extends BeamFnDataGrpc.BeamFnDataImplBase
+      implements FnService {
+    @Override
+    public StreamObserver<Elements> data(StreamObserver<Elements> outboundObserver) {
+      return new StreamObserver<Elements>() {
+        @Override
+        public void onNext(Elements elements) {
+          synchronized (outboundObserver) {
+            outboundObserver.onNext(elements);
+          }
+        }
+
+        @Override
+        public void onError(Throwable t) {}
+
+        @Override
+        public void onCompleted() {
+          synchronized (outboundObserver) {
+            outboundObserver.onCompleted();
+          }
+        }
+      };
+    }
+
+    @Override
+    public void close() {}
+  }
+
+  /** A client connected to an {@link EchoDataService} over one of the transports. */
+  @State(Scope.Benchmark)
+  public static class Client {
+    @Param({"GRPC", "SHARED_MEMORY"})
+    public String transport;
+
+    @Param({"1024", "65536", "1048576"})
+    public int messageBytes;
+
+    GrpcFnServer<EchoDataService> server;
+    ManagedChannel channel;
+    SharedMemoryDataServer sharedMemoryServer;
+    SharedMemoryDataChannel sharedMemoryChannel;
+    StreamObserver<Elements> outboundObserver;
+    Elements elements;
+    final Semaphore echoes = new Semaphore(0);
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+      server =
+          GrpcFnServer.allocatePortAndCreateFor(
+              new EchoDataService(), ServerFactory.createDefault());
+      StreamObserver<Elements> inboundObserver =
+          new StreamObserver<Elements>() {
+            @Override
+            public void onNext(Elements value) {
+              echoes.release();
+            }
+
+            @Override
+            public void onError(Throwable t) {}
+
+            @Override
+            public void onCompleted() {}
+          };
+      OutboundObserverFactory.BasicFactory<Elements, Elements> baseOutboundObserverFactory;
+      if ("GRPC".equals(transport)) {
+        channel =
+            ManagedChannelFactory.createDefault().forDescriptor(server.getApiServiceDescriptor());
+        baseOutboundObserverFactory = BeamFnDataGrpc.newStub(channel)::data;
+      } else {
+        sharedMemoryServer =
+            SharedMemoryDataServer.create(
+                SharedMemoryDataChannel.directoryFor(server.getApiServiceDescriptor()),
+                server.getService()::data);
+        sharedMemoryChannel = SharedMemoryDataChannel.connect(sharedMemoryServer.getDirectory());
+        if (sharedMemoryChannel == null) {
+          throw new IllegalStateException("Shared memory data channel was not accepted");
+        }
+        baseOutboundObserverFactory = sharedMemoryChannel::connect;
+      }
+      outboundObserver =
+          OutboundObserverFactory.clientDirect()
+              .outboundObserverFor(baseOutboundObserverFactory, inboundObserver);
+      elements =
+          Elements.newBuilder()
+              .addData(
+                  Elements.Data.newBuilder()
+                      .setInstructionId("instruction")
+                      .setTransformId("transform")
+                      .setData(ByteString.copyFrom(new byte[messageBytes])))
+              .build();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+      outboundObserver.onCompleted();
+      if (sharedMemoryChannel != null) {
+        sharedMemoryChannel.close();
+        sharedMemoryServer.close();
+      }
+      if (channel != null) {
+        channel.shutdownNow();
+        channel.awaitTermination(10, TimeUnit.SECONDS);
+      }
+      server.close();
+    }
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(BATCH_SIZE)
+  public void testThroughput(Client client) throws InterruptedException {
+    for (int i = 0; i < BATCH_SIZE; i++) {
+      client.outboundObserver.onNext(client.elements);
+    }
+    client.echoes.acquire(BATCH_SIZE);
+  }
+
+  @Benchmark
+  @BenchmarkMode(Mode.SampleTime)
+  @OutputTimeUnit(TimeUnit.MICROSECONDS)
+  public void testRoundTrip(Client client) throws InterruptedException {
+    client.outboundObserver.onNext(client.elements);
+    client.echoes.acquire();
+  }
+}
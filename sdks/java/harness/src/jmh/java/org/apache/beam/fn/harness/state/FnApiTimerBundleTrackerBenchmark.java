@@ -0,0 +1,121 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.beam.fn.harness.state;
+
+import java.util.Collections;
+import java.util.List;
+import org.apache.beam.runners.core.construction.Timer;
+import org.apache.beam.sdk.coders.Coder;
+import org.apache.beam.sdk.coders.StringUtf8Coder;
+import org.apache.beam.sdk.fn.data.FnDataReceiver;
+import org.apache.beam.sdk.state.TimeDomain;
+import org.apache.beam.sdk.transforms.windowing.BoundedWindow;
+import org.apache.beam.sdk.transforms.windowing.GlobalWindow;
+import org.apache.beam.sdk.transforms.windowing.PaneInfo;
+import org.joda.time.Instant;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Benchmarks the timer churn of a bundle through {@link FnApiTimerBundleTracker}.
+ *
+ * <p>Each invocation is a bundle of {@link #ELEMENTS_PER_BUNDLE} elements spread over the keys,
+ * where every element sets an event time timer and then resets or clears it, after which the
+ * bundle outputs its modified timers. Run with {@code
+ * -Pbenchmark=FnApiTimerBundleTrackerBenchmark}.
+ */
+public class FnApiTimerBundleTrackerBenchmark {
+
+  private static final int ELEMENTS_PER_BUNDLE = 1_000;
+  private static final String TIMER_FAMILY_ID = "timerFamilyId";
+  private static final List<BoundedWindow> WINDOWS =
+      Collections.singletonList(GlobalWindow.INSTANCE);
+
+  /** The keys of the elements and the key of the element being processed. */
+  @State(Scope.Thread)
+  public static class Timers {
+    @Param({"10", "1000"})
+    public int distinctKeys;
+
+    @Param({"1", "10"})
+    public int dynamicTimerTags;
+
+    String[] keys;
+    String[] dynamicTimerTagIds;
+    String currentKey;
+
+    @Setup(Level.Trial)
+    public void setup() {
+      keys = new String[distinctKeys];
+      for (int i = 0; i < distinctKeys; i++) {
+        keys[i] = "key" + i;
+      }
+      dynamicTimerTagIds = new String[dynamicTimerTags];
+      for (int i = 0; i < dynamicTimerTags; i++) {
+        dynamicTimerTagIds[i] = "tag" + i;
+      }
+    }
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(ELEMENTS_PER_BUNDLE)
+  @SuppressWarnings("unchecked")
+  public void testTimerChurn(Timers timers, Blackhole blackhole) throws Exception {
+    FnApiTimerBundleTracker<String> tracker =
+        new FnApiTimerBundleTracker<>(
+            StringUtf8Coder.of(),
+            (Coder<BoundedWindow>) (Coder<?>) GlobalWindow.Coder.INSTANCE,
+            () -> timers.currentKey,
+            () -> GlobalWindow.INSTANCE);
+    for (int i = 0; i < ELEMENTS_PER_BUNDLE; i++) {
+      timers.currentKey = timers.keys[i % timers.distinctKeys];
+      String dynamicTimerTag = timers.dynamicTimerTagIds[i % timers.dynamicTimerTags];
+      Instant timestamp = new Instant(i);
+      tracker.timerModified(
+          TIMER_FAMILY_ID,
+          TimeDomain.EVENT_TIME,
+          Timer.of(
+              timers.currentKey,
+              dynamicTimerTag,
+              WINDOWS,
+              timestamp,
+              timestamp,
+              PaneInfo.NO_FIRING));
+      tracker.timerModified(
+          TIMER_FAMILY_ID,
+          TimeDomain.EVENT_TIME,
+          i % 2 == 0
+              ? Timer.of(
+                  timers.currentKey,
+                  dynamicTimerTag,
+                  WINDOWS,
+                  timestamp.plus(1),
+                  timestamp.plus(1),
+                  PaneInfo.NO_FIRING)
+              : Timer.cleared(timers.currentKey, dynamicTimerTag, WINDOWS));
+    }
+    FnDataReceiver<Timer<String>> receiver = blackhole::consume;
+    tracker.outputTimers(timerFamilyId -> receiver);
+  }
+}
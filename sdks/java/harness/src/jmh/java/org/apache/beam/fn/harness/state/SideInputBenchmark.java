@@ -0,0 +1,168 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.beam.fn.harness.state;
+
+import static org.apache.beam.fn.harness.state.UserStateBenchmark.encode;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.apache.beam.model.fnexecution.v1.BeamFnApi.ProcessBundleRequest.CacheToken;
+import org.apache.beam.model.fnexecution.v1.BeamFnApi.StateKey;
+import org.apache.beam.sdk.coders.StringUtf8Coder;
+import org.apache.beam.sdk.coders.VarLongCoder;
+import org.apache.beam.sdk.options.PipelineOptionsFactory;
+import org.apache.beam.vendor.grpc.v1p36p0.com.google.protobuf.ByteString;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Benchmarks reading {@link IterableSideInput} and looking up keys of a {@link MultimapSideInput}
+ * through a {@link CachingBeamFnStateClient} backed by an in-process fake of the runner's state
+ * service.
+ *
+ * <p>Each invocation is a bundle of {@link #ELEMENTS_PER_BUNDLE} elements where every element
+ * reads the side input once. Run with {@code -Pbenchmark=SideInputBenchmark}.
+ */
+public class SideInputBenchmark {
+
+  private static final int ELEMENTS_PER_BUNDLE = 1_000;
+  private static final int CHUNK_SIZE = 64 * 1024;
+  private static final String PTRANSFORM_ID = "ptransformId";
+  private static final String SIDE_INPUT_ID = "sideInputId";
+  private static final ByteString ENCODED_WINDOW = ByteString.copyFromUtf8("encodedWindow");
+
+  /** The side input contents and the cache shared by all bundles. */
+  @State(Scope.Thread)
+  public static class SideInput {
+    @Param({"true", "false"})
+    public boolean cached;
+
+    @Param({"100", "10000"})
+    public int sideInputSize;
+
+    FakeBeamFnStateClient stateClient;
+    StateCache stateCache;
+    List<CacheToken> cacheTokens;
+    String[] keys;
+    int bundleCount;
+    String instructionId;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+      keys = new String[sideInputSize];
+      List<Long> values = new ArrayList<>(sideInputSize);
+      Map<StateKey, ByteString> initialData = new HashMap<>();
+      for (int i = 0; i < sideInputSize; i++) {
+        keys[i] = "key" + i;
+        values.add((long) i);
+        initialData.put(
+            multimapKey(encode(StringUtf8Coder.of(), Collections.singletonList(keys[i]))),
+            encode(VarLongCoder.of(), Collections.singletonList((long) i)));
+      }
+      initialData.put(iterableKey(), encode(VarLongCoder.of(), values));
+      stateClient = new FakeBeamFnStateClient(initialData, CHUNK_SIZE);
+      stateCache = StateCache.create(PipelineOptionsFactory.create());
+      cacheTokens =
+          cached
+              ? Collections.singletonList(
+                  CacheToken.newBuilder()
+                      .setSideInput(
+                          CacheToken.SideInput.newBuilder()
+                              .setTransformId(PTRANSFORM_ID)
+                              .setSideInputId(SIDE_INPUT_ID))
+                      .setToken(ByteString.copyFromUtf8("sideInputToken"))
+                      .build())
+              : Collections.emptyList();
+    }
+
+    /** Returns a state client for a new bundle, as the harness creates one per bundle. */
+    BeamFnStateClient newBundle() {
+      bundleCount += 1;
+      instructionId = "bundle" + bundleCount;
+      return new CachingBeamFnStateClient(stateClient, stateCache, cacheTokens);
+    }
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(ELEMENTS_PER_BUNDLE)
+  public void testIterableSideInput(SideInput sideInput, Blackhole blackhole) {
+    IterableSideInput<Long> iterableSideInput =
+        new IterableSideInput<>(
+            sideInput.newBundle(),
+            sideInput.instructionId,
+            PTRANSFORM_ID,
+            SIDE_INPUT_ID,
+            ENCODED_WINDOW,
+            VarLongCoder.of());
+    for (int i = 0; i < ELEMENTS_PER_BUNDLE; i++) {
+      for (Long value : iterableSideInput.get()) {
+        blackhole.consume(value);
+      }
+    }
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(ELEMENTS_PER_BUNDLE)
+  public void testMultimapSideInput(SideInput sideInput, Blackhole blackhole) {
+    MultimapSideInput<String, Long> multimapSideInput =
+        new MultimapSideInput<>(
+            sideInput.newBundle(),
+            sideInput.instructionId,
+            PTRANSFORM_ID,
+            SIDE_INPUT_ID,
+            ENCODED_WINDOW,
+            StringUtf8Coder.of(),
+            VarLongCoder.of());
+    for (int i = 0; i < ELEMENTS_PER_BUNDLE; i++) {
+      for (Long value : multimapSideInput.get(sideInput.keys[i % sideInput.sideInputSize])) {
+        blackhole.consume(value);
+      }
+    }
+  }
+
+  private static StateKey iterableKey() {
+    return StateKey.newBuilder()
+        .setIterableSideInput(
+            StateKey.IterableSideInput.newBuilder()
+                .setTransformId(PTRANSFORM_ID)
+                .setSideInputId(SIDE_INPUT_ID)
+                .setWindow(ENCODED_WINDOW))
+        .build();
+  }
+
+  private static StateKey multimapKey(ByteString encodedKey) {
+    return StateKey.newBuilder()
+        .setMultimapSideInput(
+            StateKey.MultimapSideInput.newBuilder()
+                .setTransformId(PTRANSFORM_ID)
+                .setSideInputId(SIDE_INPUT_ID)
+                .setWindow(ENCODED_WINDOW)
+                .setKey(encodedKey))
+        .build();
+  }
+}
@@ -0,0 +1,211 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.beam.fn.harness.state;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.apache.beam.model.fnexecution.v1.BeamFnApi.ProcessBundleRequest.CacheToken;
+import org.apache.beam.model.fnexecution.v1.BeamFnApi.StateKey;
+import org.apache.beam.sdk.coders.Coder;
+import org.apache.beam.sdk.coders.StringUtf8Coder;
+import org.apache.beam.sdk.coders.VarLongCoder;
+import org.apache.beam.sdk.options.PipelineOptionsFactory;
+import org.apache.beam.vendor.grpc.v1p36p0.com.google.protobuf.ByteString;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Benchmarks reading and writing {@link BagUserState} and {@link MultimapUserState} through a
+ * {@link CachingBeamFnStateClient} backed by an in-process fake of the runner's state service.
+ *
+ * <p>Each invocation is a bundle of {@link #ELEMENTS_PER_BUNDLE} elements spread over the keys,
+ * where every element reads and rewrites the state of its key. Run with {@code
+ * -Pbenchmark=UserStateBenchmark}.
+ */
+public class UserStateBenchmark {
+
+  private static final int ELEMENTS_PER_BUNDLE = 1_000;
+  private static final int CHUNK_SIZE = 64 * 1024;
+  private static final String PTRANSFORM_ID = "ptransformId";
+  private static final String STATE_ID = "stateId";
+  private static final ByteString ENCODED_WINDOW = ByteString.copyFromUtf8("encodedWindow");
+  private static final List<String> MAP_KEYS = Collections.singletonList("count");
+
+  /** The user state of every key and the cache shared by all bundles. */
+  @State(Scope.Thread)
+  public static class UserState {
+    @Param({"true", "false"})
+    public boolean cached;
+
+    @Param({"10", "1000"})
+    public int distinctKeys;
+
+    @Param({"1", "100"})
+    public int valuesPerKey;
+
+    FakeBeamFnStateClient stateClient;
+    StateCache stateCache;
+    List<CacheToken> cacheTokens;
+    ByteString[] encodedKeys;
+    List<Long> values;
+    int bundleCount;
+    String instructionId;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+      encodedKeys = new ByteString[distinctKeys];
+      values = new ArrayList<>(valuesPerKey);
+      for (long i = 0; i < valuesPerKey; i++) {
+        values.add(i);
+      }
+      Map<StateKey, ByteString> initialData = new HashMap<>();
+      for (int i = 0; i < distinctKeys; i++) {
+        encodedKeys[i] = encode(StringUtf8Coder.of(), Collections.singletonList("key" + i));
+        initialData.put(bagKey(encodedKeys[i]), encode(VarLongCoder.of(), values));
+        initialData.put(multimapKeysKey(encodedKeys[i]), encode(StringUtf8Coder.of(), MAP_KEYS));
+        for (String mapKey : MAP_KEYS) {
+          initialData.put(multimapKey(encodedKeys[i], mapKey), encode(VarLongCoder.of(), values));
+        }
+      }
+      stateClient = new FakeBeamFnStateClient(initialData, CHUNK_SIZE);
+      stateCache = StateCache.create(PipelineOptionsFactory.create());
+      cacheTokens =
+          cached
+              ? Collections.singletonList(
+                  CacheToken.newBuilder()
+                      .setUserState(CacheToken.UserState.getDefaultInstance())
+                      .setToken(ByteString.copyFromUtf8("userStateToken"))
+                      .build())
+              : Collections.emptyList();
+    }
+
+    /** Returns a state client for a new bundle, as the harness creates one per bundle. */
+    BeamFnStateClient newBundle() {
+      bundleCount += 1;
+      instructionId = "bundle" + bundleCount;
+      return new CachingBeamFnStateClient(stateClient, stateCache, cacheTokens);
+    }
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(ELEMENTS_PER_BUNDLE)
+  public void testBagUserStateReadModifyWrite(UserState state, Blackhole blackhole)
+      throws Exception {
+    BeamFnStateClient stateClient = state.newBundle();
+    for (int i = 0; i < ELEMENTS_PER_BUNDLE; i++) {
+      BagUserState<Long> bagUserState =
+          new BagUserState<>(
+              stateClient,
+              state.instructionId,
+              PTRANSFORM_ID,
+              STATE_ID,
+              ENCODED_WINDOW,
+              state.encodedKeys[i % state.distinctKeys],
+              VarLongCoder.of());
+      for (Long value : bagUserState.get()) {
+        blackhole.consume(value);
+      }
+      bagUserState.clear();
+      for (Long value : state.values) {
+        bagUserState.append(value);
+      }
+      bagUserState.asyncClose();
+    }
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(ELEMENTS_PER_BUNDLE)
+  public void testMultimapUserStateReadModifyWrite(UserState state, Blackhole blackhole)
+      throws Exception {
+    BeamFnStateClient stateClient = state.newBundle();
+    for (int i = 0; i < ELEMENTS_PER_BUNDLE; i++) {
+      MultimapUserState<String, Long> multimapUserState =
+          new MultimapUserState<>(
+              stateClient,
+              state.instructionId,
+              PTRANSFORM_ID,
+              STATE_ID,
+              ENCODED_WINDOW,
+              state.encodedKeys[i % state.distinctKeys],
+              StringUtf8Coder.of(),
+              VarLongCoder.of());
+      for (String mapKey : multimapUserState.keys()) {
+        for (Long value : multimapUserState.get(mapKey)) {
+          blackhole.consume(value);
+        }
+        multimapUserState.remove(mapKey);
+        for (Long value : state.values) {
+          multimapUserState.put(mapKey, value);
+        }
+      }
+      multimapUserState.asyncClose();
+    }
+  }
+
+  private static StateKey bagKey(ByteString encodedKey) {
+    return StateKey.newBuilder()
+        .setBagUserState(
+            StateKey.BagUserState.newBuilder()
+                .setTransformId(PTRANSFORM_ID)
+                .setUserStateId(STATE_ID)
+                .setWindow(ENCODED_WINDOW)
+                .setKey(encodedKey))
+        .build();
+  }
+
+  private static StateKey multimapKeysKey(ByteString encodedKey) {
+    return StateKey.newBuilder()
+        .setMultimapKeysUserState(
+            StateKey.MultimapKeysUserState.newBuilder()
+                .setTransformId(PTRANSFORM_ID)
+                .setUserStateId(STATE_ID)
+                .setWindow(ENCODED_WINDOW)
+                .setKey(encodedKey))
+        .build();
+  }
+
+  private static StateKey multimapKey(ByteString encodedKey, String mapKey) throws IOException {
+    return StateKey.newBuilder()
+        .setMultimapUserState(
+            StateKey.MultimapUserState.newBuilder()
+                .setTransformId(PTRANSFORM_ID)
+                .setUserStateId(STATE_ID)
+                .setWindow(ENCODED_WINDOW)
+                .setKey(encodedKey)
+                .setMapKey(encode(StringUtf8Coder.of(), Collections.singletonList(mapKey))))
+        .build();
+  }
+
+  static <T> ByteString encode(Coder<T> coder, Iterable<T> values) throws IOException {
+    ByteString.Output out = ByteString.newOutput();
+    for (T value : values) {
+      coder.encode(value, out);
+    }
+    return out.toByteString();
+  }
+}
@@ -30,6 +30,7 @@ import org.apache.beam.sdk.coders.KvCoder;
 import org.apache.beam.sdk.fn.data.FnDataReceiver;
 import org.apache.beam.sdk.function.ThrowingFunction;
 import org.apache.beam.sdk.options.PipelineOptions;
+import org.apache.beam.sdk.options.SdkHarnessOptions;
 import org.apache.beam.sdk.transforms.Combine.CombineFn;
 import org.apache.beam.sdk.util.SerializableUtils;
 import org.apache.beam.sdk.util.WindowedValue;
@@ -89,9 +90,18 @@ public class CombineRunners {
     }
 
     void startBundle() {
-      groupingTable =
-          PrecombineGroupingTable.combiningAndSampling(
-              options, combineFn, keyCoder, accumCoder, 0.001 /*sizeEstimatorSampleRate*/);
+      if (options.as(SdkHarnessOptions.class).getUseOffHeapGroupingTable()
+          && OffHeapPrecombineGroupingTable.isSupported(keyCoder)) {
+        // The off-heap table is empty after each flush so its arena is reused across bundles.
+        if (groupingTable == null) {
+          groupingTable =
+              OffHeapPrecombineGroupingTable.combining(options, combineFn, keyCoder, accumCoder);
+        }
+      } else {
+        groupingTable =
+            PrecombineGroupingTable.combiningAndSampling(
+                options, combineFn, keyCoder, accumCoder, 0.001 /*sizeEstimatorSampleRate*/);
+      }
     }
 
     void processElement(WindowedValue<KV<KeyT, InputT>> elem) throws Exception {
@@ -102,6 +112,10 @@ public class CombineRunners {
     void finishBundle() throws Exception {
       groupingTable.flush(
           (Object outputElem) -> output.accept((WindowedValue<KV<KeyT, AccumT>>) outputElem));
+      if (groupingTable instanceof OffHeapPrecombineGroupingTable) {
+        // Cached bundle processors may stay idle for a long time, don't hold on to a full arena.
+        ((OffHeapPrecombineGroupingTable<?, ?, ?>) groupingTable).shrink();
+      }
     }
   }
 
@@ -221,6 +221,9 @@ public class FnHarness {
     IdGenerator idGenerator = IdGenerators.decrementingLongs();
     ShortIdMap metricsShortIds = new ShortIdMap();
     ExecutorService executorService = options.as(GcsOptions.class).getExecutorService();
+    // Load the PTransform runner factories while connecting to the runner, rather than when the
+    // first bundle arrives.
+    ProcessBundleHandler.preloadRegisteredRunnerFactories(executorService);
     // The logging client variable is not used per se, but during its lifetime (until close()) it
     // intercepts logging and sends it to the logging service.
     try (BeamFnLoggingClient logging =
@@ -290,9 +293,17 @@ public class FnHarness {
       // TODO(BEAM-9729): Remove once runners no longer send this instruction.
       handlers.put(
           BeamFnApi.InstructionRequest.RequestCase.REGISTER,
-          request ->
-              BeamFnApi.InstructionResponse.newBuilder()
-                  .setRegister(BeamFnApi.RegisterResponse.getDefaultInstance()));
+          request -> {
+            // Cache the registered descriptors and start building their bundle processors ahead
+            // of the first bundle.
+            for (BeamFnApi.ProcessBundleDescriptor descriptor :
+                request.getRegister().getProcessBundleDescriptorList()) {
+              processBundleDescriptors.put(descriptor.getId(), descriptor);
+              processBundleHandler.prewarm(descriptor.getId());
+            }
+            return BeamFnApi.InstructionResponse.newBuilder()
+                .setRegister(BeamFnApi.RegisterResponse.getDefaultInstance());
+          });
       handlers.put(
           BeamFnApi.InstructionRequest.RequestCase.FINALIZE_BUNDLE,
           finalizeBundleHandler::finalizeBundle);
@@ -0,0 +1,797 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.beam.fn.harness;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import static org.apache.beam.vendor.guava.v26_0_jre.com.google.common.base.Preconditions.checkState;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import org.apache.beam.fn.harness.PrecombineGroupingTable.Combiner;
+import org.apache.beam.fn.harness.PrecombineGroupingTable.ValueCombiner;
+import org.apache.beam.runners.core.GlobalCombineFnRunners;
+import org.apache.beam.runners.core.NullSideInputReader;
+import org.apache.beam.sdk.coders.Coder;
+import org.apache.beam.sdk.coders.Coder.NonDeterministicException;
+import org.apache.beam.sdk.coders.StringUtf8Coder;
+import org.apache.beam.sdk.coders.VarIntCoder;
+import org.apache.beam.sdk.coders.VarLongCoder;
+import org.apache.beam.sdk.options.PipelineOptions;
+import org.apache.beam.sdk.options.SdkHarnessOptions;
+import org.apache.beam.sdk.transforms.Combine.CombineFn;
+import org.apache.beam.sdk.transforms.windowing.BoundedWindow;
+import org.apache.beam.sdk.transforms.windowing.PaneInfo;
+import org.apache.beam.sdk.util.WindowedValue;
+import org.apache.beam.sdk.values.KV;
+import org.apache.beam.vendor.guava.v26_0_jre.com.google.common.annotations.VisibleForTesting;
+import org.checkerframework.checker.nullness.qual.Nullable;
+import org.joda.time.Instant;
+
+/**
+ * A {@link GroupingTable} that stores encoded keys and accumulators within a direct (off-heap)
+ * arena instead of as Java objects within a {@link java.util.HashMap}.
+ *
+ * <p>Only the windows and pane of each key are kept on the heap, and they are interned so that all
+ * keys sharing the same windows and pane refer to a single id. Keys encoded with {@link
+ * VarLongCoder} or {@link VarIntCoder} are stored as primitive longs within the index, keys encoded
+ * with {@link StringUtf8Coder} are stored as their raw UTF-8 bytes and all other keys are stored
+ * using their coder's encoding, which must be deterministic (see {@link #isSupported}).
+ *
+ * <p>The arena grows on demand up to {@link SdkHarnessOptions#getGroupingTableMaxSizeMb()}. Once
+ * full, only the least recently used keys are output until the arena is at most {@link
+ * #TARGET_LOAD} full, rather than flushing the whole table. The arena is retained across calls to
+ * {@link #flush} so that a single table can be reused for every bundle, and {@link #shrink} returns
+ * it to its initial size once a bundle is finished so that an idle table holds little direct
+ * memory.
+ */
+@SuppressWarnings({
+  "nullness" // TODO(https://issues.apache.org/jira/browse/BEAM-10402)
+})
+public class OffHeapPrecombineGroupingTable<K, InputT, AccumT>
+    implements GroupingTable<WindowedValue<K>, InputT, AccumT> {
+
+  /**
+   * Returns a {@link GroupingTable} that combines inputs into an accumulator which is stored
+   * off-heap.
+   */
+  public static <K, InputT, AccumT> GroupingTable<WindowedValue<K>, InputT, AccumT> combining(
+      PipelineOptions options,
+      CombineFn<InputT, AccumT, ?> combineFn,
+      Coder<K> keyCoder,
+      Coder<AccumT> accumulatorCoder) {
+    Combiner<WindowedValue<K>, InputT, AccumT, ?> valueCombiner =
+        new ValueCombiner<>(
+            GlobalCombineFnRunners.create(combineFn), NullSideInputReader.empty(), options);
+    long maxSizeBytes =
+        options.as(SdkHarnessOptions.class).getGroupingTableMaxSizeMb() * 1024L * 1024L;
+    return new OffHeapPrecombineGroupingTable<>(
+        (int) Math.min(maxSizeBytes, MAX_ARENA_BYTES), keyCoder, valueCombiner, accumulatorCoder);
+  }
+
+  /**
+   * Returns whether keys encoded with the given coder can be grouped by this table, which requires
+   * equal keys to have equal encodings.
+   */
+  public static boolean isSupported(Coder<?> keyCoder) {
+    try {
+      keyCoder.verifyDeterministic();
+      return true;
+    } catch (NonDeterministicException e) {
+      return false;
+    }
+  }
+
+  /** Direct buffers are indexed by {@code int}, leave some headroom below the maximum size. */
+  private static final int MAX_ARENA_BYTES = Integer.MAX_VALUE - 1024;
+
+  private static final int INITIAL_ARENA_BYTES = 64 * 1024;
+  private static final int INITIAL_INDEX_CAPACITY = 1024;
+
+  /** The maximum fraction of index slots in use before the index is doubled in size. */
+  private static final double MAX_INDEX_LOAD = 0.5;
+
+  /** The fraction of the arena that is kept after evicting the least recently used keys. */
+  @VisibleForTesting static final double TARGET_LOAD = 0.9;
+
+  /** The fraction of the arena that may be garbage before it is compacted instead of grown. */
+  private static final double MAX_GARBAGE_LOAD = 0.25;
+
+  /**
+   * A rough estimate of the on-heap bytes retained for each distinct set of windows and pane, which
+   * are only released when the table is flushed.
+   */
+  @VisibleForTesting static final int WINDOWS_ENTRY_BYTES = 256;
+
+  private static final int EMPTY = -1;
+  private static final int EVICTED = -2;
+
+  // The layout of an entry within the arena:
+  //   long timestamp millis of the first element for the key
+  //   int  windows id
+  //   int  key length (0 if the key is stored within the index)
+  //   int  accumulator length
+  //   int  accumulator capacity
+  //   byte[key length] key
+  //   byte[accumulator capacity] accumulator
+  private static final int TIMESTAMP_OFFSET = 0;
+  private static final int WINDOWS_ID_OFFSET = 8;
+  private static final int KEY_LENGTH_OFFSET = 12;
+  private static final int ACCUMULATOR_LENGTH_OFFSET = 16;
+  private static final int ACCUMULATOR_CAPACITY_OFFSET = 20;
+  private static final int HEADER_BYTES = 24;
+
+  private final int maxArenaBytes;
+  private final KeyLayout<K> keyLayout;
+  private final Combiner<WindowedValue<K>, InputT, AccumT, ?> combiner;
+  private final Coder<AccumT> accumulatorCoder;
+  private final ScratchOutputStream accumulatorBytes = new ScratchOutputStream();
+
+  private ByteBuffer arena;
+  private int arenaEnd;
+  private int garbageBytes;
+
+  // An open addressing index using linear probing, the slot arrays are always the same length.
+  private int[] slotOffsets;
+  private int[] slotHashes;
+  private int[] slotLastAccess;
+  private long @Nullable [] slotPrimitiveKeys;
+  private int numEntries;
+  private int accessClock;
+
+  private final Map<WindowsAndPane, Integer> windowsIds = new HashMap<>();
+  private final List<WindowsAndPane> windowsById = new ArrayList<>();
+  private @Nullable Collection<? extends BoundedWindow> lastWindows;
+  private @Nullable PaneInfo lastPane;
+  private int lastWindowsId;
+
+  @VisibleForTesting
+  OffHeapPrecombineGroupingTable(
+      int maxArenaBytes,
+      Coder<K> keyCoder,
+      Combiner<WindowedValue<K>, InputT, AccumT, ?> combiner,
+      Coder<AccumT> accumulatorCoder) {
+    this.maxArenaBytes = maxArenaBytes;
+    this.keyLayout = KeyLayout.of(keyCoder);
+    this.combiner = combiner;
+    this.accumulatorCoder = accumulatorCoder;
+    this.arena = ByteBuffer.allocateDirect(Math.min(INITIAL_ARENA_BYTES, maxArenaBytes));
+    allocateIndex(INITIAL_INDEX_CAPACITY);
+  }
+
+  /** Adds a pair to this table, possibly flushing some entries to output if the table is full. */
+  @SuppressWarnings("unchecked")
+  @Override
+  public void put(Object pair, Receiver receiver) throws Exception {
+    WindowedValue<KV<K, InputT>> windowedPair = (WindowedValue<KV<K, InputT>>) pair;
+    K key = windowedPair.getValue().getKey();
+    WindowedValue<K> windowedKey = windowedPair.withValue(key);
+    if ((long) windowsById.size() * WINDOWS_ENTRY_BYTES > maxArenaBytes) {
+      // Window ids are referenced from the arena, so they can only be released by a full flush.
+      flush(receiver);
+    }
+    int windowsId = getWindowsId(windowedPair);
+
+    long primitiveKey = 0;
+    byte[] keyBytes = null;
+    int hash;
+    if (keyLayout.isPrimitive()) {
+      primitiveKey = keyLayout.toLong(key);
+      hash = hash(Long.hashCode(primitiveKey), windowsId);
+    } else {
+      keyBytes = keyLayout.toBytes(key);
+      hash = hash(Arrays.hashCode(keyBytes), windowsId);
+    }
+
+    int slot = findSlot(hash, windowsId, primitiveKey, keyBytes);
+    int offset = slotOffsets[slot];
+    AccumT accumulator =
+        offset == EMPTY ? combiner.createAccumulator(windowedKey) : decodeAccumulator(offset);
+    accumulator = combiner.add(windowedKey, accumulator, windowedPair.getValue().getValue());
+    encodeAccumulator(accumulator);
+
+    long timestampMillis;
+    if (offset == EMPTY) {
+      timestampMillis = windowedPair.getTimestamp().getMillis();
+    } else {
+      touch(slot);
+      if (accumulatorBytes.size() <= arena.getInt(offset + ACCUMULATOR_CAPACITY_OFFSET)) {
+        arena.putInt(offset + ACCUMULATOR_LENGTH_OFFSET, accumulatorBytes.size());
+        accumulatorBytes.writeTo(arena, offset + HEADER_BYTES + keyLength(offset));
+        return;
+      }
+      // The accumulator outgrew the space reserved for it, re-insert it at the end of the arena.
+      timestampMillis = arena.getLong(offset + TIMESTAMP_OFFSET);
+      garbageBytes += entryBytes(offset);
+      removeSlot(slot);
+    }
+    insert(
+        windowedKey,
+        accumulator,
+        hash,
+        windowsId,
+        primitiveKey,
+        keyBytes,
+        timestampMillis,
+        receiver);
+  }
+
+  private void insert(
+      WindowedValue<K> windowedKey,
+      AccumT accumulator,
+      int hash,
+      int windowsId,
+      long primitiveKey,
+      byte @Nullable [] keyBytes,
+      long timestampMillis,
+      Receiver receiver)
+      throws Exception {
+    int keyLength = keyBytes == null ? 0 : keyBytes.length;
+    int accumulatorLength = accumulatorBytes.size();
+    // Reserve some room for the accumulator to grow in place.
+    int accumulatorCapacity = accumulatorLength + (accumulatorLength >> 2);
+    long entryBytes = (long) HEADER_BYTES + keyLength + accumulatorCapacity;
+    if (entryBytes > maxArenaBytes) {
+      // Entries that can never fit within the arena are output immediately.
+      WindowedValue<K> outputKey =
+          WindowedValue.of(
+              windowedKey.getValue(),
+              new Instant(timestampMillis),
+              windowedKey.getWindows(),
+              windowedKey.getPane());
+      output(outputKey, accumulator, receiver);
+      return;
+    }
+    reserve((int) entryBytes, receiver);
+    if (numEntries + 1 > slotOffsets.length * MAX_INDEX_LOAD) {
+      rebuildIndex(slotOffsets.length * 2);
+    }
+
+    int offset = arenaEnd;
+    arena.putLong(offset + TIMESTAMP_OFFSET, timestampMillis);
+    arena.putInt(offset + WINDOWS_ID_OFFSET, windowsId);
+    arena.putInt(offset + KEY_LENGTH_OFFSET, keyLength);
+    arena.putInt(offset + ACCUMULATOR_LENGTH_OFFSET, accumulatorLength);
+    arena.putInt(offset + ACCUMULATOR_CAPACITY_OFFSET, accumulatorCapacity);
+    if (keyBytes != null) {
+      arena.position(offset + HEADER_BYTES);
+      arena.put(keyBytes);
+    }
+    accumulatorBytes.writeTo(arena, offset + HEADER_BYTES + keyLength);
+    arenaEnd += (int) entryBytes;
+
+    int slot = findSlot(hash, windowsId, primitiveKey, keyBytes);
+    slotOffsets[slot] = offset;
+    slotHashes[slot] = hash;
+    if (slotPrimitiveKeys != null) {
+      slotPrimitiveKeys[slot] = primitiveKey;
+    }
+    touch(slot);
+    numEntries++;
+  }
+
+  /** Flushes all entries in this table to output. */
+  @Override
+  public void flush(Receiver receiver) throws Exception {
+    for (int slot = 0; slot < slotOffsets.length; slot++) {
+      if (slotOffsets[slot] >= 0) {
+        output(slot, receiver);
+      }
+    }
+    Arrays.fill(slotOffsets, EMPTY);
+    numEntries = 0;
+    arenaEnd = 0;
+    garbageBytes = 0;
+    accessClock = 0;
+    windowsIds.clear();
+    windowsById.clear();
+    lastWindows = null;
+    lastPane = null;
+  }
+
+  /**
+   * Releases the arena and index beyond their initial sizes. Only valid when the table is empty,
+   * for example right after {@link #flush}.
+   */
+  public void shrink() {
+    checkState(
+        numEntries == 0, "Only an empty table can be shrunk, but it has %s keys", numEntries);
+    int initialArenaBytes = Math.min(INITIAL_ARENA_BYTES, maxArenaBytes);
+    if (arena.capacity() > initialArenaBytes) {
+      // The previous arena is freed once it is garbage collected.
+      arena = ByteBuffer.allocateDirect(initialArenaBytes);
+    }
+    if (slotOffsets.length > INITIAL_INDEX_CAPACITY) {
+      allocateIndex(INITIAL_INDEX_CAPACITY);
+    }
+  }
+
+  @VisibleForTesting
+  int arenaCapacity() {
+    return arena.capacity();
+  }
+
+  /** Returns the number of keys currently held within this table. */
+  @VisibleForTesting
+  int numEntries() {
+    return numEntries;
+  }
+
+  /**
+   * Returns the number of arena bytes used by keys currently held within this table, plus an
+   * estimate of the bytes retained by their windows.
+   */
+  @VisibleForTesting
+  long size() {
+    return (long) arenaEnd - garbageBytes + (long) windowsById.size() * WINDOWS_ENTRY_BYTES;
+  }
+
+  /**
+   * Ensures that there is room for {@code bytes} more bytes at the end of the arena by compacting
+   * it, growing it or evicting the least recently used keys, in that order of preference.
+   */
+  private void reserve(int bytes, Receiver receiver) throws Exception {
+    if (bytes <= arena.capacity() - arenaEnd) {
+      return;
+    }
+    int liveBytes = arenaEnd - garbageBytes;
+    if (garbageBytes >= arena.capacity() * MAX_GARBAGE_LOAD
+        && bytes <= arena.capacity() - liveBytes) {
+      compactInto(arena);
+      return;
+    }
+    if (arena.capacity() < maxArenaBytes) {
+      long newCapacity =
+          Math.min(maxArenaBytes, Math.max(2L * arena.capacity(), (long) liveBytes + bytes));
+      compactInto(ByteBuffer.allocateDirect((int) newCapacity));
+      if (bytes <= arena.capacity() - arenaEnd) {
+        return;
+      }
+    }
+    evict(bytes, receiver);
+  }
+
+  /**
+   * Outputs the least recently used keys until the arena is at most {@link #TARGET_LOAD} full
+   * after adding {@code bytes} more bytes, and compacts the arena.
+   */
+  private void evict(int bytes, Receiver receiver) throws Exception {
+    long targetBytes =
+        (long) (TARGET_LOAD * maxArenaBytes)
+            - bytes
+            - (long) windowsById.size() * WINDOWS_ENTRY_BYTES;
+    long[] byAge = new long[numEntries];
+    int n = 0;
+    for (int slot = 0; slot < slotOffsets.length; slot++) {
+      if (slotOffsets[slot] >= 0) {
+        byAge[n++] = ((long) slotLastAccess[slot] << 32) | slot;
+      }
+    }
+    Arrays.sort(byAge, 0, n);
+
+    long liveBytes = arenaEnd - garbageBytes;
+    for (int i = 0; i < n && liveBytes > targetBytes; i++) {
+      int slot = (int) byAge[i];
+      int entryBytes = entryBytes(slotOffsets[slot]);
+      output(slot, receiver);
+      liveBytes -= entryBytes;
+      garbageBytes += entryBytes;
+      slotOffsets[slot] = EVICTED;
+      numEntries--;
+    }
+    rebuildIndex(slotOffsets.length);
+    compactInto(arena);
+  }
+
+  /**
+   * Copies all live entries to the start of {@code target} in their current order and makes it
+   * the arena. {@code target} may be the current arena since entries only ever move towards its
+   * start.
+   */
+  private void compactInto(ByteBuffer target) {
+    long[] byOffset = new long[numEntries];
+    int n = 0;
+    for (int slot = 0; slot < slotOffsets.length; slot++) {
+      if (slotOffsets[slot] >= 0) {
+        byOffset[n++] = ((long) slotOffsets[slot] << 32) | slot;
+      }
+    }
+    Arrays.sort(byOffset, 0, n);
+
+    ByteBuffer source = arena.duplicate();
+    int writeOffset = 0;
+    for (int i = 0; i < n; i++) {
+      int offset = (int) (byOffset[i] >>> 32);
+      int slot = (int) byOffset[i];
+      int entryBytes = entryBytes(offset);
+      if (target != arena || offset != writeOffset) {
+        source.clear();
+        source.position(offset);
+        source.limit(offset + entryBytes);
+        target.position(writeOffset);
+        target.put(source);
+      }
+      slotOffsets[slot] = writeOffset;
+      writeOffset += entryBytes;
+    }
+    arena = target;
+    arenaEnd = writeOffset;
+    garbageBytes = 0;
+  }
+
+  private void allocateIndex(int capacity) {
+    slotOffsets = new int[capacity];
+    Arrays.fill(slotOffsets, EMPTY);
+    slotHashes = new int[capacity];
+    slotLastAccess = new int[capacity];
+    slotPrimitiveKeys = keyLayout.isPrimitive() ? new long[capacity] : null;
+  }
+
+  /** Re-inserts all live entries into a new index of the given capacity, dropping evicted slots. */
+  private void rebuildIndex(int capacity) {
+    int[] oldOffsets = slotOffsets;
+    int[] oldHashes = slotHashes;
+    int[] oldLastAccess = slotLastAccess;
+    long[] oldPrimitiveKeys = slotPrimitiveKeys;
+    allocateIndex(capacity);
+    int mask = capacity - 1;
+    for (int oldSlot = 0; oldSlot < oldOffsets.length; oldSlot++) {
+      if (oldOffsets[oldSlot] < 0) {
+        continue;
+      }
+      int slot = oldHashes[oldSlot] & mask;
+      while (slotOffsets[slot] != EMPTY) {
+        slot = (slot + 1) & mask;
+      }
+      slotOffsets[slot] = oldOffsets[oldSlot];
+      slotHashes[slot] = oldHashes[oldSlot];
+      slotLastAccess[slot] = oldLastAccess[oldSlot];
+      if (oldPrimitiveKeys != null) {
+        slotPrimitiveKeys[slot] = oldPrimitiveKeys[oldSlot];
+      }
+    }
+  }
+
+  /** Returns the slot holding the given key, or the empty slot where it should be inserted. */
+  private int findSlot(int hash, int windowsId, long primitiveKey, byte @Nullable [] keyBytes) {
+    int mask = slotOffsets.length - 1;
+    for (int slot = hash & mask; ; slot = (slot + 1) & mask) {
+      int offset = slotOffsets[slot];
+      if (offset == EMPTY) {
+        return slot;
+      }
+      if (slotHashes[slot] == hash
+          && arena.getInt(offset + WINDOWS_ID_OFFSET) == windowsId
+          && (keyBytes == null
+              ? slotPrimitiveKeys[slot] == primitiveKey
+              : keyBytesEqual(offset, keyBytes))) {
+        return slot;
+      }
+    }
+  }
+
+  /** Removes the given slot, shifting back any later entries of its probe sequence. */
+  private void removeSlot(int slot) {
+    int mask = slotOffsets.length - 1;
+    int hole = slot;
+    for (int next = (hole + 1) & mask; slotOffsets[next] != EMPTY; next = (next + 1) & mask) {
+      int ideal = slotHashes[next] & mask;
+      if (((next - ideal) & mask) >= ((next - hole) & mask)) {
+        slotOffsets[hole] = slotOffsets[next];
+        slotHashes[hole] = slotHashes[next];
+        slotLastAccess[hole] = slotLastAccess[next];
+        if (slotPrimitiveKeys != null) {
+          slotPrimitiveKeys[hole] = slotPrimitiveKeys[next];
+        }
+        hole = next;
+      }
+    }
+    slotOffsets[hole] = EMPTY;
+    numEntries--;
+  }
+
+  private boolean keyBytesEqual(int offset, byte[] keyBytes) {
+    if (keyLength(offset) != keyBytes.length) {
+      return false;
+    }
+    int keyOffset = offset + HEADER_BYTES;
+    for (int i = 0; i < keyBytes.length; i++) {
+      if (arena.get(keyOffset + i) != keyBytes[i]) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private void touch(int slot) {
+    if (accessClock == Integer.MAX_VALUE) {
+      renumberAccessTimes();
+    }
+    slotLastAccess[slot] = ++accessClock;
+  }
+
+  /** Replaces all access times with their rank so that the access clock does not overflow. */
+  private void renumberAccessTimes() {
+    long[] byAge = new long[numEntries];
+    int n = 0;
+    for (int slot = 0; slot < slotOffsets.length; slot++) {
+      if (slotOffsets[slot] >= 0) {
+        byAge[n++] = ((long) slotLastAccess[slot] << 32) | slot;
+      }
+    }
+    Arrays.sort(byAge, 0, n);
+    for (int i = 0; i < n; i++) {
+      slotLastAccess[(int) byAge[i]] = i + 1;
+    }
+    accessClock = n;
+  }
+
+  private int keyLength(int offset) {
+    return arena.getInt(offset + KEY_LENGTH_OFFSET);
+  }
+
+  private int entryBytes(int offset) {
+    return HEADER_BYTES + keyLength(offset) + arena.getInt(offset + ACCUMULATOR_CAPACITY_OFFSET);
+  }
+
+  private void encodeAccumulator(AccumT accumulator) throws IOException {
+    accumulatorBytes.reset();
+    accumulatorCoder.encode(accumulator, accumulatorBytes);
+  }
+
+  private AccumT decodeAccumulator(int offset) throws IOException {
+    int accumulatorOffset = offset + HEADER_BYTES + keyLength(offset);
+    return accumulatorCoder.decode(
+        new ByteBufferInputStream(
+            arena, accumulatorOffset, arena.getInt(offset + ACCUMULATOR_LENGTH_OFFSET)));
+  }
+
+  /** Outputs the entry at the given slot. Does not remove it from the table. */
+  private void output(int slot, Receiver receiver) throws Exception {
+    int offset = slotOffsets[slot];
+    K key =
+        keyLayout.isPrimitive()
+            ? keyLayout.fromLong(slotPrimitiveKeys[slot])
+            : keyLayout.fromBytes(arena, offset + HEADER_BYTES, keyLength(offset));
+    WindowsAndPane windows = windowsById.get(arena.getInt(offset + WINDOWS_ID_OFFSET));
+    WindowedValue<K> windowedKey =
+        WindowedValue.of(
+            key,
+            new Instant(arena.getLong(offset + TIMESTAMP_OFFSET)),
+            windows.windows,
+            windows.pane);
+    output(windowedKey, decodeAccumulator(offset), receiver);
+  }
+
+  private void output(WindowedValue<K> windowedKey, AccumT accumulator, Receiver receiver)
+      throws Exception {
+    AccumT compacted = combiner.compact(windowedKey, accumulator);
+    receiver.process(windowedKey.withValue(KV.of(windowedKey.getValue(), compacted)));
+  }
+
+  private int getWindowsId(WindowedValue<?> value) {
+    Collection<? extends BoundedWindow> windows = value.getWindows();
+    PaneInfo pane = value.getPane();
+    // Consecutive elements almost always share the same windows.
+    if (windows.equals(lastWindows) && pane.equals(lastPane)) {
+      return lastWindowsId;
+    }
+    WindowsAndPane windowsAndPane = new WindowsAndPane(windows, pane);
+    Integer id = windowsIds.get(windowsAndPane);
+    if (id == null) {
+      id = windowsById.size();
+      windowsById.add(windowsAndPane);
+      windowsIds.put(windowsAndPane, id);
+    }
+    lastWindows = windows;
+    lastPane = pane;
+    lastWindowsId = id;
+    return id;
+  }
+
+  private static int hash(int keyHash, int windowsId) {
+    int h = (keyHash * 31 + windowsId) * 0x9E3779B9;
+    return h ^ (h >>> 16);
+  }
+
+  /** The windows and pane shared by a set of keys. */
+  private static class WindowsAndPane {
+    private final Collection<? extends BoundedWindow> windows;
+    private final PaneInfo pane;
+
+    WindowsAndPane(Collection<? extends BoundedWindow> windows, PaneInfo pane) {
+      this.windows = windows;
+      this.pane = pane;
+    }
+
+    @Override
+    public boolean equals(@Nullable Object other) {
+      if (!(other instanceof WindowsAndPane)) {
+        return false;
+      }
+      WindowsAndPane that = (WindowsAndPane) other;
+      return windows.equals(that.windows) && pane.equals(that.pane);
+    }
+
+    @Override
+    public int hashCode() {
+      return Objects.hash(windows, pane);
+    }
+  }
+
+  /**
+   * Describes how the keys of a particular coder are laid out within the table, either as a
+   * primitive long within the index or as bytes within the arena.
+   */
+  private abstract static class KeyLayout<K> {
+    @SuppressWarnings("unchecked")
+    static <K> KeyLayout<K> of(Coder<K> keyCoder) {
+      if (keyCoder instanceof VarLongCoder) {
+        return (KeyLayout<K>) new VarLongKeyLayout();
+      } else if (keyCoder instanceof VarIntCoder) {
+        return (KeyLayout<K>) new VarIntKeyLayout();
+      } else if (keyCoder instanceof StringUtf8Coder) {
+        return (KeyLayout<K>) new Utf8KeyLayout();
+      }
+      return new CoderKeyLayout<>(keyCoder);
+    }
+
+    boolean isPrimitive() {
+      return false;
+    }
+
+    long toLong(K key) {
+      throw new UnsupportedOperationException();
+    }
+
+    K fromLong(long key) {
+      throw new UnsupportedOperationException();
+    }
+
+    byte[] toBytes(K key) throws IOException {
+      throw new UnsupportedOperationException();
+    }
+
+    K fromBytes(ByteBuffer arena, int offset, int length) throws IOException {
+      throw new UnsupportedOperationException();
+    }
+  }
+
+  private static class VarLongKeyLayout extends KeyLayout<Long> {
+    @Override
+    boolean isPrimitive() {
+      return true;
+    }
+
+    @Override
+    long toLong(Long key) {
+      return key;
+    }
+
+    @Override
+    Long fromLong(long key) {
+      return key;
+    }
+  }
+
+  private static class VarIntKeyLayout extends KeyLayout<Integer> {
+    @Override
+    boolean isPrimitive() {
+      return true;
+    }
+
+    @Override
+    long toLong(Integer key) {
+      return key;
+    }
+
+    @Override
+    Integer fromLong(long key) {
+      return (int) key;
+    }
+  }
+
+  private static class Utf8KeyLayout extends KeyLayout<String> {
+    @Override
+    byte[] toBytes(String key) {
+      return key.getBytes(UTF_8);
+    }
+
+    @Override
+    String fromBytes(ByteBuffer arena, int offset, int length) {
+      byte[] bytes = new byte[length];
+      ByteBuffer source = arena.duplicate();
+      source.position(offset);
+      source.get(bytes);
+      return new String(bytes, UTF_8);
+    }
+  }
+
+  private static class CoderKeyLayout<K> extends KeyLayout<K> {
+    private final Coder<K> coder;
+    private final ScratchOutputStream keyBytes = new ScratchOutputStream();
+
+    CoderKeyLayout(Coder<K> coder) {
+      this.coder = coder;
+    }
+
+    @Override
+    byte[] toBytes(K key) throws IOException {
+      keyBytes.reset();
+      coder.encode(key, keyBytes);
+      return keyBytes.toByteArray();
+    }
+
+    @Override
+    K fromBytes(ByteBuffer arena, int offset, int length) throws IOException {
+      return coder.decode(new ByteBufferInputStream(arena, offset, length));
+    }
+  }
+
+  /** A reusable buffer for encoding values before they are copied into the arena. */
+  private static class ScratchOutputStream extends ByteArrayOutputStream {
+    void writeTo(ByteBuffer target, int offset) {
+      target.position(offset);
+      target.put(buf, 0, count);
+    }
+  }
+
+  /** An {@link InputStream} over a range of a {@link ByteBuffer} which does not copy it. */
+  private static class ByteBufferInputStream extends InputStream {
+    private final ByteBuffer buffer;
+
+    ByteBufferInputStream(ByteBuffer source, int offset, int length) {
+      this.buffer = source.duplicate();
+      buffer.clear();
+      buffer.position(offset);
+      buffer.limit(offset + length);
+    }
+
+    @Override
+    public int read() {
+      return buffer.hasRemaining() ? buffer.get() & 0xFF : -1;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) {
+      if (len == 0) {
+        return 0;
+      }
+      if (!buffer.hasRemaining()) {
+        return -1;
+      }
+      int n = Math.min(len, buffer.remaining());
+      buffer.get(b, off, n);
+      return n;
+    }
+
+    @Override
+    public int available() {
+      return buffer.remaining();
+    }
+  }
+}
@@ -224,7 +224,7 @@ public class PrecombineGroupingTable<K, InputT, AccumT>
     private final SideInputReader sideInputReader;
     private final PipelineOptions options;
 
-    private ValueCombiner(
+    ValueCombiner(
         GlobalCombineFnRunner<InputT, AccumT, OutputT> combineFn,
         SideInputReader sideInputReader,
         PipelineOptions options) {
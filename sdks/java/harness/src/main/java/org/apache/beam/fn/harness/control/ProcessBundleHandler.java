@@ -20,11 +20,14 @@ package org.apache.beam.fn.harness.control;
 import com.google.auto.value.AutoValue;
 import java.io.Closeable;
 import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.lang.management.MemoryUsage;
 import java.time.Duration;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
-import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
@@ -32,11 +35,18 @@ import java.util.ServiceLoader;
 import java.util.Set;
 import java.util.WeakHashMap;
 import java.util.concurrent.CompletableFuture;
-import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.Executor;
 import java.util.concurrent.Phaser;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.function.BiConsumer;
 import java.util.function.Consumer;
+import java.util.function.DoubleSupplier;
 import java.util.function.Function;
+import java.util.function.LongSupplier;
 import java.util.function.Supplier;
 import org.apache.beam.fn.harness.BeamFnDataReadRunner;
 import org.apache.beam.fn.harness.PTransformRunnerFactory;
@@ -52,6 +62,7 @@ import org.apache.beam.fn.harness.data.PTransformFunctionRegistry;
 import org.apache.beam.fn.harness.state.BeamFnStateClient;
 import org.apache.beam.fn.harness.state.BeamFnStateGrpcClientCache;
 import org.apache.beam.fn.harness.state.CachingBeamFnStateClient;
+import org.apache.beam.fn.harness.state.StateCache;
 import org.apache.beam.model.fnexecution.v1.BeamFnApi;
 import org.apache.beam.model.fnexecution.v1.BeamFnApi.ProcessBundleDescriptor;
 import org.apache.beam.model.fnexecution.v1.BeamFnApi.ProcessBundleRequest;
@@ -70,8 +81,12 @@ import org.apache.beam.runners.core.construction.PTransformTranslation;
 import org.apache.beam.runners.core.construction.Timer;
 import org.apache.beam.runners.core.metrics.ExecutionStateSampler;
 import org.apache.beam.runners.core.metrics.ExecutionStateTracker;
+import org.apache.beam.runners.core.metrics.LabeledMetrics;
 import org.apache.beam.runners.core.metrics.MetricsContainerStepMap;
+import org.apache.beam.runners.core.metrics.MonitoringInfoConstants;
+import org.apache.beam.runners.core.metrics.MonitoringInfoMetricName;
 import org.apache.beam.runners.core.metrics.ShortIdMap;
+import org.apache.beam.sdk.extensions.gcp.options.GcsOptions;
 import org.apache.beam.sdk.fn.data.BeamFnDataInboundObserver2;
 import org.apache.beam.sdk.fn.data.CloseableFnDataReceiver;
 import org.apache.beam.sdk.fn.data.DataEndpoint;
@@ -79,6 +94,8 @@ import org.apache.beam.sdk.fn.data.FnDataReceiver;
 import org.apache.beam.sdk.fn.data.LogicalEndpoint;
 import org.apache.beam.sdk.fn.data.TimerEndpoint;
 import org.apache.beam.sdk.function.ThrowingRunnable;
+import org.apache.beam.sdk.metrics.Counter;
+import org.apache.beam.sdk.metrics.Distribution;
 import org.apache.beam.sdk.options.ExperimentalOptions;
 import org.apache.beam.sdk.options.PipelineOptions;
 import org.apache.beam.sdk.options.StreamingOptions;
@@ -89,6 +106,7 @@ import org.apache.beam.vendor.grpc.v1p36p0.com.google.protobuf.ByteString;
 import org.apache.beam.vendor.grpc.v1p36p0.com.google.protobuf.Message;
 import org.apache.beam.vendor.grpc.v1p36p0.com.google.protobuf.TextFormat;
 import org.apache.beam.vendor.guava.v26_0_jre.com.google.common.annotations.VisibleForTesting;
+import org.apache.beam.vendor.guava.v26_0_jre.com.google.common.base.Suppliers;
 import org.apache.beam.vendor.guava.v26_0_jre.com.google.common.cache.CacheBuilder;
 import org.apache.beam.vendor.guava.v26_0_jre.com.google.common.cache.CacheLoader;
 import org.apache.beam.vendor.guava.v26_0_jre.com.google.common.cache.LoadingCache;
@@ -98,6 +116,7 @@ import org.apache.beam.vendor.guava.v26_0_jre.com.google.common.collect.Immutabl
 import org.apache.beam.vendor.guava.v26_0_jre.com.google.common.collect.Lists;
 import org.apache.beam.vendor.guava.v26_0_jre.com.google.common.collect.SetMultimap;
 import org.apache.beam.vendor.guava.v26_0_jre.com.google.common.collect.Sets;
+import org.apache.beam.vendor.guava.v26_0_jre.com.google.common.util.concurrent.MoreExecutors;
 import org.joda.time.Instant;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -133,9 +152,16 @@ public class ProcessBundleHandler {
   private static final int DATA_QUEUE_SIZE = 1000;
 
   private static final Logger LOG = LoggerFactory.getLogger(ProcessBundleHandler.class);
-  @VisibleForTesting static final Map<String, PTransformRunnerFactory> REGISTERED_RUNNER_FACTORIES;
+  /**
+   * The runner factories of every {@link Registrar} on the classpath. They are loaded when the
+   * first bundle processor is built, unless {@link #preloadRegisteredRunnerFactories} already
+   * loaded them in the background while the SDK harness was starting up.
+   */
+  @VisibleForTesting
+  static final Supplier<Map<String, PTransformRunnerFactory>> REGISTERED_RUNNER_FACTORIES =
+      Suppliers.memoize(ProcessBundleHandler::loadRegisteredRunnerFactories);
 
-  static {
+  private static Map<String, PTransformRunnerFactory> loadRegisteredRunnerFactories() {
     Set<Registrar> pipelineRunnerRegistrars =
         Sets.newTreeSet(ReflectHelpers.ObjectsClassComparator.INSTANCE);
     pipelineRunnerRegistrars.addAll(
@@ -146,37 +172,28 @@ public class ProcessBundleHandler {
     for (Registrar registrar : pipelineRunnerRegistrars) {
       builder.putAll(registrar.getPTransformRunnerFactories());
     }
-    REGISTERED_RUNNER_FACTORIES = builder.build();
+    return builder.build();
   }
 
-  // Creates a new map of state data for newly encountered state keys
-  private CacheLoader<
-          BeamFnApi.StateKey,
-          Map<CachingBeamFnStateClient.StateCacheKey, BeamFnApi.StateGetResponse>>
-      stateKeyMapCacheLoader =
-          new CacheLoader<
-              BeamFnApi.StateKey,
-              Map<CachingBeamFnStateClient.StateCacheKey, BeamFnApi.StateGetResponse>>() {
-            @Override
-            public Map<CachingBeamFnStateClient.StateCacheKey, BeamFnApi.StateGetResponse> load(
-                BeamFnApi.StateKey key) {
-              return new HashMap<>();
-            }
-          };
+  /**
+   * Loads the registered runner factories on the given executor, so that loading them overlaps
+   * with the SDK harness connecting to the runner instead of delaying the first bundle.
+   */
+  public static void preloadRegisteredRunnerFactories(Executor executor) {
+    executor.execute(REGISTERED_RUNNER_FACTORIES::get);
+  }
 
   private final PipelineOptions options;
   private final Function<String, Message> fnApiRegistry;
   private final BeamFnDataClient beamFnDataClient;
   private final BeamFnStateGrpcClientCache beamFnStateGrpcClientCache;
-  private final LoadingCache<
-          BeamFnApi.StateKey,
-          Map<CachingBeamFnStateClient.StateCacheKey, BeamFnApi.StateGetResponse>>
-      stateCache;
+  private final StateCache stateCache;
   private final FinalizeBundleHandler finalizeBundleHandler;
   private final ShortIdMap shortIds;
   private final boolean runnerAcceptsShortIds;
-  private final Map<String, PTransformRunnerFactory> urnToPTransformRunnerFactoryMap;
+  private final Supplier<Map<String, PTransformRunnerFactory>> urnToPTransformRunnerFactoryMap;
   private final PTransformRunnerFactory defaultPTransformRunnerFactory;
+  private final double processingTimeSamplingRate;
   @VisibleForTesting final BundleProcessorCache bundleProcessorCache;
 
   public ProcessBundleHandler(
@@ -196,7 +213,7 @@ public class ProcessBundleHandler {
         finalizeBundleHandler,
         shortIds,
         REGISTERED_RUNNER_FACTORIES,
-        new BundleProcessorCache());
+        new BundleProcessorCache(options));
   }
 
   @VisibleForTesting
@@ -210,11 +227,33 @@ public class ProcessBundleHandler {
       ShortIdMap shortIds,
       Map<String, PTransformRunnerFactory> urnToPTransformRunnerFactoryMap,
       BundleProcessorCache bundleProcessorCache) {
+    this(
+        options,
+        runnerCapabilities,
+        fnApiRegistry,
+        beamFnDataClient,
+        beamFnStateGrpcClientCache,
+        finalizeBundleHandler,
+        shortIds,
+        Suppliers.ofInstance(urnToPTransformRunnerFactoryMap),
+        bundleProcessorCache);
+  }
+
+  private ProcessBundleHandler(
+      PipelineOptions options,
+      Set<String> runnerCapabilities,
+      Function<String, Message> fnApiRegistry,
+      BeamFnDataClient beamFnDataClient,
+      BeamFnStateGrpcClientCache beamFnStateGrpcClientCache,
+      FinalizeBundleHandler finalizeBundleHandler,
+      ShortIdMap shortIds,
+      Supplier<Map<String, PTransformRunnerFactory>> urnToPTransformRunnerFactoryMap,
+      BundleProcessorCache bundleProcessorCache) {
     this.options = options;
     this.fnApiRegistry = fnApiRegistry;
     this.beamFnDataClient = beamFnDataClient;
     this.beamFnStateGrpcClientCache = beamFnStateGrpcClientCache;
-    this.stateCache = CacheBuilder.newBuilder().build(stateKeyMapCacheLoader);
+    this.stateCache = StateCache.create(options);
     this.finalizeBundleHandler = finalizeBundleHandler;
     this.shortIds = shortIds;
     this.runnerAcceptsShortIds =
@@ -222,7 +261,12 @@ public class ProcessBundleHandler {
             BeamUrns.getUrn(RunnerApi.StandardRunnerProtocols.Enum.MONITORING_INFO_SHORT_IDS));
     this.urnToPTransformRunnerFactoryMap = urnToPTransformRunnerFactoryMap;
     this.defaultPTransformRunnerFactory =
-        new UnknownPTransformRunnerFactory(urnToPTransformRunnerFactoryMap.keySet());
+        new UnknownPTransformRunnerFactory(urnToPTransformRunnerFactoryMap);
+    String processingTimeSamplingRate =
+        ExperimentalOptions.getExperimentValue(
+            options, PCollectionConsumerRegistry.PROCESSING_TIME_SAMPLING_RATE_EXPERIMENT);
+    this.processingTimeSamplingRate =
+        processingTimeSamplingRate == null ? 0 : Double.parseDouble(processingTimeSamplingRate);
     this.bundleProcessorCache = bundleProcessorCache;
   }
 
@@ -295,6 +339,7 @@ public class ProcessBundleHandler {
     if (!processedPTransformIds.contains(pTransformId)) {
       Object runner =
           urnToPTransformRunnerFactoryMap
+              .get()
               .getOrDefault(pTransform.getSpec().getUrn(), defaultPTransformRunnerFactory)
               .createRunnerForPTransform(
                   new Context() {
@@ -431,6 +476,7 @@ public class ProcessBundleHandler {
       throws Exception {
     BeamFnApi.ProcessBundleResponse.Builder response = BeamFnApi.ProcessBundleResponse.newBuilder();
 
+    prewarm(request.getProcessBundle().getProcessBundleDescriptorId());
     BundleProcessor bundleProcessor =
         bundleProcessorCache.get(
             request.getProcessBundle().getProcessBundleDescriptorId(),
@@ -589,11 +635,52 @@ public class ProcessBundleHandler {
     return BeamFnApi.InstructionResponse.newBuilder().setProcessBundleSplit(response);
   }
 
+  /**
+   * Builds {@link BundleProcessor}s for the specified process bundle descriptor in the background
+   * if prewarming is enabled with the {@link BundleProcessorCache#PREWARM_COUNT_EXPERIMENT}. Does
+   * nothing if the descriptor has already been prewarmed or used.
+   *
+   * <p>Descriptors which access state through the cross bundle cache are not prewarmed, since the
+   * cache tokens of a bundle processor are those of the request it was built for.
+   */
+  public void prewarm(String bundleDescriptorId) {
+    if (!bundleProcessorCache.isPrewarmEnabled()) {
+      return;
+    }
+    BeamFnApi.ProcessBundleDescriptor bundleDescriptor =
+        (BeamFnApi.ProcessBundleDescriptor) fnApiRegistry.apply(bundleDescriptorId);
+    if (bundleDescriptor.hasStateApiServiceDescriptor() && usesCrossBundleStateCache()) {
+      return;
+    }
+    bundleProcessorCache.prewarm(
+        bundleDescriptorId,
+        () -> {
+          try {
+            return createBundleProcessor(
+                bundleDescriptorId,
+                ProcessBundleRequest.newBuilder()
+                    .setProcessBundleDescriptorId(bundleDescriptorId)
+                    .build());
+          } catch (IOException e) {
+            throw new RuntimeException(e);
+          }
+        });
+  }
+
   /** Shutdown the bundles, running the tearDown() functions. */
   public void shutdown() throws Exception {
     bundleProcessorCache.shutdown();
   }
 
+  /** Returns whether state is accessed through a {@link CachingBeamFnStateClient}. */
+  private boolean usesCrossBundleStateCache() {
+    // If pipeline is batch, use a CachingBeamFnStateClient to store state responses.
+    // Once streaming is supported use CachingBeamFnStateClient for both.
+    // TODO(BEAM-10212): Remove experiment once cross bundle caching is used by default
+    return ExperimentalOptions.hasExperiment(options, "cross_bundle_caching")
+        && !options.as(StreamingOptions.class).isStreaming();
+  }
+
   private BundleProcessor createBundleProcessor(
       String bundleId, BeamFnApi.ProcessBundleRequest processBundleRequest) throws IOException {
     BeamFnApi.ProcessBundleDescriptor bundleDescriptor =
@@ -604,7 +691,8 @@ public class ProcessBundleHandler {
     ExecutionStateTracker stateTracker =
         new ExecutionStateTracker(ExecutionStateSampler.instance());
     PCollectionConsumerRegistry pCollectionConsumerRegistry =
-        new PCollectionConsumerRegistry(metricsContainerRegistry, stateTracker);
+        new PCollectionConsumerRegistry(
+            metricsContainerRegistry, stateTracker, processingTimeSamplingRate);
     HashSet<String> processedPTransformIds = new HashSet<>();
 
     PTransformFunctionRegistry startFunctionRegistry =
@@ -633,16 +721,11 @@ public class ProcessBundleHandler {
           beamFnStateGrpcClientCache.forApiServiceDescriptor(
               bundleDescriptor.getStateApiServiceDescriptor());
 
-      // If pipeline is batch, use a CachingBeamFnStateClient to store state responses.
-      // Once streaming is supported use CachingBeamFnStateClient for both.
-      // TODO(BEAM-10212): Remove experiment once cross bundle caching is used by default
-      if (ExperimentalOptions.hasExperiment(options, "cross_bundle_caching")) {
+      if (usesCrossBundleStateCache()) {
         beamFnStateClient =
             new BlockTillStateCallsFinish(
-                options.as(StreamingOptions.class).isStreaming()
-                    ? underlyingClient
-                    : new CachingBeamFnStateClient(
-                        underlyingClient, stateCache, processBundleRequest.getCacheTokensList()));
+                new CachingBeamFnStateClient(
+                    underlyingClient, stateCache, processBundleRequest.getCacheTokensList()));
       } else {
         beamFnStateClient = new BlockTillStateCallsFinish(underlyingClient);
       }
@@ -743,12 +826,62 @@ public class ProcessBundleHandler {
     return bundleProcessorCache;
   }
 
-  /** A cache for {@link BundleProcessor}s. */
+  /**
+   * A cache for {@link BundleProcessor}s.
+   *
+   * <p>Idle {@link BundleProcessor}s are kept for each process bundle descriptor and the most
+   * recently released one is reused first. Processors which have been idle for longer than the
+   * maximum idle time are evicted, and all but the most recently released idle processor of each
+   * descriptor are evicted when the heap in use after the last garbage collection exceeds {@link
+   * #MAX_HEAP_USAGE} of the maximum heap size. Keeping one processor per descriptor means that a
+   * pipeline running with a steadily high heap does not rebuild a processor for every bundle. With
+   * the
+   * {@link #PREWARM_COUNT_EXPERIMENT}, processors for a descriptor are built in the background as
+   * soon as the descriptor is registered or first used, so that DoFn setup and the construction of
+   * runners and coders are kept off the critical path of the first bundles.
+   *
+   * <p>Hits, misses, evictions and the time taken to build each processor are reported as process
+   * wide metrics.
+   */
   public static class BundleProcessorCache {
 
-    private final LoadingCache<String, ConcurrentLinkedQueue<BundleProcessor>>
+    /**
+     * Experiment which sets the number of {@link BundleProcessor}s built in the background for
+     * each process bundle descriptor, e.g. {@code bundle_processor_prewarm_count=4}. Disabled by
+     * default.
+     */
+    public static final String PREWARM_COUNT_EXPERIMENT = "bundle_processor_prewarm_count";
+
+    /**
+     * Experiment which sets the time in milliseconds after which an idle {@link BundleProcessor}
+     * is evicted, e.g. {@code bundle_processor_max_idle_ms=60000}.
+     */
+    public static final String MAX_IDLE_MILLIS_EXPERIMENT = "bundle_processor_max_idle_ms";
+
+    @VisibleForTesting static final Duration DEFAULT_MAX_IDLE_TIME = Duration.ofMinutes(1L);
+
+    /**
+     * The fraction of the maximum heap in use above which all but one idle processor of each
+     * descriptor are evicted.
+     */
+    @VisibleForTesting static final double MAX_HEAP_USAGE = 0.9;
+
+    private static final long EVICTION_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(1L);
+
+    private final LoadingCache<String, ConcurrentLinkedDeque<IdleBundleProcessor>>
         cachedBundleProcessors;
     private final Map<String, BundleProcessor> activeBundleProcessors;
+    private final Set<String> prewarmingBundleDescriptorIds;
+    private final int prewarmCount;
+    private final long maxIdleNanos;
+    private final Executor prewarmExecutor;
+    private final LongSupplier nanoClock;
+    private final DoubleSupplier heapUsage;
+    private final AtomicLong nextEvictionNanos;
+    private final Counter hits;
+    private final Counter misses;
+    private final Counter evictions;
+    private final Distribution buildTimeMillis;
 
     @Override
     public int hashCode() {
@@ -756,32 +889,114 @@ public class ProcessBundleHandler {
     }
 
     BundleProcessorCache() {
+      this(
+          0,
+          DEFAULT_MAX_IDLE_TIME,
+          MoreExecutors.directExecutor(),
+          System::nanoTime,
+          BundleProcessorCache::heapUsageAfterLastCollection);
+    }
+
+    BundleProcessorCache(PipelineOptions options) {
+      this(
+          getExperimentValue(options, PREWARM_COUNT_EXPERIMENT, 0),
+          Duration.ofMillis(
+              getExperimentValue(
+                  options, MAX_IDLE_MILLIS_EXPERIMENT, (int) DEFAULT_MAX_IDLE_TIME.toMillis())),
+          options.as(GcsOptions.class).getExecutorService(),
+          System::nanoTime,
+          BundleProcessorCache::heapUsageAfterLastCollection);
+    }
+
+    @VisibleForTesting
+    BundleProcessorCache(
+        int prewarmCount,
+        Duration maxIdleTime,
+        Executor prewarmExecutor,
+        LongSupplier nanoClock,
+        DoubleSupplier heapUsage) {
       this.cachedBundleProcessors =
           CacheBuilder.newBuilder()
-              .expireAfterAccess(Duration.ofMinutes(1L))
+              .expireAfterAccess(maxIdleTime)
               .removalListener(
                   removalNotification -> {
-                    ((ConcurrentLinkedQueue<BundleProcessor>) removalNotification.getValue())
-                        .forEach(
-                            bundleProcessor -> {
-                              bundleProcessor.shutdown();
-                            });
+                    // Drains the processors so that each is shut down exactly once, even if a
+                    // prewarm adds one concurrently.
+                    ConcurrentLinkedDeque<IdleBundleProcessor> bundleProcessors =
+                        (ConcurrentLinkedDeque<IdleBundleProcessor>) removalNotification.getValue();
+                    IdleBundleProcessor idleBundleProcessor;
+                    while ((idleBundleProcessor = bundleProcessors.pollFirst()) != null) {
+                      idleBundleProcessor.bundleProcessor.shutdown();
+                    }
                   })
               .build(
-                  new CacheLoader<String, ConcurrentLinkedQueue<BundleProcessor>>() {
+                  new CacheLoader<String, ConcurrentLinkedDeque<IdleBundleProcessor>>() {
                     @Override
-                    public ConcurrentLinkedQueue<BundleProcessor> load(String s) throws Exception {
-                      return new ConcurrentLinkedQueue<>();
+                    public ConcurrentLinkedDeque<IdleBundleProcessor> load(String s)
+                        throws Exception {
+                      return new ConcurrentLinkedDeque<>();
                     }
                   });
       // We specifically use a weak hash map so that references will automatically go out of scope
       // and not need to be freed explicitly from the cache.
       this.activeBundleProcessors = Collections.synchronizedMap(new WeakHashMap<>());
+      this.prewarmingBundleDescriptorIds = ConcurrentHashMap.newKeySet();
+      this.prewarmCount = prewarmCount;
+      this.maxIdleNanos = maxIdleTime.toNanos();
+      this.prewarmExecutor = prewarmExecutor;
+      this.nanoClock = nanoClock;
+      this.heapUsage = heapUsage;
+      this.nextEvictionNanos = new AtomicLong(nanoClock.getAsLong() + EVICTION_INTERVAL_NANOS);
+      this.hits = counter(MonitoringInfoConstants.Urns.BUNDLE_PROCESSOR_CACHE_HITS);
+      this.misses = counter(MonitoringInfoConstants.Urns.BUNDLE_PROCESSOR_CACHE_MISSES);
+      this.evictions = counter(MonitoringInfoConstants.Urns.BUNDLE_PROCESSOR_CACHE_EVICTIONS);
+      this.buildTimeMillis =
+          LabeledMetrics.distribution(
+              MonitoringInfoMetricName.named(
+                  MonitoringInfoConstants.Urns.BUNDLE_PROCESSOR_BUILD_TIME, ImmutableMap.of()),
+              true);
+    }
+
+    private static Counter counter(String urn) {
+      return LabeledMetrics.counter(MonitoringInfoMetricName.named(urn, ImmutableMap.of()), true);
+    }
+
+    private static int getExperimentValue(
+        PipelineOptions options, String experiment, int defaultValue) {
+      String value = ExperimentalOptions.getExperimentValue(options, experiment);
+      return value == null ? defaultValue : Integer.parseInt(value);
+    }
+
+    /**
+     * Returns the fraction of the maximum heap size which was in use after the last garbage
+     * collection, or 0 if it is unknown.
+     */
+    private static double heapUsageAfterLastCollection() {
+      long used = 0;
+      long max = 0;
+      for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+        MemoryUsage usage = pool.getCollectionUsage();
+        if (pool.getType() != MemoryType.HEAP || usage == null || usage.getMax() < 0) {
+          continue;
+        }
+        used += usage.getUsed();
+        max += usage.getMax();
+      }
+      return max == 0 ? 0 : (double) used / max;
     }
 
     @VisibleForTesting
-    Map<String, ConcurrentLinkedQueue<BundleProcessor>> getCachedBundleProcessors() {
-      return ImmutableMap.copyOf(cachedBundleProcessors.asMap());
+    Map<String, List<BundleProcessor>> getCachedBundleProcessors() {
+      ImmutableMap.Builder<String, List<BundleProcessor>> builder = ImmutableMap.builder();
+      for (Map.Entry<String, ConcurrentLinkedDeque<IdleBundleProcessor>> entry :
+          cachedBundleProcessors.asMap().entrySet()) {
+        List<BundleProcessor> bundleProcessors = new ArrayList<>();
+        for (IdleBundleProcessor idleBundleProcessor : entry.getValue()) {
+          bundleProcessors.add(idleBundleProcessor.bundleProcessor);
+        }
+        builder.put(entry.getKey(), bundleProcessors);
+      }
+      return builder.build();
     }
 
     public Map<String, BundleProcessor> getActiveBundleProcessors() {
@@ -800,11 +1015,17 @@ public class ProcessBundleHandler {
         String bundleDescriptorId,
         String instructionId,
         Supplier<BundleProcessor> bundleProcessorSupplier) {
-      ConcurrentLinkedQueue<BundleProcessor> bundleProcessors =
+      evictIdleBundleProcessors();
+      ConcurrentLinkedDeque<IdleBundleProcessor> bundleProcessors =
           cachedBundleProcessors.getUnchecked(bundleDescriptorId);
-      BundleProcessor bundleProcessor = bundleProcessors.poll();
-      if (bundleProcessor == null) {
-        bundleProcessor = bundleProcessorSupplier.get();
+      IdleBundleProcessor idleBundleProcessor = bundleProcessors.pollFirst();
+      BundleProcessor bundleProcessor;
+      if (idleBundleProcessor == null) {
+        misses.inc();
+        bundleProcessor = build(bundleProcessorSupplier);
+      } else {
+        hits.inc();
+        bundleProcessor = idleBundleProcessor.bundleProcessor;
       }
 
       bundleProcessor.setInstructionId(instructionId);
@@ -812,6 +1033,66 @@ public class ProcessBundleHandler {
       return bundleProcessor;
     }
 
+    /** Returns whether {@link BundleProcessor}s are built ahead of the bundles which use them. */
+    boolean isPrewarmEnabled() {
+      return prewarmCount > 0;
+    }
+
+    /**
+     * Builds {@link BundleProcessor}s for the specified {@code bundleDescriptorId} in the
+     * background until the configured number of them are idle, unless prewarming is disabled or
+     * the descriptor is already known to this cache.
+     */
+    void prewarm(String bundleDescriptorId, Supplier<BundleProcessor> bundleProcessorSupplier) {
+      if (prewarmCount <= 0
+          || cachedBundleProcessors.getIfPresent(bundleDescriptorId) != null
+          || !prewarmingBundleDescriptorIds.add(bundleDescriptorId)) {
+        return;
+      }
+      ConcurrentLinkedDeque<IdleBundleProcessor> bundleProcessors =
+          cachedBundleProcessors.getUnchecked(bundleDescriptorId);
+      try {
+        prewarmExecutor.execute(
+            () -> {
+              try {
+                while (bundleProcessors.size() < prewarmCount) {
+                  IdleBundleProcessor idleBundleProcessor =
+                      new IdleBundleProcessor(
+                          build(bundleProcessorSupplier), nanoClock.getAsLong());
+                  bundleProcessors.addLast(idleBundleProcessor);
+                  // Stops once the descriptor expired or the cache was shut down, and shuts down
+                  // the processor unless the removal of the descriptor already did.
+                  if (cachedBundleProcessors.asMap().get(bundleDescriptorId) != bundleProcessors) {
+                    if (bundleProcessors.remove(idleBundleProcessor)) {
+                      idleBundleProcessor.bundleProcessor.shutdown();
+                    }
+                    return;
+                  }
+                }
+              } catch (RuntimeException e) {
+                LOG.warn(
+                    "Failed to prewarm bundle processors for descriptor {}. They will be built"
+                        + " when bundles arrive.",
+                    bundleDescriptorId,
+                    e);
+              } finally {
+                prewarmingBundleDescriptorIds.remove(bundleDescriptorId);
+              }
+            });
+      } catch (RejectedExecutionException e) {
+        prewarmingBundleDescriptorIds.remove(bundleDescriptorId);
+        LOG.warn("Unable to prewarm bundle processors for descriptor {}.", bundleDescriptorId, e);
+      }
+    }
+
+    private BundleProcessor build(Supplier<BundleProcessor> bundleProcessorSupplier) {
+      long startNanos = nanoClock.getAsLong();
+      BundleProcessor bundleProcessor = bundleProcessorSupplier.get();
+      buildTimeMillis.update(
+          TimeUnit.NANOSECONDS.toMillis(nanoClock.getAsLong() - startNanos));
+      return bundleProcessor;
+    }
+
     /**
      * Finds an active bundle processor for the specified {@code instructionId} or null if one could
      * not be found.
@@ -828,13 +1109,16 @@ public class ProcessBundleHandler {
       activeBundleProcessors.remove(bundleProcessor.getInstructionId());
       try {
         bundleProcessor.reset();
-        cachedBundleProcessors.get(bundleDescriptorId).add(bundleProcessor);
+        cachedBundleProcessors
+            .get(bundleDescriptorId)
+            .addFirst(new IdleBundleProcessor(bundleProcessor, nanoClock.getAsLong()));
       } catch (Exception e) {
         LOG.warn(
             "Was unable to reset bundle processor safely. Bundle processor will be discarded and re-instantiated on next bundle for descriptor {}.",
             bundleDescriptorId,
             e);
       }
+      evictIdleBundleProcessors();
     }
 
     /** Discard an active {@link BundleProcessor} instead of being re-used. */
@@ -842,10 +1126,52 @@ public class ProcessBundleHandler {
       activeBundleProcessors.remove(bundleProcessor.getInstructionId());
     }
 
+    /**
+     * Evicts the idle {@link BundleProcessor}s which have been idle for longer than the maximum
+     * idle time, or all but the most recently released one of each descriptor if the heap is
+     * nearly full. Runs at most once per second.
+     */
+    @VisibleForTesting
+    void evictIdleBundleProcessors() {
+      long nowNanos = nanoClock.getAsLong();
+      long nextEviction = nextEvictionNanos.get();
+      if (nowNanos - nextEviction < 0
+          || !nextEvictionNanos.compareAndSet(nextEviction, nowNanos + EVICTION_INTERVAL_NANOS)) {
+        return;
+      }
+      boolean underMemoryPressure = heapUsage.getAsDouble() > MAX_HEAP_USAGE;
+      for (ConcurrentLinkedDeque<IdleBundleProcessor> bundleProcessors :
+          cachedBundleProcessors.asMap().values()) {
+        // Released processors are added first and reused first, so the first one is kept.
+        boolean reusedNext = true;
+        for (IdleBundleProcessor idleBundleProcessor : bundleProcessors) {
+          boolean evict =
+              (underMemoryPressure && !reusedNext)
+                  || nowNanos - idleBundleProcessor.idleSinceNanos > maxIdleNanos;
+          reusedNext = false;
+          if (evict && bundleProcessors.remove(idleBundleProcessor)) {
+            evictions.inc();
+            idleBundleProcessor.bundleProcessor.shutdown();
+          }
+        }
+      }
+    }
+
     /** Shutdown all the cached {@link BundleProcessor}s, running the tearDown() functions. */
     void shutdown() throws Exception {
       cachedBundleProcessors.invalidateAll();
     }
+
+    /** A {@link BundleProcessor} in the cache and the time since which it has been idle. */
+    private static class IdleBundleProcessor {
+      private final BundleProcessor bundleProcessor;
+      private final long idleSinceNanos;
+
+      IdleBundleProcessor(BundleProcessor bundleProcessor, long idleSinceNanos) {
+        this.bundleProcessor = bundleProcessor;
+        this.idleSinceNanos = idleSinceNanos;
+      }
+    }
   }
 
   /** A container for the reusable information used to process a bundle. */
@@ -1064,10 +1390,11 @@ public class ProcessBundleHandler {
   abstract static class HandleStateCallsForBundle implements AutoCloseable, BeamFnStateClient {}
 
   private static class UnknownPTransformRunnerFactory implements PTransformRunnerFactory<Object> {
-    private final Set<String> knownUrns;
+    private final Supplier<Map<String, PTransformRunnerFactory>> knownFactories;
 
-    private UnknownPTransformRunnerFactory(Set<String> knownUrns) {
-      this.knownUrns = knownUrns;
+    private UnknownPTransformRunnerFactory(
+        Supplier<Map<String, PTransformRunnerFactory>> knownFactories) {
+      this.knownFactories = knownFactories;
     }
 
     @Override
@@ -1075,7 +1402,7 @@ public class ProcessBundleHandler {
       String message =
           String.format(
               "No factory registered for %s, known factories %s",
-              context.getPTransform().getSpec().getUrn(), knownUrns);
+              context.getPTransform().getSpec().getUrn(), knownFactories.get().keySet());
       LOG.error(message);
       throw new IllegalStateException(message);
     }
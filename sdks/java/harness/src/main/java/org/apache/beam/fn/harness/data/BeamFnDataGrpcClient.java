@@ -17,7 +17,10 @@
  */
 package org.apache.beam.fn.harness.data;
 
+import java.io.IOException;
+import java.util.EnumMap;
 import java.util.List;
+import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
 import java.util.function.Function;
@@ -25,14 +28,22 @@ import org.apache.beam.model.fnexecution.v1.BeamFnApi.Elements;
 import org.apache.beam.model.fnexecution.v1.BeamFnDataGrpc;
 import org.apache.beam.model.pipeline.v1.Endpoints;
 import org.apache.beam.model.pipeline.v1.Endpoints.ApiServiceDescriptor;
+import org.apache.beam.runners.core.metrics.LabeledMetrics;
+import org.apache.beam.runners.core.metrics.MonitoringInfoConstants;
+import org.apache.beam.runners.core.metrics.MonitoringInfoMetricName;
 import org.apache.beam.sdk.coders.Coder;
+import org.apache.beam.sdk.fn.data.BeamFnDataAdaptiveBufferingOutboundObserver.FlushCause;
 import org.apache.beam.sdk.fn.data.BeamFnDataBufferingOutboundObserver;
 import org.apache.beam.sdk.fn.data.BeamFnDataGrpcMultiplexer2;
+import org.apache.beam.sdk.fn.data.BeamFnDataOutboundBufferPool;
 import org.apache.beam.sdk.fn.data.CloseableFnDataReceiver;
 import org.apache.beam.sdk.fn.data.LogicalEndpoint;
+import org.apache.beam.sdk.fn.data.SharedMemoryDataChannel;
 import org.apache.beam.sdk.fn.stream.OutboundObserverFactory;
+import org.apache.beam.sdk.metrics.Distribution;
 import org.apache.beam.sdk.options.PipelineOptions;
 import org.apache.beam.vendor.grpc.v1p36p0.io.grpc.ManagedChannel;
+import org.apache.beam.vendor.guava.v26_0_jre.com.google.common.collect.ImmutableMap;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -48,6 +59,7 @@ public class BeamFnDataGrpcClient implements BeamFnDataClient {
   private final Function<Endpoints.ApiServiceDescriptor, ManagedChannel> channelFactory;
   private final OutboundObserverFactory outboundObserverFactory;
   private final PipelineOptions options;
+  private final BeamFnDataOutboundBufferPool bufferPool;
 
   public BeamFnDataGrpcClient(
       PipelineOptions options,
@@ -57,6 +69,28 @@ public class BeamFnDataGrpcClient implements BeamFnDataClient {
     this.channelFactory = channelFactory;
     this.outboundObserverFactory = outboundObserverFactory;
     this.cache = new ConcurrentHashMap<>();
+    this.bufferPool = createBufferPool();
+  }
+
+  /** Creates a buffer pool reporting its flushes and idle buffers as process wide metrics. */
+  private static BeamFnDataOutboundBufferPool createBufferPool() {
+    Map<FlushCause, Distribution> flushBytes = new EnumMap<>(FlushCause.class);
+    for (FlushCause cause : FlushCause.values()) {
+      flushBytes.put(
+          cause,
+          LabeledMetrics.distribution(
+              MonitoringInfoMetricName.named(
+                  MonitoringInfoConstants.Urns.DATA_CHANNEL_FLUSH_BYTES,
+                  ImmutableMap.of(MonitoringInfoConstants.Labels.FLUSH_CAUSE, cause.name())),
+              true));
+    }
+    return BeamFnDataOutboundBufferPool.create(
+        BeamFnDataOutboundBufferPool.DEFAULT_MAX_POOLED_BYTES,
+        LabeledMetrics.gauge(
+            MonitoringInfoMetricName.named(
+                MonitoringInfoConstants.Urns.DATA_CHANNEL_BUFFER_POOL_BYTES, ImmutableMap.of()),
+            true),
+        flushBytes);
   }
 
   @Override
@@ -100,7 +134,7 @@ public class BeamFnDataGrpcClient implements BeamFnDataClient {
 
     LOG.debug("Creating output consumer for {}", outputLocation);
     return BeamFnDataBufferingOutboundObserver.forLocation(
-        options, outputLocation, coder, client.getOutboundObserver());
+        options, outputLocation, coder, client.getOutboundObserver(), bufferPool);
   }
 
   private BeamFnDataGrpcMultiplexer2 getClientFor(
@@ -109,8 +143,34 @@ public class BeamFnDataGrpcClient implements BeamFnDataClient {
         apiServiceDescriptor,
         (Endpoints.ApiServiceDescriptor descriptor) ->
             new BeamFnDataGrpcMultiplexer2(
-                descriptor,
-                outboundObserverFactory,
-                BeamFnDataGrpc.newStub(channelFactory.apply(apiServiceDescriptor))::data));
+                descriptor, outboundObserverFactory, baseOutboundObserverFactoryFor(descriptor)));
+  }
+
+  /**
+   * Connects to the data service over shared memory if enabled and offered by the runner, and
+   * otherwise over gRPC.
+   */
+  private OutboundObserverFactory.BasicFactory<Elements, Elements> baseOutboundObserverFactoryFor(
+      Endpoints.ApiServiceDescriptor apiServiceDescriptor) {
+    if (SharedMemoryDataChannel.isEnabled(options)) {
+      try {
+        SharedMemoryDataChannel channel =
+            SharedMemoryDataChannel.connect(
+                SharedMemoryDataChannel.directoryFor(apiServiceDescriptor));
+        if (channel != null) {
+          LOG.info("Connected to {} over shared memory", apiServiceDescriptor.getUrl());
+          return channel::connect;
+        }
+        LOG.info(
+            "Shared memory is not offered for {}, falling back to gRPC",
+            apiServiceDescriptor.getUrl());
+      } catch (IOException e) {
+        LOG.warn(
+            "Failed to connect to {} over shared memory, falling back to gRPC",
+            apiServiceDescriptor.getUrl(),
+            e);
+      }
+    }
+    return BeamFnDataGrpc.newStub(channelFactory.apply(apiServiceDescriptor))::data;
   }
 }
@@ -17,8 +17,13 @@
  */
 package org.apache.beam.fn.harness.data;
 
+import static org.apache.beam.runners.core.metrics.MonitoringInfoEncodings.encodeInt64Histogram;
+
 import com.google.auto.value.AutoValue;
 import java.io.Closeable;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -34,6 +39,7 @@ import org.apache.beam.runners.core.metrics.MonitoringInfoConstants.Urns;
 import org.apache.beam.runners.core.metrics.MonitoringInfoMetricName;
 import org.apache.beam.runners.core.metrics.ShortIdMap;
 import org.apache.beam.runners.core.metrics.SimpleExecutionState;
+import org.apache.beam.runners.core.metrics.SimpleMonitoringInfoBuilder;
 import org.apache.beam.runners.core.metrics.SimpleStateRegistry;
 import org.apache.beam.sdk.coders.Coder;
 import org.apache.beam.sdk.fn.data.FnDataReceiver;
@@ -41,9 +47,11 @@ import org.apache.beam.sdk.metrics.Counter;
 import org.apache.beam.sdk.metrics.Distribution;
 import org.apache.beam.sdk.metrics.MetricsContainer;
 import org.apache.beam.sdk.metrics.MetricsEnvironment;
+import org.apache.beam.sdk.util.HistogramData;
 import org.apache.beam.sdk.util.WindowedValue;
 import org.apache.beam.sdk.util.common.ElementByteSizeObserver;
 import org.apache.beam.vendor.grpc.v1p36p0.com.google.protobuf.ByteString;
+import org.apache.beam.vendor.guava.v26_0_jre.com.google.common.annotations.VisibleForTesting;
 import org.apache.beam.vendor.guava.v26_0_jre.com.google.common.collect.ArrayListMultimap;
 import org.apache.beam.vendor.guava.v26_0_jre.com.google.common.collect.ImmutableList;
 import org.apache.beam.vendor.guava.v26_0_jre.com.google.common.collect.ListMultimap;
@@ -53,6 +61,9 @@ import org.apache.beam.vendor.guava.v26_0_jre.com.google.common.collect.ListMult
  * FnDataReceiver for each pCollectionId. Registering with this class allows inserting an element
  * count counter for every pCollection. A combined MultiplexingConsumer (Wrapped with an
  * ElementCountFnDataReceiver) is returned by calling getMultiplexingConsumer.
+ *
+ * <p>If a processing time sampling rate is given, the wall and CPU time spent by each PTransform
+ * processing a sample of its elements is also recorded as histograms.
  */
 @SuppressWarnings({
   "rawtypes", // TODO(https://issues.apache.org/jira/browse/BEAM-10556)
@@ -60,6 +71,17 @@ import org.apache.beam.vendor.guava.v26_0_jre.com.google.common.collect.ListMult
 })
 public class PCollectionConsumerRegistry {
 
+  /**
+   * Experiment which enables sampling the time spent by each PTransform processing elements, e.g.
+   * {@code element_processing_time_sampling_rate=0.01} times one element in a hundred.
+   */
+  public static final String PROCESSING_TIME_SAMPLING_RATE_EXPERIMENT =
+      "element_processing_time_sampling_rate";
+
+  private static final ThreadMXBean THREAD_MX_BEAN = ManagementFactory.getThreadMXBean();
+  private static final boolean CPU_TIME_SUPPORTED =
+      THREAD_MX_BEAN.isCurrentThreadCpuTimeSupported() && THREAD_MX_BEAN.isThreadCpuTimeEnabled();
+
   /** Stores metadata about each consumer so that the appropriate metrics tracking can occur. */
   @AutoValue
   @AutoValue.CopyAnnotations
@@ -91,13 +113,35 @@ public class PCollectionConsumerRegistry {
   private MetricsContainerStepMap metricsContainerRegistry;
   private ExecutionStateTracker stateTracker;
   private SimpleStateRegistry executionStates = new SimpleStateRegistry();
+  private final double processingTimeSamplingRate;
+  private final Map<String, ElementProcessingTimer> pTransformIdsToProcessingTimer;
+
+  // The wall and CPU time spent by the consumers called while processing the element being timed,
+  // and the number of timed consumers on the stack. Elements are processed by a single thread.
+  private long nestedWallNanos;
+  private long nestedCpuNanos;
+  private int timingDepth;
 
   public PCollectionConsumerRegistry(
       MetricsContainerStepMap metricsContainerRegistry, ExecutionStateTracker stateTracker) {
+    this(metricsContainerRegistry, stateTracker, 0);
+  }
+
+  /**
+   * Creates a registry which also records the time spent by each PTransform processing a sample of
+   * its elements. The fraction of elements sampled is given by {@code processingTimeSamplingRate},
+   * where 0 disables sampling.
+   */
+  public PCollectionConsumerRegistry(
+      MetricsContainerStepMap metricsContainerRegistry,
+      ExecutionStateTracker stateTracker,
+      double processingTimeSamplingRate) {
     this.metricsContainerRegistry = metricsContainerRegistry;
     this.stateTracker = stateTracker;
     this.pCollectionIdsToConsumers = ArrayListMultimap.create();
     this.pCollectionIdsToWrappedConsumer = new HashMap<>();
+    this.processingTimeSamplingRate = processingTimeSamplingRate;
+    this.pTransformIdsToProcessingTimer = new HashMap<>();
   }
 
   /**
@@ -137,6 +181,9 @@ public class PCollectionConsumerRegistry {
             MonitoringInfoConstants.Urns.PROCESS_BUNDLE_MSECS,
             labelsMetadata);
     executionStates.register(state);
+    if (processingTimeSamplingRate > 0) {
+      pTransformIdsToProcessingTimer.computeIfAbsent(pTransformId, ElementProcessingTimer::new);
+    }
 
     pCollectionIdsToConsumers.put(
         pCollectionId,
@@ -151,6 +198,12 @@ public class PCollectionConsumerRegistry {
   /** Reset the execution states of the registered functions. */
   public void reset() {
     executionStates.reset();
+    for (ElementProcessingTimer processingTimer : pTransformIdsToProcessingTimer.values()) {
+      processingTimer.reset();
+    }
+    nestedWallNanos = 0;
+    nestedCpuNanos = 0;
+    timingDepth = 0;
   }
 
   /** @return the list of pcollection ids. */
@@ -189,14 +242,35 @@ public class PCollectionConsumerRegistry {
         });
   }
 
-  /** @return Execution Time MonitoringInfos based on the tracked start or finish function. */
+  /**
+   * @return Execution Time MonitoringInfos based on the tracked start or finish function, and the
+   *     element processing time histograms if sampling is enabled.
+   */
   public List<MonitoringInfo> getExecutionTimeMonitoringInfos() {
-    return executionStates.getExecutionTimeMonitoringInfos();
+    List<MonitoringInfo> monitoringInfos =
+        new ArrayList<>(executionStates.getExecutionTimeMonitoringInfos());
+    for (ElementProcessingTimer processingTimer : pTransformIdsToProcessingTimer.values()) {
+      processingTimer.addMonitoringInfos(monitoringInfos);
+    }
+    return monitoringInfos;
   }
 
-  /** @return Execution Time Monitoring data based on the tracked start or finish function. */
+  /**
+   * @return Execution Time Monitoring data based on the tracked start or finish function, and the
+   *     element processing time histograms if sampling is enabled.
+   */
   public Map<String, ByteString> getExecutionTimeMonitoringData(ShortIdMap shortIds) {
-    return executionStates.getExecutionTimeMonitoringData(shortIds);
+    Map<String, ByteString> monitoringData =
+        new HashMap<>(executionStates.getExecutionTimeMonitoringData(shortIds));
+    for (ElementProcessingTimer processingTimer : pTransformIdsToProcessingTimer.values()) {
+      processingTimer.addMonitoringData(shortIds, monitoringData);
+    }
+    return monitoringData;
+  }
+
+  @VisibleForTesting
+  HistogramData getProcessingWallTimeNanos(String pTransformId) {
+    return pTransformIdsToProcessingTimer.get(pTransformId).wallTimeNanos;
   }
 
   /**
@@ -214,6 +288,7 @@ public class PCollectionConsumerRegistry {
     private final SampleByteSizeDistribution<T> unboundedSampledByteSizeDistribution;
     private final Coder<T> coder;
     private final MetricsContainer metricsContainer;
+    private final ElementProcessingTimer processingTimer;
 
     public MetricTrackingFnDataReceiver(
         String pCollectionId, ConsumerAndMetadata consumerAndMetadata) {
@@ -240,6 +315,7 @@ public class PCollectionConsumerRegistry {
 
       this.coder = consumerAndMetadata.getValueCoder();
       this.metricsContainer = consumerAndMetadata.getMetricsContainer();
+      this.processingTimer = pTransformIdsToProcessingTimer.get(pTransformId);
     }
 
     @Override
@@ -254,7 +330,11 @@ public class PCollectionConsumerRegistry {
       // Process Bundle Execution time metric.
       try (Closeable closeable = MetricsEnvironment.scopedMetricsContainer(metricsContainer)) {
         try (Closeable trackerCloseable = stateTracker.enterState(state)) {
-          this.delegate.accept(input);
+          if (processingTimer == null) {
+            this.delegate.accept(input);
+          } else {
+            processingTimer.accept(delegate, input);
+          }
         }
       }
       this.unboundedSampledByteSizeDistribution.finishLazyUpdate();
@@ -271,12 +351,18 @@ public class PCollectionConsumerRegistry {
   private class MultiplexingMetricTrackingFnDataReceiver<T>
       implements FnDataReceiver<WindowedValue<T>> {
     private final List<ConsumerAndMetadata> consumerAndMetadatas;
+    private final List<ElementProcessingTimer> processingTimers;
     private final Counter unboundedElementCountCounter;
     private final SampleByteSizeDistribution<T> unboundedSampledByteSizeDistribution;
 
     public MultiplexingMetricTrackingFnDataReceiver(
         String pCollectionId, List<ConsumerAndMetadata> consumerAndMetadatas) {
       this.consumerAndMetadatas = consumerAndMetadatas;
+      this.processingTimers = new ArrayList<>(consumerAndMetadatas.size());
+      for (ConsumerAndMetadata consumerAndMetadata : consumerAndMetadatas) {
+        processingTimers.add(
+            pTransformIdsToProcessingTimer.get(consumerAndMetadata.getPTransformId()));
+      }
       HashMap<String, String> labels = new HashMap<String, String>();
       labels.put(Labels.PCOLLECTION, pCollectionId);
 
@@ -303,7 +389,9 @@ public class PCollectionConsumerRegistry {
       // PTransform context. This ensures that user metrics obtain the pTransform ID when they are
       // created. Also use the ExecutionStateTracker and enter an appropriate state to track the
       // Process Bundle Execution time metric.
-      for (ConsumerAndMetadata consumerAndMetadata : consumerAndMetadatas) {
+      for (int i = 0; i < consumerAndMetadatas.size(); i++) {
+        ConsumerAndMetadata consumerAndMetadata = consumerAndMetadatas.get(i);
+        ElementProcessingTimer processingTimer = processingTimers.get(i);
 
         if (consumerAndMetadata.getValueCoder() != null) {
           // TODO(BEAM-11879): Consider updating size per window when we have window optimization.
@@ -314,7 +402,11 @@ public class PCollectionConsumerRegistry {
             MetricsEnvironment.scopedMetricsContainer(consumerAndMetadata.getMetricsContainer())) {
           try (Closeable trackerCloseable =
               stateTracker.enterState(consumerAndMetadata.getExecutionState())) {
-            consumerAndMetadata.getConsumer().accept(input);
+            if (processingTimer == null) {
+              consumerAndMetadata.getConsumer().accept(input);
+            } else {
+              processingTimer.accept(consumerAndMetadata.getConsumer(), input);
+            }
           }
         }
         this.unboundedSampledByteSizeDistribution.finishLazyUpdate();
@@ -350,6 +442,133 @@ public class PCollectionConsumerRegistry {
     }
   }
 
+  /**
+   * Records the wall and CPU time spent by a PTransform processing a sample of its elements. The
+   * time spent by the consumers the PTransform outputs to is excluded, which requires timing every
+   * consumer called while an element is being timed.
+   */
+  private class ElementProcessingTimer {
+    // Buckets from 1ns to about 18 minutes, each twice as wide as the previous one.
+    private static final double HISTOGRAM_START_NANOS = 1;
+    private static final double HISTOGRAM_BASE = 2;
+    private static final int HISTOGRAM_NUM_BUCKETS = 40;
+
+    private final String pTransformId;
+    private final HistogramData wallTimeNanos;
+    private final HistogramData cpuTimeNanos;
+    private final Random randomGenerator = new Random();
+    private long elementsUntilSample;
+    private String wallTimeShortId;
+    private String cpuTimeShortId;
+
+    ElementProcessingTimer(String pTransformId) {
+      this.pTransformId = pTransformId;
+      this.wallTimeNanos =
+          HistogramData.exponential(HISTOGRAM_START_NANOS, HISTOGRAM_BASE, HISTOGRAM_NUM_BUCKETS);
+      this.cpuTimeNanos =
+          HistogramData.exponential(HISTOGRAM_START_NANOS, HISTOGRAM_BASE, HISTOGRAM_NUM_BUCKETS);
+      this.elementsUntilSample = nextSampleGap();
+    }
+
+    <T> void accept(FnDataReceiver<WindowedValue<T>> consumer, WindowedValue<T> input)
+        throws Exception {
+      if (timingDepth == 0) {
+        if (--elementsUntilSample > 0) {
+          consumer.accept(input);
+          return;
+        }
+        elementsUntilSample = nextSampleGap();
+      }
+
+      long outerNestedWallNanos = nestedWallNanos;
+      long outerNestedCpuNanos = nestedCpuNanos;
+      nestedWallNanos = 0;
+      nestedCpuNanos = 0;
+      timingDepth++;
+      long startCpuNanos = currentThreadCpuNanos();
+      long startWallNanos = System.nanoTime();
+      try {
+        consumer.accept(input);
+      } finally {
+        long wallNanos = System.nanoTime() - startWallNanos;
+        long cpuNanos = currentThreadCpuNanos() - startCpuNanos;
+        timingDepth--;
+        wallTimeNanos.record(wallNanos - nestedWallNanos);
+        cpuTimeNanos.record(cpuNanos - nestedCpuNanos);
+        nestedWallNanos = outerNestedWallNanos + wallNanos;
+        nestedCpuNanos = outerNestedCpuNanos + cpuNanos;
+      }
+    }
+
+    /** Returns the number of elements to skip until the next sampled one, which is at least 1. */
+    private long nextSampleGap() {
+      if (processingTimeSamplingRate >= 1) {
+        return 1;
+      }
+      // Gaps between sampled elements are geometrically distributed, which avoids drawing a random
+      // number for every element.
+      return 1
+          + (long)
+              (Math.log(1.0 - randomGenerator.nextDouble())
+                  / Math.log(1.0 - processingTimeSamplingRate));
+    }
+
+    void reset() {
+      wallTimeNanos.clear();
+      cpuTimeNanos.clear();
+    }
+
+    void addMonitoringInfos(List<MonitoringInfo> monitoringInfos) {
+      if (wallTimeNanos.getTotalCount() == 0) {
+        return;
+      }
+      monitoringInfos.add(
+          monitoringMetadata(Urns.ELEMENT_PROCESSING_WALL_TIME)
+              .setInt64HistogramValue(wallTimeNanos)
+              .build());
+      if (CPU_TIME_SUPPORTED) {
+        monitoringInfos.add(
+            monitoringMetadata(Urns.ELEMENT_PROCESSING_CPU_TIME)
+                .setInt64HistogramValue(cpuTimeNanos)
+                .build());
+      }
+    }
+
+    void addMonitoringData(ShortIdMap shortIds, Map<String, ByteString> monitoringData) {
+      if (wallTimeNanos.getTotalCount() == 0) {
+        return;
+      }
+      if (wallTimeShortId == null) {
+        wallTimeShortId =
+            shortIds.getOrCreateShortId(
+                monitoringMetadata(Urns.ELEMENT_PROCESSING_WALL_TIME)
+                    .setType(MonitoringInfoConstants.TypeUrns.HISTOGRAM_INT64_TYPE)
+                    .build());
+      }
+      monitoringData.put(wallTimeShortId, encodeInt64Histogram(wallTimeNanos));
+      if (CPU_TIME_SUPPORTED) {
+        if (cpuTimeShortId == null) {
+          cpuTimeShortId =
+              shortIds.getOrCreateShortId(
+                  monitoringMetadata(Urns.ELEMENT_PROCESSING_CPU_TIME)
+                      .setType(MonitoringInfoConstants.TypeUrns.HISTOGRAM_INT64_TYPE)
+                      .build());
+        }
+        monitoringData.put(cpuTimeShortId, encodeInt64Histogram(cpuTimeNanos));
+      }
+    }
+
+    private SimpleMonitoringInfoBuilder monitoringMetadata(String urn) {
+      return new SimpleMonitoringInfoBuilder()
+          .setUrn(urn)
+          .setLabel(MonitoringInfoConstants.Labels.PTRANSFORM, pTransformId);
+    }
+  }
+
+  private static long currentThreadCpuNanos() {
+    return CPU_TIME_SUPPORTED ? THREAD_MX_BEAN.getCurrentThreadCpuTime() : 0;
+  }
+
   private static class SampleByteSizeDistribution<T> {
     /** Basic implementation of {@link ElementByteSizeObserver} for use in size estimation. */
     private static class ByteSizeObserver extends ElementByteSizeObserver {
@@ -32,7 +32,6 @@ import org.apache.beam.model.fnexecution.v1.BeamFnApi.StateKey.MultimapSideInput
 import org.apache.beam.model.fnexecution.v1.BeamFnApi.StateRequest;
 import org.apache.beam.model.fnexecution.v1.BeamFnApi.StateResponse;
 import org.apache.beam.vendor.grpc.v1p36p0.com.google.protobuf.ByteString;
-import org.apache.beam.vendor.guava.v26_0_jre.com.google.common.cache.LoadingCache;
 
 /**
  * Wraps a delegate BeamFnStateClient and stores the result of state requests in cross bundle cache
@@ -42,17 +41,17 @@ import org.apache.beam.vendor.guava.v26_0_jre.com.google.common.cache.LoadingCac
 public class CachingBeamFnStateClient implements BeamFnStateClient {
 
   private final BeamFnStateClient beamFnStateClient;
-  private final LoadingCache<StateKey, Map<StateCacheKey, StateGetResponse>> stateCache;
+  private final StateCache stateCache;
   private final Map<CacheToken.SideInput, ByteString> sideInputCacheTokens;
   private final ByteString userStateToken;
 
   /**
-   * Creates a CachingBeamFnStateClient that wraps a BeamFnStateClient with a LoadingCache. Cache
-   * tokens are sent by the runner to indicate which state is able to be cached.
+   * Creates a CachingBeamFnStateClient that wraps a BeamFnStateClient with a {@link StateCache}.
+   * Cache tokens are sent by the runner to indicate which state is able to be cached.
    */
   public CachingBeamFnStateClient(
       BeamFnStateClient beamFnStateClient,
-      LoadingCache<StateKey, Map<StateCacheKey, StateGetResponse>> stateCache,
+      StateCache stateCache,
       List<CacheToken> cacheTokenList) {
     this.beamFnStateClient = beamFnStateClient;
     this.stateCache = stateCache;
@@ -91,8 +90,7 @@ public class CachingBeamFnStateClient implements BeamFnStateClient {
         // Check if data is in the cache.
         StateCacheKey cacheKey =
             StateCacheKey.create(cacheToken, requestBuilder.getGet().getContinuationToken());
-        Map<StateCacheKey, StateGetResponse> stateKeyMap = stateCache.getUnchecked(stateKey);
-        StateGetResponse cachedPage = stateKeyMap.get(cacheKey);
+        StateGetResponse cachedPage = stateCache.get(stateKey, cacheKey);
 
         // If data is not cached, add callback to add response to cache on completion.
         // Otherwise, complete the response with the cached data.
@@ -100,8 +98,7 @@ public class CachingBeamFnStateClient implements BeamFnStateClient {
         if (cachedPage == null) {
           response = beamFnStateClient.handle(requestBuilder);
           response.thenAccept(
-              stateResponse ->
-                  stateCache.getUnchecked(stateKey).put(cacheKey, stateResponse.getGet()));
+              stateResponse -> stateCache.put(stateKey, cacheKey, stateResponse.getGet()));
 
         } else {
           return CompletableFuture.completedFuture(
@@ -115,18 +112,13 @@ public class CachingBeamFnStateClient implements BeamFnStateClient {
         response = beamFnStateClient.handle(requestBuilder);
 
         // Invalidate last page of cached values (entry with a blank continuation token response)
-        Map<StateCacheKey, StateGetResponse> map = stateCache.getUnchecked(stateKey);
-        map.entrySet()
-            .removeIf(entry -> entry.getValue().getContinuationToken().equals(ByteString.EMPTY));
+        stateCache.invalidateLastPage(stateKey);
         return response;
 
       case CLEAR:
         // Remove all state key data and replace with an empty response.
         response = beamFnStateClient.handle(requestBuilder);
-        Map<StateCacheKey, StateGetResponse> clearedData = new HashMap<>();
-        StateCacheKey newKey = StateCacheKey.create(cacheToken, ByteString.EMPTY);
-        clearedData.put(newKey, StateGetResponse.getDefaultInstance());
-        stateCache.put(stateKey, clearedData);
+        stateCache.clear(stateKey, cacheToken);
         return response;
 
       default:
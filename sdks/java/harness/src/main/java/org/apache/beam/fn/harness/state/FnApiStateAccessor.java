@@ -300,6 +300,7 @@ public class FnApiStateAccessor<K> implements SideInputReader, StateBinder {
 
                       @Override
                       public ReadableState<Boolean> readLater() {
+                        impl.get().iterator().prefetch();
                         return this;
                       }
                     };
@@ -352,7 +353,7 @@ public class FnApiStateAccessor<K> implements SideInputReader, StateBinder {
 
                       @Override
                       public ReadableState<Boolean> readLater() {
-                        // TODO: Support prefetching.
+                        impl.prefetch(t);
                         return this;
                       }
                     };
@@ -389,7 +390,7 @@ public class FnApiStateAccessor<K> implements SideInputReader, StateBinder {
 
                       @Override
                       public ReadableState<Boolean> readLater() {
-                        // TODO: Support prefetching.
+                        impl.prefetchKeys();
                         return this;
                       }
                     };
@@ -402,7 +403,7 @@ public class FnApiStateAccessor<K> implements SideInputReader, StateBinder {
 
                   @Override
                   public SetState<T> readLater() {
-                    // TODO: Support prefetching.
+                    impl.prefetchKeys();
                     return this;
                   }
                 };
@@ -469,7 +470,7 @@ public class FnApiStateAccessor<K> implements SideInputReader, StateBinder {
 
                       @Override
                       public ReadableState<ValueT> readLater() {
-                        // TODO: Support prefetching.
+                        impl.prefetch(key);
                         return this;
                       }
                     };
@@ -485,7 +486,7 @@ public class FnApiStateAccessor<K> implements SideInputReader, StateBinder {
 
                       @Override
                       public ReadableState<Iterable<KeyT>> readLater() {
-                        // TODO: Support prefetching.
+                        impl.prefetchKeys();
                         return this;
                       }
                     };
@@ -501,7 +502,7 @@ public class FnApiStateAccessor<K> implements SideInputReader, StateBinder {
 
                       @Override
                       public ReadableState<Iterable<ValueT>> readLater() {
-                        // TODO: Support prefetching.
+                        entries().readLater();
                         return this;
                       }
                     };
@@ -519,7 +520,9 @@ public class FnApiStateAccessor<K> implements SideInputReader, StateBinder {
 
                       @Override
                       public ReadableState<Iterable<Map.Entry<KeyT, ValueT>>> readLater() {
-                        // TODO: Support prefetching.
+                        // Values can only be prefetched once the keys are known, and waiting for
+                        // them here would block, so only the keys are prefetched.
+                        impl.prefetchKeys();
                         return this;
                       }
                     };
@@ -535,7 +538,7 @@ public class FnApiStateAccessor<K> implements SideInputReader, StateBinder {
 
                       @Override
                       public ReadableState<Boolean> readLater() {
-                        // TODO: Support prefetching.
+                        impl.prefetchKeys();
                         return this;
                       }
                     };
@@ -28,10 +28,12 @@ import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
 import org.apache.beam.model.fnexecution.v1.BeamFnApi.StateAppendRequest;
 import org.apache.beam.model.fnexecution.v1.BeamFnApi.StateClearRequest;
 import org.apache.beam.model.fnexecution.v1.BeamFnApi.StateRequest;
 import org.apache.beam.sdk.coders.Coder;
+import org.apache.beam.sdk.fn.stream.PrefetchableIterable;
 import org.apache.beam.vendor.grpc.v1p36p0.com.google.protobuf.ByteString;
 import org.apache.beam.vendor.guava.v26_0_jre.com.google.common.collect.ArrayListMultimap;
 import org.apache.beam.vendor.guava.v26_0_jre.com.google.common.collect.Iterables;
@@ -51,7 +53,11 @@ import org.checkerframework.checker.nullness.qual.Nullable;
  * <p>TODO: Move to an async persist model where persistence is signalled based upon cache memory
  * pressure and its need to flush.
  *
- * <p>TODO: Support block level caching and prefetch.
+ * <p>Values and keys can be prefetched with {@link #prefetch(Object)} and {@link #prefetchKeys()},
+ * which send the state requests without waiting for their responses so that reads of several map
+ * keys share their round trips.
+ *
+ * <p>TODO: Support block level caching.
  */
 public class MultimapUserState<K, V> {
 
@@ -71,7 +77,9 @@ public class MultimapUserState<K, V> {
   private HashSet<K> negativeCache = Sets.newHashSet();
   // Values retrieved from persistent storage
   private Multimap<K, V> persistedValues = ArrayListMultimap.create();
-  private @Nullable Iterable<K> persistedKeys = null;
+  // Values being fetched from persistent storage which were not read yet
+  private HashMap<K, PrefetchableIterable<V>> prefetchedValues = Maps.newHashMap();
+  private @Nullable PrefetchableIterable<K> persistedKeys = null;
 
   public MultimapUserState(
       BeamFnStateClient beamFnStateClient,
@@ -118,6 +126,7 @@ public class MultimapUserState<K, V> {
 
     isCleared = true;
     persistedValues = ArrayListMultimap.create();
+    prefetchedValues = Maps.newHashMap();
     persistedKeys = null;
     pendingRemoves = Sets.newHashSet();
     pendingAdds = Maps.newHashMap();
@@ -145,6 +154,43 @@ public class MultimapUserState<K, V> {
     return Iterables.concat(persistedValues, pendingValues);
   }
 
+  /**
+   * Starts fetching the persisted values associated with key in this multimap, unless they are
+   * known already, without waiting for them.
+   */
+  public void prefetch(K key) {
+    checkState(
+        !isClosed,
+        "Multimap user state is no longer usable because it is closed for %s",
+        keysStateRequest.getStateKey());
+    if (isCleared
+        || pendingRemoves.contains(key)
+        || negativeCache.contains(key)
+        || !persistedValues.get(key).isEmpty()
+        || prefetchedValues.containsKey(key)) {
+      return;
+    }
+    PrefetchableIterable<V> values =
+        StateFetchingIterators.readAllAndDecodeStartingFrom(
+            beamFnStateClient, createUserStateRequest(key), valueCoder);
+    values.iterator().prefetch();
+    prefetchedValues.put(key, values);
+  }
+
+  /**
+   * Starts fetching the persisted keys of this multimap, unless they are known already, without
+   * waiting for them.
+   */
+  public void prefetchKeys() {
+    checkState(
+        !isClosed,
+        "Multimap user state is no longer usable because it is closed for %s",
+        keysStateRequest.getStateKey());
+    if (!isCleared) {
+      getPersistedKeys().iterator().prefetch();
+    }
+  }
+
   @SuppressWarnings({
     "nullness" // TODO(https://issues.apache.org/jira/browse/BEAM-12687)
   })
@@ -188,6 +234,7 @@ public class MultimapUserState<K, V> {
         "Multimap user state is no longer usable because it is closed for %s",
         keysStateRequest.getStateKey());
     pendingAdds.remove(key);
+    prefetchedValues.remove(key);
     if (!isCleared) {
       pendingRemoves.add(key);
     }
@@ -209,34 +256,34 @@ public class MultimapUserState<K, V> {
       return;
     }
 
-    // Clear currently persisted key-values
+    // Clear currently persisted key-values, sending all requests before waiting for any of them
+    List<CompletableFuture<?>> clears = new ArrayList<>();
     if (isCleared) {
-      beamFnStateClient
-          .handle(keysStateRequest.toBuilder().setClear(StateClearRequest.getDefaultInstance()))
-          .get();
-    } else if (!pendingRemoves.isEmpty()) {
+      clears.add(
+          beamFnStateClient.handle(
+              keysStateRequest.toBuilder().setClear(StateClearRequest.getDefaultInstance())));
+    } else {
       for (K key : pendingRemoves) {
-        beamFnStateClient
-            .handle(
+        clears.add(
+            beamFnStateClient.handle(
                 createUserStateRequest(key)
                     .toBuilder()
-                    .setClear(StateClearRequest.getDefaultInstance()))
-            .get();
+                    .setClear(StateClearRequest.getDefaultInstance())));
       }
     }
+    CompletableFuture.allOf(clears.toArray(new CompletableFuture<?>[0])).get();
 
     // Persist pending key-values
-    if (!pendingAdds.isEmpty()) {
-      for (Map.Entry<K, List<V>> entry : pendingAdds.entrySet()) {
-        beamFnStateClient
-            .handle(
-                createUserStateRequest(entry.getKey())
-                    .toBuilder()
-                    .setAppend(
-                        StateAppendRequest.newBuilder().setData(encodeValues(entry.getValue()))))
-            .get();
-      }
+    List<CompletableFuture<?>> appends = new ArrayList<>();
+    for (Map.Entry<K, List<V>> entry : pendingAdds.entrySet()) {
+      appends.add(
+          beamFnStateClient.handle(
+              createUserStateRequest(entry.getKey())
+                  .toBuilder()
+                  .setAppend(
+                      StateAppendRequest.newBuilder().setData(encodeValues(entry.getValue())))));
     }
+    CompletableFuture.allOf(appends.toArray(new CompletableFuture<?>[0])).get();
   }
 
   private ByteString encodeValues(Iterable<V> values) {
@@ -271,9 +318,12 @@ public class MultimapUserState<K, V> {
     }
 
     if (persistedValues.get(key).isEmpty()) {
-      Iterable<V> values =
-          StateFetchingIterators.readAllAndDecodeStartingFrom(
-              beamFnStateClient, createUserStateRequest(key), valueCoder);
+      Iterable<V> values = prefetchedValues.remove(key);
+      if (values == null) {
+        values =
+            StateFetchingIterators.readAllAndDecodeStartingFrom(
+                beamFnStateClient, createUserStateRequest(key), valueCoder);
+      }
       if (Iterables.isEmpty(values)) {
         negativeCache.add(key);
       }
@@ -282,13 +332,12 @@ public class MultimapUserState<K, V> {
     return Iterables.unmodifiableIterable(persistedValues.get(key));
   }
 
-  private Iterable<K> getPersistedKeys() {
+  private PrefetchableIterable<K> getPersistedKeys() {
     checkState(!isCleared);
     if (persistedKeys == null) {
-      Iterable<K> keys =
+      persistedKeys =
           StateFetchingIterators.readAllAndDecodeStartingFrom(
               beamFnStateClient, keysStateRequest, mapKeyCoder);
-      persistedKeys = Iterables.unmodifiableIterable(keys);
     }
     return persistedKeys;
   }
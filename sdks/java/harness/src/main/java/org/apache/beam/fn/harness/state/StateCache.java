@@ -0,0 +1,316 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.beam.fn.harness.state;
+
+import static org.apache.beam.vendor.guava.v26_0_jre.com.google.common.base.Preconditions.checkArgument;
+
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.Function;
+import org.apache.beam.fn.harness.state.CachingBeamFnStateClient.StateCacheKey;
+import org.apache.beam.model.fnexecution.v1.BeamFnApi.StateGetResponse;
+import org.apache.beam.model.fnexecution.v1.BeamFnApi.StateKey;
+import org.apache.beam.runners.core.metrics.LabeledMetrics;
+import org.apache.beam.runners.core.metrics.MonitoringInfoConstants;
+import org.apache.beam.runners.core.metrics.MonitoringInfoMetricName;
+import org.apache.beam.sdk.metrics.Counter;
+import org.apache.beam.sdk.metrics.Gauge;
+import org.apache.beam.sdk.options.PipelineOptions;
+import org.apache.beam.sdk.options.SdkHarnessOptions;
+import org.apache.beam.vendor.grpc.v1p36p0.com.google.protobuf.ByteString;
+import org.apache.beam.vendor.guava.v26_0_jre.com.google.common.annotations.VisibleForTesting;
+import org.apache.beam.vendor.guava.v26_0_jre.com.google.common.cache.Cache;
+import org.apache.beam.vendor.guava.v26_0_jre.com.google.common.cache.CacheBuilder;
+import org.apache.beam.vendor.guava.v26_0_jre.com.google.common.cache.RemovalNotification;
+import org.apache.beam.vendor.guava.v26_0_jre.com.google.common.collect.ImmutableMap;
+import org.checkerframework.checker.nullness.qual.Nullable;
+
+/**
+ * A process wide cache of {@link StateGetResponse} pages used by {@link CachingBeamFnStateClient}
+ * to serve state requests across bundles.
+ *
+ * <p>The cache is bounded by the number of bytes held within the cached pages. Each {@link
+ * StateType} is given its own share of {@link SdkHarnessOptions#getStateCacheSizeMb()} so that
+ * large state of one type does not evict all the state of another type.
+ *
+ * <p>Pages are cached per {@link StateKey} along with the cache token they were read with. Pages
+ * read with a different cache token are discarded once a page for a newer token is cached.
+ *
+ * <p>Hits, misses, evictions and the number of bytes cached are reported per {@link StateType}
+ * using process wide metrics.
+ *
+ * <p>Multimap user state is not cached, {@link StateType#MULTIMAP_SIDE_INPUT} only covers the
+ * values and keys of multimap side inputs.
+ */
+public class StateCache {
+
+  /** The kinds of state which are each given their own share of the cache. */
+  public enum StateType {
+    SIDE_INPUT("side_input"),
+    BAG_USER_STATE("bag_user_state"),
+    MULTIMAP_SIDE_INPUT("multimap_side_input");
+
+    private final String label;
+
+    StateType(String label) {
+      this.label = label;
+    }
+
+    /** Returns the type of the given {@link StateKey}, or null if it cannot be cached. */
+    static @Nullable StateType of(StateKey stateKey) {
+      switch (stateKey.getTypeCase()) {
+        case ITERABLE_SIDE_INPUT:
+          return SIDE_INPUT;
+        case BAG_USER_STATE:
+          return BAG_USER_STATE;
+        case MULTIMAP_SIDE_INPUT:
+        case MULTIMAP_KEYS_SIDE_INPUT:
+          return MULTIMAP_SIDE_INPUT;
+        default:
+          return null;
+      }
+    }
+  }
+
+  /**
+   * The number of bytes attributed to each cached page in addition to its data, accounting for the
+   * page, its key and the map entry holding it.
+   */
+  private static final int PER_PAGE_OVERHEAD = 64;
+
+  /** Creates a {@link StateCache} sized according to the given {@link PipelineOptions}. */
+  public static StateCache create(PipelineOptions options) {
+    SdkHarnessOptions harnessOptions = options.as(SdkHarnessOptions.class);
+    long maxSizeBytes = harnessOptions.getStateCacheSizeMb() * 1024L * 1024L;
+    Map<StateType, Long> maxWeights = new EnumMap<>(StateType.class);
+    maxWeights.put(
+        StateType.SIDE_INPUT,
+        (long) (harnessOptions.getStateCacheSideInputFraction() * maxSizeBytes));
+    maxWeights.put(
+        StateType.BAG_USER_STATE,
+        (long) (harnessOptions.getStateCacheBagUserStateFraction() * maxSizeBytes));
+    maxWeights.put(
+        StateType.MULTIMAP_SIDE_INPUT,
+        (long) (harnessOptions.getStateCacheMultimapFraction() * maxSizeBytes));
+    return new StateCache(maxWeights);
+  }
+
+  private final Map<StateType, TypedCache> caches;
+
+  @VisibleForTesting
+  StateCache(Map<StateType, Long> maxWeights) {
+    this.caches = new EnumMap<>(StateType.class);
+    for (StateType type : StateType.values()) {
+      Long maxWeight = maxWeights.get(type);
+      checkArgument(
+          maxWeight != null && maxWeight >= 0,
+          "Expected a non-negative cache size for %s but got %s.",
+          type,
+          maxWeight);
+      caches.put(type, new TypedCache(type, maxWeight));
+    }
+  }
+
+  /** Returns the cached page for the given key, recording a hit or a miss. */
+  public @Nullable StateGetResponse get(StateKey stateKey, StateCacheKey cacheKey) {
+    TypedCache cache = cacheFor(stateKey);
+    if (cache == null) {
+      return null;
+    }
+    CachedPages pages = cache.cache.getIfPresent(stateKey);
+    StateGetResponse page = pages == null ? null : pages.pages.get(cacheKey);
+    if (page == null) {
+      cache.misses.inc();
+    } else {
+      cache.hits.inc();
+    }
+    return page;
+  }
+
+  /**
+   * Caches the given page, discarding any pages for the same key which were read with a different
+   * cache token.
+   */
+  public void put(StateKey stateKey, StateCacheKey cacheKey, StateGetResponse page) {
+    TypedCache cache = cacheFor(stateKey);
+    if (cache == null) {
+      return;
+    }
+    cache.update(stateKey, pages -> CachedPages.with(pages, cacheKey, page));
+  }
+
+  /**
+   * Replaces all cached pages for the given key with a single empty page for the given cache token.
+   */
+  public void clear(StateKey stateKey, ByteString cacheToken) {
+    TypedCache cache = cacheFor(stateKey);
+    if (cache == null) {
+      return;
+    }
+    cache.update(
+        stateKey,
+        pages ->
+            CachedPages.with(
+                null,
+                StateCacheKey.create(cacheToken, ByteString.EMPTY),
+                StateGetResponse.getDefaultInstance()));
+  }
+
+  /**
+   * Removes the last page (the page without a continuation token) cached for the given key since it
+   * no longer reflects appended values.
+   */
+  public void invalidateLastPage(StateKey stateKey) {
+    TypedCache cache = cacheFor(stateKey);
+    if (cache == null) {
+      return;
+    }
+    cache.update(stateKey, pages -> pages == null ? null : CachedPages.withoutLastPage(pages));
+  }
+
+  /** Returns all pages currently cached for the given key. */
+  @VisibleForTesting
+  Map<StateCacheKey, StateGetResponse> getPages(StateKey stateKey) {
+    TypedCache cache = cacheFor(stateKey);
+    CachedPages pages = cache == null ? null : cache.cache.getIfPresent(stateKey);
+    return pages == null ? Collections.emptyMap() : pages.pages;
+  }
+
+  /** Returns the number of bytes currently attributed to cached pages of the given type. */
+  @VisibleForTesting
+  long getWeight(StateType type) {
+    return caches.get(type).weight;
+  }
+
+  private @Nullable TypedCache cacheFor(StateKey stateKey) {
+    StateType type = StateType.of(stateKey);
+    return type == null ? null : caches.get(type);
+  }
+
+  /** The pages cached for a single {@link StateKey}, which are never mutated once cached. */
+  private static class CachedPages {
+    private final Map<StateCacheKey, StateGetResponse> pages;
+    private final int weight;
+
+    private CachedPages(Map<StateCacheKey, StateGetResponse> pages) {
+      this.pages = pages;
+      long weight = 0;
+      for (Map.Entry<StateCacheKey, StateGetResponse> entry : pages.entrySet()) {
+        weight +=
+            PER_PAGE_OVERHEAD
+                + entry.getKey().getContinuationToken().size()
+                + entry.getValue().getData().size()
+                + entry.getValue().getContinuationToken().size();
+      }
+      this.weight = (int) Math.min(weight, Integer.MAX_VALUE);
+    }
+
+    static CachedPages with(
+        @Nullable CachedPages existing, StateCacheKey cacheKey, StateGetResponse page) {
+      Map<StateCacheKey, StateGetResponse> pages = new HashMap<>();
+      if (existing != null) {
+        for (Map.Entry<StateCacheKey, StateGetResponse> entry : existing.pages.entrySet()) {
+          if (entry.getKey().getCacheToken().equals(cacheKey.getCacheToken())) {
+            pages.put(entry.getKey(), entry.getValue());
+          }
+        }
+      }
+      pages.put(cacheKey, page);
+      return new CachedPages(ImmutableMap.copyOf(pages));
+    }
+
+    static CachedPages withoutLastPage(CachedPages existing) {
+      ImmutableMap.Builder<StateCacheKey, StateGetResponse> pages = ImmutableMap.builder();
+      for (Map.Entry<StateCacheKey, StateGetResponse> entry : existing.pages.entrySet()) {
+        if (!entry.getValue().getContinuationToken().isEmpty()) {
+          pages.put(entry);
+        }
+      }
+      return new CachedPages(pages.build());
+    }
+  }
+
+  /** The share of the cache and the metrics of a single {@link StateType}. */
+  private static class TypedCache {
+    private final Cache<StateKey, CachedPages> cache;
+    private final Counter hits;
+    private final Counter misses;
+    private final Counter evictions;
+    private final Gauge sizeBytes;
+    private volatile long weight;
+
+    TypedCache(StateType type, long maxWeight) {
+      Map<String, String> labels =
+          ImmutableMap.of(MonitoringInfoConstants.Labels.STATE_TYPE, type.label);
+      this.hits = counter(MonitoringInfoConstants.Urns.STATE_CACHE_HITS, labels);
+      this.misses = counter(MonitoringInfoConstants.Urns.STATE_CACHE_MISSES, labels);
+      this.evictions = counter(MonitoringInfoConstants.Urns.STATE_CACHE_EVICTIONS, labels);
+      this.sizeBytes =
+          LabeledMetrics.gauge(
+              MonitoringInfoMetricName.named(
+                  MonitoringInfoConstants.Urns.STATE_CACHE_SIZE_BYTES, labels),
+              true);
+      this.cache =
+          CacheBuilder.newBuilder()
+              // The maximum weight is split evenly between segments, a single segment lets any
+              // entry up to the whole share be cached. Updates are serialized in any case.
+              .concurrencyLevel(1)
+              .maximumWeight(maxWeight)
+              .weigher((StateKey key, CachedPages pages) -> pages.weight)
+              .removalListener(this::onRemoval)
+              .build();
+    }
+
+    private static Counter counter(String urn, Map<String, String> labels) {
+      return LabeledMetrics.counter(MonitoringInfoMetricName.named(urn, labels), true);
+    }
+
+    /**
+     * Replaces the pages cached for the given key with the result of applying {@code updateFn} to
+     * them. Nothing is cached if {@code updateFn} returns null.
+     *
+     * <p>Updates are serialized so that replaced pages are accounted for exactly once. Evicted
+     * pages are accounted for by {@link #onRemoval}.
+     */
+    synchronized void update(
+        StateKey stateKey, Function<@Nullable CachedPages, @Nullable CachedPages> updateFn) {
+      CachedPages existing = cache.getIfPresent(stateKey);
+      CachedPages updated = updateFn.apply(existing);
+      if (updated == null) {
+        return;
+      }
+      updateWeight(updated.weight - (existing == null ? 0 : existing.weight));
+      cache.put(stateKey, updated);
+    }
+
+    private void onRemoval(RemovalNotification<StateKey, CachedPages> removal) {
+      CachedPages pages = removal.getValue();
+      if (removal.wasEvicted() && pages != null) {
+        updateWeight(-pages.weight);
+        evictions.inc();
+      }
+    }
+
+    private synchronized void updateWeight(long delta) {
+      weight += delta;
+      sizeBytes.set(weight);
+    }
+  }
+}
@@ -0,0 +1,330 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.beam.fn.harness;
+
+import static org.apache.beam.sdk.util.WindowedValue.valueInGlobalWindow;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.containsInAnyOrder;
+import static org.hamcrest.Matchers.empty;
+import static org.hamcrest.Matchers.hasSize;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertThrows;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.apache.beam.fn.harness.GroupingTable.Receiver;
+import org.apache.beam.fn.harness.PrecombineGroupingTable.Combiner;
+import org.apache.beam.sdk.coders.Coder;
+import org.apache.beam.sdk.coders.DoubleCoder;
+import org.apache.beam.sdk.coders.KvCoder;
+import org.apache.beam.sdk.coders.StringUtf8Coder;
+import org.apache.beam.sdk.coders.VarIntCoder;
+import org.apache.beam.sdk.coders.VarLongCoder;
+import org.apache.beam.sdk.transforms.windowing.BoundedWindow;
+import org.apache.beam.sdk.transforms.windowing.IntervalWindow;
+import org.apache.beam.sdk.transforms.windowing.PaneInfo;
+import org.apache.beam.sdk.util.WindowedValue;
+import org.apache.beam.sdk.values.KV;
+import org.joda.time.Instant;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** Unit tests for {@link OffHeapPrecombineGroupingTable}. */
+@RunWith(JUnit4.class)
+public class OffHeapPrecombineGroupingTableTest {
+
+  private static class TestOutputReceiver implements Receiver {
+    final List<WindowedValue<KV<Object, Long>>> outputElems = new ArrayList<>();
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public void process(Object elem) {
+      outputElems.add((WindowedValue<KV<Object, Long>>) elem);
+    }
+
+    List<Object> values() {
+      List<Object> values = new ArrayList<>();
+      for (WindowedValue<KV<Object, Long>> elem : outputElems) {
+        values.add(elem.getValue());
+      }
+      return values;
+    }
+
+    /** Returns the sum of all output accumulators per key, combining any partial flushes. */
+    Map<Object, Long> sums() {
+      Map<Object, Long> sums = new HashMap<>();
+      for (WindowedValue<KV<Object, Long>> elem : outputElems) {
+        sums.merge(elem.getValue().getKey(), elem.getValue().getValue(), Long::sum);
+      }
+      return sums;
+    }
+  }
+
+  private static class SummingCombiner<K> implements Combiner<WindowedValue<K>, Long, Long, Long> {
+    @Override
+    public Long createAccumulator(WindowedValue<K> key) {
+      return 0L;
+    }
+
+    @Override
+    public Long add(WindowedValue<K> key, Long accumulator, Long value) {
+      return accumulator + value;
+    }
+
+    @Override
+    public Long merge(WindowedValue<K> key, Iterable<Long> accumulators) {
+      long sum = 0;
+      for (Long part : accumulators) {
+        sum += part;
+      }
+      return sum;
+    }
+
+    @Override
+    public Long compact(WindowedValue<K> key, Long accumulator) {
+      return accumulator;
+    }
+
+    @Override
+    public Long extract(WindowedValue<K> key, Long accumulator) {
+      return accumulator;
+    }
+  }
+
+  private static <K> OffHeapPrecombineGroupingTable<K, Long, Long> summingTable(
+      int maxArenaBytes, Coder<K> keyCoder) {
+    return new OffHeapPrecombineGroupingTable<>(
+        maxArenaBytes, keyCoder, new SummingCombiner<>(), VarLongCoder.of());
+  }
+
+  @Test
+  public void testCombiningStringKeys() throws Exception {
+    OffHeapPrecombineGroupingTable<String, Long, Long> table =
+        summingTable(1 << 20, StringUtf8Coder.of());
+    TestOutputReceiver receiver = new TestOutputReceiver();
+
+    table.put(valueInGlobalWindow(KV.of("A", 1L)), receiver);
+    table.put(valueInGlobalWindow(KV.of("B", 2L)), receiver);
+    table.put(valueInGlobalWindow(KV.of("B", 3L)), receiver);
+    table.put(valueInGlobalWindow(KV.of("C", 4L)), receiver);
+    // Grows the encoded accumulator beyond the space reserved for it.
+    table.put(valueInGlobalWindow(KV.of("C", 5_000_000_000L)), receiver);
+    assertThat(receiver.outputElems, empty());
+    assertEquals(3, table.numEntries());
+
+    table.flush(receiver);
+    assertThat(
+        receiver.values(),
+        containsInAnyOrder(KV.of("A", 1L), KV.of("B", 5L), KV.of("C", 5_000_000_004L)));
+    assertEquals(0, table.numEntries());
+    assertEquals(0, table.size());
+  }
+
+  @Test
+  public void testCombiningPrimitiveKeys() throws Exception {
+    OffHeapPrecombineGroupingTable<Long, Long, Long> longTable =
+        summingTable(1 << 20, VarLongCoder.of());
+    TestOutputReceiver receiver = new TestOutputReceiver();
+    for (long i = 0; i < 10_000; i++) {
+      longTable.put(valueInGlobalWindow(KV.of(i % 100 - 50, 1L)), receiver);
+    }
+    longTable.flush(receiver);
+    assertThat(receiver.outputElems, hasSize(100));
+    for (Map.Entry<Object, Long> sum : receiver.sums().entrySet()) {
+      assertTrue(sum.getKey() instanceof Long);
+      assertEquals(100L, (long) sum.getValue());
+    }
+
+    OffHeapPrecombineGroupingTable<Integer, Long, Long> intTable =
+        summingTable(1 << 20, VarIntCoder.of());
+    receiver = new TestOutputReceiver();
+    intTable.put(valueInGlobalWindow(KV.of(-7, 2L)), receiver);
+    intTable.put(valueInGlobalWindow(KV.of(-7, 3L)), receiver);
+    intTable.put(valueInGlobalWindow(KV.of(Integer.MAX_VALUE, 1L)), receiver);
+    intTable.flush(receiver);
+    assertThat(receiver.values(), containsInAnyOrder(KV.of(-7, 5L), KV.of(Integer.MAX_VALUE, 1L)));
+  }
+
+  @Test
+  public void testCombiningCoderKeys() throws Exception {
+    OffHeapPrecombineGroupingTable<KV<String, Long>, Long, Long> table =
+        summingTable(1 << 20, KvCoder.of(StringUtf8Coder.of(), VarLongCoder.of()));
+    TestOutputReceiver receiver = new TestOutputReceiver();
+    table.put(valueInGlobalWindow(KV.of(KV.of("A", 1L), 1L)), receiver);
+    table.put(valueInGlobalWindow(KV.of(KV.of("A", 2L), 2L)), receiver);
+    table.put(valueInGlobalWindow(KV.of(KV.of("A", 1L), 3L)), receiver);
+    table.flush(receiver);
+    assertThat(
+        receiver.values(),
+        containsInAnyOrder(KV.of(KV.of("A", 1L), 4L), KV.of(KV.of("A", 2L), 2L)));
+  }
+
+  @Test
+  public void testKeysAreGroupedPerWindow() throws Exception {
+    OffHeapPrecombineGroupingTable<String, Long, Long> table =
+        summingTable(1 << 20, StringUtf8Coder.of());
+    TestOutputReceiver receiver = new TestOutputReceiver();
+    IntervalWindow first = new IntervalWindow(new Instant(0), new Instant(10));
+    IntervalWindow second = new IntervalWindow(new Instant(10), new Instant(20));
+
+    table.put(
+        WindowedValue.of(KV.of("A", 1L), new Instant(1), first, PaneInfo.NO_FIRING), receiver);
+    table.put(
+        WindowedValue.of(KV.of("A", 2L), new Instant(11), second, PaneInfo.NO_FIRING), receiver);
+    table.put(
+        WindowedValue.of(KV.of("A", 3L), new Instant(5), first, PaneInfo.NO_FIRING), receiver);
+    table.flush(receiver);
+
+    assertThat(receiver.outputElems, hasSize(2));
+    for (WindowedValue<KV<Object, Long>> output : receiver.outputElems) {
+      BoundedWindow window = output.getWindows().iterator().next();
+      if (window.equals(first)) {
+        assertEquals(KV.of("A", 4L), output.getValue());
+        // The output inherits the timestamp of the first input for the key.
+        assertEquals(new Instant(1), output.getTimestamp());
+      } else {
+        assertEquals(second, window);
+        assertEquals(KV.of("A", 2L), output.getValue());
+        assertEquals(new Instant(11), output.getTimestamp());
+      }
+    }
+  }
+
+  @Test
+  public void testEvictsLeastRecentlyUsedKeys() throws Exception {
+    int maxArenaBytes = 4096;
+    OffHeapPrecombineGroupingTable<Long, Long, Long> table =
+        summingTable(maxArenaBytes, VarLongCoder.of());
+    TestOutputReceiver receiver = new TestOutputReceiver();
+
+    long numKeys = 0;
+    while (receiver.outputElems.isEmpty()) {
+      table.put(valueInGlobalWindow(KV.of(numKeys, 1L)), receiver);
+      // Keep the first key hot so that it is never evicted.
+      table.put(valueInGlobalWindow(KV.of(0L, 1L)), receiver);
+      numKeys++;
+    }
+    // Only some of the keys were evicted, starting with the least recently used.
+    assertTrue(table.numEntries() > 0);
+    assertTrue(table.size() <= OffHeapPrecombineGroupingTable.TARGET_LOAD * maxArenaBytes);
+    assertEquals(KV.of(1L, 1L), receiver.outputElems.get(0).getValue());
+    for (WindowedValue<KV<Object, Long>> evicted : receiver.outputElems) {
+      assertFalse(evicted.getValue().getKey().equals(0L));
+    }
+
+    table.flush(receiver);
+    Map<Object, Long> sums = receiver.sums();
+    assertEquals(numKeys, sums.size());
+    assertEquals(numKeys + 1, (long) sums.get(0L));
+    for (long key = 1; key < numKeys; key++) {
+      assertEquals(1L, (long) sums.get(key));
+    }
+  }
+
+  @Test
+  public void testShrinkReleasesGrownArena() throws Exception {
+    OffHeapPrecombineGroupingTable<Long, Long, Long> table =
+        summingTable(1 << 20, VarLongCoder.of());
+    TestOutputReceiver receiver = new TestOutputReceiver();
+    int initialCapacity = table.arenaCapacity();
+
+    for (long key = 0; key < 10_000; key++) {
+      table.put(valueInGlobalWindow(KV.of(key, 1L)), receiver);
+    }
+    assertTrue(table.arenaCapacity() > initialCapacity);
+    assertThrows(IllegalStateException.class, table::shrink);
+
+    table.flush(receiver);
+    table.shrink();
+    assertEquals(initialCapacity, table.arenaCapacity());
+    assertEquals(10_000, receiver.sums().size());
+
+    // The table can still be used after it was shrunk.
+    table.put(valueInGlobalWindow(KV.of(1L, 2L)), receiver);
+    table.put(valueInGlobalWindow(KV.of(1L, 3L)), receiver);
+    assertEquals(1, table.numEntries());
+    table.flush(receiver);
+    assertEquals(
+        KV.of(1L, 5L), receiver.outputElems.get(receiver.outputElems.size() - 1).getValue());
+  }
+
+  @Test
+  public void testManyDistinctWindowsFlushTable() throws Exception {
+    int maxArenaBytes = 4096;
+    OffHeapPrecombineGroupingTable<Long, Long, Long> table =
+        summingTable(maxArenaBytes, VarLongCoder.of());
+    TestOutputReceiver receiver = new TestOutputReceiver();
+
+    int numWindows = 10 * maxArenaBytes / OffHeapPrecombineGroupingTable.WINDOWS_ENTRY_BYTES;
+    for (int i = 0; i < numWindows; i++) {
+      IntervalWindow window = new IntervalWindow(new Instant(i), new Instant(i + 1));
+      table.put(
+          WindowedValue.of(KV.of(0L, 1L), new Instant(i), window, PaneInfo.NO_FIRING), receiver);
+      assertTrue(table.size() <= 2 * maxArenaBytes);
+    }
+    // The retained windows forced flushes long before the arena itself filled up.
+    assertFalse(receiver.outputElems.isEmpty());
+
+    table.flush(receiver);
+    assertThat(receiver.outputElems, hasSize(numWindows));
+    assertEquals(numWindows, (long) receiver.sums().get(0L));
+  }
+
+  @Test
+  public void testEntryLargerThanArenaIsOutputImmediately() throws Exception {
+    OffHeapPrecombineGroupingTable<String, Long, Long> table =
+        summingTable(64, StringUtf8Coder.of());
+    TestOutputReceiver receiver = new TestOutputReceiver();
+    StringBuilder key = new StringBuilder();
+    for (int i = 0; i < 100; i++) {
+      key.append('k');
+    }
+    table.put(valueInGlobalWindow(KV.of(key.toString(), 3L)), receiver);
+    assertThat(receiver.values(), containsInAnyOrder(KV.of(key.toString(), 3L)));
+    assertEquals(0, table.numEntries());
+  }
+
+  @Test
+  public void testTableIsReusableAfterFlush() throws Exception {
+    OffHeapPrecombineGroupingTable<String, Long, Long> table =
+        summingTable(1 << 20, StringUtf8Coder.of());
+    for (int bundle = 0; bundle < 3; bundle++) {
+      TestOutputReceiver receiver = new TestOutputReceiver();
+      for (int i = 0; i < 5_000; i++) {
+        table.put(valueInGlobalWindow(KV.of("key" + (i % 1_000), 1L)), receiver);
+      }
+      table.flush(receiver);
+      assertThat(receiver.outputElems, hasSize(1_000));
+      for (Long sum : receiver.sums().values()) {
+        assertEquals(5L, (long) sum);
+      }
+    }
+  }
+
+  @Test
+  public void testIsSupported() {
+    assertTrue(OffHeapPrecombineGroupingTable.isSupported(StringUtf8Coder.of()));
+    assertTrue(OffHeapPrecombineGroupingTable.isSupported(VarLongCoder.of()));
+    assertFalse(OffHeapPrecombineGroupingTable.isSupported(DoubleCoder.of()));
+  }
+}
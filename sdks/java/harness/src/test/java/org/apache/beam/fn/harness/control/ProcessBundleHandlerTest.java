@@ -34,12 +34,14 @@ import static org.mockito.Mockito.argThat;
 import static org.mockito.Mockito.doAnswer;
 import static org.mockito.Mockito.eq;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.verifyNoMoreInteractions;
 import static org.mockito.Mockito.when;
 
 import java.io.IOException;
+import java.time.Duration;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
@@ -47,6 +49,8 @@ import java.util.List;
 import java.util.Map;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.function.Supplier;
 import org.apache.beam.fn.harness.BeamFnDataReadRunner;
 import org.apache.beam.fn.harness.PTransformRunnerFactory;
@@ -76,7 +80,10 @@ import org.apache.beam.runners.core.construction.PTransformTranslation;
 import org.apache.beam.runners.core.construction.ParDoTranslation;
 import org.apache.beam.runners.core.construction.Timer;
 import org.apache.beam.runners.core.metrics.ExecutionStateTracker;
+import org.apache.beam.runners.core.metrics.MetricsContainerImpl;
 import org.apache.beam.runners.core.metrics.MetricsContainerStepMap;
+import org.apache.beam.runners.core.metrics.MonitoringInfoConstants.Urns;
+import org.apache.beam.runners.core.metrics.MonitoringInfoMetricName;
 import org.apache.beam.runners.core.metrics.ShortIdMap;
 import org.apache.beam.sdk.coders.StringUtf8Coder;
 import org.apache.beam.sdk.fn.data.CloseableFnDataReceiver;
@@ -84,6 +91,7 @@ import org.apache.beam.sdk.fn.data.DataEndpoint;
 import org.apache.beam.sdk.fn.data.LogicalEndpoint;
 import org.apache.beam.sdk.fn.data.TimerEndpoint;
 import org.apache.beam.sdk.function.ThrowingRunnable;
+import org.apache.beam.sdk.metrics.MetricsEnvironment;
 import org.apache.beam.sdk.options.PipelineOptionsFactory;
 import org.apache.beam.sdk.transforms.DoFn;
 import org.apache.beam.sdk.transforms.DoFn.BundleFinalizer;
@@ -98,6 +106,7 @@ import org.apache.beam.vendor.grpc.v1p36p0.com.google.protobuf.Message;
 import org.apache.beam.vendor.guava.v26_0_jre.com.google.common.collect.ImmutableMap;
 import org.apache.beam.vendor.guava.v26_0_jre.com.google.common.collect.Iterables;
 import org.apache.beam.vendor.guava.v26_0_jre.com.google.common.collect.Maps;
+import org.apache.beam.vendor.guava.v26_0_jre.com.google.common.util.concurrent.MoreExecutors;
 import org.apache.beam.vendor.guava.v26_0_jre.com.google.common.util.concurrent.Uninterruptibles;
 import org.joda.time.Instant;
 import org.junit.Before;
@@ -484,7 +493,7 @@ public class ProcessBundleHandlerTest {
     Map<String, Message> fnApiRegistry = ImmutableMap.of("1L", processBundleDescriptor);
 
     Map<String, PTransformRunnerFactory> urnToPTransformRunnerFactoryMap =
-        Maps.newHashMap(REGISTERED_RUNNER_FACTORIES);
+        Maps.newHashMap(REGISTERED_RUNNER_FACTORIES.get());
     urnToPTransformRunnerFactoryMap.put(DATA_INPUT_URN, (context) -> null);
 
     ProcessBundleHandler handler =
@@ -610,6 +619,180 @@ public class ProcessBundleHandlerTest {
     assertNull(cache.find("known"));
   }
 
+  @Test
+  public void testBundleProcessorCachePrewarmsBundleProcessors() throws Exception {
+    MetricsContainerImpl container = MetricsContainerImpl.createProcessWideContainer();
+    MetricsEnvironment.setProcessWideContainer(container);
+    try {
+      AtomicLong nanoClock = new AtomicLong();
+      BundleProcessorCache cache =
+          new BundleProcessorCache(
+              2, Duration.ofMinutes(1), MoreExecutors.directExecutor(), nanoClock::get, () -> 0);
+      List<BundleProcessor> built = new ArrayList<>();
+      Supplier<BundleProcessor> supplier =
+          () -> {
+            BundleProcessor bundleProcessor = mock(BundleProcessor.class);
+            built.add(bundleProcessor);
+            return bundleProcessor;
+          };
+
+      cache.prewarm("descriptorId", supplier);
+      assertEquals(2, built.size());
+      assertEquals(built, cache.getCachedBundleProcessors().get("descriptorId"));
+
+      // Prewarming a known descriptor does not build more bundle processors.
+      cache.prewarm("descriptorId", supplier);
+      assertEquals(2, built.size());
+
+      assertSame(built.get(0), cache.get("descriptorId", "1", supplier));
+      assertSame(built.get(1), cache.get("descriptorId", "2", supplier));
+      cache.get("descriptorId", "3", supplier);
+      assertEquals(3, built.size());
+
+      assertEquals(2L, (long) getCounter(container, Urns.BUNDLE_PROCESSOR_CACHE_HITS));
+      assertEquals(1L, (long) getCounter(container, Urns.BUNDLE_PROCESSOR_CACHE_MISSES));
+      assertEquals(
+          3L,
+          container
+              .getDistribution(
+                  MonitoringInfoMetricName.named(
+                      Urns.BUNDLE_PROCESSOR_BUILD_TIME, ImmutableMap.of()))
+              .getCumulative()
+              .count());
+    } finally {
+      MetricsEnvironment.setProcessWideContainer(null);
+    }
+  }
+
+  @Test
+  public void testBundleProcessorCacheShutsDownPrewarmedBundleProcessorsAfterShutdown()
+      throws Exception {
+    BundleProcessorCache cache =
+        new BundleProcessorCache(
+            2, Duration.ofMinutes(1), MoreExecutors.directExecutor(), System::nanoTime, () -> 0);
+    List<BundleProcessor> built = new ArrayList<>();
+    cache.prewarm(
+        "descriptorId",
+        () -> {
+          BundleProcessor bundleProcessor = mock(BundleProcessor.class);
+          built.add(bundleProcessor);
+          // The cache is shut down while the bundle processor is being built.
+          try {
+            cache.shutdown();
+          } catch (Exception e) {
+            throw new RuntimeException(e);
+          }
+          return bundleProcessor;
+        });
+
+    // Prewarming stops, and the bundle processor it built is not leaked.
+    assertEquals(1, built.size());
+    verify(built.get(0)).shutdown();
+    assertNull(cache.getCachedBundleProcessors().get("descriptorId"));
+  }
+
+  @Test
+  public void testBundleProcessorCacheEvictsIdleBundleProcessors() throws Exception {
+    MetricsContainerImpl container = MetricsContainerImpl.createProcessWideContainer();
+    MetricsEnvironment.setProcessWideContainer(container);
+    try {
+      AtomicLong nanoClock = new AtomicLong();
+      BundleProcessorCache cache =
+          new BundleProcessorCache(
+              0, Duration.ofMinutes(1), MoreExecutors.directExecutor(), nanoClock::get, () -> 0);
+      BundleProcessor first = mock(BundleProcessor.class);
+      BundleProcessor second = mock(BundleProcessor.class);
+      when(first.getInstructionId()).thenReturn("1");
+      when(second.getInstructionId()).thenReturn("2");
+      cache.get("descriptorId", "1", () -> first);
+      cache.get("descriptorId", "2", () -> second);
+
+      cache.release("descriptorId", first);
+      nanoClock.addAndGet(TimeUnit.SECONDS.toNanos(30));
+      cache.release("descriptorId", second);
+
+      // Only the bundle processor which has been idle for longer than a minute is evicted.
+      nanoClock.addAndGet(TimeUnit.SECONDS.toNanos(31));
+      cache.evictIdleBundleProcessors();
+      verify(first).shutdown();
+      verify(second, never()).shutdown();
+      assertEquals(
+          Collections.singletonList(second), cache.getCachedBundleProcessors().get("descriptorId"));
+      assertEquals(1L, (long) getCounter(container, Urns.BUNDLE_PROCESSOR_CACHE_EVICTIONS));
+    } finally {
+      MetricsEnvironment.setProcessWideContainer(null);
+    }
+  }
+
+  @Test
+  public void testBundleProcessorCacheEvictsUnderMemoryPressure() throws Exception {
+    AtomicLong nanoClock = new AtomicLong();
+    AtomicBoolean underMemoryPressure = new AtomicBoolean();
+    BundleProcessorCache cache =
+        new BundleProcessorCache(
+            2,
+            Duration.ofMinutes(1),
+            MoreExecutors.directExecutor(),
+            nanoClock::get,
+            () -> underMemoryPressure.get() ? 0.95 : 0.5);
+    List<BundleProcessor> built = new ArrayList<>();
+    cache.prewarm(
+        "descriptorId",
+        () -> {
+          BundleProcessor bundleProcessor = mock(BundleProcessor.class);
+          built.add(bundleProcessor);
+          return bundleProcessor;
+        });
+    assertEquals(2, built.size());
+
+    nanoClock.addAndGet(TimeUnit.SECONDS.toNanos(2));
+    cache.evictIdleBundleProcessors();
+    verify(built.get(0), never()).shutdown();
+    verify(built.get(1), never()).shutdown();
+
+    // Only the first bundle processor of the descriptor, which is reused first, is kept.
+    underMemoryPressure.set(true);
+    nanoClock.addAndGet(TimeUnit.SECONDS.toNanos(2));
+    cache.evictIdleBundleProcessors();
+    verify(built.get(0), never()).shutdown();
+    verify(built.get(1)).shutdown();
+    assertEquals(
+        Collections.singletonList(built.get(0)),
+        cache.getCachedBundleProcessors().get("descriptorId"));
+  }
+
+  @Test
+  public void testBundleProcessorCacheDoesNotChurnUnderSteadyMemoryPressure() throws Exception {
+    AtomicLong nanoClock = new AtomicLong();
+    BundleProcessorCache cache =
+        new BundleProcessorCache(
+            0, Duration.ofMinutes(1), MoreExecutors.directExecutor(), nanoClock::get, () -> 0.95);
+    List<BundleProcessor> built = new ArrayList<>();
+    Supplier<BundleProcessor> bundleProcessorSupplier =
+        () -> {
+          BundleProcessor bundleProcessor = mock(BundleProcessor.class);
+          when(bundleProcessor.getInstructionId()).thenReturn("instruction");
+          built.add(bundleProcessor);
+          return bundleProcessor;
+        };
+
+    // Each bundle reuses the processor released by the previous one.
+    for (int i = 0; i < 10; i++) {
+      BundleProcessor bundleProcessor =
+          cache.get("descriptorId", "instruction", bundleProcessorSupplier);
+      nanoClock.addAndGet(TimeUnit.SECONDS.toNanos(2));
+      cache.release("descriptorId", bundleProcessor);
+    }
+    assertEquals(1, built.size());
+    verify(built.get(0), never()).shutdown();
+  }
+
+  private static Long getCounter(MetricsContainerImpl container, String urn) {
+    return container
+        .getCounter(MonitoringInfoMetricName.named(urn, ImmutableMap.of()))
+        .getCumulative();
+  }
+
   @Test
   public void testBundleProcessorReset() throws Exception {
     PTransformFunctionRegistry startFunctionRegistry = mock(PTransformFunctionRegistry.class);
@@ -21,6 +21,9 @@ import static org.apache.beam.sdk.util.WindowedValue.valueInGlobalWindow;
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.Matchers.contains;
 import static org.hamcrest.Matchers.containsInAnyOrder;
+import static org.hamcrest.Matchers.greaterThanOrEqualTo;
+import static org.hamcrest.Matchers.hasItem;
+import static org.hamcrest.Matchers.lessThan;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
 import static org.mockito.Mockito.any;
@@ -51,6 +54,7 @@ import org.apache.beam.sdk.coders.IterableCoder;
 import org.apache.beam.sdk.coders.StringUtf8Coder;
 import org.apache.beam.sdk.fn.data.FnDataReceiver;
 import org.apache.beam.sdk.metrics.MetricsEnvironment;
+import org.apache.beam.sdk.util.HistogramData;
 import org.apache.beam.sdk.util.WindowedValue;
 import org.apache.beam.sdk.util.common.ElementByteSizeObservableIterable;
 import org.apache.beam.sdk.util.common.ElementByteSizeObservableIterator;
@@ -410,6 +414,62 @@ public class PCollectionConsumerRegistryTest {
     assertThat(result, containsInAnyOrder(expected.toArray()));
   }
 
+  @Test
+  public void testProcessingTimeExcludesDownstreamConsumers() throws Exception {
+    MetricsContainerStepMap metricsContainerRegistry = new MetricsContainerStepMap();
+    PCollectionConsumerRegistry consumers =
+        new PCollectionConsumerRegistry(
+            metricsContainerRegistry, mock(ExecutionStateTracker.class), 1.0);
+    FnDataReceiver<WindowedValue<String>> consumerB = element -> Thread.sleep(20);
+    consumers.register("pCollectionB", "pTransformIdB", consumerB, StringUtf8Coder.of());
+    FnDataReceiver<WindowedValue<String>> outputB =
+        (FnDataReceiver<WindowedValue<String>>)
+            (FnDataReceiver) consumers.getMultiplexingConsumer("pCollectionB");
+    consumers.register("pCollectionA", "pTransformIdA", outputB, StringUtf8Coder.of());
+
+    FnDataReceiver<WindowedValue<String>> wrapperConsumer =
+        (FnDataReceiver<WindowedValue<String>>)
+            (FnDataReceiver) consumers.getMultiplexingConsumer("pCollectionA");
+    int numElements = 5;
+    for (int i = 0; i < numElements; i++) {
+      wrapperConsumer.accept(valueInGlobalWindow("elem"));
+    }
+
+    // Every element is timed, and the time spent by pTransformIdB is not attributed to
+    // pTransformIdA which outputs to it.
+    HistogramData wallTimeA = consumers.getProcessingWallTimeNanos("pTransformIdA");
+    HistogramData wallTimeB = consumers.getProcessingWallTimeNanos("pTransformIdB");
+    assertEquals(numElements, wallTimeA.getTotalCount());
+    assertEquals(numElements, wallTimeB.getTotalCount());
+    assertThat(wallTimeA.p99(), lessThan(1e7));
+    assertThat(wallTimeB.p50(), greaterThanOrEqualTo(1e7));
+
+    List<String> urns = new ArrayList<>();
+    for (MonitoringInfo monitoringInfo : consumers.getExecutionTimeMonitoringInfos()) {
+      if (monitoringInfo.getType().equals(MonitoringInfoConstants.TypeUrns.HISTOGRAM_INT64_TYPE)) {
+        urns.add(monitoringInfo.getUrn());
+      }
+    }
+    assertThat(urns, hasItem(Urns.ELEMENT_PROCESSING_WALL_TIME));
+
+    consumers.reset();
+    assertEquals(0, wallTimeA.getTotalCount());
+  }
+
+  @Test
+  public void testNoProcessingTimeWhenSamplingDisabled() throws Exception {
+    PCollectionConsumerRegistry consumers =
+        new PCollectionConsumerRegistry(
+            new MetricsContainerStepMap(), mock(ExecutionStateTracker.class));
+    FnDataReceiver<WindowedValue<String>> consumerA1 = mock(FnDataReceiver.class);
+    consumers.register("pCollectionA", "pTransformIdA", consumerA1, StringUtf8Coder.of());
+    consumers.getMultiplexingConsumer("pCollectionA").accept(valueInGlobalWindow("elem"));
+
+    for (MonitoringInfo monitoringInfo : consumers.getExecutionTimeMonitoringInfos()) {
+      assertEquals(Urns.PROCESS_BUNDLE_MSECS, monitoringInfo.getUrn());
+    }
+  }
+
   private class TestElementByteSizeObservableIterable<T>
       extends ElementByteSizeObservableIterable<T, ElementByteSizeObservableIterator<T>> {
     private List<T> elements;
@@ -40,9 +40,6 @@ import org.apache.beam.model.fnexecution.v1.BeamFnApi.StateRequest;
 import org.apache.beam.model.fnexecution.v1.BeamFnApi.StateResponse;
 import org.apache.beam.sdk.coders.StringUtf8Coder;
 import org.apache.beam.vendor.grpc.v1p36p0.com.google.protobuf.ByteString;
-import org.apache.beam.vendor.guava.v26_0_jre.com.google.common.cache.CacheBuilder;
-import org.apache.beam.vendor.guava.v26_0_jre.com.google.common.cache.CacheLoader;
-import org.apache.beam.vendor.guava.v26_0_jre.com.google.common.cache.LoadingCache;
 import org.apache.beam.vendor.guava.v26_0_jre.com.google.common.collect.ImmutableMap;
 import org.junit.Before;
 import org.junit.Test;
@@ -53,7 +50,7 @@ import org.junit.runners.JUnit4;
 @RunWith(JUnit4.class)
 public class CachingBeamFnStateClientTest {
 
-  private LoadingCache<StateKey, Map<StateCacheKey, StateGetResponse>> stateCache;
+  private StateCache stateCache;
   private List<CacheToken> cacheTokenList;
   private CacheToken userStateToken =
       CacheToken.newBuilder()
@@ -62,17 +59,15 @@ public class CachingBeamFnStateClientTest {
           .build();
   private StateCacheKey defaultCacheKey =
       StateCacheKey.create(ByteString.copyFromUtf8("1"), ByteString.EMPTY);
-  private CacheLoader<StateKey, Map<StateCacheKey, StateGetResponse>> loader =
-      new CacheLoader<StateKey, Map<StateCacheKey, StateGetResponse>>() {
-        @Override
-        public Map<StateCacheKey, StateGetResponse> load(StateKey key) {
-          return new HashMap<>();
-        }
-      };
 
   @Before
   public void setup() {
-    stateCache = CacheBuilder.newBuilder().build(loader);
+    stateCache =
+        new StateCache(
+            ImmutableMap.of(
+                StateCache.StateType.SIDE_INPUT, Long.MAX_VALUE,
+                StateCache.StateType.BAG_USER_STATE, Long.MAX_VALUE,
+                StateCache.StateType.MULTIMAP_SIDE_INPUT, Long.MAX_VALUE));
     cacheTokenList = new ArrayList<>();
   }
 
@@ -208,7 +203,7 @@ public class CachingBeamFnStateClientTest {
 
     // Append works with no pages in cache
     appendToKey(key("A"), encode("A2"), cachingClient);
-    assertTrue(stateCache.getUnchecked(key("A")).isEmpty());
+    assertTrue(stateCache.getPages(key("A")).isEmpty());
     assertEquals(fakeClient.getData().get(key("A")), getALlDataForKey(key("A"), cachingClient));
     assertEquals(3, fakeClient.getCallCount());
 
@@ -216,7 +211,7 @@ public class CachingBeamFnStateClientTest {
     appendToKey(key("A"), encode("A3"), cachingClient);
     assertFalse(
         stateCache
-            .getUnchecked(key("A"))
+            .getPages(key("A"))
             .containsValue(StateGetResponse.newBuilder().setData(encode("A2")).build()));
     assertEquals(fakeClient.getData().get(key("A")), getALlDataForKey(key("A"), cachingClient));
     assertEquals(6, fakeClient.getCallCount());
@@ -224,13 +219,13 @@ public class CachingBeamFnStateClientTest {
     // Append works with one page in the cache
     assertEquals(fakeClient.getData().get(key("B")), getALlDataForKey(key("B"), cachingClient));
     appendToKey(key("B"), encode("B2"), cachingClient);
-    assertTrue(stateCache.getUnchecked(key("B")).isEmpty());
+    assertTrue(stateCache.getPages(key("B")).isEmpty());
     assertEquals(fakeClient.getData().get(key("B")), getALlDataForKey(key("B"), cachingClient));
     assertEquals(10, fakeClient.getCallCount());
 
     // Append works with no prior data
     appendToKey(key("C"), encode("C1"), cachingClient);
-    assertTrue(stateCache.getUnchecked(key("C")).isEmpty());
+    assertTrue(stateCache.getPages(key("C")).isEmpty());
     assertEquals(fakeClient.getData().get(key("C")), getALlDataForKey(key("C"), cachingClient));
   }
 
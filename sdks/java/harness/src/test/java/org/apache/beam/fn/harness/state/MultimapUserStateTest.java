@@ -29,6 +29,7 @@ import java.io.IOException;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 import org.apache.beam.model.fnexecution.v1.BeamFnApi.StateKey;
 import org.apache.beam.sdk.coders.NullableCoder;
 import org.apache.beam.sdk.coders.StringUtf8Coder;
@@ -524,6 +525,46 @@ public class MultimapUserStateTest {
     assertThat(fakeClient.getCallCount(), is(1));
   }
 
+  @Test
+  public void testPrefetchSendsRequestsWithoutWaiting() throws Exception {
+    FakeBeamFnStateClient fakeClient =
+        new FakeBeamFnStateClient(
+            ImmutableMap.of(
+                createMultimapKeyStateKey(),
+                encode("A1", "A2"),
+                createMultimapValueStateKey("A1"),
+                encode("V1", "V2"),
+                createMultimapValueStateKey("A2"),
+                encode("V3")));
+    // Holds back all responses until the latency elapsed.
+    CompletableFuture<Void> latency = new CompletableFuture<>();
+    MultimapUserState<String, String> userState =
+        new MultimapUserState<>(
+            requestBuilder ->
+                fakeClient.handle(requestBuilder).thenCombine(latency, (response, v) -> response),
+            "instructionId",
+            pTransformId,
+            stateId,
+            encode(encodedWindow),
+            encode(encodedKey),
+            StringUtf8Coder.of(),
+            StringUtf8Coder.of());
+
+    userState.prefetchKeys();
+    userState.prefetch("A1");
+    userState.prefetch("A2");
+    userState.prefetch("A1");
+    assertEquals(3, fakeClient.getCallCount());
+
+    latency.complete(null);
+    assertArrayEquals(
+        new String[] {"V1", "V2"}, Iterables.toArray(userState.get("A1"), String.class));
+    assertArrayEquals(new String[] {"V3"}, Iterables.toArray(userState.get("A2"), String.class));
+    assertArrayEquals(
+        new String[] {"A1", "A2"}, Iterables.toArray(userState.keys(), String.class));
+    assertEquals(3, fakeClient.getCallCount());
+  }
+
   private StateKey createMultimapKeyStateKey() throws IOException {
     return StateKey.newBuilder()
         .setMultimapKeysUserState(
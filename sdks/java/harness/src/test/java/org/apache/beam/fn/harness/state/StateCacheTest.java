@@ -0,0 +1,247 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.beam.fn.harness.state;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.apache.beam.fn.harness.state.CachingBeamFnStateClient.StateCacheKey;
+import org.apache.beam.fn.harness.state.StateCache.StateType;
+import org.apache.beam.model.fnexecution.v1.BeamFnApi.StateGetResponse;
+import org.apache.beam.model.fnexecution.v1.BeamFnApi.StateKey;
+import org.apache.beam.runners.core.metrics.MetricsContainerImpl;
+import org.apache.beam.runners.core.metrics.MonitoringInfoConstants;
+import org.apache.beam.runners.core.metrics.MonitoringInfoMetricName;
+import org.apache.beam.sdk.metrics.MetricsContainer;
+import org.apache.beam.sdk.metrics.MetricsEnvironment;
+import org.apache.beam.vendor.grpc.v1p36p0.com.google.protobuf.ByteString;
+import org.apache.beam.vendor.guava.v26_0_jre.com.google.common.collect.ImmutableMap;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** Tests for {@link StateCache}. */
+@RunWith(JUnit4.class)
+public class StateCacheTest {
+
+  private static final ByteString TOKEN_1 = ByteString.copyFromUtf8("1");
+  private static final ByteString TOKEN_2 = ByteString.copyFromUtf8("2");
+
+  @Test
+  public void testPutAndGet() {
+    StateCache cache = cache(1_000_000, 1_000_000, 1_000_000);
+    StateGetResponse firstPage = page(10, "continue");
+    StateGetResponse lastPage = page(10, "");
+
+    assertNull(cache.get(userStateKey("A"), cacheKey(TOKEN_1, "")));
+    cache.put(userStateKey("A"), cacheKey(TOKEN_1, ""), firstPage);
+    cache.put(userStateKey("A"), cacheKey(TOKEN_1, "continue"), lastPage);
+
+    assertEquals(firstPage, cache.get(userStateKey("A"), cacheKey(TOKEN_1, "")));
+    assertEquals(lastPage, cache.get(userStateKey("A"), cacheKey(TOKEN_1, "continue")));
+    assertNull(cache.get(userStateKey("A"), cacheKey(TOKEN_2, "")));
+    assertNull(cache.get(userStateKey("B"), cacheKey(TOKEN_1, "")));
+  }
+
+  @Test
+  public void testPagesForOtherCacheTokensAreDiscarded() {
+    StateCache cache = cache(1_000_000, 1_000_000, 1_000_000);
+    cache.put(userStateKey("A"), cacheKey(TOKEN_1, ""), page(10, "continue"));
+    cache.put(userStateKey("A"), cacheKey(TOKEN_1, "continue"), page(10, ""));
+    cache.put(userStateKey("A"), cacheKey(TOKEN_2, ""), page(10, ""));
+
+    assertEquals(1, cache.getPages(userStateKey("A")).size());
+    assertNull(cache.get(userStateKey("A"), cacheKey(TOKEN_1, "")));
+  }
+
+  @Test
+  public void testClearAndInvalidateLastPage() {
+    StateCache cache = cache(1_000_000, 1_000_000, 1_000_000);
+    cache.put(userStateKey("A"), cacheKey(TOKEN_1, ""), page(10, "continue"));
+    cache.put(userStateKey("A"), cacheKey(TOKEN_1, "continue"), page(10, ""));
+
+    cache.invalidateLastPage(userStateKey("A"));
+    assertEquals(1, cache.getPages(userStateKey("A")).size());
+    assertNull(cache.get(userStateKey("A"), cacheKey(TOKEN_1, "continue")));
+
+    cache.clear(userStateKey("A"), TOKEN_1);
+    assertEquals(
+        StateGetResponse.getDefaultInstance(),
+        cache.get(userStateKey("A"), cacheKey(TOKEN_1, "")));
+    assertEquals(1, cache.getPages(userStateKey("A")).size());
+
+    // Invalidating a key without cached pages does not cache anything.
+    cache.invalidateLastPage(userStateKey("B"));
+    assertTrue(cache.getPages(userStateKey("B")).isEmpty());
+  }
+
+  @Test
+  public void testEvictionIsBoundedPerStateType() {
+    StateCache cache = cache(1_000_000, 10_000, 1_000_000);
+    cache.put(sideInputKey(), cacheKey(TOKEN_1, ""), page(1_000, ""));
+    for (int i = 0; i < 100; i++) {
+      cache.put(userStateKey("key" + i), cacheKey(TOKEN_1, ""), page(1_000, ""));
+    }
+
+    assertTrue(cache.getWeight(StateType.BAG_USER_STATE) <= 10_000);
+    assertTrue(cache.getWeight(StateType.BAG_USER_STATE) > 0);
+    // Filling the user state share never evicts side inputs.
+    assertEquals(1, cache.getPages(sideInputKey()).size());
+    assertTrue(cache.getWeight(StateType.SIDE_INPUT) >= 1_000);
+  }
+
+  @Test
+  public void testWeightIsAccountedForReplacedAndEvictedPages() {
+    StateCache cache = cache(1_000_000, 1_000_000, 1_000_000);
+    cache.put(userStateKey("A"), cacheKey(TOKEN_1, ""), page(1_000, "continue"));
+    long onePage = cache.getWeight(StateType.BAG_USER_STATE);
+    assertTrue(onePage >= 1_000);
+
+    cache.put(userStateKey("A"), cacheKey(TOKEN_1, "continue"), page(1_000, ""));
+    assertTrue(cache.getWeight(StateType.BAG_USER_STATE) >= 2 * onePage);
+
+    cache.clear(userStateKey("A"), TOKEN_1);
+    assertTrue(cache.getWeight(StateType.BAG_USER_STATE) < onePage);
+
+    // A page larger than the whole share is evicted immediately.
+    StateCache smallCache = cache(1_000_000, 100, 1_000_000);
+    smallCache.put(userStateKey("A"), cacheKey(TOKEN_1, ""), page(1_000, ""));
+    assertTrue(smallCache.getPages(userStateKey("A")).isEmpty());
+    assertEquals(0, smallCache.getWeight(StateType.BAG_USER_STATE));
+  }
+
+  @Test
+  public void testPageOfHalfTheShareStaysCached() {
+    StateCache cache = cache(1_000_000, 10_000, 1_000_000);
+    cache.put(userStateKey("A"), cacheKey(TOKEN_1, ""), page(5_000, ""));
+    assertEquals(1, cache.getPages(userStateKey("A")).size());
+    assertTrue(cache.getWeight(StateType.BAG_USER_STATE) >= 5_000);
+  }
+
+  @Test
+  public void testMultimapSideInputsUseTheirOwnShare() {
+    StateCache cache = cache(1_000_000, 1_000_000, 10_000);
+    cache.put(sideInputKey(), cacheKey(TOKEN_1, ""), page(1_000, ""));
+    for (int i = 0; i < 100; i++) {
+      cache.put(multimapSideInputKey("key" + i), cacheKey(TOKEN_1, ""), page(1_000, ""));
+    }
+    cache.put(multimapKeysSideInputKey(), cacheKey(TOKEN_1, ""), page(10, ""));
+
+    assertTrue(cache.getWeight(StateType.MULTIMAP_SIDE_INPUT) <= 10_000);
+    assertEquals(1, cache.getPages(multimapKeysSideInputKey()).size());
+    // Filling the multimap share never evicts iterable side inputs.
+    assertEquals(1, cache.getPages(sideInputKey()).size());
+    assertEquals(0, cache.getWeight(StateType.BAG_USER_STATE));
+  }
+
+  @Test
+  public void testSizeIsReportedAsGauge() {
+    MetricsContainerImpl container = MetricsContainerImpl.createProcessWideContainer();
+    MetricsContainer previous = MetricsEnvironment.setProcessWideContainer(container);
+    try {
+      StateCache cache = cache(1_000_000, 1_000_000, 1_000_000);
+      cache.put(userStateKey("A"), cacheKey(TOKEN_1, ""), page(1_000, ""));
+      cache.put(userStateKey("B"), cacheKey(TOKEN_1, ""), page(1_000, ""));
+      cache.clear(userStateKey("A"), TOKEN_1);
+
+      MonitoringInfoMetricName sizeBytes =
+          MonitoringInfoMetricName.named(
+              MonitoringInfoConstants.Urns.STATE_CACHE_SIZE_BYTES,
+              ImmutableMap.of(MonitoringInfoConstants.Labels.STATE_TYPE, "bag_user_state"));
+      assertEquals(
+          cache.getWeight(StateType.BAG_USER_STATE),
+          container.getGauge(sizeBytes).getCumulative().value());
+    } finally {
+      MetricsEnvironment.setProcessWideContainer(previous);
+    }
+  }
+
+  @Test
+  public void testUncacheableStateIsIgnored() {
+    StateCache cache = cache(1_000_000, 1_000_000, 1_000_000);
+    StateKey runnerKey =
+        StateKey.newBuilder()
+            .setRunner(StateKey.Runner.newBuilder().setKey(ByteString.copyFromUtf8("runner")))
+            .build();
+    cache.put(runnerKey, cacheKey(TOKEN_1, ""), page(10, ""));
+    assertNull(cache.get(runnerKey, cacheKey(TOKEN_1, "")));
+    assertTrue(cache.getPages(runnerKey).isEmpty());
+  }
+
+  private static StateCache cache(long sideInputBytes, long userStateBytes, long multimapBytes) {
+    return new StateCache(
+        ImmutableMap.of(
+            StateType.SIDE_INPUT, sideInputBytes,
+            StateType.BAG_USER_STATE, userStateBytes,
+            StateType.MULTIMAP_SIDE_INPUT, multimapBytes));
+  }
+
+  private static StateCacheKey cacheKey(ByteString cacheToken, String continuationToken) {
+    return StateCacheKey.create(cacheToken, ByteString.copyFromUtf8(continuationToken));
+  }
+
+  private static StateGetResponse page(int size, String continuationToken) {
+    return StateGetResponse.newBuilder()
+        .setData(ByteString.copyFrom(new byte[size]))
+        .setContinuationToken(ByteString.copyFromUtf8(continuationToken))
+        .build();
+  }
+
+  private static StateKey userStateKey(String key) {
+    return StateKey.newBuilder()
+        .setBagUserState(
+            StateKey.BagUserState.newBuilder()
+                .setTransformId("ptransformId")
+                .setUserStateId("stateId")
+                .setWindow(ByteString.copyFromUtf8("encodedWindow"))
+                .setKey(ByteString.copyFromUtf8(key)))
+        .build();
+  }
+
+  private static StateKey multimapSideInputKey(String key) {
+    return StateKey.newBuilder()
+        .setMultimapSideInput(
+            StateKey.MultimapSideInput.newBuilder()
+                .setTransformId("ptransformId")
+                .setSideInputId("multimapSideInputId")
+                .setWindow(ByteString.copyFromUtf8("encodedWindow"))
+                .setKey(ByteString.copyFromUtf8(key)))
+        .build();
+  }
+
+  private static StateKey multimapKeysSideInputKey() {
+    return StateKey.newBuilder()
+        .setMultimapKeysSideInput(
+            StateKey.MultimapKeysSideInput.newBuilder()
+                .setTransformId("ptransformId")
+                .setSideInputId("multimapSideInputId")
+                .setWindow(ByteString.copyFromUtf8("encodedWindow")))
+        .build();
+  }
+
+  private static StateKey sideInputKey() {
+    return StateKey.newBuilder()
+        .setIterableSideInput(
+            StateKey.IterableSideInput.newBuilder()
+                .setTransformId("ptransformId")
+                .setSideInputId("sideInputId")
+                .setWindow(ByteString.copyFromUtf8("encodedWindow")))
+        .build();
+  }
+}